@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.benchmark;
+
+import org.esa.beam.meris.icol.AerosolLutFile;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-pixel aerosol functions of the AE aerosol operators, evaluated for {@link #NUM_PIXELS} random geometries,
+ * either on the text tables or on the memory-mapped binary LUT.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AerosolScatteringFunctionsBenchmark {
+
+    private static final int NUM_PIXELS = 1024;
+    // AOT steps of the AOT retrieval at 865 nm
+    private static final int NUM_AOT_STEPS = 16;
+
+    @Param({"TEXT", "LUT"})
+    private String tables;
+
+    private AerosolScatteringFunctions functions;
+    private int[] iaer;
+    private double[] aot;
+    private double[] thetab;
+    private double[] pab;
+    private float[] sza;
+    private float[] vza;
+    private float[] phi;
+    private double[] aotSteps;
+    private AerosolScatteringFunctions.RVBatch rvBatch;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("LUT".equals(tables)) {
+            final File auxdataDir = BenchmarkData.installAuxdata();
+            final File lutFile = new File(auxdataDir, AerosolLutFile.FILENAME);
+            lutFile.deleteOnExit();
+            AerosolLutFile.write(lutFile);
+            functions = new AerosolScatteringFunctions(auxdataDir);
+        } else {
+            functions = new AerosolScatteringFunctions();
+        }
+
+        final Random random = new Random(BenchmarkData.SEED);
+        iaer = new int[NUM_PIXELS];
+        aot = new double[NUM_PIXELS];
+        thetab = new double[NUM_PIXELS];
+        pab = new double[NUM_PIXELS];
+        sza = new float[NUM_PIXELS];
+        vza = new float[NUM_PIXELS];
+        phi = new float[NUM_PIXELS];
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            // models with phase function only
+            iaer[i] = 1 + random.nextInt(25);
+            aot[i] = 1.5 * random.nextDouble();
+            thetab[i] = 90.0 + 90.0 * random.nextDouble();
+            pab[i] = 1.0;
+            sza[i] = 75.0f * random.nextFloat();
+            vza[i] = 40.0f * random.nextFloat();
+            phi[i] = 360.0f * random.nextFloat() - 180.0f;
+        }
+        aotSteps = new double[NUM_AOT_STEPS];
+        for (int i = 0; i < NUM_AOT_STEPS; i++) {
+            aotSteps[i] = 0.1 * (i + 1);
+        }
+        rvBatch = new AerosolScatteringFunctions.RVBatch(Math.max(NUM_PIXELS, NUM_AOT_STEPS));
+    }
+
+    @Benchmark
+    public double aerosolPhase() throws IOException {
+        double sum = 0.0;
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            sum += functions.aerosolPhase(thetab[i], iaer[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double aerosol_f() throws IOException {
+        double sum = 0.0;
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            final AerosolScatteringFunctions.RV rv = functions.aerosol_f(aot[i], iaer[i], 1.0, sza[i], vza[i], phi[i]);
+            sum += rv.rhoa + rv.tds + rv.tus + rv.sa;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double aerosol_fBatch() throws IOException {
+        functions.aerosol_f(aot, iaer, pab, sza, vza, phi, NUM_PIXELS, rvBatch);
+        double sum = 0.0;
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            sum += rvBatch.rhoa[i] + rvBatch.tds[i] + rvBatch.tus[i] + rvBatch.sa[i];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double aerosol_fAotSteps() throws IOException {
+        double sum = 0.0;
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            for (int j = 0; j < NUM_AOT_STEPS; j++) {
+                final AerosolScatteringFunctions.RV rv = functions.aerosol_f(aotSteps[j], iaer[i], 1.0,
+                                                                             sza[i], vza[i], phi[i]);
+                sum += rv.rhoa + rv.tds + rv.tus;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double aerosol_fAotStepsBatch() throws IOException {
+        double sum = 0.0;
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            functions.aerosol_f(aotSteps, NUM_AOT_STEPS, iaer[i], 1.0, sza[i], vza[i], phi[i], rvBatch);
+            for (int j = 0; j < NUM_AOT_STEPS; j++) {
+                sum += rvBatch.rhoa[j] + rvBatch.tds[j] + rvBatch.tus[j];
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.benchmark;
+
+import org.esa.beam.meris.icol.CoeffW;
+import org.esa.beam.meris.icol.FresnelReflectionCoefficient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fresnel coefficient lookup (per pixel) and kernel creation from the W coefficients (per tile or operator).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AuxdataLookupBenchmark {
+
+    private static final int NUM_PIXELS = 1024;
+
+    private FresnelReflectionCoefficient fresnelCoefficient;
+    private double[] angles;
+    private double[] coeffFR;
+    private double[] coeffRR;
+
+    @Setup
+    public void setUp() throws IOException {
+        fresnelCoefficient = new FresnelReflectionCoefficient(
+                BenchmarkData.openAuxdata(FresnelReflectionCoefficient.FRESNEL_COEFF));
+        final Random random = new Random(BenchmarkData.SEED);
+        angles = new double[NUM_PIXELS];
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            angles[i] = 89.0 * random.nextDouble();
+        }
+
+        final CoeffW coeffW = new CoeffW(BenchmarkData.openAuxdata(CoeffW.FILENAME));
+        coeffFR = coeffW.getCoeffForFR()[1];
+        coeffRR = coeffW.getCoeffForRR()[1];
+    }
+
+    @Benchmark
+    public double fresnelGetCoeffFor() {
+        double sum = 0.0;
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            sum += fresnelCoefficient.getCoeffFor(angles[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float[] createFilterByRotationFR() {
+        return CoeffW.createFilterByRotation(coeffFR);
+    }
+
+    @Benchmark
+    public float[] createFilterByRotationRR() {
+        return CoeffW.createFilterByRotation(coeffRR);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.benchmark;
+
+import org.esa.beam.framework.datamodel.CrsGeoCoding;
+import org.esa.beam.framework.datamodel.GeoCoding;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.gpf.Tile;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+
+/**
+ * Synthetic input data for the benchmarks.
+ */
+class BenchmarkData {
+
+    static final long SEED = 5711;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @return uniformly distributed samples in <code>[0, 0.3[</code> (reflectance-like), where the given
+     *         fraction of the samples is set to the no-data value <code>-1</code>
+     */
+    static float[] createSamples(int numSamples, double noDataFraction) {
+        final Random random = new Random(SEED);
+        final float[] samples = new float[numSamples];
+        for (int i = 0; i < numSamples; i++) {
+            samples[i] = random.nextDouble() < noDataFraction ? -1.0f : 0.3f * random.nextFloat();
+        }
+        return samples;
+    }
+
+    /**
+     * Creates a source tile backed by the given samples. Only the methods needed by the benchmarked
+     * code are supported: <code>getRectangle</code>, <code>getRawSamples</code>, <code>getSampleFloat</code>,
+     * <code>getSampleDouble</code> and <code>getSampleBoolean</code>.
+     */
+    static Tile createTile(final Rectangle rectangle, final float[] samples) {
+        final ProductData rawSamples = ProductData.createInstance(samples);
+        final InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                final String name = method.getName();
+                if ("getRectangle".equals(name)) {
+                    return new Rectangle(rectangle);
+                } else if ("getRawSamples".equals(name)) {
+                    return rawSamples;
+                } else if ("getSampleFloat".equals(name)) {
+                    return getSample(args);
+                } else if ("getSampleDouble".equals(name)) {
+                    return (double) getSample(args);
+                } else if ("getSampleBoolean".equals(name)) {
+                    return getSample(args) != 0.0f;
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(name)) {
+                    return proxy == args[0];
+                } else if ("toString".equals(name)) {
+                    return "Tile" + rectangle;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+
+            private float getSample(Object[] args) {
+                final int x = (Integer) args[0];
+                final int y = (Integer) args[1];
+                return samples[(y - rectangle.y) * rectangle.width + (x - rectangle.x)];
+            }
+        };
+        return (Tile) Proxy.newProxyInstance(Tile.class.getClassLoader(), new Class[]{Tile.class}, handler);
+    }
+
+    /**
+     * @return a lat/lon geo-coding with a pixel size of about 300 m, located at the Norwegian coast
+     */
+    static GeoCoding createGeoCoding(int width, int height) {
+        final AffineTransform imageToMap = new AffineTransform();
+        imageToMap.translate(5.0, 62.0);
+        imageToMap.scale(0.0054, -0.0027);
+        try {
+            return new CrsGeoCoding(DefaultGeographicCRS.WGS84, new Rectangle(width, height), imageToMap);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Reader openAuxdata(String fileName) throws IOException {
+        return new InputStreamReader(openAuxdataStream(fileName));
+    }
+
+    /**
+     * Copies the given auxdata files from the classpath into a new temporary directory, for the classes
+     * which only read their auxdata from an installed auxdata directory.
+     */
+    static File installAuxdata(String... fileNames) throws IOException {
+        final File auxdataDir = File.createTempFile("icol-benchmark", "");
+        if (!auxdataDir.delete() || !auxdataDir.mkdir()) {
+            throw new IOException("Failed to create directory '" + auxdataDir + "'.");
+        }
+        auxdataDir.deleteOnExit();
+        final byte[] buffer = new byte[8192];
+        for (String fileName : fileNames) {
+            final File file = new File(auxdataDir, fileName);
+            file.deleteOnExit();
+            final InputStream inputStream = openAuxdataStream(fileName);
+            try {
+                final OutputStream outputStream = new FileOutputStream(file);
+                try {
+                    int n;
+                    while ((n = inputStream.read(buffer)) > 0) {
+                        outputStream.write(buffer, 0, n);
+                    }
+                } finally {
+                    outputStream.close();
+                }
+            } finally {
+                inputStream.close();
+            }
+        }
+        return auxdataDir;
+    }
+
+    private static InputStream openAuxdataStream(String fileName) throws IOException {
+        final String resourceName = "/auxdata/icol/" + fileName;
+        final InputStream inputStream = BenchmarkData.class.getResourceAsStream(resourceName);
+        if (inputStream == null) {
+            throw new IOException("Resource not found: " + resourceName);
+        }
+        return inputStream;
+    }
+}
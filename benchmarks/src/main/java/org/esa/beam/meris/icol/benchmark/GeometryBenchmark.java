@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.benchmark;
+
+import org.esa.beam.framework.datamodel.GeoCoding;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+import org.esa.beam.meris.icol.utils.LandsatUtils;
+import org.esa.beam.meris.icol.utils.NavigationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-pixel geometry computations: sun angles (Landsat downscaling) and distances via the
+ * geo-coding (coast and cloud distance).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeometryBenchmark {
+
+    private static final int NUM_PIXELS = 1024;
+    private static final int SCENE_SIZE = 1000;
+
+    private GeoCoding geoCoding;
+    private GeoPos[] geoPositions;
+    private PixelPos[] startPositions;
+    private PixelPos[] endPositions;
+
+    @Setup
+    public void setUp() {
+        geoCoding = BenchmarkData.createGeoCoding(SCENE_SIZE, SCENE_SIZE);
+        final Random random = new Random(BenchmarkData.SEED);
+        geoPositions = new GeoPos[NUM_PIXELS];
+        startPositions = new PixelPos[NUM_PIXELS];
+        endPositions = new PixelPos[NUM_PIXELS];
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            startPositions[i] = new PixelPos(SCENE_SIZE * random.nextFloat(), SCENE_SIZE * random.nextFloat());
+            endPositions[i] = new PixelPos(SCENE_SIZE * random.nextFloat(), SCENE_SIZE * random.nextFloat());
+            geoPositions[i] = geoCoding.getGeoPos(startPositions[i], null);
+        }
+    }
+
+    @Benchmark
+    public double getSunAngles() {
+        double sum = 0.0;
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            final LandsatUtils.SunAngles sunAngles = LandsatUtils.getSunAngles(geoPositions[i], 172, 10.5);
+            sum += sunAngles.getZenith() + sunAngles.getAzimuth();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double distanceInMeters() {
+        double sum = 0.0;
+        for (int i = 0; i < NUM_PIXELS; i++) {
+            sum += NavigationUtils.distanceInMeters(geoCoding, startPositions[i], endPositions[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.benchmark;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.meris.icol.CoeffW;
+import org.esa.beam.meris.icol.ReshapedConvolutionOp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.media.jai.KernelJAI;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reshaped (JAI) convolution of one tile of a synthetic reflectance band, with the kernels and
+ * scaling factors used by {@link org.esa.beam.meris.icol.IcolConvolutionJaiConvolve}.
+ * A new operator is created for every invocation, so no convolved tiles are taken from the JAI tile cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReshapedConvolutionBenchmark {
+
+    private static final String NAME_PREFIX = "brr_";
+    private static final int SCENE_SIZE = 1024;
+    private static final int TILE_SIZE = 256;
+
+    @Param({"MER_RR__1P", "MER_FR__1P"})
+    private String productType;
+    @Param({"0", "1"})
+    private int correctionMode;
+
+    private Product sourceProduct;
+    private KernelJAI kernel;
+    private double reshapedScalingFactor;
+    private Rectangle tileRect;
+
+    @Setup
+    public void setUp() throws IOException {
+        sourceProduct = new Product("synthetic", productType, SCENE_SIZE, SCENE_SIZE);
+        final Band band = sourceProduct.addBand(NAME_PREFIX + "1", ProductData.TYPE_FLOAT32);
+        band.setRasterData(ProductData.createInstance(BenchmarkData.createSamples(SCENE_SIZE * SCENE_SIZE, 0.0)));
+
+        final File auxdataDir = BenchmarkData.installAuxdata(CoeffW.FILENAME);
+        final CoeffW coeffW = new CoeffW(auxdataDir, true, correctionMode);
+        if (productType.contains("_RR")) {
+            kernel = coeffW.getReshapedConvolutionKernelForRR(1);
+            reshapedScalingFactor = 2.0 * (CoeffW.RR_KERNEL_SIZE) / (kernel.getWidth() - 1);
+        } else {
+            kernel = coeffW.getReshapedConvolutionKernelForFR(1);
+            reshapedScalingFactor = 2.0 * (CoeffW.FR_KERNEL_SIZE) / (kernel.getWidth() - 1);
+        }
+        tileRect = new Rectangle((SCENE_SIZE - TILE_SIZE) / 2, (SCENE_SIZE - TILE_SIZE) / 2, TILE_SIZE, TILE_SIZE);
+    }
+
+    @Benchmark
+    public Raster convolveTile() {
+        final ReshapedConvolutionOp op = new ReshapedConvolutionOp();
+        op.setSourceProduct(sourceProduct);
+        op.setParameter("namePrefix", NAME_PREFIX);
+        op.setParameter("kernel", kernel);
+        op.setParameter("correctionMode", correctionMode);
+        op.setParameter("reshapedScalingFactor", reshapedScalingFactor);
+        final Band convolvedBand = op.getTargetProduct().getBand(NAME_PREFIX + "1");
+        return convolvedBand.getSourceImage().getData(tileRect);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.benchmark;
+
+import org.esa.beam.framework.gpf.Tile;
+import org.esa.beam.meris.icol.WeightedMeanCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ring-mean convolution of one target tile as done by the (non-reshaped) AE operators.
+ * The extends correspond to the RR (25) and FR (100) kernel radius.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WeightedMeanCalculatorBenchmark {
+
+    @Param({"25", "100"})
+    private int extend;
+    @Param({"64"})
+    private int tileSize;
+
+    private Rectangle targetRect;
+    private Tile sourceTile;
+    private Tile[] sourceTiles;
+    private double[] weights;
+
+    @Setup
+    public void setUp() {
+        final Rectangle sourceRect = new Rectangle(0, 0, tileSize + 2 * extend, tileSize + 2 * extend);
+        targetRect = new Rectangle(extend, extend, tileSize, tileSize);
+        final float[] samples = BenchmarkData.createSamples(sourceRect.width * sourceRect.height, 0.05);
+        sourceTile = BenchmarkData.createTile(sourceRect, samples);
+        sourceTiles = new Tile[]{
+                sourceTile,
+                BenchmarkData.createTile(sourceRect, BenchmarkData.createSamples(samples.length, 0.0)),
+                BenchmarkData.createTile(sourceRect, BenchmarkData.createSamples(samples.length, 0.0))
+        };
+        weights = new double[extend + 1];
+        for (int i = 0; i <= extend; i++) {
+            weights[i] = 1.0 / (1.0 + i);
+        }
+    }
+
+    @Benchmark
+    public double compute() {
+        final WeightedMeanCalculator calculator = new WeightedMeanCalculator(extend);
+        double sum = 0.0;
+        for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
+            for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++) {
+                sum += calculator.compute(x, y, sourceTile, weights);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double computeAll() {
+        final WeightedMeanCalculator calculator = new WeightedMeanCalculator(extend);
+        double sum = 0.0;
+        for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
+            for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++) {
+                sum += calculator.computeAll(x, y, sourceTiles, weights)[0];
+            }
+        }
+        return sum;
+    }
+}
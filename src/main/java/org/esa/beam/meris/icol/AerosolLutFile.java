@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Binary (float32) version of the aerosol tables in <code>auxdata/icol</code> (transmittance, spherical albedo,
+ * Fourier terms and phase functions), as used by {@link AerosolScatteringFunctions}.
+ * <p/>
+ * The file is generated from the text tables at build time (see {@link #main(String[])}) and memory-mapped at
+ * runtime. Mapped files are shared by all operators of a JVM. The table indices are the same as the ones of
+ * the arrays read from the text files; tables of aerosol models without text file are filled with NaN.
+ */
+public class AerosolLutFile {
+
+    public static final String FILENAME = "aerosol_lut.bin";
+
+    private static final int MAGIC = 0x49434F4C; // "ICOL"
+    private static final int VERSION = 1;
+
+    private static final int NUM_MODELS = AerosolScatteringFunctions.NUM_IAER + 1;
+    private static final int NUM_ZA = AerosolScatteringFunctions.NUM_IZA + 1;
+    private static final int NUM_AOT = AerosolScatteringFunctions.NUM_IAOT + 1;
+    private static final int NUM_TERMS = AerosolScatteringFunctions.NUM_FOURIER_TERMS;
+    private static final int NUM_COEFS = AerosolScatteringFunctions.NUM_FOURIER_COEFS;
+    private static final int NUM_PHASE = 2 * AerosolScatteringFunctions.NTHETA;
+
+    private static final int HEADER_SIZE = 8 * 4;
+    private static final int TRANSMITTANCE_SIZE = NUM_ZA * NUM_AOT;
+    private static final int ALBEDO_SIZE = NUM_AOT;
+    private static final int FOURIER_SIZE = NUM_ZA * NUM_ZA * NUM_TERMS * NUM_COEFS;
+
+    private static final int TRANSMITTANCE_OFFSET = 0;
+    private static final int ALBEDO_OFFSET = TRANSMITTANCE_OFFSET + NUM_MODELS * TRANSMITTANCE_SIZE;
+    private static final int FOURIER_OFFSET = ALBEDO_OFFSET + NUM_MODELS * ALBEDO_SIZE;
+    private static final int PHASE_OFFSET = FOURIER_OFFSET + NUM_MODELS * FOURIER_SIZE;
+    private static final int NUM_VALUES = PHASE_OFFSET + NUM_MODELS * NUM_PHASE;
+
+    private static final ConcurrentMap<File, AerosolLutFile> INSTANCES = new ConcurrentHashMap<File, AerosolLutFile>();
+
+    // absolute get methods only, so the buffer can be shared between threads
+    private final FloatBuffer values;
+
+    private AerosolLutFile(FloatBuffer values) {
+        this.values = values;
+    }
+
+    /**
+     * Returns the memory-mapped tables of the given file. Every file is mapped only once per JVM.
+     *
+     * @param file - the binary LUT file
+     * @return the tables
+     * @throws IOException - if the file cannot be read or has an unexpected format
+     */
+    public static AerosolLutFile getInstance(File file) throws IOException {
+        final File key = file.getCanonicalFile();
+        AerosolLutFile lutFile = INSTANCES.get(key);
+        if (lutFile == null) {
+            lutFile = new AerosolLutFile(map(key));
+            final AerosolLutFile existing = INSTANCES.putIfAbsent(key, lutFile);
+            if (existing != null) {
+                lutFile = existing;
+            }
+        }
+        return lutFile;
+    }
+
+    private static FloatBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long expectedSize = HEADER_SIZE + 4L * NUM_VALUES;
+            if (channel.size() != expectedSize) {
+                throw new IOException("Unexpected size of aerosol LUT file '" + file + "': " + channel.size());
+            }
+            // the mapping stays valid after the channel has been closed
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, expectedSize);
+            final int[] header = new int[]{
+                    MAGIC, VERSION, NUM_MODELS, NUM_ZA, NUM_AOT, NUM_TERMS, NUM_COEFS, NUM_PHASE
+            };
+            for (int i = 0; i < header.length; i++) {
+                if (buffer.getInt() != header[i]) {
+                    throw new IOException("Aerosol LUT file '" + file + "' has an unexpected format.");
+                }
+            }
+            return buffer.slice().asFloatBuffer();
+        } finally {
+            raf.close();
+        }
+    }
+
+    float getTransmittance(int iaer, int iza, int iaot) {
+        return values.get(TRANSMITTANCE_OFFSET + iaer * TRANSMITTANCE_SIZE + iza * NUM_AOT + iaot);
+    }
+
+    float getAlbedo(int iaer, int iaot) {
+        return values.get(ALBEDO_OFFSET + iaer * ALBEDO_SIZE + iaot);
+    }
+
+    float getFourier(int iaer, int isza, int ivza, int term, int coef) {
+        return values.get(FOURIER_OFFSET + iaer * FOURIER_SIZE +
+                          ((isza * NUM_ZA + ivza) * NUM_TERMS + term) * NUM_COEFS + coef);
+    }
+
+    /**
+     * @return the phase table of the model, with the angles in the first and the phase values in the second half
+     */
+    float getPhase(int iaer, int index) {
+        return values.get(PHASE_OFFSET + iaer * NUM_PHASE + index);
+    }
+
+    boolean hasPhase(int iaer) {
+        return !Float.isNaN(getPhase(iaer, 0));
+    }
+
+    /**
+     * Converts the text tables found on the classpath into the binary LUT file.
+     *
+     * @param file - the file to write
+     * @throws IOException - if a table cannot be read or the file cannot be written
+     */
+    public static void write(File file) throws IOException {
+        final AerosolScatteringFunctions textTables = new AerosolScatteringFunctions();
+        final File parentDir = file.getAbsoluteFile().getParentFile();
+        if (!parentDir.isDirectory() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create directory '" + parentDir + "'.");
+        }
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(NUM_MODELS);
+            out.writeInt(NUM_ZA);
+            out.writeInt(NUM_AOT);
+            out.writeInt(NUM_TERMS);
+            out.writeInt(NUM_COEFS);
+            out.writeInt(NUM_PHASE);
+
+            for (int iaer = 0; iaer < NUM_MODELS; iaer++) {
+                double[][] transmittance = null;
+                if (iaer < AerosolScatteringFunctions.NUM_IAER) {
+                    transmittance = textTables.readAerosolTransmittanceFiles(iaer);
+                }
+                for (int iza = 0; iza < NUM_ZA; iza++) {
+                    for (int iaot = 0; iaot < NUM_AOT; iaot++) {
+                        out.writeFloat(transmittance != null ? (float) transmittance[iza][iaot] : Float.NaN);
+                    }
+                }
+            }
+
+            final double[][] albedo = textTables.readAerosolAlbedo();
+            for (int iaer = 0; iaer < NUM_MODELS; iaer++) {
+                for (int iaot = 0; iaot < NUM_AOT; iaot++) {
+                    out.writeFloat((float) albedo[iaer][iaot]);
+                }
+            }
+
+            for (int iaer = 0; iaer < NUM_MODELS; iaer++) {
+                final double[][][][] fourier = textTables.readFourierAerosol(iaer + 36);
+                for (int isza = 0; isza < NUM_ZA; isza++) {
+                    for (int ivza = 0; ivza < NUM_ZA; ivza++) {
+                        for (int term = 0; term < NUM_TERMS; term++) {
+                            for (int coef = 0; coef < NUM_COEFS; coef++) {
+                                out.writeFloat((float) fourier[isza][ivza][term][coef]);
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (int iaer = 0; iaer < NUM_MODELS; iaer++) {
+                double[] phase = null;
+                if (iaer < AerosolScatteringFunctions.NUM_IAER && textTables.hasAerosolPhase(iaer)) {
+                    phase = textTables.readAerosolPhase(iaer);
+                }
+                for (int i = 0; i < NUM_PHASE; i++) {
+                    out.writeFloat(phase != null ? (float) phase[i] : Float.NaN);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Build time entry point, see <code>pom.xml</code>.
+     *
+     * @param args - the path of the file to write
+     * @throws IOException - if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: AerosolLutFile <output file>");
+            System.exit(1);
+        }
+        write(new File(args[0]));
+    }
+}
@@ -20,12 +20,21 @@ import com.bc.ceres.core.Assert;
 import org.esa.beam.util.math.MathUtils;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Created by marcoz.
+ * The aerosol scattering functions (transmittances, spherical albedo, multiple scattering Fourier terms and
+ * phase functions) of the ICOL aerosol models.
+ * <p/>
+ * Instances are thread safe and are shared by all tile threads (see {@link IcolAuxdata}). The tables are
+ * immutable once loaded; the text tables are loaded lazily per aerosol model and published atomically, a table
+ * may be read twice by concurrent first calls. All intermediate values live in local variables or in the
+ * {@link RV}/{@link RVBatch} buffers of the caller.
  *
  * @author marcoz
  * @version $Revision: 8078 $ $Date: 2010-01-22 17:24:28 +0100 (Fr, 22 Jan 2010) $
@@ -35,20 +44,44 @@ public class AerosolScatteringFunctions {
    private static final double[] angle = {0, 2.84, 17.64, 28.77, 36.19,
     		43.61, 51.03, 58.46, 65.88, 69.59, 73.30, 77.01, 80.72};
    
-   private static final int NUM_IAER = 26;
-   private static final int NUM_IZA = 12;
-   private static final int NUM_IAOT = 16;
-   private static final int NTHETA = 83;
+   static final int NUM_IAER = 26;
+   static final int NUM_IZA = 12;
+   static final int NUM_IAOT = 16;
+   static final int NTHETA = 83;
+   static final int NUM_FOURIER_TERMS = 6;
+   static final int NUM_FOURIER_COEFS = 4;
    
-   private double[][][] transmittance;
-   private double[][][][][] fourier;
-   private double[][] albedo;
-   private double[][] phase;
+   // binary tables, if available (shared, read-only)
+   private final AerosolLutFile lutFile;
+   // text tables, loaded on demand, index is iaer
+   private final AtomicReferenceArray<double[][]> transmittance;
+   private final AtomicReferenceArray<double[][][][]> fourier;
+   private final AtomicReferenceArray<double[]> phase;
+   private volatile double[][] albedo;
    
+   /**
+    * Creates an instance which reads the text tables from the classpath.
+    */
    public AerosolScatteringFunctions() {
-	   transmittance = new double[NUM_IAER+1][][];
-	   fourier = new double[NUM_IAER+1][][][][];
-	   phase = new double[NUM_IAER+1][];
+	   this.lutFile = null;
+	   transmittance = new AtomicReferenceArray<double[][]>(NUM_IAER+1);
+	   fourier = new AtomicReferenceArray<double[][][][]>(NUM_IAER+1);
+	   phase = new AtomicReferenceArray<double[]>(NUM_IAER+1);
+   }
+
+   /**
+    * Creates an instance which uses the memory-mapped binary tables of the given auxdata directory
+    * (see {@link AerosolLutFile}). If there is no binary file, the text tables are read from the classpath.
+    *
+    * @param auxdataDir - the installed ICOL auxdata directory
+    * @throws IOException - if the binary file cannot be mapped
+    */
+   public AerosolScatteringFunctions(File auxdataDir) throws IOException {
+	   final File lutFile = new File(auxdataDir, AerosolLutFile.FILENAME);
+	   this.lutFile = lutFile.isFile() ? AerosolLutFile.getInstance(lutFile) : null;
+	   transmittance = new AtomicReferenceArray<double[][]>(NUM_IAER+1);
+	   fourier = new AtomicReferenceArray<double[][][][]>(NUM_IAER+1);
+	   phase = new AtomicReferenceArray<double[]>(NUM_IAER+1);
    }
    
    private static int checkIndex(int index, int max) {
@@ -106,19 +139,26 @@ public class AerosolScatteringFunctions {
 	   isza = checkIndex(isza, NUM_IZA);
 	   iaot = checkIndex(iaot, NUM_IAOT);
 	   iaer = checkIndex(iaer, NUM_IAER);
-	   if (transmittance[iaer] == null) {
-		   transmittance[iaer] = readAerosolTransmittanceFiles(iaer);
+	   if (lutFile != null) {
+		   return lutFile.getTransmittance(iaer, isza, iaot);
 	   }
-	   return transmittance[iaer][isza][iaot];
+	   return getTransmittanceTable(iaer)[isza][iaot];
    }
 
+	private double[][] getTransmittanceTable(int iaer) throws IOException {
+		double[][] table = transmittance.get(iaer);
+		if (table == null) {
+			transmittance.compareAndSet(iaer, null, readAerosolTransmittanceFiles(iaer));
+			table = transmittance.get(iaer);
+		}
+		return table;
+	}
+
 	@SuppressWarnings("boxing")
 	double[][] readAerosolTransmittanceFiles(int iaer) throws IOException {
 		String fileName = String.format(
 				"/auxdata/icol/File_Transmit/tr_aer%02d", iaer+26-1);
-		InputStream inputStream = this.getClass().getResourceAsStream(fileName);
-		InputStreamReader isr = new InputStreamReader(inputStream);
-		BufferedReader bufferedReader = new BufferedReader(isr);
+		BufferedReader bufferedReader = openResource(fileName);
 		int skipLines = 10 + 1 + 4 + 1 + 5;
 		for (int i = 0; i < skipLines; i++) {
 			bufferedReader.readLine();
@@ -139,17 +179,20 @@ public class AerosolScatteringFunctions {
 	private double aerosolAlbedo(int iaot, int iaer) throws IOException {
 		iaot = checkIndex(iaot, NUM_IAOT);
 		iaer = checkIndex(iaer, NUM_IAER);
-		if (albedo == null) {
-			albedo = readAerosolAlbedo();
+		if (lutFile != null) {
+			return lutFile.getAlbedo(iaer, iaot);
+		}
+		double[][] table = albedo;
+		if (table == null) {
+			table = readAerosolAlbedo();
+			albedo = table;
 		}
-		return albedo[iaer][iaot];
+		return table[iaer][iaot];
 	}
 	
 	double[][] readAerosolAlbedo() throws IOException {
 		String fileName = "/auxdata/icol/Albedo_AER";
-		InputStream inputStream = this.getClass().getResourceAsStream(fileName);
-		InputStreamReader isr = new InputStreamReader(inputStream);
-		BufferedReader bufferedReader = new BufferedReader(isr);
+		BufferedReader bufferedReader = openResource(fileName);
 		int skipLines = 14+32;
 		for (int i = 0; i < skipLines; i++) {
 			bufferedReader.readLine();
@@ -191,8 +234,8 @@ public class AerosolScatteringFunctions {
 	private double aerosolReflectanceFA(float sza, float vza, float phi, double aot, int iaer) throws IOException {
 		final int NORDRE = 5;
 		
-		if (fourier[iaer] == null) {
-			fourier[iaer] = readFourierAerosol(iaer+36);
+		if (lutFile == null) {
+			loadFourierTable(iaer);
 		}
 		int isza = selectIza(sza);
 		int ivza = selectIza(vza);
@@ -215,21 +258,21 @@ public class AerosolScatteringFunctions {
 		for (int k = 0; k <= 3; k++) {
 
 			if (isza <= ivza) {
-	           szaMinVzaMin = fourier[iaer][isza-1][ivza-1][0][k];
-	           szaMaxVzaMax = fourier[iaer][isza  ][ivza  ][0][k];
+	           szaMinVzaMin = fourierTerm(iaer, isza-1, ivza-1, 0, k);
+	           szaMaxVzaMax = fourierTerm(iaer, isza, ivza, 0, k);
 			} else {
-	           szaMinVzaMin = fourier[iaer][ivza-1][isza-1][0][k];
-	           szaMaxVzaMax = fourier[iaer][ivza  ][isza  ][0][k];
+	           szaMinVzaMin = fourierTerm(iaer, ivza-1, isza-1, 0, k);
+	           szaMaxVzaMax = fourierTerm(iaer, ivza, isza, 0, k);
 			}
 	        if (isza-1 <= ivza) {
-	           szaMinVzaMax = fourier[iaer][isza-1][ivza  ][0][k];
+	           szaMinVzaMax = fourierTerm(iaer, isza-1, ivza, 0, k);
 	        } else {
-	           szaMinVzaMax = fourier[iaer][ivza  ][isza-1][0][k];
+	           szaMinVzaMax = fourierTerm(iaer, ivza, isza-1, 0, k);
 	        }
 	        if (isza <= ivza-1) {
-	           szaMaxVzaMin = fourier[iaer][isza  ][ivza-1][0][k];
+	           szaMaxVzaMin = fourierTerm(iaer, isza, ivza-1, 0, k);
 	        } else {
-	           szaMaxVzaMin = fourier[iaer][ivza-1][isza  ][0][k];
+	           szaMaxVzaMin = fourierTerm(iaer, ivza-1, isza, 0, k);
 	        }
 	        double fa1 = interpolateLin(szamin, szaMinVzaMin,
 	        		szamax, szaMaxVzaMin, sza);
@@ -244,21 +287,21 @@ public class AerosolScatteringFunctions {
 		for (int s = 1; s <= NORDRE; s++) {
 			for (int k = 0; k <= 3; k++) {
 				if (isza <= ivza) {
-		           szaMinVzaMin = fourier[iaer][isza-1][ivza-1][s][k];
-		           szaMaxVzaMax = fourier[iaer][isza  ][ivza  ][s][k];
+		           szaMinVzaMin = fourierTerm(iaer, isza-1, ivza-1, s, k);
+		           szaMaxVzaMax = fourierTerm(iaer, isza, ivza, s, k);
 				} else {
-		           szaMinVzaMin = fourier[iaer][ivza-1][isza-1][s][k];
-		           szaMaxVzaMax = fourier[iaer][ivza  ][isza  ][s][k];
+		           szaMinVzaMin = fourierTerm(iaer, ivza-1, isza-1, s, k);
+		           szaMaxVzaMax = fourierTerm(iaer, ivza, isza, s, k);
 				}
 		        if (isza-1 <= ivza) {
-		           szaMinVzaMax = fourier[iaer][isza-1][ivza  ][s][k];
+		           szaMinVzaMax = fourierTerm(iaer, isza-1, ivza, s, k);
 		        } else {
-		           szaMinVzaMax = fourier[iaer][ivza  ][isza-1][s][k];
+		           szaMinVzaMax = fourierTerm(iaer, ivza, isza-1, s, k);
 		        }
 		        if (isza <= ivza-1) {
-		           szaMaxVzaMin = fourier[iaer][isza  ][ivza-1][s][k];
+		           szaMaxVzaMin = fourierTerm(iaer, isza, ivza-1, s, k);
 		        } else {
-		           szaMaxVzaMin = fourier[iaer][ivza-1][isza  ][s][k];
+		           szaMaxVzaMin = fourierTerm(iaer, ivza-1, isza, s, k);
 		        }
 		        double fa1 = interpolateLin(szamin, szaMinVzaMin,
 		        		szamax, szaMaxVzaMin, sza);
@@ -279,21 +322,21 @@ public class AerosolScatteringFunctions {
 		ivza = checkIndex(ivza, NUM_IZA);
 		iaer = checkIndex(iaer, NUM_IAER);
 		
-		if (fourier[iaer] == null) {
-			fourier[iaer] = readFourierAerosol(iaer+36);
+		if (lutFile == null) {
+			loadFourierTable(iaer);
 		}
 		int iszaUse = Math.min(isza, ivza);
 		int ivzaUse = Math.max(isza, ivza);
 		double fa = 0;
 		for (int i = 0; i <= 3; i++) {
-			fa += fourier[iaer][iszaUse][ivzaUse][0][i] * Math.pow(aot, i);
+			fa += fourierTerm(iaer, iszaUse, ivzaUse, 0, i) * Math.pow(aot, i);
 		}
 
 		double[] f = new double[NORDRE+1];
 		for (int s = 1; s <= NORDRE; s++) {
 			f[s] = 0;
 			for (int i = 0; i <= 3; i++) {
-				f[s] += fourier[iaer][iszaUse][ivzaUse][s][i] * Math.pow(aot, i);
+				f[s] += fourierTerm(iaer, iszaUse, ivzaUse, s, i) * Math.pow(aot, i);
 			}
 			fa = fa + 2.0 *f[s]*Math.cos(s * 7.5 * phi * MathUtils.DTOR);
 		}
@@ -301,16 +344,27 @@ public class AerosolScatteringFunctions {
 		return fa;
 	}
 	
+	private void loadFourierTable(int iaer) throws IOException {
+		if (fourier.get(iaer) == null) {
+			fourier.compareAndSet(iaer, null, readFourierAerosol(iaer+36));
+		}
+	}
+
+	private double fourierTerm(int iaer, int isza, int ivza, int term, int coef) {
+		if (lutFile != null) {
+			return lutFile.getFourier(iaer, isza, ivza, term, coef);
+		}
+		return fourier.get(iaer)[isza][ivza][term][coef];
+	}
+	
 	@SuppressWarnings("boxing")
 	double[][][][] readFourierAerosol(int iaer) throws IOException {
-		final int NORDDRE = 6;
+		final int NORDDRE = NUM_FOURIER_TERMS;
 		final int NSVZA = 78;
-		final int NCOEF = 4;
+		final int NCOEF = NUM_FOURIER_COEFS;
 		String fileName = String.format(
 				"/auxdata/icol/File_Fourier/Fourier_AER%02d", iaer);
-		InputStream inputStream = this.getClass().getResourceAsStream(fileName);
-		InputStreamReader isr = new InputStreamReader(inputStream);
-		BufferedReader bufferedReader = new BufferedReader(isr);
+		BufferedReader bufferedReader = openResource(fileName);
 		
 		String skipLine;
 		do {
@@ -362,36 +416,53 @@ public class AerosolScatteringFunctions {
 	
 	public double aerosolPhase(double theta, int iaer) throws IOException {
 		iaer = checkIndex(iaer, NUM_IAER);
-		if (phase[iaer] == null) {
-			phase[iaer] = readAerosolPhase(iaer);
+		if (lutFile != null) {
+			if (!lutFile.hasPhase(iaer)) {
+				throw new IOException("No phase function for aerosol model " + iaer);
+			}
+		} else if (phase.get(iaer) == null) {
+			phase.compareAndSet(iaer, null, readAerosolPhase(iaer));
 		}
 		int phaseIndex = getPhaesIndex(theta, iaer);
-		double theTheta = phase[iaer][phaseIndex];
-		double thePhase = phase[iaer][phaseIndex + NTHETA];
-		double prevTheta = phase[iaer][phaseIndex - 1];
-		double prevPhase = phase[iaer][phaseIndex + NTHETA - 1];
+		double theTheta = phaseValue(iaer, phaseIndex);
+		double thePhase = phaseValue(iaer, phaseIndex + NTHETA);
+		double prevTheta = phaseValue(iaer, phaseIndex - 1);
+		double prevPhase = phaseValue(iaer, phaseIndex + NTHETA - 1);
         return interpolateLin(theTheta, thePhase, prevTheta, prevPhase, theta);
 	}
 	
 	int getPhaesIndex(double theta, int iaer) {
 		for (int i = 1; i < NTHETA; i++) {
-			if (phase[iaer][i] <= theta) {
+			if (phaseValue(iaer, i) <= theta) {
 				return i;
 			}
 		}
 		return -1;
 	}
 	
+	private double phaseValue(int iaer, int index) {
+		if (lutFile != null) {
+			return lutFile.getPhase(iaer, index);
+		}
+		return phase.get(iaer)[index];
+	}
+	
+	boolean hasAerosolPhase(int iaer) {
+		return getClass().getResource(getAerosolPhaseFileName(checkIndex(iaer, NUM_IAER))) != null;
+	}
+	
+	@SuppressWarnings("boxing")
+	private static String getAerosolPhaseFileName(int iaer) {
+		return String.format("/auxdata/icol/File_scamat/JungeModel_k000/sc_land%02d", iaer+26);
+	}
+	
 	@SuppressWarnings("boxing")
 	double[] readAerosolPhase(int iaer) throws IOException {
 		iaer = checkIndex(iaer, NUM_IAER);
 		
 		double[] buf = new double[NTHETA*2];
-		String fileName = String.format(
-				"/auxdata/icol/File_scamat/JungeModel_k000/sc_land%02d", iaer+26);
-		InputStream inputStream = this.getClass().getResourceAsStream(fileName);
-		InputStreamReader isr = new InputStreamReader(inputStream);
-		BufferedReader bufferedReader = new BufferedReader(isr);
+		String fileName = getAerosolPhaseFileName(iaer);
+		BufferedReader bufferedReader = openResource(fileName);
 		int skipLines = 10;
 		for (int i = 0; i < skipLines; i++) {
 			bufferedReader.readLine();
@@ -470,8 +541,232 @@ public class AerosolScatteringFunctions {
 	    return rv;
 	}
 	
+
+	/**
+	 * Batch version of {@link #aerosol_f(double, int, double, float, float, float)} for a vector of AOTs
+	 * sharing the aerosol model and the geometry, e.g. the AOT steps of a retrieval at one pixel. The terms
+	 * depending on the model and the geometry only are computed once (and kept in <code>rv</code> for following
+	 * calls with the same model and geometry), the results are written to the arrays of <code>rv</code>.
+	 *
+	 * @param aot   - the AOTs
+	 * @param count - the number of AOTs to evaluate
+	 * @param iaer  - the aerosol model
+	 * @param pab   - the aerosol phase function in backscattering direction
+	 * @param sza   - the sun zenith angle
+	 * @param vza   - the view zenith angle
+	 * @param phi   - the relative azimuth (saa - vaa)
+	 * @param rv    - the caller-owned result buffers, with a capacity of at least <code>count</code>
+	 * @throws IOException - if a text table cannot be read
+	 */
+	public void aerosol_f(double[] aot, int count, int iaer, double pab, float sza, float vza, float phi,
+						  RVBatch rv) throws IOException {
+		prepareBatch(rv, iaer, pab, sza, vza, phi);
+		for (int i = 0; i < count; i++) {
+			evaluateBatch(rv, i, aot[i]);
+		}
+	}
+
+	/**
+	 * Batch version of {@link #aerosol_f(double, int, double, float, float, float)} for a vector of pixels,
+	 * e.g. a row of a tile. The terms depending on the model and the geometry only are recomputed only if they
+	 * differ from the ones of the preceding element.
+	 *
+	 * @param aot   - the AOTs
+	 * @param iaer  - the aerosol models
+	 * @param pab   - the aerosol phase functions in backscattering direction
+	 * @param sza   - the sun zenith angles
+	 * @param vza   - the view zenith angles
+	 * @param phi   - the relative azimuths (saa - vaa)
+	 * @param count - the number of elements to evaluate
+	 * @param rv    - the caller-owned result buffers, with a capacity of at least <code>count</code>
+	 * @throws IOException - if a text table cannot be read
+	 */
+	public void aerosol_f(double[] aot, int[] iaer, double[] pab, float[] sza, float[] vza, float[] phi, int count,
+						  RVBatch rv) throws IOException {
+		for (int i = 0; i < count; i++) {
+			prepareBatch(rv, iaer[i], pab[i], sza[i], vza[i], phi[i]);
+			evaluateBatch(rv, i, aot[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the batch version of <code>aerosol_f</code> with the model and geometry terms currently held by
+	 * <code>rv</code>, e.g. after {@link RVBatch#interpolateGeometry interpolating} them from tie-point nodes.
+	 *
+	 * @param aot   - the AOTs
+	 * @param count - the number of AOTs to evaluate
+	 * @param pab   - the aerosol phase function in backscattering direction
+	 * @param rv    - the result buffers holding complete model and geometry terms
+	 * @throws IOException - if a text table cannot be read
+	 */
+	public void aerosol_f(double[] aot, int count, double pab, RVBatch rv) throws IOException {
+		Assert.state(rv.iaer != -1, "no model and geometry terms");
+		rv.pab = pab;
+		for (int i = 0; i < count; i++) {
+			evaluateBatch(rv, i, aot[i]);
+		}
+	}
+
+	/**
+	 * Computes all terms of <code>aerosol_f</code> which depend on the aerosol model and the geometry only
+	 * (including the transmittances at all AOT nodes), so that they can be interpolated with
+	 * {@link RVBatch#interpolateGeometry}.
+	 *
+	 * @param iaer - the aerosol model
+	 * @param sza  - the sun zenith angle
+	 * @param vza  - the view zenith angle
+	 * @param phi  - the relative azimuth (saa - vaa)
+	 * @param rv   - the buffer receiving the terms
+	 * @throws IOException - if a text table cannot be read
+	 */
+	public void computeGeometryTerms(int iaer, float sza, float vza, float phi, RVBatch rv) throws IOException {
+		prepareBatch(rv, iaer, 1.0, sza, vza, phi);
+		for (int iaot = 0; iaot < NUM_IAOT; iaot++) {
+			if (Double.isNaN(rv.tdsAtAot[iaot])) {
+				rv.tdsAtAot[iaot] = interpolateTransmittance(rv.isza, iaot, iaer, rv.sza);
+			}
+			if (Double.isNaN(rv.tusAtAotVza[iaot])) {
+				rv.tusAtAotVza[iaot] = interpolateTransmittance(rv.ivza, iaot, iaer, rv.vza);
+			}
+			if (Double.isNaN(rv.tusAtAotSza[iaot])) {
+				rv.tusAtAotSza[iaot] = interpolateTransmittance(rv.ivza, iaot, iaer, rv.sza);
+			}
+		}
+	}
+
+	private void prepareBatch(RVBatch rv, int iaer, double pab, float sza, float vza, float phi) throws IOException {
+		if (rv.iaer == iaer && rv.sza == sza && rv.vza == vza && rv.phi == phi) {
+			rv.pab = pab;
+			return;
+		}
+		rv.iaer = iaer;
+		rv.pab = pab;
+		rv.sza = sza;
+		rv.vza = vza;
+		rv.phi = phi;
+		rv.isza = selectIza(sza);
+		rv.ivza = selectIza(vza);
+		Arrays.fill(rv.tdsAtAot, Double.NaN);
+		Arrays.fill(rv.tusAtAotVza, Double.NaN);
+		Arrays.fill(rv.tusAtAotSza, Double.NaN);
+
+		final double szaR = sza * MathUtils.DTOR;
+		final double vzaR = vza * MathUtils.DTOR;
+		rv.airMass = (1.0/Math.cos(szaR))+(1.0/Math.cos(vzaR));
+		rv.primaryGeometry = 1.0 / (4.0 * (Math.cos(szaR) + Math.cos(vzaR)));
+		computeReflectanceFAPolynomial(sza, vza, phi, iaer, rv.faPolynomial);
+	}
+
+	private void evaluateBatch(RVBatch rv, int i, double aot) throws IOException {
+		int iaot = MathUtils.floorInt(10 * aot);
+		if(iaot>15) {
+			iaot=15;
+		}
+		final double aot_inf = 0.1 * iaot;
+		final double aot_sup = 0.1 * iaot + 0.1;
+		final int iaer = rv.iaer;
+
+		//the transmittances interpolated in zenith angle only depend on the (clamped) AOT nodes
+		final int lower = checkIndex(iaot, NUM_IAOT);
+		final int upper = checkIndex(iaot+1, NUM_IAOT);
+		if (Double.isNaN(rv.tdsAtAot[lower])) {
+			rv.tdsAtAot[lower] = interpolateTransmittance(rv.isza, lower, iaer, rv.sza);
+		}
+		if (Double.isNaN(rv.tdsAtAot[upper])) {
+			rv.tdsAtAot[upper] = interpolateTransmittance(rv.isza, upper, iaer, rv.sza);
+		}
+		if (Double.isNaN(rv.tusAtAotVza[lower])) {
+			rv.tusAtAotVza[lower] = interpolateTransmittance(rv.ivza, lower, iaer, rv.vza);
+		}
+		if (Double.isNaN(rv.tusAtAotSza[upper])) {
+			// as in the scalar version, the upper AOT node of the upward transmittance is interpolated at sza
+			rv.tusAtAotSza[upper] = interpolateTransmittance(rv.ivza, upper, iaer, rv.sza);
+		}
+		rv.tds[i] = interpolateLin(aot_inf, rv.tdsAtAot[lower], aot_sup, rv.tdsAtAot[upper], aot);
+		rv.tus[i] = interpolateLin(aot_inf, rv.tusAtAotVza[lower], aot_sup, rv.tusAtAotSza[upper], aot);
+		rv.sa[i] = interpolateLin(aot_inf, aerosolAlbedo(iaot, iaer), aot_sup, aerosolAlbedo(iaot+1, iaer), aot);
+
+		final double roap = rv.pab * (rv.primaryGeometry * (1.0-Math.exp(-aot*rv.airMass)));
+		final double[] c = rv.faPolynomial;
+		rv.fa[i] = ((c[3] * aot + c[2]) * aot + c[1]) * aot + c[0];
+		rv.rhoa[i] = roap * rv.fa[i];
+	}
+
+	private double interpolateTransmittance(int iza, int iaot, int iaer, float za) throws IOException {
+		final double y1 = aerosolTransmittance(iza, iaot, iaer);
+		final double y2 = aerosolTransmittance(iza+1, iaot, iaer);
+		return interZa(iza, y1, y2, za);
+	}
+
+	/**
+	 * Computes the coefficients of the multiple scattering factor of {@link #aerosolReflectanceFA} as a
+	 * polynomial in the AOT, i.e. with the Fourier terms already interpolated and summed up for the geometry.
+	 */
+	private void computeReflectanceFAPolynomial(float sza, float vza, float phi, int iaer, double[] coefs)
+			throws IOException {
+		final int NORDRE = 5;
+
+		if (lutFile == null) {
+			loadFourierTable(iaer);
+		}
+		int isza = selectIza(sza);
+		int ivza = selectIza(vza);
+		if (isza == 1) {
+			isza += 1;
+		}
+		if (ivza == 1) {
+			ivza += 1;
+		}
+		final double szamin = angle[isza-1];
+		final double szamax = angle[isza];
+		final double vzamin = angle[ivza-1];
+		final double vzamax = angle[ivza];
+
+		Arrays.fill(coefs, 0.0);
+		for (int s = 0; s <= NORDRE; s++) {
+			final double factor = s == 0 ? 1.0 : 2.0 * Math.cos( s * phi * MathUtils.DTOR);
+			for (int k = 0; k <= 3; k++) {
+				final double szaMinVzaMin;
+				final double szaMinVzaMax;
+				final double szaMaxVzaMin;
+				final double szaMaxVzaMax;
+				if (isza <= ivza) {
+					szaMinVzaMin = fourierTerm(iaer, isza-1, ivza-1, s, k);
+					szaMaxVzaMax = fourierTerm(iaer, isza, ivza, s, k);
+				} else {
+					szaMinVzaMin = fourierTerm(iaer, ivza-1, isza-1, s, k);
+					szaMaxVzaMax = fourierTerm(iaer, ivza, isza, s, k);
+				}
+				if (isza-1 <= ivza) {
+					szaMinVzaMax = fourierTerm(iaer, isza-1, ivza, s, k);
+				} else {
+					szaMinVzaMax = fourierTerm(iaer, ivza, isza-1, s, k);
+				}
+				if (isza <= ivza-1) {
+					szaMaxVzaMin = fourierTerm(iaer, isza, ivza-1, s, k);
+				} else {
+					szaMaxVzaMin = fourierTerm(iaer, ivza-1, isza, s, k);
+				}
+				double fa1 = interpolateLin(szamin, szaMinVzaMin,
+						szamax, szaMaxVzaMin, sza);
+				double fa2 = interpolateLin(szamin, szaMinVzaMax,
+						szamax,szaMaxVzaMax, sza);
+				double faInt = interpolateLin(vzamin, fa1,
+						vzamax, fa2, vza);
+				coefs[k] += factor * faInt;
+			}
+		}
+	}
 	
 
+	private BufferedReader openResource(String fileName) throws IOException {
+		InputStream inputStream = this.getClass().getResourceAsStream(fileName);
+		if (inputStream == null) {
+			throw new IOException("Resource not found: " + fileName);
+		}
+		return new BufferedReader(new InputStreamReader(inputStream));
+	}
+
 	public double interpolateLin(double x1, double y1, double x2, double y2, double x3) {
 		double a = (y2-y1)/(x2-x1);
 		double b = y1-(a*x1); 
@@ -487,4 +782,87 @@ public class AerosolScatteringFunctions {
 		double fa;
 		public double rhoa;
 	}
+
+	/**
+	 * Results of the batch versions of <code>aerosol_f</code>, one array element per evaluated AOT or pixel,
+	 * plus the terms depending on the aerosol model and the geometry only, which are kept between calls.
+	 * Instances are not thread-safe, they are meant to be used by a single tile computation.
+	 */
+	public static class RVBatch {
+		public final double[] tds;
+		public final double[] tus;
+		public final double[] sa;
+		public final double[] fa;
+		public final double[] rhoa;
+
+		private int iaer = -1;
+		private double pab;
+		private float sza;
+		private float vza;
+		private float phi;
+		private int isza;
+		private int ivza;
+		private double airMass;
+		private double primaryGeometry;
+		private final double[] faPolynomial = new double[NUM_FOURIER_COEFS];
+		// transmittances interpolated in zenith angle per AOT node, NaN if not yet computed
+		private final double[] tdsAtAot = new double[NUM_IAOT];
+		private final double[] tusAtAotVza = new double[NUM_IAOT];
+		private final double[] tusAtAotSza = new double[NUM_IAOT];
+
+		public RVBatch(int capacity) {
+			tds = new double[capacity];
+			tus = new double[capacity];
+			sa = new double[capacity];
+			fa = new double[capacity];
+			rhoa = new double[capacity];
+		}
+
+		public int getCapacity() {
+			return tds.length;
+		}
+
+		/**
+		 * Sets the model and geometry terms to the bilinear interpolation of the terms of four nodes, which
+		 * must have been computed with {@link AerosolScatteringFunctions#computeGeometryTerms} for the same model.
+		 * The terms are smooth functions of the angles, except where the zenith angles cross a node of the
+		 * tables, so the interpolation error is of second order in the angle differences between the nodes.
+		 *
+		 * @param r00 - the terms at the upper left node
+		 * @param r10 - the terms at the upper right node
+		 * @param r01 - the terms at the lower left node
+		 * @param r11 - the terms at the lower right node
+		 * @param wx  - the weight of the right nodes
+		 * @param wy  - the weight of the lower nodes
+		 */
+		public void interpolateGeometry(RVBatch r00, RVBatch r10, RVBatch r01, RVBatch r11, double wx, double wy) {
+			Assert.argument(r00.iaer == r10.iaer && r00.iaer == r01.iaer && r00.iaer == r11.iaer,
+							"nodes of different aerosol models");
+			iaer = r00.iaer;
+			// no valid key anymore, a following computation for a geometry must not reuse these terms
+			sza = Float.NaN;
+			vza = Float.NaN;
+			phi = Float.NaN;
+			airMass = interpolate(r00.airMass, r10.airMass, r01.airMass, r11.airMass, wx, wy);
+			primaryGeometry = interpolate(r00.primaryGeometry, r10.primaryGeometry,
+										  r01.primaryGeometry, r11.primaryGeometry, wx, wy);
+			interpolate(r00.faPolynomial, r10.faPolynomial, r01.faPolynomial, r11.faPolynomial, wx, wy, faPolynomial);
+			interpolate(r00.tdsAtAot, r10.tdsAtAot, r01.tdsAtAot, r11.tdsAtAot, wx, wy, tdsAtAot);
+			interpolate(r00.tusAtAotVza, r10.tusAtAotVza, r01.tusAtAotVza, r11.tusAtAotVza, wx, wy, tusAtAotVza);
+			interpolate(r00.tusAtAotSza, r10.tusAtAotSza, r01.tusAtAotSza, r11.tusAtAotSza, wx, wy, tusAtAotSza);
+		}
+
+		private static void interpolate(double[] v00, double[] v10, double[] v01, double[] v11, double wx, double wy,
+										double[] result) {
+			for (int i = 0; i < result.length; i++) {
+				result[i] = interpolate(v00[i], v10[i], v01[i], v11[i], wx, wy);
+			}
+		}
+
+		private static double interpolate(double v00, double v10, double v01, double v11, double wx, double wy) {
+			final double v0 = v00 + wx * (v10 - v00);
+			final double v1 = v01 + wx * (v11 - v01);
+			return v0 + wy * (v1 - v0);
+		}
+	}
 }
\ No newline at end of file
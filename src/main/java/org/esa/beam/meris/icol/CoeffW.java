@@ -27,7 +27,11 @@ import java.util.HashMap;
 import java.util.Random;
 
 /**
- * Created by marcoz.
+ * The weighting coefficients W of the adjacency effect and the convolution kernels derived from them.
+ * <p/>
+ * The coefficient tables are derived once when the coefficients are loaded, the kernels are built on first
+ * request and kept for the lifetime of the instance, which is shared by all operators via {@link IcolAuxdata}.
+ * The returned arrays and kernels are shared instances and must not be modified.
  *
  * @author marcoz
  * @version $Revision: 8078 $ $Date: 2010-01-22 17:24:28 +0100 (Fr, 22 Jan 2010) $
@@ -39,10 +43,21 @@ public class CoeffW {
     public static final int FR_KERNEL_SIZE = 100;
     public static final int RR_KERNEL_SIZE = 25; 
 
+    private static final int NUM_IAER = 26;
+
     private File auxdataTargetDir;
 
     private double[][] wFR;
     private double[][] wRR;
+    private double[][] wRayleighRR;
+    private double[][] wRayleighFR;
+    private double[][] wAerosolRR;
+    private double[][] wAerosolFR;
+
+    // reshaped convolution kernels, index is iaer - 1
+    private final KernelJAI[] reshapedKernelsRR = new KernelJAI[NUM_IAER];
+    private final KernelJAI[] reshapedKernelsFR = new KernelJAI[NUM_IAER];
+    private KernelJAI reshapedKernelRROffNadir;
 
     // correction mode:
     //    0: reshaped Rayleigh
@@ -70,13 +85,13 @@ public class CoeffW {
             final CsvReader csvReader = new CsvReader(reader, separator);
             String[] record;
             int controlIndex = 0;
-            wFR = new double[26][101];
+            wFR = new double[NUM_IAER][FR_KERNEL_SIZE + 1];
             while ((record = csvReader.readRecord()) != null) {
                 int index = Integer.parseInt(record[0].trim());
                 if (index != controlIndex) {
                     throw new IllegalArgumentException("bad file for coeff W");
                 }
-                for (int i = 0; i < 26; i++) {
+                for (int i = 0; i < NUM_IAER; i++) {
                     wFR[i][index] = Double.parseDouble(record[i + 1].trim());
                 }
                 controlIndex++;
@@ -84,6 +99,11 @@ public class CoeffW {
         } finally {
             reader.close();
         }
+        wRR = computeCoeffForRR();
+        wRayleighRR = computeReshapedRayleighCoeffForRR();
+        wRayleighFR = computeReshapedRayleighCoeffForFR();
+        wAerosolRR = computeReshapedAerosolCoeffForRR();
+        wAerosolFR = computeReshapedAerosolCoeffForFR();
     }
 
     public double[][] getCoeffForFR() {
@@ -91,8 +111,12 @@ public class CoeffW {
     }
 
     public double[][] getCoeffForRR() {
-        double[][] wRR = new double[26][26];
-        for (int iaer = 0; iaer < 26; iaer++) {
+        return wRR;
+    }
+
+    private double[][] computeCoeffForRR() {
+        double[][] wRR = new double[NUM_IAER][RR_KERNEL_SIZE + 1];
+        for (int iaer = 0; iaer < NUM_IAER; iaer++) {
             wRR[iaer][0] = wFR[iaer][0] + wFR[iaer][1] + wFR[iaer][2] * 0.5;
             int irr = 0;
             for (int i = 2; i <= 94; i += 4) {
@@ -103,15 +127,15 @@ public class CoeffW {
                 					wFR[iaer][i+3] +
 					                wFR[iaer][i+4] * 0.5;
             }
-            wRR[iaer][25] = wFR[iaer][98] * 0.5 + wFR[iaer][99] + wFR[iaer][100];
+            wRR[iaer][RR_KERNEL_SIZE] = wFR[iaer][98] * 0.5 + wFR[iaer][99] + wFR[iaer][100];
         }
         return wRR;
     }
 
-    private double[][] getReshapedRayleighCoeffForRR() {
-        double[][] wRR = new double[26][9];
+    private double[][] computeReshapedRayleighCoeffForRR() {
+        double[][] wRR = new double[NUM_IAER][9];
         double[][] wRROrig = getCoeffForRR();
-        for (int iaer = 0; iaer < 26; iaer++) {
+        for (int iaer = 0; iaer < NUM_IAER; iaer++) {
             for (int i=0; i<9; i++) {
                 // reduce resolution to 3.6km: take every third value
                 wRR[iaer][i] = wRROrig[iaer][3*i];
@@ -122,11 +146,7 @@ public class CoeffW {
     }
 
     public double[] getReshapedRayleighCoeffForRR(int iaer) {
-        double[][] wRR = getReshapedRayleighCoeffForRR();
-//        for (int i=0; i<wRR[iaer-1].length; i++) {
-//            System.out.println("" + wRR[iaer-1][i]);
-//        }
-        return wRR[iaer-1];
+        return wRayleighRR[iaer-1];
     }
 
     /**
@@ -141,10 +161,10 @@ public class CoeffW {
         return a;
     }
 
-    private double[][] getReshapedRayleighCoeffForFR() {
-        double[][] wFR = new double[26][8];
+    private double[][] computeReshapedRayleighCoeffForFR() {
+        double[][] wFR = new double[NUM_IAER][8];
         double[][] wFROrig = getCoeffForFR();
-        for (int iaer = 0; iaer < 26; iaer++) {
+        for (int iaer = 0; iaer < NUM_IAER; iaer++) {
             for (int i=0; i<8; i++) {
                 // reduce resolution to 3.6km: take every twelveth value
                 wFR[iaer][i] = wFROrig[iaer][12*i];
@@ -155,14 +175,13 @@ public class CoeffW {
     }
 
     public double[] getReshapedRayleighCoeffForFR(int iaer) {
-        double[][] wFR = getReshapedRayleighCoeffForFR();
-        return wFR[iaer-1];
+        return wRayleighFR[iaer-1];
     }
 
-    private double[][] getReshapedAerosolCoeffForRR() {
-        double[][] wRR = new double[26][10];
+    private double[][] computeReshapedAerosolCoeffForRR() {
+        double[][] wRR = new double[NUM_IAER][10];
         double[][] wRROrig = getCoeffForRR();
-        for (int iaer = 0; iaer < 26; iaer++) {
+        for (int iaer = 0; iaer < NUM_IAER; iaer++) {
             for (int i=0; i<10; i++) {
                 wRR[iaer][i] = wRROrig[iaer][i];
             }
@@ -172,14 +191,13 @@ public class CoeffW {
     }
 
     public double[] getReshapedAerosolCoeffForRR(int iaer) {
-        double[][] wRR = getReshapedAerosolCoeffForRR();
-        return wRR[iaer-1];
+        return wAerosolRR[iaer-1];
     }
 
-    private double[][] getReshapedAerosolCoeffForFR() {
-        double[][] wFR = new double[26][40];
+    private double[][] computeReshapedAerosolCoeffForFR() {
+        double[][] wFR = new double[NUM_IAER][40];
         double[][] wFROrig = getCoeffForFR();
-        for (int iaer = 0; iaer < 26; iaer++) {
+        for (int iaer = 0; iaer < NUM_IAER; iaer++) {
             for (int i=0; i<40; i++) {
                 wFR[iaer][i] = wFROrig[iaer][i];
             }
@@ -189,37 +207,43 @@ public class CoeffW {
     }
 
     public double[] getReshapedAerosolCoeffForFR(int iaer) {
-        double[][] wFR = getReshapedAerosolCoeffForFR();
-        return wFR[iaer-1];
+        return wAerosolFR[iaer-1];
     }
 
-    public KernelJAI getReshapedConvolutionKernelForRR(int iaer) {
-        KernelJAI kernel = null;
-        if (correctionMode == IcolConstants.AE_CORRECTION_MODE_RAYLEIGH) {
-           kernel = createKernelByRotation(getReshapedRayleighCoeffForRR(iaer));
-        }  else if (correctionMode == IcolConstants.AE_CORRECTION_MODE_AEROSOL) {
-           kernel = createKernelByRotation(getReshapedAerosolCoeffForRR(iaer));
+    public synchronized KernelJAI getReshapedConvolutionKernelForRR(int iaer) {
+        KernelJAI kernel = reshapedKernelsRR[iaer - 1];
+        if (kernel == null) {
+            if (correctionMode == IcolConstants.AE_CORRECTION_MODE_RAYLEIGH) {
+                kernel = createKernelByRotation(getReshapedRayleighCoeffForRR(iaer));
+            } else if (correctionMode == IcolConstants.AE_CORRECTION_MODE_AEROSOL) {
+                kernel = createKernelByRotation(getReshapedAerosolCoeffForRR(iaer));
+            }
+            reshapedKernelsRR[iaer - 1] = kernel;
         }
         return kernel;
     }
 
-    public KernelJAI getReshapedConvolutionKernelForRROffNadir(int iaer) {
-        // test
-        KernelJAI kernel = null;
-        if (correctionMode == IcolConstants.AE_CORRECTION_MODE_RAYLEIGH) {
-           kernel = createKernelOffNadir(createFilterOffNadir("W_ray30_new.txt"));
-        }  else if (correctionMode == IcolConstants.AE_CORRECTION_MODE_AEROSOL) {
-           kernel = createKernelOffNadir(createFilterOffNadir("W_aer30_new.txt"));
+    public synchronized KernelJAI getReshapedConvolutionKernelForRROffNadir(int iaer) {
+        // test, the kernel does not depend on the aerosol model
+        if (reshapedKernelRROffNadir == null) {
+            if (correctionMode == IcolConstants.AE_CORRECTION_MODE_RAYLEIGH) {
+                reshapedKernelRROffNadir = createKernelOffNadir(createFilterOffNadir("W_ray30_new.txt"));
+            } else if (correctionMode == IcolConstants.AE_CORRECTION_MODE_AEROSOL) {
+                reshapedKernelRROffNadir = createKernelOffNadir(createFilterOffNadir("W_aer30_new.txt"));
+            }
         }
-        return kernel;
+        return reshapedKernelRROffNadir;
     }
 
-    public KernelJAI getReshapedConvolutionKernelForFR(int iaer) {
-        KernelJAI kernel = null;
-        if (correctionMode == IcolConstants.AE_CORRECTION_MODE_RAYLEIGH) {
-           kernel = createKernelByRotation(getReshapedRayleighCoeffForFR(iaer));
-        }  else if (correctionMode == IcolConstants.AE_CORRECTION_MODE_AEROSOL) {
-           kernel = createKernelByRotation(getReshapedAerosolCoeffForFR(iaer));
+    public synchronized KernelJAI getReshapedConvolutionKernelForFR(int iaer) {
+        KernelJAI kernel = reshapedKernelsFR[iaer - 1];
+        if (kernel == null) {
+            if (correctionMode == IcolConstants.AE_CORRECTION_MODE_RAYLEIGH) {
+                kernel = createKernelByRotation(getReshapedRayleighCoeffForFR(iaer));
+            } else if (correctionMode == IcolConstants.AE_CORRECTION_MODE_AEROSOL) {
+                kernel = createKernelByRotation(getReshapedAerosolCoeffForFR(iaer));
+            }
+            reshapedKernelsFR[iaer - 1] = kernel;
         }
         return kernel;
     }
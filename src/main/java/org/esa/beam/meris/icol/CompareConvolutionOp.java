@@ -1,6 +1,5 @@
 package org.esa.beam.meris.icol;
 
-import com.bc.ceres.core.NullProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.Product;
@@ -11,16 +10,10 @@ import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.meris.MerisBasisOp;
-import org.esa.beam.util.ResourceInstaller;
-import org.esa.beam.util.SystemUtils;
 
 import javax.media.jai.BorderExtender;
 import java.awt.Rectangle;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.net.URL;
 
 /**
  * @author Olaf Danne
@@ -69,19 +62,8 @@ public class CompareConvolutionOp extends MerisBasisOp {
 
 
     private void loadAuxData() throws IOException {
-        String auxdataSrcPath = "auxdata/icol";
-        final String auxdataDestPath = ".beam/beam-meris-icol/" + auxdataSrcPath;
-
-        File auxdataTargetDir = new File(SystemUtils.getUserHomeDir(), auxdataDestPath);
-        URL sourceUrl = ResourceInstaller.getSourceUrl(this.getClass());
-
-        ResourceInstaller resourceInstaller = new ResourceInstaller(sourceUrl, auxdataSrcPath, auxdataTargetDir);
-        resourceInstaller.install(".*", new NullProgressMonitor());
-
-        File fresnelFile = new File(auxdataTargetDir, FresnelReflectionCoefficient.FRESNEL_COEFF);
-        final Reader reader = new FileReader(fresnelFile);
-
-        coeffW = new CoeffW(auxdataTargetDir, false, IcolConstants.AE_CORRECTION_MODE_AEROSOL);
+        final IcolAuxdata auxdata = IcolAuxdata.getInstance();
+        coeffW = auxdata.getCoeffW(IcolConstants.AE_CORRECTION_MODE_AEROSOL);
     }
 
 
@@ -16,7 +16,6 @@
  */
 package org.esa.beam.meris.icol;
 
-import com.bc.ceres.core.NullProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
@@ -33,16 +32,10 @@ import org.esa.beam.gpf.operators.standard.BandMathsOp;
 import org.esa.beam.meris.brr.LandClassificationOp;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
 import org.esa.beam.util.ProductUtils;
-import org.esa.beam.util.ResourceInstaller;
-import org.esa.beam.util.SystemUtils;
 
 import javax.media.jai.BorderExtender;
 import java.awt.Rectangle;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.net.URL;
 
 
 @OperatorMetadata(alias = "Meris.IcolFresnelCoeff",
@@ -92,17 +85,8 @@ public class FresnelCoefficientOp extends MerisBasisOp {
     }
 
     private void loadFresnelReflectionCoefficient() throws IOException {
-        String auxdataSrcPath = "auxdata/icol";
-        final String auxdataDestPath = ".beam/beam-meris-icol/" + auxdataSrcPath;
-        File auxdataTargetDir = new File(SystemUtils.getUserHomeDir(), auxdataDestPath);
-        URL sourceUrl = ResourceInstaller.getSourceUrl(this.getClass());
-
-        ResourceInstaller resourceInstaller = new ResourceInstaller(sourceUrl, auxdataSrcPath, auxdataTargetDir);
-        resourceInstaller.install(".*", new NullProgressMonitor());
-
-        File fresnelFile = new File(auxdataTargetDir, FresnelReflectionCoefficient.FRESNEL_COEFF);
-        final Reader reader = new FileReader(fresnelFile);
-        fresnelCoefficient = new FresnelReflectionCoefficient(reader);
+        final IcolAuxdata auxdata = IcolAuxdata.getInstance();
+        fresnelCoefficient = auxdata.getFresnelCoefficient();
     }
 
     @Override
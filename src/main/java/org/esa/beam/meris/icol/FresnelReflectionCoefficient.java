@@ -34,15 +34,14 @@ public class FresnelReflectionCoefficient {
 
     public static final String FRESNEL_COEFF = "fresnel.txt";
 
-    private LUT frCoeff;
-    private FractIndex[] fractIndex;
+    // immutable after construction, the lookups only use local interpolation indices
+    private final LUT frCoeff;
 
     public FresnelReflectionCoefficient(Reader reader) throws IOException {
-        loadFresnelReflectionCoefficient(reader);
-        fractIndex = FractIndex.createArray(1);
+        frCoeff = loadFresnelReflectionCoefficient(reader);
     }
 
-    private void loadFresnelReflectionCoefficient(Reader reader) throws IOException {
+    private static LUT loadFresnelReflectionCoefficient(Reader reader) throws IOException {
         try {
             final char [] separator = {','};
             final CsvReader csvReader = new CsvReader(reader, separator);
@@ -55,14 +54,17 @@ public class FresnelReflectionCoefficient {
                 fresnelData[index] = Double.parseDouble(record[1].trim());
                 index++;
             }
-            frCoeff = new LUT(fresnelData);
-            frCoeff.setTab(0, angel);
+            final LUT lut = new LUT(fresnelData);
+            lut.setTab(0, angel);
+            return lut;
         } finally {
             reader.close();
         }
     }
 
     public double getCoeffFor(double angle) {
+        // local index, instances are shared between threads (see IcolAuxdata)
+        final FractIndex[] fractIndex = FractIndex.createArray(1);
         double[] tab = frCoeff.getTab(0);
 		Interp.interpCoord(angle, tab, fractIndex[0]);
         return Interp.interpolate(frCoeff.getJavaArray(), fractIndex);
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol;
+
+import com.bc.ceres.core.NullProgressMonitor;
+import org.esa.beam.util.ResourceInstaller;
+import org.esa.beam.util.SystemUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The ICOL auxiliary data (Fresnel coefficients, weighting coefficients W and aerosol scattering functions),
+ * installed and parsed only once per JVM and shared by all operators.
+ * <p/>
+ * The auxdata is installed into <code>~/.beam/beam-meris-icol/auxdata/icol</code>. The installation is skipped
+ * if a checksum of the installation source (the module jar or class directory) written by a former installation
+ * is still current and all files listed by that installation are still present with their installed sizes.
+ * <p/>
+ * The registry is immutable, and so are the objects it provides, they can be used by concurrent tile threads.
+ */
+public class IcolAuxdata {
+
+    public static final String AUXDATA_SRC_PATH = "auxdata/icol";
+    public static final String AUXDATA_DEST_PATH = ".beam/beam-meris-icol/" + AUXDATA_SRC_PATH;
+
+    static final String CHECKSUM_FILENAME = ".installed.crc";
+
+    private static IcolAuxdata instance;
+
+    private final File auxdataDir;
+    private final FresnelReflectionCoefficient fresnelCoefficient;
+    private final CoeffW rayleighCoeffW;
+    private final CoeffW aerosolCoeffW;
+    private final AerosolScatteringFunctions aerosolScatteringFunctions;
+
+    private IcolAuxdata(File auxdataDir) throws IOException {
+        this.auxdataDir = auxdataDir;
+        final Reader reader = new FileReader(new File(auxdataDir, FresnelReflectionCoefficient.FRESNEL_COEFF));
+        fresnelCoefficient = new FresnelReflectionCoefficient(reader);
+        rayleighCoeffW = new CoeffW(auxdataDir, false, IcolConstants.AE_CORRECTION_MODE_RAYLEIGH);
+        aerosolCoeffW = new CoeffW(auxdataDir, false, IcolConstants.AE_CORRECTION_MODE_AEROSOL);
+        aerosolScatteringFunctions = new AerosolScatteringFunctions(auxdataDir);
+    }
+
+    /**
+     * Returns the auxdata registry, installing and loading the auxdata on the first call.
+     *
+     * @return the registry
+     * @throws IOException - if the auxdata cannot be installed or read
+     */
+    public static synchronized IcolAuxdata getInstance() throws IOException {
+        if (instance == null) {
+            final File auxdataDir = new File(SystemUtils.getUserHomeDir(), AUXDATA_DEST_PATH);
+            install(auxdataDir);
+            instance = new IcolAuxdata(auxdataDir);
+        }
+        return instance;
+    }
+
+    public File getAuxdataDir() {
+        return auxdataDir;
+    }
+
+    public FresnelReflectionCoefficient getFresnelCoefficient() {
+        return fresnelCoefficient;
+    }
+
+    /**
+     * @param correctionMode - {@link IcolConstants#AE_CORRECTION_MODE_RAYLEIGH} or
+     *                       {@link IcolConstants#AE_CORRECTION_MODE_AEROSOL}
+     * @return the weighting coefficients for the given correction mode
+     */
+    public CoeffW getCoeffW(int correctionMode) {
+        if (correctionMode == IcolConstants.AE_CORRECTION_MODE_RAYLEIGH) {
+            return rayleighCoeffW;
+        } else if (correctionMode == IcolConstants.AE_CORRECTION_MODE_AEROSOL) {
+            return aerosolCoeffW;
+        }
+        throw new IllegalArgumentException("Unknown correction mode: " + correctionMode);
+    }
+
+    public AerosolScatteringFunctions getAerosolScatteringFunctions() {
+        return aerosolScatteringFunctions;
+    }
+
+    private static void install(File auxdataDir) throws IOException {
+        final URL sourceUrl = ResourceInstaller.getSourceUrl(IcolAuxdata.class);
+        final String checksum = computeSourceChecksum(sourceUrl);
+        if (checksum != null && isInstalled(auxdataDir, checksum)) {
+            return;
+        }
+
+        ResourceInstaller resourceInstaller = new ResourceInstaller(sourceUrl, AUXDATA_SRC_PATH, auxdataDir);
+        resourceInstaller.install(".*", new NullProgressMonitor());
+
+        if (checksum != null) {
+            writeChecksum(auxdataDir, checksum);
+        }
+    }
+
+    /**
+     * Checks whether a former installation from a source with the given checksum is still complete. The checksum
+     * file holds the checksum in its first line followed by one line per installed file with its relative path
+     * and size.
+     *
+     * @param auxdataDir - the installation directory
+     * @param checksum   - the checksum of the installation source
+     * @return <code>true</code> if the checksum is current and no installed file is missing or has changed its size
+     */
+    static boolean isInstalled(File auxdataDir, String checksum) {
+        final File checksumFile = new File(auxdataDir, CHECKSUM_FILENAME);
+        if (!checksumFile.isFile()) {
+            return false;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new FileReader(checksumFile));
+            try {
+                String line = reader.readLine();
+                if (line == null || !checksum.equals(line.trim())) {
+                    return false;
+                }
+                int fileCount = 0;
+                while ((line = reader.readLine()) != null) {
+                    final int separator = line.lastIndexOf('\t');
+                    if (separator < 0) {
+                        return false;
+                    }
+                    final File file = new File(auxdataDir, line.substring(0, separator));
+                    final long length = Long.parseLong(line.substring(separator + 1).trim());
+                    if (!file.isFile() || file.length() != length) {
+                        return false;
+                    }
+                    fileCount++;
+                }
+                return fileCount > 0;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Computes a checksum of the installation source from the names, sizes and modification times of the
+     * module jar or, for a class directory, of the files of its auxdata directory.
+     *
+     * @param sourceUrl - the code source of the module
+     * @return the checksum, or <code>null</code> if the source is not a local file
+     */
+    static String computeSourceChecksum(URL sourceUrl) {
+        final File source;
+        try {
+            if (!"file".equals(sourceUrl.getProtocol())) {
+                return null;
+            }
+            source = new File(sourceUrl.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        final CRC32 crc = new CRC32();
+        if (source.isDirectory()) {
+            final File auxdataSrcDir = new File(source, AUXDATA_SRC_PATH);
+            if (!auxdataSrcDir.isDirectory()) {
+                return null;
+            }
+            update(crc, auxdataSrcDir);
+        } else if (source.isFile()) {
+            updateFileInfo(crc, source);
+        } else {
+            return null;
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static void update(CRC32 crc, File file) {
+        updateFileInfo(crc, file);
+        final File[] children = file.listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                update(crc, child);
+            }
+        }
+    }
+
+    private static void updateFileInfo(CRC32 crc, File file) {
+        final String info = file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+        crc.update(info.getBytes());
+    }
+
+    /**
+     * Writes the checksum of the installation source and the list of installed files with their sizes.
+     *
+     * @param auxdataDir - the installation directory
+     * @param checksum   - the checksum of the installation source
+     */
+    static void writeChecksum(File auxdataDir, String checksum) {
+        final File checksumFile = new File(auxdataDir, CHECKSUM_FILENAME);
+        try {
+            final Writer writer = new FileWriter(checksumFile);
+            try {
+                writer.write(checksum);
+                writer.write('\n');
+                writeFileList(writer, auxdataDir, "");
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            // the installation will be repeated next time
+            checksumFile.delete();
+        }
+    }
+
+    private static void writeFileList(Writer writer, File dir, String prefix) throws IOException {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            final String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                writeFileList(writer, child, path + "/");
+            } else if (!CHECKSUM_FILENAME.equals(path)) {
+                writer.write(path + '\t' + child.length() + '\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package org.esa.beam.meris.icol;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.gpf.Operator;
+import org.esa.beam.framework.gpf.Tile;
+import org.esa.beam.util.RectangleExtender;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Computes the <code>&lt;rho&gt;</code> pixels of a tile in full resolution by approximating the radially
+ * symmetric kernels as weighted sums of nested square boxes, which are evaluated with summed-area tables.
+ * The work per pixel only depends on the number of boxes, not on the kernel radius.
+ * <p/>
+ * The box radii are fixed (dense near the centre, where the kernels are steep, and growing geometrically
+ * outwards). Each kernel pixel is assigned to the square annulus of the square having the area of its circle,
+ * and the box weights are chosen such that each annulus keeps the kernel mass assigned to it. The total kernel
+ * mass is thus preserved. The remaining error results from the square shape of the boxes: for the FR kernels it
+ * is about 0.2% of the mean for structures larger than 300 pixels and about 1% for structures of 30 to 100
+ * pixels.
+ * <p/>
+ * As in {@link IcolConvolutionFft}, the boxes only approximate the rings <code>1..n</code>: the centre pixel is
+ * added separately with the weight <code>w[0]</code> (also if it has the no-data value), the rings with the sum of
+ * their weights times their mean. Source pixels with the no-data value -1 are excluded by normalising the rings
+ * with the box sums of the validity mask as a whole, if no pixel of the rings is valid only the centre term
+ * remains. {@link Convolver#convolveSampleBoolean} returns the weighted fraction of the set pixels in the rings,
+ * and outside the scene the border pixels are replicated.
+ */
+public class IcolConvolutionBoxSum implements IcolConvolutionAlgo {
+
+    private static final double NO_DATA_VALUE = -1.0;
+    // box-summed validity weights below this value are taken as 'no valid pixel' (rounding errors of the sums)
+    private static final double MIN_VALID_WEIGHT = 1.0e-10;
+    // half side of the square with the area of the unit circle
+    private static final double EQUAL_AREA_SCALE = 0.5 * Math.sqrt(Math.PI);
+
+    private final double[][] w;
+    // sum of the weights of the rings 1..n, per model
+    private final double[] ringWeights;
+    private final int kernelRadius;
+    private final int[] boxRadii;
+    // box weights of the rings per aerosol model, index is iaer - 1
+    private final double[][] boxWeights;
+    private final RectangleExtender rectCalculator;
+
+    public IcolConvolutionBoxSum(Product l1bProduct, CoeffW coeffW) {
+        final String productType = l1bProduct.getProductType();
+        if (productType.indexOf("_RR") > -1) {
+            w = coeffW.getCoeffForRR();
+            kernelRadius = CoeffW.RR_KERNEL_SIZE;
+        } else {
+            w = coeffW.getCoeffForFR();
+            kernelRadius = CoeffW.FR_KERNEL_SIZE;
+        }
+        boxRadii = createBoxRadii((int) Math.ceil(EQUAL_AREA_SCALE * kernelRadius));
+        ringWeights = new double[w.length];
+        boxWeights = new double[w.length][];
+        for (int i = 0; i < w.length; i++) {
+            for (int distance = 1; distance < w[i].length; distance++) {
+                ringWeights[i] += w[i][distance];
+            }
+            final float[] kernel = CoeffW.createFilterByRotation(w[i]);
+            // the centre pixel is added separately, as in the ring means
+            final int radius = w[i].length - 1;
+            kernel[radius * (2 * radius + 1) + radius] = 0.0f;
+            boxWeights[i] = computeBoxWeights(kernel, radius, boxRadii);
+        }
+        rectCalculator = new RectangleExtender(new Rectangle(l1bProduct.getSceneRasterWidth(),
+                                                             l1bProduct.getSceneRasterHeight()),
+                                               kernelRadius, kernelRadius);
+    }
+
+    public Rectangle mapTargetRect(Rectangle targetRect) {
+        return rectCalculator.extend(targetRect);
+    }
+
+    public Convolver createConvolver(Operator op, Tile[] srcTiles, Rectangle targetRect, ProgressMonitor pm) {
+        return new ConvolverImpl(srcTiles, targetRect);
+    }
+
+    /**
+     * @param kernelRadius - the kernel radius
+     * @return the box radii: 0, 1, 2, 3, then growing by a factor of 1.25 up to the kernel radius
+     */
+    static int[] createBoxRadii(int kernelRadius) {
+        final List<Integer> radii = new ArrayList<Integer>();
+        int r = 0;
+        while (r < kernelRadius) {
+            radii.add(r);
+            r = r < 3 ? r + 1 : (int) Math.ceil(1.25 * r);
+        }
+        radii.add(kernelRadius);
+        final int[] boxRadii = new int[radii.size()];
+        for (int i = 0; i < boxRadii.length; i++) {
+            boxRadii[i] = radii.get(i);
+        }
+        return boxRadii;
+    }
+
+    /**
+     * Computes the weights of the boxes such that their sum approximates the kernel: the value of the
+     * approximation in the annulus between box <code>k-1</code> and box <code>k</code> is the kernel mass
+     * assigned to that annulus divided by its area, and the weight of box <code>k</code> is the step of these
+     * values from annulus <code>k</code> to <code>k+1</code>.
+     *
+     * @param kernel       - the <code>(2 * kernelRadius + 1)^2</code> kernel values
+     * @param kernelRadius - the kernel radius
+     * @param boxRadii     - the increasing box radii
+     * @return the box weights
+     */
+    static double[] computeBoxWeights(float[] kernel, int kernelRadius, int[] boxRadii) {
+        final int kernelSize = 2 * kernelRadius + 1;
+        final int numBoxes = boxRadii.length;
+        final double[] annulusSums = new double[numBoxes];
+        final int[] annulusCounts = new int[numBoxes];
+        final int outerRadius = boxRadii[numBoxes - 1];
+        for (int dy = -outerRadius; dy <= outerRadius; dy++) {
+            for (int dx = -outerRadius; dx <= outerRadius; dx++) {
+                annulusCounts[getAnnulus(Math.max(Math.abs(dx), Math.abs(dy)), boxRadii)]++;
+            }
+        }
+        for (int dy = -kernelRadius; dy <= kernelRadius; dy++) {
+            for (int dx = -kernelRadius; dx <= kernelRadius; dx++) {
+                // a circle and a square of equal area keep the second moment within 5%
+                final double squareRadius = EQUAL_AREA_SCALE * Math.sqrt(dx * dx + dy * dy);
+                final int k = getAnnulus((int) Math.round(squareRadius), boxRadii);
+                annulusSums[k] += kernel[(dy + kernelRadius) * kernelSize + dx + kernelRadius];
+            }
+        }
+        final double[] weights = new double[numBoxes];
+        for (int k = numBoxes - 1; k >= 0; k--) {
+            final double mean = annulusSums[k] / annulusCounts[k];
+            final double outerMean = k < numBoxes - 1 ? annulusSums[k + 1] / annulusCounts[k + 1] : 0.0;
+            weights[k] = mean - outerMean;
+        }
+        return weights;
+    }
+
+    private static int getAnnulus(int d, int[] boxRadii) {
+        int k = 0;
+        while (k < boxRadii.length - 1 && boxRadii[k] < d) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Convolver for a single target tile. The summed-area tables are computed on demand and kept for the
+     * lifetime of the convolver, which is used by a single thread only.
+     */
+    public class ConvolverImpl implements Convolver {
+
+        private final Tile[] srcTiles;
+        private final Rectangle targetRect;
+        private final int regionWidth;
+        private final int regionHeight;
+        private final Map<Integer, SummedAreaTables> tables;
+
+        public ConvolverImpl(Tile[] srcTiles, Rectangle targetRect) {
+            this.srcTiles = srcTiles;
+            this.targetRect = targetRect;
+            this.regionWidth = targetRect.width + 2 * kernelRadius;
+            this.regionHeight = targetRect.height + 2 * kernelRadius;
+            this.tables = new HashMap<Integer, SummedAreaTables>();
+        }
+
+        public double convolveSample(int x, int y, int iaer, int b) {
+            return getTables(b, false).convolve(x, y, iaer - 1);
+        }
+
+        public double convolveSampleBoolean(int x, int y, int iaer, int b) {
+            return getTables(b, true).convolve(x, y, iaer - 1);
+        }
+
+        public double[] convolvePixel(int x, int y, int iaer) {
+            final double[] means = new double[srcTiles.length];
+            for (int b = 0; b < srcTiles.length; b++) {
+                if (srcTiles[b] != null) {
+                    // as in IcolConvolutionKernellLoop, the pixel convolution uses the weights w[iaer]
+                    means[b] = getTables(b, false).convolve(x, y, iaer);
+                }
+            }
+            return means;
+        }
+
+        private SummedAreaTables getTables(int b, boolean booleanSamples) {
+            final int key = 2 * b + (booleanSamples ? 1 : 0);
+            SummedAreaTables sat = tables.get(key);
+            if (sat == null) {
+                sat = new SummedAreaTables(srcTiles[b], booleanSamples);
+                tables.put(key, sat);
+            }
+            return sat;
+        }
+
+        /**
+         * Summed-area tables of the values and of the validity weights of the source region, i.e. the target
+         * rectangle extended by the kernel radius. The tables have an additional leading row and column of zeros.
+         */
+        private class SummedAreaTables {
+
+            private final Tile srcTile;
+            private final boolean booleanSamples;
+            private final int tableWidth;
+            private final double[] valueSums;
+            private final double[] weightSums;
+
+            SummedAreaTables(Tile srcTile, boolean booleanSamples) {
+                this.srcTile = srcTile;
+                this.booleanSamples = booleanSamples;
+                final Rectangle tileRect = srcTile.getRectangle();
+                tableWidth = regionWidth + 1;
+                valueSums = new double[tableWidth * (regionHeight + 1)];
+                weightSums = new double[tableWidth * (regionHeight + 1)];
+                final int x0 = targetRect.x - kernelRadius;
+                final int y0 = targetRect.y - kernelRadius;
+                for (int j = 0; j < regionHeight; j++) {
+                    final int y = clamp(y0 + j, tileRect.y, tileRect.y + tileRect.height - 1);
+                    double rowValueSum = 0.0;
+                    double rowWeightSum = 0.0;
+                    int index = (j + 1) * tableWidth + 1;
+                    for (int i = 0; i < regionWidth; i++, index++) {
+                        final int x = clamp(x0 + i, tileRect.x, tileRect.x + tileRect.width - 1);
+                        if (booleanSamples) {
+                            rowValueSum += srcTile.getSampleBoolean(x, y) ? 1.0 : 0.0;
+                            rowWeightSum += 1.0;
+                        } else {
+                            final double value = srcTile.getSampleDouble(x, y);
+                            if (value != NO_DATA_VALUE) {
+                                rowValueSum += value;
+                                rowWeightSum += 1.0;
+                            }
+                        }
+                        valueSums[index] = valueSums[index - tableWidth] + rowValueSum;
+                        weightSums[index] = weightSums[index - tableWidth] + rowWeightSum;
+                    }
+                }
+            }
+
+            /**
+             * @param x     - the pixel x coordinate
+             * @param y     - the pixel y coordinate
+             * @param model - the index of the weights of the aerosol model
+             * @return <code>w[0]</code> times the centre pixel plus the weight of the rings times their mean
+             */
+            double convolve(int x, int y, int model) {
+                final double[] weights = boxWeights[model];
+                // centre in table coordinates (shifted by the leading zero row and column)
+                final int cx = x - targetRect.x + kernelRadius + 1;
+                final int cy = y - targetRect.y + kernelRadius + 1;
+                double valueSum = 0.0;
+                double weightSum = 0.0;
+                for (int k = 0; k < boxRadii.length; k++) {
+                    final int r = boxRadii[k];
+                    final int i00 = (cy - r - 1) * tableWidth + cx - r - 1;
+                    final int i01 = (cy - r - 1) * tableWidth + cx + r;
+                    final int i10 = (cy + r) * tableWidth + cx - r - 1;
+                    final int i11 = (cy + r) * tableWidth + cx + r;
+                    valueSum += weights[k] * (valueSums[i11] - valueSums[i10] - valueSums[i01] + valueSums[i00]);
+                    weightSum += weights[k] * (weightSums[i11] - weightSums[i10] - weightSums[i01] + weightSums[i00]);
+                }
+                final double ringMean = weightSum > MIN_VALID_WEIGHT ? valueSum / weightSum : 0.0;
+                final double centre;
+                if (booleanSamples) {
+                    centre = srcTile.getSampleBoolean(x, y) ? 1.0 : 0.0;
+                } else {
+                    centre = srcTile.getSampleFloat(x, y);
+                }
+                return centre * w[model][0] + ringMean * ringWeights[model];
+            }
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,385 @@
+package org.esa.beam.meris.icol;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.gpf.Operator;
+import org.esa.beam.framework.gpf.Tile;
+import org.esa.beam.meris.icol.utils.FFTUtils;
+import org.esa.beam.meris.icol.utils.MixedRadixFFT;
+import org.esa.beam.util.RectangleExtender;
+
+import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Computes the <code>&lt;rho&gt;</code> pixels of a tile by FFT based convolution with the full resolution
+ * FR/RR kernels (no reshaping/downscaling). The source rectangle is split into overlap-save blocks, each of them
+ * transformed once per band and multiplied with the (cached) kernel spectrum of the requested aerosol model.
+ * A tile with per-pixel aerosol models therefore costs one forward transform per band and one inverse transform
+ * per band and model requested.
+ * <p/>
+ * The result is the weighted ring mean of {@link IcolConvolutionKernellLoop}: the centre pixel weighted with
+ * <code>w[0]</code> plus the rings <code>1..n</code>, convolved with the kernel built by rotating
+ * <code>w[1..n]</code>. The model index is treated as in {@link IcolConvolutionKernellLoop}, i.e.
+ * <code>w[iaer - 1]</code> for the sample methods and <code>w[iaer]</code> for {@link Convolver#convolvePixel}.
+ * Where all pixels are valid, both algorithms give the same result. They differ in the following cases:
+ * <ul>
+ * <li>Source pixels with the no-data value -1 are excluded by normalising the rings with the convolved validity
+ * mask as a whole, instead of normalising each ring with its own number of valid pixels. The valid pixels of a
+ * partly invalid ring therefore get the weight of the ring times the valid fraction of the ring, the missing
+ * weight is spread over all other valid pixels. If no pixel of the rings is valid, only the centre term
+ * remains.</li>
+ * <li>{@link Convolver#convolveSampleBoolean} returns the weighted fraction of the set pixels in the rings (as the
+ * JAI convolution of the flags in {@link IcolConvolutionJaiConvolve}), whereas the kernel loop gives a ring its
+ * full weight as soon as one of its pixels is set.</li>
+ * <li>Outside the scene, the border pixels are replicated (as with <code>BorderExtender.BORDER_COPY</code> in
+ * {@link ReshapedConvolutionOp}), the kernel loop requires the full window to be inside the source tile.</li>
+ * </ul>
+ */
+public class IcolConvolutionFft implements IcolConvolutionAlgo {
+
+    private static final double NO_DATA_VALUE = -1.0;
+    // convolved validity weights below this value are taken as 'no valid pixel' (rounding errors of the FFT)
+    private static final double MIN_VALID_WEIGHT = 1.0e-10;
+    // maximum block length of the overlap-save scheme
+    private static final int MAX_FFT_SIZE = 1024;
+
+    private final double[][] w;
+    // sum of the weights of the rings 1..n, per model
+    private final double[] ringWeights;
+    private final int kernelRadius;
+    private final RectangleExtender rectCalculator;
+    private final ConcurrentMap<String, double[]> kernelSpectra;
+
+    public IcolConvolutionFft(Product l1bProduct, CoeffW coeffW) {
+        final String productType = l1bProduct.getProductType();
+        if (productType.indexOf("_RR") > -1) {
+            w = coeffW.getCoeffForRR();
+            kernelRadius = CoeffW.RR_KERNEL_SIZE;
+        } else {
+            w = coeffW.getCoeffForFR();
+            kernelRadius = CoeffW.FR_KERNEL_SIZE;
+        }
+        ringWeights = new double[w.length];
+        for (int i = 0; i < w.length; i++) {
+            for (int distance = 1; distance < w[i].length; distance++) {
+                ringWeights[i] += w[i][distance];
+            }
+        }
+        rectCalculator = new RectangleExtender(new Rectangle(l1bProduct.getSceneRasterWidth(),
+                                                             l1bProduct.getSceneRasterHeight()),
+                                               kernelRadius, kernelRadius);
+        kernelSpectra = new ConcurrentHashMap<String, double[]>();
+    }
+
+    public Rectangle mapTargetRect(Rectangle targetRect) {
+        return rectCalculator.extend(targetRect);
+    }
+
+    public Convolver createConvolver(Operator op, Tile[] srcTiles, Rectangle targetRect, ProgressMonitor pm) {
+        return new ConvolverImpl(srcTiles, targetRect);
+    }
+
+    private double[] getKernelSpectrum(Engine engine, int iaer) {
+        final String key = engine.fftWidth + "x" + engine.fftHeight + ":" + iaer;
+        double[] spectrum = kernelSpectra.get(key);
+        if (spectrum == null) {
+            final float[] kernel = CoeffW.createFilterByRotation(w[iaer - 1]);
+            // the centre pixel is added separately, as in the ring means
+            final int radius = w[iaer - 1].length - 1;
+            kernel[radius * (2 * radius + 1) + radius] = 0.0f;
+            spectrum = engine.createKernelSpectrum(kernel, radius);
+            final double[] existing = kernelSpectra.putIfAbsent(key, spectrum);
+            if (existing != null) {
+                spectrum = existing;
+            }
+        }
+        return spectrum;
+    }
+
+    /**
+     * Convolver for a single target tile. Band spectra and convolution results are computed on demand and kept
+     * for the lifetime of the convolver, which is used by a single thread only.
+     */
+    public class ConvolverImpl implements Convolver {
+
+        private final Tile[] srcTiles;
+        private final Rectangle targetRect;
+        private final Engine engine;
+        private final Map<Integer, double[][]> bandSpectra;
+        private final Map<Integer, float[]> results;
+
+        public ConvolverImpl(Tile[] srcTiles, Rectangle targetRect) {
+            this.srcTiles = srcTiles;
+            this.targetRect = targetRect;
+            this.engine = new Engine(targetRect.width, targetRect.height, kernelRadius);
+            this.bandSpectra = new HashMap<Integer, double[][]>();
+            this.results = new HashMap<Integer, float[]>();
+        }
+
+        public double convolveSample(int x, int y, int iaer, int b) {
+            return getResult(iaer, b, false)[getIndex(x, y)];
+        }
+
+        public double convolveSampleBoolean(int x, int y, int iaer, int b) {
+            return getResult(iaer, b, true)[getIndex(x, y)];
+        }
+
+        public double[] convolvePixel(int x, int y, int iaer) {
+            final double[] means = new double[srcTiles.length];
+            final int index = getIndex(x, y);
+            for (int b = 0; b < srcTiles.length; b++) {
+                if (srcTiles[b] != null) {
+                    // as in IcolConvolutionKernellLoop, the pixel convolution uses the weights w[iaer]
+                    means[b] = getResult(iaer + 1, b, false)[index];
+                }
+            }
+            return means;
+        }
+
+        private int getIndex(int x, int y) {
+            return (y - targetRect.y) * targetRect.width + (x - targetRect.x);
+        }
+
+        private float[] getResult(int iaer, int b, boolean booleanSamples) {
+            final int bandKey = 2 * b + (booleanSamples ? 1 : 0);
+            final int resultKey = bandKey * (w.length + 1) + iaer;
+            float[] result = results.get(resultKey);
+            if (result == null) {
+                result = new float[targetRect.width * targetRect.height];
+                engine.inverse(getBandSpectra(b, booleanSamples), getKernelSpectrum(engine, iaer), result);
+                addCentrePixels(result, iaer, b, booleanSamples);
+                results.put(resultKey, result);
+            }
+            return result;
+        }
+
+        /**
+         * Turns the convolved ring means into the weighted ring mean: <code>w[0]</code> times the centre pixel
+         * plus the weight of the rings times their mean. As in the kernel loop, the centre pixel is used
+         * even if it has the no-data value.
+         */
+        private void addCentrePixels(float[] result, int iaer, int b, boolean booleanSamples) {
+            final Tile srcTile = srcTiles[b];
+            final double centreWeight = w[iaer - 1][0];
+            final double ringWeight = ringWeights[iaer - 1];
+            int index = 0;
+            for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
+                for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++, index++) {
+                    final double centre;
+                    if (booleanSamples) {
+                        centre = srcTile.getSampleBoolean(x, y) ? 1.0 : 0.0;
+                    } else {
+                        centre = srcTile.getSampleFloat(x, y);
+                    }
+                    final double ringMean = Float.isNaN(result[index]) ? 0.0 : result[index];
+                    result[index] = (float) (centre * centreWeight + ringMean * ringWeight);
+                }
+            }
+        }
+
+        private double[][] getBandSpectra(int b, boolean booleanSamples) {
+            final int bandKey = 2 * b + (booleanSamples ? 1 : 0);
+            double[][] spectra = bandSpectra.get(bandKey);
+            if (spectra == null) {
+                spectra = computeBandSpectra(srcTiles[b], booleanSamples);
+                bandSpectra.put(bandKey, spectra);
+            }
+            return spectra;
+        }
+
+        private double[][] computeBandSpectra(Tile srcTile, boolean booleanSamples) {
+            final Rectangle tileRect = srcTile.getRectangle();
+            final int regionWidth = engine.getRegionWidth();
+            final int regionHeight = engine.getRegionHeight();
+            final double[] values = new double[regionWidth * regionHeight];
+            final double[] weights = new double[regionWidth * regionHeight];
+            final int x0 = targetRect.x - kernelRadius;
+            final int y0 = targetRect.y - kernelRadius;
+            int index = 0;
+            for (int j = 0; j < regionHeight; j++) {
+                final int y = clamp(y0 + j, tileRect.y, tileRect.y + tileRect.height - 1);
+                for (int i = 0; i < regionWidth; i++, index++) {
+                    final int x = clamp(x0 + i, tileRect.x, tileRect.x + tileRect.width - 1);
+                    if (booleanSamples) {
+                        values[index] = srcTile.getSampleBoolean(x, y) ? 1.0 : 0.0;
+                        weights[index] = 1.0;
+                    } else {
+                        final double value = srcTile.getSampleDouble(x, y);
+                        if (value != NO_DATA_VALUE) {
+                            values[index] = value;
+                            weights[index] = 1.0;
+                        }
+                    }
+                }
+            }
+            return engine.forward(values, weights);
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    /**
+     * Overlap-save FFT convolution of a <code>width x height</code> target area with radially symmetric kernels
+     * of a given radius. The input region is the target area extended by the kernel radius on each side.
+     */
+    static class Engine {
+
+        final int width;
+        final int height;
+        final int radius;
+        final int fftWidth;
+        final int fftHeight;
+        private final int blockWidth;
+        private final int blockHeight;
+        private final int numBlocksX;
+        private final int numBlocksY;
+        private final MixedRadixFFT fftX;
+        private final MixedRadixFFT fftY;
+        private final double[][] workspaceX;
+        private final double[][] workspaceY;
+
+        Engine(int width, int height, int radius) {
+            this.width = width;
+            this.height = height;
+            this.radius = radius;
+            fftWidth = getFftSize(width, radius);
+            fftHeight = getFftSize(height, radius);
+            blockWidth = fftWidth - 2 * radius;
+            blockHeight = fftHeight - 2 * radius;
+            numBlocksX = (width + blockWidth - 1) / blockWidth;
+            numBlocksY = (height + blockHeight - 1) / blockHeight;
+            fftX = MixedRadixFFT.getInstance(fftWidth);
+            fftY = MixedRadixFFT.getInstance(fftHeight);
+            workspaceX = fftX.createWorkspace();
+            workspaceY = fftY.createWorkspace();
+        }
+
+        static int getFftSize(int size, int radius) {
+            if (size + 2 * radius <= MAX_FFT_SIZE) {
+                return MixedRadixFFT.nextFastSize(size + 2 * radius);
+            }
+            // large areas are split into blocks, each delivering at least 2 * radius output pixels
+            return MixedRadixFFT.nextFastSize(Math.max(MAX_FFT_SIZE, 4 * radius));
+        }
+
+        int getRegionWidth() {
+            return width + 2 * radius;
+        }
+
+        int getRegionHeight() {
+            return height + 2 * radius;
+        }
+
+        /**
+         * Transforms the region (given as values and validity weights) block by block. Values and weights are
+         * packed into the real and imaginary part of a single complex transform, which is valid because the
+         * kernels are real.
+         *
+         * @param values  - the region values, already multiplied by the weights
+         * @param weights - the region weights (0 for no-data, 1 otherwise)
+         * @return the block spectra (real and imaginary part for each block)
+         */
+        double[][] forward(double[] values, double[] weights) {
+            final int regionWidth = getRegionWidth();
+            final int regionHeight = getRegionHeight();
+            final double[][] spectra = new double[2 * numBlocksX * numBlocksY][];
+            for (int by = 0; by < numBlocksY; by++) {
+                for (int bx = 0; bx < numBlocksX; bx++) {
+                    final double[] re = new double[fftWidth * fftHeight];
+                    final double[] im = new double[fftWidth * fftHeight];
+                    final int x0 = bx * blockWidth;
+                    final int y0 = by * blockHeight;
+                    int index = 0;
+                    for (int j = 0; j < fftHeight; j++) {
+                        final int regionOffset = Math.min(y0 + j, regionHeight - 1) * regionWidth;
+                        for (int i = 0; i < fftWidth; i++, index++) {
+                            final int regionIndex = regionOffset + Math.min(x0 + i, regionWidth - 1);
+                            re[index] = values[regionIndex];
+                            im[index] = weights[regionIndex];
+                        }
+                    }
+                    FFTUtils.fft2D(re, im, fftX, workspaceX, fftY, workspaceY, true);
+                    final int block = by * numBlocksX + bx;
+                    spectra[2 * block] = re;
+                    spectra[2 * block + 1] = im;
+                }
+            }
+            return spectra;
+        }
+
+        /**
+         * Multiplies the block spectra with the kernel spectrum, transforms back and writes the normalised
+         * convolution result for the target area. Pixels without any valid pixel under the kernel are set to
+         * <code>NaN</code>.
+         *
+         * @param spectra        - the block spectra as returned by {@link #forward}
+         * @param kernelSpectrum - the kernel spectrum as returned by {@link #createKernelSpectrum}
+         * @param result         - the <code>width x height</code> result array
+         */
+        void inverse(double[][] spectra, double[] kernelSpectrum, float[] result) {
+            final int size = fftWidth * fftHeight;
+            final double[] re = new double[size];
+            final double[] im = new double[size];
+            for (int by = 0; by < numBlocksY; by++) {
+                for (int bx = 0; bx < numBlocksX; bx++) {
+                    final int block = by * numBlocksX + bx;
+                    final double[] specRe = spectra[2 * block];
+                    final double[] specIm = spectra[2 * block + 1];
+                    for (int k = 0; k < size; k++) {
+                        re[k] = specRe[k] * kernelSpectrum[k];
+                        im[k] = specIm[k] * kernelSpectrum[k];
+                    }
+                    FFTUtils.fft2D(re, im, fftX, workspaceX, fftY, workspaceY, false);
+
+                    final int x0 = bx * blockWidth;
+                    final int y0 = by * blockHeight;
+                    final int xEnd = Math.min(x0 + blockWidth, width);
+                    final int yEnd = Math.min(y0 + blockHeight, height);
+                    for (int y = y0; y < yEnd; y++) {
+                        int fftIndex = (y - y0 + radius) * fftWidth + radius;
+                        for (int x = x0; x < xEnd; x++, fftIndex++) {
+                            final double weight = im[fftIndex];
+                            result[y * width + x] = weight > MIN_VALID_WEIGHT ?
+                                                    (float) (re[fftIndex] / weight) : Float.NaN;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Computes the spectrum of a square, point symmetric kernel, wrapped around the origin. As the kernel is
+         * symmetric, its spectrum is real, so only the real part is returned. The 1/(n*m) normalisation of the
+         * inverse transform is included.
+         *
+         * @param kernel       - the <code>(2 * kernelRadius + 1)^2</code> kernel values
+         * @param kernelRadius - the kernel radius, must not exceed the engine radius
+         * @return the real kernel spectrum
+         */
+        double[] createKernelSpectrum(float[] kernel, int kernelRadius) {
+            final int kernelSize = 2 * kernelRadius + 1;
+            final double[] re = new double[fftWidth * fftHeight];
+            final double[] im = new double[fftWidth * fftHeight];
+            for (int dy = -kernelRadius; dy <= kernelRadius; dy++) {
+                final int j = (dy + fftHeight) % fftHeight;
+                for (int dx = -kernelRadius; dx <= kernelRadius; dx++) {
+                    final int i = (dx + fftWidth) % fftWidth;
+                    re[j * fftWidth + i] = kernel[(dy + kernelRadius) * kernelSize + dx + kernelRadius];
+                }
+            }
+            FFTUtils.fft2D(re, im, fftX, fftX.createWorkspace(), fftY, fftY.createWorkspace(), true);
+            final double norm = 1.0 / (fftWidth * fftHeight);
+            for (int k = 0; k < re.length; k++) {
+                re[k] *= norm;
+            }
+            return re;
+        }
+    }
+}
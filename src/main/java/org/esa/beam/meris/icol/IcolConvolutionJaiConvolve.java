@@ -58,6 +58,7 @@ public class IcolConvolutionJaiConvolve implements IcolConvolutionAlgo {
         convolveParams.put("namePrefix", namePrefix);
         convolveParams.put("correctionMode", coeffW.getCorrectionMode());
         convolveParams.put("reshapedScalingFactor", reshapedScalingFactor);
+        convolveParams.put("fuseBands", true);
         convolveSourceProduct = GPF.createProduct(OperatorSpi.getOperatorAlias(ReshapedConvolutionOp.class),
                                                   convolveParams, l1bProduct);
     }
@@ -19,7 +19,6 @@ package org.esa.beam.meris.icol;
 import com.bc.ceres.binding.ConversionException;
 import com.bc.ceres.binding.Converter;
 import com.bc.ceres.core.Assert;
-import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.gpf.Operator;
 import org.esa.beam.framework.gpf.OperatorException;
@@ -37,16 +36,26 @@ import javax.media.jai.Interpolation;
 import javax.media.jai.JAI;
 import javax.media.jai.KernelJAI;
 import javax.media.jai.RenderedOp;
+import javax.media.jai.operator.BandSelectDescriptor;
 import javax.media.jai.operator.ConvolveDescriptor;
 import javax.media.jai.operator.CropDescriptor;
 import javax.media.jai.operator.ScaleDescriptor;
 import java.awt.RenderingHints;
 import java.awt.image.RenderedImage;
+import java.awt.image.renderable.ParameterBlock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
  * Operator performing the 'reshaped' convolution step with JAI image convolution in spatial domain.
  *
+ * If <code>fuseBands</code> is set, the bands of equal data type are merged into one band-interleaved image and
+ * convolved by a single JAI chain, so that the tile computation, border extension and tile cache are shared
+ * by all bands.
+ *
  * @author Olaf Danne
  * @version $Revision: 8078 $ $Date: 2010-01-22 17:24:28 +0100 (Fr, 22 Jan 2010) $
  */
@@ -74,30 +83,59 @@ public class ReshapedConvolutionOp extends Operator {
     private int correctionMode;
     @Parameter(defaultValue = "1.0")
     private double reshapedScalingFactor;
+    @Parameter(defaultValue = "false",
+               description = "Convolve all bands of the same data type as one band-interleaved image")
+    private boolean fuseBands;
 
 
     @Override
     public void initialize() throws OperatorException {
         targetProduct = new Product("P", "PT", sourceProduct.getSceneRasterWidth(), sourceProduct.getSceneRasterHeight());
         String[] sourceNames = sourceProduct.getBandNames();
+        // bands to convolve, grouped by data type if fused
+        Map<Integer, List<String>> bandGroups = new LinkedHashMap<Integer, List<String>>();
         for (String name : sourceNames) {
             if (name.startsWith(namePrefix) && !targetProduct.containsRasterDataNode(name)) {
-                Band targetBand = ProductUtils.copyBand(name, sourceProduct, targetProduct, false);
-                RenderedImage sourceImage = sourceProduct.getBand(name).getSourceImage();
-                if (correctionMode == IcolConstants.AE_CORRECTION_MODE_RAYLEIGH) {
-                    // Rayleigh
-                    RenderedImage image1 = convolveDownscaled(sourceImage, kernel, BILIN,
-                            (float) reshapedScalingFactor);
-                    targetBand.setSourceImage(image1);
-                } else if (correctionMode == IcolConstants.AE_CORRECTION_MODE_AEROSOL) {
-                    // aerosol
-                    RenderedImage image1 = convolve(sourceImage, kernel);
-                    targetBand.setSourceImage(image1);
+                ProductUtils.copyBand(name, sourceProduct, targetProduct, false);
+                final int groupKey = fuseBands ? sourceProduct.getBand(name).getDataType() : bandGroups.size();
+                List<String> group = bandGroups.get(groupKey);
+                if (group == null) {
+                    group = new ArrayList<String>();
+                    bandGroups.put(groupKey, group);
+                }
+                group.add(name);
+            }
+        }
+        for (List<String> group : bandGroups.values()) {
+            if (group.size() == 1) {
+                final String name = group.get(0);
+                targetProduct.getBand(name).setSourceImage(convolve(sourceProduct.getBand(name).getSourceImage()));
+            } else {
+                // one Scale -> Convolve -> Scale -> Crop chain computes the tiles of all bands of the group
+                final ParameterBlock pb = new ParameterBlock();
+                for (String name : group) {
+                    pb.addSource(sourceProduct.getBand(name).getSourceImage());
+                }
+                final RenderedImage fusedImage = convolve(JAI.create("BandMerge", pb, null));
+                for (int i = 0; i < group.size(); i++) {
+                    targetProduct.getBand(group.get(i)).setSourceImage(
+                            BandSelectDescriptor.create(fusedImage, new int[]{i}, null));
                 }
             }
         }
     }
 
+    private RenderedImage convolve(RenderedImage sourceImage) {
+        if (correctionMode == IcolConstants.AE_CORRECTION_MODE_RAYLEIGH) {
+            // Rayleigh
+            return convolveDownscaled(sourceImage, kernel, BILIN, (float) reshapedScalingFactor);
+        } else if (correctionMode == IcolConstants.AE_CORRECTION_MODE_AEROSOL) {
+            // aerosol
+            return convolve(sourceImage, kernel);
+        }
+        return null;
+    }
+
     public static RenderedOp convolve(RenderedImage src, KernelJAI kernel) {
         final BorderExtender borderExtender = BorderExtender.createInstance(BorderExtender.BORDER_COPY);
 //        final BorderExtender borderExtender = BorderExtender.createInstance(BorderExtender.BORDER_REFLECT);
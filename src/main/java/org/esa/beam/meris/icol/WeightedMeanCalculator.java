@@ -20,21 +20,50 @@ import org.esa.beam.framework.datamodel.ProductData;
 import org.esa.beam.framework.gpf.Tile;
 
 import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Created by marcoz.
+ * Computes weighted means of the ring (distance class) means around a pixel.
+ * <p/>
+ * The ring sums and counts of the last computed pixel are kept per source tile. If the next pixel is a successor
+ * in the same row, the window is slid along x: only the pixels which change their ring (or enter or leave the
+ * window) are updated, instead of walking the whole <code>(2 * extend + 1)^2</code> window again.
+ * Instances are therefore not thread-safe and are meant to be used for a single target tile.
  *
  * @author marcoz
  * @version $Revision: 8078 $ $Date: 2010-01-22 17:24:28 +0100 (Fr, 22 Jan 2010) $
  */
 public class WeightedMeanCalculator {
 
+    // the window tables only depend on the extend and are shared by all instances
+    private static final ConcurrentMap<Integer, WindowTables> windowTables =
+            new ConcurrentHashMap<Integer, WindowTables>();
+
     private final int extend;
-    private final int[][] distances;
+    private final WindowTables tables;
+
+    private final Map<Tile, Window> sampleWindows;
+    private final Map<Tile, Window> booleanWindows;
+    private final Map<Tile[], Window> pixelWindows;
 
     public WeightedMeanCalculator(int extend) {
         this.extend = extend;
-        this.distances = computeDistanceMatrix(extend);
+        WindowTables extendTables = windowTables.get(extend);
+        if (extendTables == null) {
+            extendTables = new WindowTables(extend);
+            final WindowTables existing = windowTables.putIfAbsent(extend, extendTables);
+            if (existing != null) {
+                extendTables = existing;
+            }
+        }
+        this.tables = extendTables;
+
+        sampleWindows = new HashMap<Tile, Window>();
+        booleanWindows = new HashMap<Tile, Window>();
+        pixelWindows = new HashMap<Tile[], Window>();
     }
 
     static int[][] computeDistanceMatrix(int extend) {
@@ -55,116 +84,257 @@ public class WeightedMeanCalculator {
     }
 
     public double compute(final int x, final int y, Tile srcTile, double[] weights) {
-        final Rectangle sourceRect = srcTile.getRectangle();
-        ProductData srcData = srcTile.getRawSamples();
-
-        int[] counts = new int[extend + 1];
-        float[] sum = new float[extend + 1];
-
-        for (int iy = 0; iy <= 2 * extend; iy++) {
-            int index = convertToIndex(x - extend, y + iy - extend, sourceRect);
-            final int[] distancesY = distances[iy];
-            for (int ix = 0; ix <= 2 * extend; ix++, index++) {
-                final int distance = distancesY[ix];
-                if (distance != 0) {
-                    final float value = srcData.getElemFloatAt(index);
-                    if (value != -1) {
-                        counts[distance]++;
-                        sum[distance] += value;
-                    }
+        Window window = sampleWindows.get(srcTile);
+        if (window == null) {
+            window = new Window(srcTile.getRectangle(), new float[][]{getSamples(srcTile, false)}, -1.0f);
+            sampleWindows.put(srcTile, window);
+        }
+        window.moveTo(x, y);
+
+        return srcTile.getSampleFloat(x, y) * weights[0] + window.getRingMean(0, weights);
+    }
+
+    public double[] computeAll(final int x, final int y, Tile[] srcTiles, double[] weights) {
+        final int numBands = srcTiles.length;
+        Window window = pixelWindows.get(srcTiles);
+        if (window == null) {
+            float[][] data = new float[numBands][];
+            for (int i = 0; i < numBands; i++) {
+                if (srcTiles[i] != null) {
+                    data[i] = getSamples(srcTiles[i], false);
                 }
             }
+            window = new Window(srcTiles[0].getRectangle(), data, -1.0f);
+            pixelWindows.put(srcTiles, window);
         }
-        double mean = srcTile.getSampleFloat(x, y) * weights[0];
-        for (int distance = 1; distance <= extend; distance++) {
-            if (counts[distance] > 0) {
-                mean += ((sum[distance] * weights[distance]) / counts[distance]);
+        window.moveTo(x, y);
+
+        double[] means = new double[numBands];
+        for (int bandIdx = 0; bandIdx < numBands; bandIdx++) {
+            if (srcTiles[bandIdx] != null) {
+                means[bandIdx] = srcTiles[bandIdx].getSampleFloat(x, y) * weights[0] +
+                                 window.getRingMean(bandIdx, weights);
             }
         }
-        return mean;
+        return means;
+    }
+
+    public double computeBoolean(final int x, final int y, Tile srcTile, double[] weights) {
+        Window window = booleanWindows.get(srcTile);
+        if (window == null) {
+            // only 'true' pixels are counted, so a ring contributes its full weight as soon as it contains one
+            window = new Window(srcTile.getRectangle(), new float[][]{getSamples(srcTile, true)}, 0.0f);
+            booleanWindows.put(srcTile, window);
+        }
+        window.moveTo(x, y);
+
+        double mean = (srcTile.getSampleBoolean(x, y) == true) ? weights[0] : 0.0;
+        return mean + window.getRingMean(0, weights);
     }
 
-    public double[] computeAll(final int x, final int y, Tile[] srcTiles, double[] weights) {
-        final Rectangle sourceRect = srcTiles[0].getRectangle();
-        ProductData[] srcData = new ProductData[srcTiles.length];
-        final int numBands = srcData.length;
-        for (int i = 0; i < numBands; i++) {
-            if (srcTiles[i] != null) {
-                srcData[i] = srcTiles[i].getRawSamples();
+    private static float[] getSamples(Tile srcTile, boolean booleanSamples) {
+        final ProductData srcData = srcTile.getRawSamples();
+        if (!booleanSamples && srcData.getType() == ProductData.TYPE_FLOAT32) {
+            return (float[]) srcData.getElems();
+        }
+        final float[] samples = new float[srcData.getNumElems()];
+        for (int i = 0; i < samples.length; i++) {
+            if (booleanSamples) {
+                samples[i] = srcData.getElemBooleanAt(i) ? 1.0f : 0.0f;
+            } else {
+                samples[i] = srcData.getElemFloatAt(i);
             }
         }
+        return samples;
+    }
 
-        if (x == 124 && y == 142) {
-            System.out.println("x,y = " + x + "," + y);
-        }
+    /**
+     * The pixels of the window (relative position and ring, centre excluded) and the pixels which change their
+     * ring when the window is moved by one pixel in x (relative to the new centre, ring 0 means 'outside the
+     * window or centre'). The tables are immutable.
+     */
+    private static class WindowTables {
 
-        int[] counts = new int[extend + 1];
-        float[][] sum = new float[numBands][extend + 1];
-
-        for (int iy = 0; iy <= 2 * extend; iy++) {
-            int index = convertToIndex(x - extend, y + iy - extend, sourceRect);
-            final int[] distancesY = distances[iy];
-            for (int ix = 0; ix <= 2 * extend; ix++, index++) {
-                final int distance = distancesY[ix];
-                if (distance != 0) {
-                    final float value0 = srcData[0].getElemFloatAt(index);
-                    if (value0 != -1) {
-                        counts[distance]++;
-                        for (int bandIdx = 0; bandIdx < numBands; bandIdx++) {
-                            if (srcData[bandIdx] != null) {
-                                sum[bandIdx][distance] += srcData[bandIdx].getElemFloatAt(index);
-                            }
-                        }
+        private final int[] windowDx;
+        private final int[] windowDy;
+        private final int[] windowRing;
+        private final int[] slideDx;
+        private final int[] slideDy;
+        private final int[] slideOldRing;
+        private final int[] slideNewRing;
+
+        private WindowTables(int extend) {
+            final int[][] distances = computeDistanceMatrix(extend);
+            int numWindowPixels = 0;
+            int numSlidePixels = 0;
+            for (int dy = -extend; dy <= extend; dy++) {
+                for (int dx = -extend - 1; dx <= extend; dx++) {
+                    final int newRing = getRing(distances, extend, dx, dy);
+                    if (newRing != 0) {
+                        numWindowPixels++;
+                    }
+                    if (newRing != getRing(distances, extend, dx + 1, dy)) {
+                        numSlidePixels++;
                     }
                 }
             }
-        }
-        double[] means = new double[numBands];
-        for (int bandIdx = 0; bandIdx < numBands; bandIdx++) {
-            if (srcTiles[bandIdx] != null) {
-                means[bandIdx] = srcTiles[bandIdx].getSampleFloat(x, y) * weights[0];
-                for (int distance = 1; distance <= extend; distance++) {
-                    if (counts[distance] > 0) {
-                        means[bandIdx] += ((sum[bandIdx][distance] * weights[distance]) / counts[distance]);
+            windowDx = new int[numWindowPixels];
+            windowDy = new int[numWindowPixels];
+            windowRing = new int[numWindowPixels];
+            slideDx = new int[numSlidePixels];
+            slideDy = new int[numSlidePixels];
+            slideOldRing = new int[numSlidePixels];
+            slideNewRing = new int[numSlidePixels];
+            int windowIndex = 0;
+            int slideIndex = 0;
+            for (int dy = -extend; dy <= extend; dy++) {
+                for (int dx = -extend - 1; dx <= extend; dx++) {
+                    final int newRing = getRing(distances, extend, dx, dy);
+                    final int oldRing = getRing(distances, extend, dx + 1, dy);
+                    if (newRing != 0) {
+                        windowDx[windowIndex] = dx;
+                        windowDy[windowIndex] = dy;
+                        windowRing[windowIndex] = newRing;
+                        windowIndex++;
+                    }
+                    if (newRing != oldRing) {
+                        slideDx[slideIndex] = dx;
+                        slideDy[slideIndex] = dy;
+                        slideOldRing[slideIndex] = oldRing;
+                        slideNewRing[slideIndex] = newRing;
+                        slideIndex++;
                     }
                 }
             }
         }
-        return means;
+
+        private static int getRing(int[][] distances, int extend, int dx, int dy) {
+            if (dx < -extend || dx > extend || dy < -extend || dy > extend) {
+                return 0;
+            }
+            return distances[dy + extend][dx + extend];
+        }
     }
 
-    public double computeBoolean(final int x, final int y, Tile srcTile, double[] weights) {
-        final Rectangle sourceRect = srcTile.getRectangle();
-        ProductData srcData = srcTile.getRawSamples();
+    /**
+     * Ring sums and counts for the current centre pixel. Validity is given by the first band,
+     * pixels having the no-data value there are excluded from all bands.
+     */
+    private class Window {
+
+        private final Rectangle rect;
+        private final float[][] data;
+        private final float noDataValue;
+        private final int[] windowIndex;
+        private final int[] slideIndex;
+        // element 0 collects the pixels outside the window and the centre and is never used
+        private final int[] counts;
+        private final double[][] sums;
+        private int centreX;
+        private int centreY;
+        private boolean initialised;
 
-        if (x == 124 && y == 142) {
-            System.out.println("x,y = " + x + "," + y);
+        private Window(Rectangle rect, float[][] data, float noDataValue) {
+            this.rect = rect;
+            this.data = data;
+            this.noDataValue = noDataValue;
+            windowIndex = new int[tables.windowDx.length];
+            for (int i = 0; i < windowIndex.length; i++) {
+                windowIndex[i] = tables.windowDy[i] * rect.width + tables.windowDx[i];
+            }
+            slideIndex = new int[tables.slideDx.length];
+            for (int i = 0; i < slideIndex.length; i++) {
+                slideIndex[i] = tables.slideDy[i] * rect.width + tables.slideDx[i];
+            }
+            counts = new int[extend + 1];
+            sums = new double[data.length][extend + 1];
+        }
+
+        private void moveTo(int x, int y) {
+            final int steps = x - centreX;
+            if (initialised && y == centreY && steps >= 0 && steps * slideIndex.length < windowIndex.length) {
+                for (int i = 0; i < steps; i++) {
+                    centreX++;
+                    slide();
+                }
+            } else {
+                centreX = x;
+                centreY = y;
+                recompute();
+                initialised = true;
+            }
         }
 
-        int[] counts = new int[extend + 1];
-        float[] sum = new float[extend + 1];
-
-        for (int iy = 0; iy <= 2 * extend; iy++) {
-            int index = convertToIndex(x - extend, y + iy - extend, sourceRect);
-            final int[] distancesY = distances[iy];
-            for (int ix = 0; ix <= 2 * extend; ix++, index++) {
-                final int distance = distancesY[ix];
-                if (distance != 0) {
-                    final boolean value = srcData.getElemBooleanAt(index);
-                    if (value) {
-                        counts[distance]++;
-                        sum[distance] += 1.0;
+        private void recompute() {
+            final float[] validityData = data[0];
+            final int centreIndex = convertToIndex(centreX, centreY, rect);
+            for (int ring = 0; ring <= extend; ring++) {
+                counts[ring] = 0;
+            }
+            for (double[] bandSums : sums) {
+                for (int ring = 0; ring <= extend; ring++) {
+                    bandSums[ring] = 0.0;
+                }
+            }
+            for (int i = 0; i < windowIndex.length; i++) {
+                final int index = centreIndex + windowIndex[i];
+                if (validityData[index] != noDataValue) {
+                    final int ring = tables.windowRing[i];
+                    counts[ring]++;
+                    for (int bandIdx = 0; bandIdx < data.length; bandIdx++) {
+                        if (data[bandIdx] != null) {
+                            sums[bandIdx][ring] += data[bandIdx][index];
+                        }
                     }
                 }
             }
         }
-        double mean = (srcTile.getSampleBoolean(x, y) == true) ? weights[0] : 0.0;
-        for (int distance = 1; distance <= extend; distance++) {
-            if (counts[distance] > 0) {
-                mean += ((sum[distance] * weights[distance]) / counts[distance]);
+
+        private void slide() {
+            final float[] validityData = data[0];
+            final int centreIndex = convertToIndex(centreX, centreY, rect);
+            if (data.length == 1) {
+                final double[] bandSums = sums[0];
+                for (int i = 0; i < slideIndex.length; i++) {
+                    final float value = validityData[centreIndex + slideIndex[i]];
+                    if (value != noDataValue) {
+                        final int oldRing = tables.slideOldRing[i];
+                        final int newRing = tables.slideNewRing[i];
+                        counts[oldRing]--;
+                        counts[newRing]++;
+                        bandSums[oldRing] -= value;
+                        bandSums[newRing] += value;
+                    }
+                }
+                return;
+            }
+            for (int i = 0; i < slideIndex.length; i++) {
+                final int index = centreIndex + slideIndex[i];
+                if (validityData[index] != noDataValue) {
+                    final int oldRing = tables.slideOldRing[i];
+                    final int newRing = tables.slideNewRing[i];
+                    counts[oldRing]--;
+                    counts[newRing]++;
+                    for (int bandIdx = 0; bandIdx < data.length; bandIdx++) {
+                        if (data[bandIdx] != null) {
+                            final float value = data[bandIdx][index];
+                            sums[bandIdx][oldRing] -= value;
+                            sums[bandIdx][newRing] += value;
+                        }
+                    }
+                }
             }
         }
-        return mean;
-    }
 
-}
\ No newline at end of file
+        private double getRingMean(int bandIdx, double[] weights) {
+            final double[] bandSums = sums[bandIdx];
+            double mean = 0.0;
+            for (int distance = 1; distance <= extend; distance++) {
+                if (counts[distance] > 0) {
+                    mean += ((bandSums[distance] * weights[distance]) / counts[distance]);
+                }
+            }
+            return mean;
+        }
+    }
+}
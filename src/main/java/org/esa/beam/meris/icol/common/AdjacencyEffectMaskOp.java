@@ -35,11 +35,11 @@ import org.esa.beam.meris.icol.AeArea;
 import org.esa.beam.meris.icol.IcolConstants;
 import org.esa.beam.meris.icol.utils.LandsatUtils;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
+import org.esa.beam.meris.icol.utils.SuperTileCache;
 import org.esa.beam.util.BitSetter;
 import org.esa.beam.util.RectangleExtender;
 
 import java.awt.Rectangle;
-import java.awt.geom.Area;
 
 
 /**
@@ -63,10 +63,12 @@ public class AdjacencyEffectMaskOp extends Operator {
     private static final int FR_WIDTH = 100;
 
     private RectangleExtender rectCalculator;
+    private RectangleExtender landRectCalculator;
     private Rectangle relevantRect;
     private int aeWidth;
     private Band isLandBand;
     private Band isCoastlineBand;
+    private SuperTileCache<CoastlineMask> coastlineMaskCache;
 
     @SourceProduct(alias = "source")
     private Product sourceProduct;
@@ -149,6 +151,42 @@ public class AdjacencyEffectMaskOp extends Operator {
                                          sourceHeight - 2 * aeWidth);
         }
         rectCalculator = new RectangleExtender(new Rectangle(sourceWidth, sourceHeight), aeWidth, aeWidth);
+        // the coastline test of a pixel needs its neighbours, so the land mask is read with an extra pixel ring
+        landRectCalculator = new RectangleExtender(new Rectangle(sourceWidth, sourceHeight), aeWidth + 1, aeWidth + 1);
+        OperatorUtils.setPreferredTileSize(targetProduct, aeWidth, 1);
+        // the coastline mask is computed with the extra pixel ring of the land mask
+        final int superTileSize = SuperTileCache.computeSuperTileSize(targetProduct.getPreferredTileSize(),
+                                                                      aeWidth + 1);
+        coastlineMaskCache = new SuperTileCache<CoastlineMask>(sourceWidth, sourceHeight,
+                                                               superTileSize,
+                                                               new SuperTileCache.Loader<CoastlineMask>() {
+                                                                   public CoastlineMask load(Rectangle rectangle) {
+                                                                       return loadCoastlineMask(rectangle);
+                                                                   }
+                                                               });
+    }
+
+    /**
+     * Computes the coastline of a super-tile or target tile and its source extension. The land mask is read with
+     * an extra pixel ring, so that the coastline flag of a pixel only depends on the scene and not on the rectangle
+     * it is computed for.
+     */
+    private CoastlineMask loadCoastlineMask(Rectangle rectangle) {
+        final Rectangle sourceRect = rectCalculator.extend(rectangle);
+        final Rectangle landRect = landRectCalculator.extend(rectangle);
+        final Tile isLand = getSourceTile(isLandBand, landRect);
+        Tile isCoastline = null;
+        if (isCoastlineBand != null) {
+            isCoastline = getSourceTile(isCoastlineBand, sourceRect);
+        }
+        final boolean[] coastline = new boolean[sourceRect.width * sourceRect.height];
+        for (int y = sourceRect.y; y < sourceRect.y + sourceRect.height; y++) {
+            int index = (y - sourceRect.y) * sourceRect.width;
+            for (int x = sourceRect.x; x < sourceRect.x + sourceRect.width; x++, index++) {
+                coastline[index] = isCoastline(isLand, isCoastline, x, y);
+            }
+        }
+        return new CoastlineMask(sourceRect, coastline);
     }
 
     private FlagCoding createFlagCoding() {
@@ -170,21 +208,19 @@ public class AdjacencyEffectMaskOp extends Operator {
         Rectangle relevantTragetRect = targetRect.intersection(relevantRect);
         pm.beginTask("Processing frame...", sourceRect.height + relevantTragetRect.height + 3);
         try {
-            Tile isLand = getSourceTile(isLandBand, sourceRect);
-            Tile isCoastline = null;
-            if (isCoastlineBand != null) {
-                isCoastline = getSourceTile(isCoastlineBand, sourceRect);
-            }
+            // only the coastline is needed in the source extension, it is shared with the neighbouring tiles
+            final CoastlineMask coastlineMask = coastlineMaskCache.get(targetRect);
+            Tile isLand = getSourceTile(isLandBand, targetRect);
             Tile sza = getSourceTile(sourceProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME),
-                                     sourceRect);
+                                     targetRect);
 
             Tile detectorIndexTile = null;
             if (sourceProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME) != null) {
                 detectorIndexTile = getSourceTile(sourceProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME),
-                                                  sourceRect);
+                                                  targetRect);
             }
 
-            Area coastalArea = computeCoastalArea(pm, sourceRect, isLand, isCoastline);
+            boolean[] coastalZone = computeCoastalZone(coastlineMask, sourceRect, targetRect, aeWidth, pm);
             boolean correctOverLand = aeArea.correctOverLand();
             boolean correctInCoastalAreas = aeArea.correctCoastalArea();
             // todo: over land, apply AE algorithm everywhere except for cloud pixels.
@@ -205,14 +241,14 @@ public class AdjacencyEffectMaskOp extends Operator {
                         // if 'correctOverLand',  compute for both ocean and land ...
                         if (correctOverLand) {
                             // if 'correctInCoastalAreas',  check if pixel is in coastal area...
-                            if (correctInCoastalAreas && !coastalArea.contains(x, y)) {
+                            if (correctInCoastalAreas && !isInCoastalZone(coastalZone, targetRect, x, y)) {
                                 aeMask.setSample(x, y, 0);
                             } else {
                                 aeMask.setSample(x, y, 1);
                             }
                         } else {
                             if (isLand.getSampleBoolean(x, y) ||
-                                (correctInCoastalAreas && !coastalArea.contains(x, y))) {
+                                (correctInCoastalAreas && !isInCoastalZone(coastalZone, targetRect, x, y))) {
                                 aeMask.setSample(x, y, 0);
                             } else {
                                 aeMask.setSample(x, y, 1);
@@ -274,20 +310,62 @@ public class AdjacencyEffectMaskOp extends Operator {
     }
 
 
-    private Area computeCoastalArea(ProgressMonitor pm, Rectangle sourceRect, Tile land, Tile coastline) {
-        Rectangle box = new Rectangle();
-        Area coastalArea = new Area();
+    /**
+     * Dilates the coastline pixels of the source rectangle by a box of size <code>2 * aeWidth</code>, as the former
+     * union of one {@link java.awt.geom.Area} box per coastline pixel did: a pixel belongs to the coastal zone if
+     * there is a coastline pixel <code>(cx, cy)</code> with <code>x - aeWidth < cx <= x + aeWidth</code> and
+     * <code>y - aeWidth < cy <= y + aeWidth</code>. The box is separable, so the dilation is done along the rows
+     * and then along the columns, both by means of running sums.
+     *
+     * @return the coastal zone flags of the target rectangle
+     */
+    static boolean[] computeCoastalZone(CoastlineMask coastline, Rectangle sourceRect, Rectangle targetRect,
+                                        int aeWidth, ProgressMonitor pm) {
+        final int targetWidth = targetRect.width;
+        final int[] rowSums = new int[sourceRect.width + 1];
+        // running column sums of the row-dilated coastline, starting with a zero row
+        final int[] columnSums = new int[(sourceRect.height + 1) * targetWidth];
         for (int y = sourceRect.y; y < sourceRect.y + sourceRect.height; y++) {
             for (int x = sourceRect.x; x < sourceRect.x + sourceRect.width; x++) {
-                if (isCoastline(land, coastline, x, y)) {
-                    box.setBounds(x - aeWidth, y - aeWidth, 2 * aeWidth, 2 * aeWidth);
-                    Area area2 = new Area(box);
-                    coastalArea.add(area2);
-                }
+                final int i = x - sourceRect.x;
+                rowSums[i + 1] = rowSums[i] + (coastline.isCoastline(x, y) ? 1 : 0);
+            }
+            final int rowOffset = (y - sourceRect.y) * targetWidth;
+            for (int i = 0; i < targetWidth; i++) {
+                final int x = targetRect.x + i;
+                final boolean nearCoast = getCount(rowSums, 0, 1, x, sourceRect.x, sourceRect.width, aeWidth) > 0;
+                columnSums[rowOffset + targetWidth + i] = columnSums[rowOffset + i] + (nearCoast ? 1 : 0);
             }
             pm.worked(1);
         }
-        return coastalArea;
+
+        final boolean[] coastalZone = new boolean[targetWidth * targetRect.height];
+        for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
+            final int rowOffset = (y - targetRect.y) * targetWidth;
+            for (int i = 0; i < targetWidth; i++) {
+                coastalZone[rowOffset + i] = getCount(columnSums, i, targetWidth, y, sourceRect.y,
+                                                      sourceRect.height, aeWidth) > 0;
+            }
+        }
+        return coastalZone;
+    }
+
+    /**
+     * @return the number of pixels within <code>]pos - aeWidth, pos + aeWidth]</code>, clipped to
+     *         <code>[origin, origin + length[</code>, from the running sums stored at <code>offset + k * stride</code>
+     */
+    private static int getCount(int[] sums, int offset, int stride, int pos, int origin, int length,
+                                int aeWidth) {
+        final int from = Math.max(pos - aeWidth + 1, origin) - origin;
+        final int to = Math.min(pos + aeWidth, origin + length - 1) - origin;
+        if (from > to) {
+            return 0;
+        }
+        return sums[offset + (to + 1) * stride] - sums[offset + from * stride];
+    }
+
+    private static boolean isInCoastalZone(boolean[] coastalZone, Rectangle targetRect, int x, int y) {
+        return coastalZone[(y - targetRect.y) * targetRect.width + (x - targetRect.x)];
     }
 
     private boolean isCoastline(Tile isLandTile, Tile coastline, int x, int y) {
@@ -333,6 +411,24 @@ public class AdjacencyEffectMaskOp extends Operator {
         return false;
     }
 
+    /**
+     * The coastline pixels of a super-tile and its source extension.
+     */
+    static class CoastlineMask {
+
+        private final Rectangle rectangle;
+        private final boolean[] coastline;
+
+        CoastlineMask(Rectangle rectangle, boolean[] coastline) {
+            this.rectangle = rectangle;
+            this.coastline = coastline;
+        }
+
+        boolean isCoastline(int x, int y) {
+            return coastline[(y - rectangle.y) * rectangle.width + (x - rectangle.x)];
+        }
+    }
+
     public static class Spi extends OperatorSpi {
 
         public Spi() {
@@ -16,7 +16,6 @@
  */
 package org.esa.beam.meris.icol.common;
 
-import com.bc.ceres.core.NullProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
@@ -36,25 +35,22 @@ import org.esa.beam.meris.brr.GaseousCorrectionOp;
 import org.esa.beam.meris.brr.LandClassificationOp;
 import org.esa.beam.meris.icol.CoeffW;
 import org.esa.beam.meris.icol.FresnelReflectionCoefficient;
+import org.esa.beam.meris.icol.IcolAuxdata;
 import org.esa.beam.meris.icol.IcolConstants;
 import org.esa.beam.meris.icol.IcolConvolutionAlgo;
+import org.esa.beam.meris.icol.IcolConvolutionBoxSum;
+import org.esa.beam.meris.icol.IcolConvolutionFft;
 import org.esa.beam.meris.icol.IcolConvolutionJaiConvolve;
 import org.esa.beam.meris.icol.IcolConvolutionKernellLoop;
 import org.esa.beam.meris.icol.Instrument;
 import org.esa.beam.meris.icol.meris.CloudLandMaskOp;
 import org.esa.beam.meris.icol.utils.IcolUtils;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
-import org.esa.beam.util.ResourceInstaller;
-import org.esa.beam.util.SystemUtils;
 import org.esa.beam.util.math.MathUtils;
 
 import javax.media.jai.BorderExtender;
 import java.awt.Rectangle;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.net.URL;
 import java.util.Map;
 
 
@@ -126,12 +122,19 @@ public class AdjacencyEffectRayleighOp extends Operator {
     private boolean openclConvolution = true;
     @Parameter(defaultValue = "true")
     private boolean reshapedConvolution;
+    @Parameter(defaultValue = "false")
+    private boolean fftConvolution;
+    @Parameter(defaultValue = "false")
+    private boolean boxSumConvolution;
     @Parameter
     private boolean exportSeparateDebugBands = false;
 
 
     @Override
     public void initialize() throws OperatorException {
+        if (fftConvolution && boxSumConvolution) {
+            throw new OperatorException("Only one of 'fftConvolution' and 'boxSumConvolution' may be set.");
+        }
         try {
             loadFresnelReflectionCoefficient();
         } catch (IOException e) {
@@ -146,24 +149,20 @@ public class AdjacencyEffectRayleighOp extends Operator {
     }
 
     private void loadFresnelReflectionCoefficient() throws IOException {
-        String auxdataSrcPath = "auxdata/icol";
-        final String auxdataDestPath = ".beam/beam-meris-icol/" + auxdataSrcPath;
-        File auxdataTargetDir = new File(SystemUtils.getUserHomeDir(), auxdataDestPath);
-        URL sourceUrl = ResourceInstaller.getSourceUrl(this.getClass());
-
-        ResourceInstaller resourceInstaller = new ResourceInstaller(sourceUrl, auxdataSrcPath, auxdataTargetDir);
-        resourceInstaller.install(".*", new NullProgressMonitor());
-
-        File fresnelFile = new File(auxdataTargetDir, FresnelReflectionCoefficient.FRESNEL_COEFF);
-        final Reader reader = new FileReader(fresnelFile);
-        fresnelCoefficient = new FresnelReflectionCoefficient(reader);
-
-        coeffW = new CoeffW(auxdataTargetDir, reshapedConvolution, IcolConstants.AE_CORRECTION_MODE_RAYLEIGH);
+        final IcolAuxdata auxdata = IcolAuxdata.getInstance();
+        fresnelCoefficient = auxdata.getFresnelCoefficient();
+        coeffW = auxdata.getCoeffW(IcolConstants.AE_CORRECTION_MODE_RAYLEIGH);
     }
 
     private void createTargetProduct() {
         String productType = l1bProduct.getProductType();
-        if (reshapedConvolution) {
+        if (fftConvolution) {
+            icolConvolutionAlgo = new IcolConvolutionFft(l1bProduct, coeffW);
+            lcFlagConvAlgo = icolConvolutionAlgo;
+        } else if (boxSumConvolution) {
+            icolConvolutionAlgo = new IcolConvolutionBoxSum(l1bProduct, coeffW);
+            lcFlagConvAlgo = icolConvolutionAlgo;
+        } else if (reshapedConvolution) {
             icolConvolutionAlgo = new IcolConvolutionJaiConvolve(ray1bProduct, productType, coeffW, "brr_", 1,
                                                                  instrument.numSpectralBands,
                                                                  instrument.bandsToSkip);
@@ -175,6 +174,7 @@ public class AdjacencyEffectRayleighOp extends Operator {
 
         targetProduct = OperatorUtils.createCompatibleProduct(l1bProduct, "ae_ray_" + l1bProduct.getName(),
                                                               "MER_AE_RAY");
+        OperatorUtils.setPreferredTileSize(targetProduct, icolConvolutionAlgo, instrument.numSpectralBands);
         aeRayBands = addBandGroup("rho_aeRay");
         rhoAeRcBands = addBandGroup("rho_ray_aerc");
         rhoAgBracketBands = addBandGroup("rho_ag_bracket");
@@ -201,9 +201,9 @@ public class AdjacencyEffectRayleighOp extends Operator {
         pm.beginTask("Processing frame...", targetRect.height + 1);
         try {
             // sources
-            Tile isLand = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.LAND_MASK_NAME), targetRect,
+            Tile isLand = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.LAND_MASK_NAME), sourceRect,
                                         BorderExtender.createInstance(BorderExtender.BORDER_COPY));
-            Tile isCloud = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.CLOUD_MASK_NAME), targetRect,
+            Tile isCloud = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.CLOUD_MASK_NAME), sourceRect,
                                          BorderExtender.createInstance(BorderExtender.BORDER_COPY));
 
             Tile sza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME), targetRect,
@@ -3,7 +3,6 @@ package org.esa.beam.meris.icol.common;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
-import org.esa.beam.framework.datamodel.GeoCoding;
 import org.esa.beam.framework.datamodel.GeoPos;
 import org.esa.beam.framework.datamodel.PixelPos;
 import org.esa.beam.framework.datamodel.Product;
@@ -16,8 +15,10 @@ import org.esa.beam.framework.gpf.annotations.OperatorMetadata;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.meris.brr.CloudClassificationOp;
+import org.esa.beam.meris.icol.utils.GeoCodingCache;
 import org.esa.beam.meris.icol.utils.NavigationUtils;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
+import org.esa.beam.meris.icol.utils.SuperTileCache;
 import org.esa.beam.util.RectangleExtender;
 import org.esa.beam.util.ShapeRasterizer;
 import org.esa.beam.util.math.MathUtils;
@@ -47,7 +48,8 @@ public class CloudDistanceOp extends Operator {
     private static final int SOURCE_EXTEND_FR = 320;
 
     private RectangleExtender rectCalculator;
-    private GeoCoding geocoding;
+    private GeoCodingCache geocoding;
+    private SuperTileCache<CloudMask> cloudMaskCache;
 
     @SourceProduct(alias = "source")
     private Product sourceProduct;
@@ -73,10 +75,36 @@ public class CloudDistanceOp extends Operator {
         band.setNoDataValue(NO_DATA_VALUE);
         band.setNoDataValueUsed(true);
 
-        geocoding = sourceProduct.getGeoCoding();
+        geocoding = new GeoCodingCache(sourceProduct.getGeoCoding(), sourceProduct.getSceneRasterWidth(),
+                                       sourceProduct.getSceneRasterHeight());
         rectCalculator = new RectangleExtender(
                 new Rectangle(sourceProduct.getSceneRasterWidth(), sourceProduct.getSceneRasterHeight()),
                 sourceExtend, sourceExtend);
+        OperatorUtils.setPreferredTileSize(targetProduct, sourceExtend, 1);
+        final int superTileSize = SuperTileCache.computeSuperTileSize(targetProduct.getPreferredTileSize(),
+                                                                      sourceExtend);
+        cloudMaskCache = new SuperTileCache<CloudMask>(sourceProduct.getSceneRasterWidth(),
+                                                       sourceProduct.getSceneRasterHeight(),
+                                                       superTileSize,
+                                                       new SuperTileCache.Loader<CloudMask>() {
+                                                           public CloudMask load(Rectangle rectangle) {
+                                                               return loadCloudMask(rectangle);
+                                                           }
+                                                       });
+    }
+
+    private CloudMask loadCloudMask(Rectangle rectangle) {
+        final Rectangle sourceRectangle = rectCalculator.extend(rectangle);
+        final Tile cloudFlags = getSourceTile(cloudProduct.getBand(CloudClassificationOp.CLOUD_FLAGS),
+                                              sourceRectangle);
+        final boolean[] cloud = new boolean[sourceRectangle.width * sourceRectangle.height];
+        for (int y = sourceRectangle.y; y < sourceRectangle.y + sourceRectangle.height; y++) {
+            int index = (y - sourceRectangle.y) * sourceRectangle.width;
+            for (int x = sourceRectangle.x; x < sourceRectangle.x + sourceRectangle.width; x++, index++) {
+                cloud[index] = cloudFlags.getSampleBit(x, y, CloudClassificationOp.F_CLOUD);
+            }
+        }
+        return new CloudMask(sourceRectangle, cloud);
     }
 
     @Override
@@ -88,18 +116,20 @@ public class CloudDistanceOp extends Operator {
         try {
             Tile saa = getSourceTile(sourceProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME),
                                      targetRectangle);
-            Tile cloudFlags = getSourceTile(cloudProduct.getBand(CloudClassificationOp.CLOUD_FLAGS), sourceRectangle);
+            // the cloud mask of the super-tile, shared with the neighbouring target tiles
+            final CloudMask cloudMask = cloudMaskCache.get(targetRectangle);
 
             PixelPos startPix = new PixelPos();
             for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
                 startPix.y = y;
                 for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
-                    if (!cloudFlags.getSampleBit(x, y, CloudClassificationOp.F_CLOUD)) {
+                    if (!cloudMask.isCloud(x, y)) {
                         startPix.x = x;
                         double saaRad = saa.getSampleDouble(x, y) * MathUtils.DTOR + Math.PI;
                         final GeoPos startGeoPos = geocoding.getGeoPos(startPix, null);
 
-                        cloudDistance.setSample(x, y, computeDistance(startPix, startGeoPos, saaRad, cloudFlags));
+                        cloudDistance.setSample(x, y, computeDistance(startPix, startGeoPos, saaRad, cloudMask,
+                                                                      sourceRectangle));
                     } else {
                         cloudDistance.setSample(x, y, NO_DATA_VALUE);
                     }
@@ -112,7 +142,8 @@ public class CloudDistanceOp extends Operator {
         }
     }
 
-    private int computeDistance(final PixelPos startPix, final GeoPos startGeoPos, double saaRad, Tile cloudFlags) {
+    private int computeDistance(final PixelPos startPix, final GeoPos startGeoPos, double saaRad, CloudMask cloudMask,
+                                Rectangle sourceRectangle) {
         int trialLineLength = MAX_LINE_LENGTH;
         PixelPos lineEndPix;
         do {
@@ -128,9 +159,9 @@ public class CloudDistanceOp extends Operator {
         if (lineEndPix.x == -1 || lineEndPix.y == -1) {
             return NO_DATA_VALUE;
         } else {
-            final PixelPos pixelPos = findFirstCloudPix(startPix, lineEndPix, cloudFlags);
+            final PixelPos pixelPos = findFirstCloudPix(startPix, lineEndPix, cloudMask, sourceRectangle);
             if (pixelPos != null) {
-                return (int) NavigationUtils.distanceInMeters(geocoding, startPix, pixelPos);
+                return (int) NavigationUtils.distanceInMeters(startGeoPos, geocoding.getGeoPos(pixelPos, null));
             } else {
                 return NO_DATA_VALUE;
             }
@@ -138,17 +169,16 @@ public class CloudDistanceOp extends Operator {
     }
 
     private PixelPos findFirstCloudPix(final PixelPos startPixel, final PixelPos endPixel,
-                                       final Tile cloudFlags) {
+                                       final CloudMask cloudMask, final Rectangle isCloudRect) {
         ShapeRasterizer.LineRasterizer lineRasterizer = new ShapeRasterizer.BresenhamLineRasterizer();
         final AtomicReference<PixelPos> result = new AtomicReference<PixelPos>();
-        final Rectangle isCloudRect = cloudFlags.getRectangle();
         ShapeRasterizer.LinePixelVisitor visitor = new ShapeRasterizer.LinePixelVisitor() {
 
             @Override
             public void visit(int x, int y) {
                 if (result.get() == null &&
                     isCloudRect.contains(x, y) &&
-                    cloudFlags.getSampleBit(x, y, CloudClassificationOp.F_CLOUD)) {
+                    cloudMask.isCloud(x, y)) {
                     result.set(new PixelPos(x, y));
                 }
             }
@@ -163,6 +193,25 @@ public class CloudDistanceOp extends Operator {
     }
 
 
+    /**
+     * The cloud flags of a super-tile and its source extension.
+     */
+    private static class CloudMask {
+
+        private final Rectangle rectangle;
+        private final boolean[] cloud;
+
+        CloudMask(Rectangle rectangle, boolean[] cloud) {
+            this.rectangle = rectangle;
+            this.cloud = cloud;
+        }
+
+        boolean isCloud(int x, int y) {
+            return cloud[(y - rectangle.y) * rectangle.width + (x - rectangle.x)];
+        }
+    }
+
+
     public static class Spi extends OperatorSpi {
 
         public Spi() {
@@ -3,7 +3,6 @@ package org.esa.beam.meris.icol.common;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
-import org.esa.beam.framework.datamodel.GeoCoding;
 import org.esa.beam.framework.datamodel.GeoPos;
 import org.esa.beam.framework.datamodel.PixelPos;
 import org.esa.beam.framework.datamodel.Product;
@@ -17,15 +16,15 @@ import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.standard.BandMathsOp;
+import org.esa.beam.meris.icol.utils.GeoCodingCache;
 import org.esa.beam.meris.icol.utils.NavigationUtils;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
+import org.esa.beam.meris.icol.utils.SuperTileCache;
 import org.esa.beam.util.RectangleExtender;
-import org.esa.beam.util.ShapeRasterizer;
 import org.esa.beam.util.math.MathUtils;
 
 import java.awt.Rectangle;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Operator for coast distance computation for AE correction.
@@ -47,14 +46,14 @@ public class CoastDistanceOp extends Operator {
     private static final int MAX_LINE_LENGTH = 100000;
     private static final int SOURCE_EXTEND_RR = 80;
     private static final int SOURCE_EXTEND_FR = 320;
-    private int[] noDataDistances;
 
     private RectangleExtender rectCalculator;
     private int sourceExtend;
-    private GeoCoding geocoding;
+    private GeoCodingCache geocoding;
     private Band isLandBand;
     private Band isWaterBand;
     private Band[] distanceBands;
+    private SuperTileCache<SourceMasks> sourceMasksCache;
 
     @SourceProduct(alias = "source")
     private Product sourceProduct;
@@ -84,18 +83,19 @@ public class CoastDistanceOp extends Operator {
             sourceExtend = SOURCE_EXTEND_FR;
         }
         distanceBands = new Band[numDistances];
-        noDataDistances = new int[numDistances];
         for (int i = 0; i < numDistances; i++) {
             Band band = targetProduct.addBand(COAST_DISTANCE + "_" + (i + 1), ProductData.TYPE_INT32);
             band.setNoDataValue(NO_DATA_VALUE);
             band.setNoDataValueUsed(true);
             distanceBands[i] = band;
-            noDataDistances[i] = NO_DATA_VALUE;
         }
-        geocoding = sourceProduct.getGeoCoding();
+        geocoding = new GeoCodingCache(sourceProduct.getGeoCoding(), sourceProduct.getSceneRasterWidth(),
+                                       sourceProduct.getSceneRasterHeight());
         rectCalculator = new RectangleExtender(
                 new Rectangle(sourceProduct.getSceneRasterWidth(), sourceProduct.getSceneRasterHeight()), sourceExtend,
                 sourceExtend);
+        // two extended source tiles are read per target tile, the land mask and the water mask
+        OperatorUtils.setPreferredTileSize(targetProduct, sourceExtend, 2);
 
         BandMathsOp bandMathOpLand = BandMathsOp.createBooleanExpressionBand(landExpression, landProduct);
         isLandBand = bandMathOpLand.getTargetProduct().getBandAt(0);
@@ -103,6 +103,31 @@ public class CoastDistanceOp extends Operator {
         BandMathsOp bandMathOpWater = BandMathsOp.createBooleanExpressionBand(waterExpression, landProduct);
         isWaterBand = bandMathOpWater.getTargetProduct().getBandAt(0);
 
+        final int superTileSize = SuperTileCache.computeSuperTileSize(targetProduct.getPreferredTileSize(),
+                                                                      sourceExtend);
+        sourceMasksCache = new SuperTileCache<SourceMasks>(sourceProduct.getSceneRasterWidth(),
+                                                           sourceProduct.getSceneRasterHeight(),
+                                                           superTileSize,
+                                                           new SuperTileCache.Loader<SourceMasks>() {
+                                                               public SourceMasks load(Rectangle rectangle) {
+                                                                   return loadSourceMasks(rectangle);
+                                                               }
+                                                           });
+    }
+
+    private SourceMasks loadSourceMasks(Rectangle rectangle) {
+        final Rectangle sourceRectangle = rectCalculator.extend(rectangle);
+        final Tile isLand = getSourceTile(isLandBand, sourceRectangle);
+        final Tile isWater = getSourceTile(isWaterBand, sourceRectangle);
+        final SourceMasks masks = new SourceMasks(sourceRectangle);
+        for (int y = sourceRectangle.y; y < sourceRectangle.y + sourceRectangle.height; y++) {
+            int index = (y - sourceRectangle.y) * sourceRectangle.width;
+            for (int x = sourceRectangle.x; x < sourceRectangle.x + sourceRectangle.width; x++, index++) {
+                masks.land[index] = isLand.getSampleBoolean(x, y);
+                masks.water[index] = isWater.getSampleBoolean(x, y);
+            }
+        }
+        return masks;
     }
 
     @Override
@@ -113,43 +138,102 @@ public class CoastDistanceOp extends Operator {
         try {
             Tile saa = getSourceTile(sourceProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME),
                                      targetRectangle);
-            Tile isLand = getSourceTile(isLandBand, sourceRectangle);
-            Tile isWater = getSourceTile(isWaterBand, sourceRectangle);
+            // the masks of the super-tile, shared with the neighbouring target tiles
+            final SourceMasks sourceMasks = sourceMasksCache.get(targetRectangle);
 
             Tile[] distanceTiles = new Tile[numDistances];
             for (int i = 0; i < numDistances; i++) {
                 Band band = distanceBands[i];
                 distanceTiles[i] = targetTiles.get(band);
             }
-            Tile[] waterPixelMasks = new Tile[numDistances];
-            Tile[] landPixelMasks = new Tile[numDistances];
-            for (int i = 0; i < numDistances; i++) {
-                waterPixelMasks[i] = (i % 2 == 0) ? isLand : isWater;
-                landPixelMasks[i] = (i % 2 == 0) ? isWater : isLand;
+
+            // the masks are indexed within the super-tile, the lines are traced within the source rectangle
+            final Rectangle maskRectangle = sourceMasks.rectangle;
+            final int maskWidth = maskRectangle.width;
+            final boolean[] landMask = sourceMasks.land;
+            final boolean[] waterMask = sourceMasks.water;
+            pm.worked(1);
+
+            // the sun azimuth hardly changes within a tile, so all pixels are traced along the same direction
+            final double[] tileDirection = computeSweepDirection(targetRectangle.x + targetRectangle.width / 2,
+                                                                 targetRectangle.y + targetRectangle.height / 2,
+                                                                 saa);
+            LineSweep tileSweep = null;
+            int[] firstLand = null;
+            int[] firstWater = null;
+            if (tileDirection != null) {
+                tileSweep = new LineSweep(sourceRectangle, maskRectangle, tileDirection[0], tileDirection[1]);
+                firstLand = tileSweep.findFirst(landMask);
+                firstWater = tileSweep.findFirst(waterMask);
             }
+            pm.worked(2);
 
             PixelPos startPix = new PixelPos();
+            PixelPos endPix = new PixelPos();
+            GeoPos startGeoPos = new GeoPos();
+            GeoPos endGeoPos = new GeoPos();
             for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
                 startPix.y = y;
                 for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
-                    double saaRad = 0;
-                    GeoPos startGeoPos = null;
-                    if (isWater.getSampleBoolean(x, y) || (isLand.getSampleBoolean(x, y) && correctOverLand)) {
-                        startPix.x = x;
-                        saaRad = saa.getSampleDouble(x, y) * MathUtils.DTOR + Math.PI;
-                        startGeoPos = geocoding.getGeoPos(startPix, null);
+                    startPix.x = x;
+                    final int index = (y - maskRectangle.y) * maskWidth + (x - maskRectangle.x);
+                    // the first transition is searched in 'first', the second one in 'second' etc.
+                    final boolean[] firstMask;
+                    final boolean[] secondMask;
+                    final int[] firstIndices;
+                    final int[] secondIndices;
+                    if (waterMask[index]) {
+                        firstMask = landMask;
+                        secondMask = waterMask;
+                        firstIndices = firstLand;
+                        secondIndices = firstWater;
+                    } else if (landMask[index] && correctOverLand) {
+                        firstMask = waterMask;
+                        secondMask = landMask;
+                        firstIndices = firstWater;
+                        secondIndices = firstLand;
+                    } else {      // sth. neither flagged clearly as water nor land...
+                        setNoData(distanceTiles, x, y);
+                        continue;
                     }
 
-                    final int[] distances;
-                    if (isWater.getSampleBoolean(x, y)) {
-                        distances = computeDistance(startPix, startGeoPos, saaRad, waterPixelMasks);
-                    } else if (isLand.getSampleBoolean(x, y) && correctOverLand) {
-                        distances = computeDistance(startPix, startGeoPos, saaRad, landPixelMasks);
-                    } else {      // sth. neither flagged clearly as water nor land...
-                        distances = noDataDistances;
+                    final LineSweep sweep;
+                    if (tileSweep != null) {
+                        sweep = tileSweep;
+                    } else {
+                        // no direction for the tile centre (e.g. the line leaves the scene there), so the pixel
+                        // is traced along its own direction, as it was done for every pixel before
+                        final double[] direction = computeSweepDirection(x, y, saa);
+                        if (direction == null) {
+                            setNoData(distanceTiles, x, y);
+                            continue;
+                        }
+                        sweep = new LineSweep(sourceRectangle, maskRectangle, direction[0], direction[1]);
+                    }
+                    int maskIndex = findFirst(sweep, firstMask, firstIndices, index);
+                    if (maskIndex >= 0) {
+                        startGeoPos = geocoding.getGeoPos(startPix, startGeoPos);
                     }
                     for (int i = 0; i < numDistances; i++) {
-                        distanceTiles[i].setSample(x, y, distances[i]);
+                        int distance = NO_DATA_VALUE;
+                        if (maskIndex >= 0) {
+                            endPix.x = maskRectangle.x + maskIndex % maskWidth;
+                            endPix.y = maskRectangle.y + maskIndex / maskWidth;
+                            endGeoPos = geocoding.getGeoPos(endPix, endGeoPos);
+                            distance = (int) NavigationUtils.distanceInMeters(startGeoPos, endGeoPos);
+                            if (distance > MAX_LINE_LENGTH) {
+                                distance = NO_DATA_VALUE;
+                            }
+                            final int nextIndex = sweep.getNext(maskIndex);
+                            if (nextIndex < 0) {
+                                maskIndex = -1;
+                            } else if (i % 2 == 0) {
+                                maskIndex = findFirst(sweep, secondMask, secondIndices, nextIndex);
+                            } else {
+                                maskIndex = findFirst(sweep, firstMask, firstIndices, nextIndex);
+                            }
+                        }
+                        distanceTiles[i].setSample(x, y, distance);
                     }
                 }
                 checkForCancellation();
@@ -160,7 +244,32 @@ public class CoastDistanceOp extends Operator {
         }
     }
 
-    private int[] computeDistance(final PixelPos startPix, final GeoPos startGeoPos, double saaRad, Tile[] masks) {
+    private void setNoData(Tile[] distanceTiles, int x, int y) {
+        for (Tile distanceTile : distanceTiles) {
+            distanceTile.setSample(x, y, NO_DATA_VALUE);
+        }
+    }
+
+    /**
+     * @param first - the first mask pixels precomputed along the sweep of the tile, or <code>null</code> if the
+     *              sweep is the one of a single pixel
+     * @return the index of the first mask pixel along the line, starting at the given index, or -1
+     */
+    private static int findFirst(LineSweep sweep, boolean[] mask, int[] first, int index) {
+        return first != null ? sweep.getFirst(first, index) : sweep.findFirst(mask, index);
+    }
+
+    /**
+     * Computes the direction (in pixel coordinates) of the line towards the sun for a pixel, in the same way as
+     * it was done for every pixel before.
+     *
+     * @return the normalised direction or <code>null</code> if it cannot be determined
+     */
+    private double[] computeSweepDirection(int x, int y, Tile saa) {
+        final PixelPos startPix = new PixelPos(x, y);
+        final double saaRad = saa.getSampleDouble(x, y) * MathUtils.DTOR + Math.PI;
+        final GeoPos startGeoPos = geocoding.getGeoPos(startPix, null);
+
         int trialLineLength = MAX_LINE_LENGTH;
         PixelPos lineEndPix;
         do {
@@ -174,62 +283,153 @@ public class CoastDistanceOp extends Operator {
         } while (trialLineLength > 0);
 
         if (lineEndPix.x == -1 || lineEndPix.y == -1) {
-            return noDataDistances;
-        } else {
-            final PixelPos[] pixelPos = findMaskPixels(startPix, lineEndPix, masks);
-            int[] distances = new int[numDistances];
-            for (int i = 0; i < distances.length; i++) {
-                final PixelPos endPix = pixelPos[i];
-                if (endPix != null) {
-                    distances[i] = (int) NavigationUtils.distanceInMeters(geocoding, startPix, endPix);
-                } else {
-                    distances[i] = NO_DATA_VALUE;
-                }
-            }
-            return distances;
+            return null;
+        }
+        final double dx = lineEndPix.x - startPix.x;
+        final double dy = lineEndPix.y - startPix.y;
+        final double length = Math.sqrt(dx * dx + dy * dy);
+        if (length == 0.0 || Double.isNaN(length)) {
+            return null;
         }
+        return new double[]{dx / length, dy / length};
     }
 
-    public PixelPos[] findMaskPixels(final PixelPos startPixel, final PixelPos endPixel, final Tile[] masks) {
-        ShapeRasterizer.LineRasterizer lineRasterizer = new ShapeRasterizer.BresenhamLineRasterizer();
-        ZmaxPixelVisitor visitor = new ZmaxPixelVisitor(numDistances, masks);
+    /**
+     * The land and water masks of a super-tile and its source extension.
+     */
+    private static class SourceMasks {
 
-        lineRasterizer.rasterize(MathUtils.floorInt(startPixel.x),
-                                 MathUtils.floorInt(startPixel.y),
-                                 MathUtils.floorInt(endPixel.x),
-                                 MathUtils.floorInt(endPixel.y),
-                                 visitor);
-        return visitor.getResults();
+        private final Rectangle rectangle;
+        private final boolean[] land;
+        private final boolean[] water;
+
+        SourceMasks(Rectangle rectangle) {
+            this.rectangle = rectangle;
+            land = new boolean[rectangle.width * rectangle.height];
+            water = new boolean[land.length];
+        }
     }
 
+    /**
+     * Directional distance transform along a fixed direction.
+     * <p/>
+     * The rectangle is covered by parallel digital lines: a line advances one pixel along the major axis
+     * (the one of the larger direction component) per step and the minor coordinate follows the rounded
+     * straight line. Every pixel lies on exactly one of these lines, so for all pixels the first mask pixel
+     * ahead can be found with a single sweep against the direction.
+     * <p/>
+     * Pixel indices refer to the mask arrays, which may cover a larger rectangle than the one of the lines.
+     */
+    static class LineSweep {
 
-    private static class ZmaxPixelVisitor implements ShapeRasterizer.LinePixelVisitor {
+        private final int width;
+        private final int height;
+        // width of the mask arrays and index of the upper left pixel of the rectangle within them
+        private final int stride;
+        private final int offset;
+        private final boolean majorX;
+        private final int majorStep;
+        private final double slope;
 
-        private final Tile[] masks;
-        private final Rectangle maskRect;
-        final PixelPos[] results;
-        final AtomicInteger index;
+        LineSweep(Rectangle rectangle, double directionX, double directionY) {
+            this(rectangle, rectangle, directionX, directionY);
+        }
 
-        ZmaxPixelVisitor(int numDistances, final Tile[] masks) {
-            this.masks = masks;
-            this.maskRect = masks[0].getRectangle();
-            this.results = new PixelPos[numDistances];
-            this.index = new AtomicInteger(0);
+        /**
+         * @param rectangle     - the rectangle covered by the lines
+         * @param maskRectangle - the rectangle covered by the mask arrays, it must contain the rectangle
+         * @param directionX    - the x component of the direction
+         * @param directionY    - the y component of the direction
+         */
+        LineSweep(Rectangle rectangle, Rectangle maskRectangle, double directionX, double directionY) {
+            width = rectangle.width;
+            height = rectangle.height;
+            stride = maskRectangle.width;
+            offset = (rectangle.y - maskRectangle.y) * stride + (rectangle.x - maskRectangle.x);
+            majorX = Math.abs(directionX) >= Math.abs(directionY);
+            final double major = majorX ? directionX : directionY;
+            final double minor = majorX ? directionY : directionX;
+            majorStep = major >= 0 ? 1 : -1;
+            slope = minor / Math.abs(major);
         }
 
-        PixelPos[] getResults() {
-            return results;
+        private int getMinorOffset(int major) {
+            return (int) Math.floor(major * majorStep * slope + 0.5);
         }
 
-        @Override
-        public void visit(int x, int y) {
-            final int i = index.get();
-            if (i < masks.length &&
-                results[i] == null &&
-                maskRect.contains(x, y) &&
-                masks[i].getSampleBoolean(x, y)) {
-                results[index.getAndIncrement()] = new PixelPos(x, y);
+        /**
+         * @param index - the index of a pixel of the rectangle
+         * @return the index of the next pixel along the line of the given pixel, or -1 if it is outside
+         */
+        int getNext(int index) {
+            final int x = (index - offset) % stride;
+            final int y = (index - offset) / stride;
+            final int nextX;
+            final int nextY;
+            if (majorX) {
+                nextX = x + majorStep;
+                nextY = y + getMinorOffset(nextX) - getMinorOffset(x);
+            } else {
+                nextY = y + majorStep;
+                nextX = x + getMinorOffset(nextY) - getMinorOffset(y);
+            }
+            return (nextX >= 0 && nextX < width && nextY >= 0 && nextY < height) ? offset + nextY * stride + nextX : -1;
+        }
+
+        /**
+         * @param mask  - the mask values
+         * @param index - the index of the start pixel
+         * @return the index of the first mask pixel along the line of the start pixel (including the pixel
+         *         itself), or -1 if there is none
+         */
+        int findFirst(boolean[] mask, int index) {
+            while (index >= 0 && !mask[index]) {
+                index = getNext(index);
+            }
+            return index;
+        }
+
+        /**
+         * @param first - the result of {@link #findFirst(boolean[])}
+         * @param index - the index of a pixel of the rectangle
+         * @return the index of the first mask pixel along the line of the pixel, or -1 if there is none
+         */
+        int getFirst(int[] first, int index) {
+            return first[((index - offset) / stride) * width + (index - offset) % stride];
+        }
+
+        /**
+         * @param mask - the mask values
+         * @return for every pixel of the rectangle (row by row) the index of the first mask pixel along its line
+         *         (including the pixel itself), or -1 if there is none
+         */
+        int[] findFirst(boolean[] mask) {
+            final int[] first = new int[width * height];
+            final int majorSize = majorX ? width : height;
+            final int minorSize = majorX ? height : width;
+            for (int n = 0; n < majorSize; n++) {
+                // start with the pixels furthest along the direction
+                final int major = (majorStep > 0) ? majorSize - 1 - n : n;
+                final int nextMajor = major + majorStep;
+                final boolean nextInside = nextMajor >= 0 && nextMajor < majorSize;
+                final int minorStep = nextInside ? getMinorOffset(nextMajor) - getMinorOffset(major) : 0;
+                for (int minor = 0; minor < minorSize; minor++) {
+                    final int index = majorX ? minor * width + major : major * width + minor;
+                    final int maskIndex = majorX ? offset + minor * stride + major : offset + major * stride + minor;
+                    if (mask[maskIndex]) {
+                        first[index] = maskIndex;
+                    } else {
+                        final int nextMinor = minor + minorStep;
+                        if (nextInside && nextMinor >= 0 && nextMinor < minorSize) {
+                            first[index] = majorX ? first[nextMinor * width + nextMajor] :
+                                           first[nextMajor * width + nextMinor];
+                        } else {
+                            first[index] = -1;
+                        }
+                    }
+                }
             }
+            return first;
         }
     }
 
@@ -1,6 +1,5 @@
 package org.esa.beam.meris.icol.landsat.common;
 
-import com.bc.ceres.core.NullProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
@@ -16,23 +15,18 @@ import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.standard.BandMathsOp;
 import org.esa.beam.meris.icol.*;
+import org.esa.beam.meris.icol.IcolAuxdata;
 import org.esa.beam.meris.icol.common.AdjacencyEffectMaskOp;
 import org.esa.beam.meris.icol.common.ZmaxOp;
 import org.esa.beam.meris.icol.landsat.tm.TmBasisOp;
 import org.esa.beam.meris.icol.utils.IcolUtils;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
 import org.esa.beam.util.BitSetter;
-import org.esa.beam.util.ResourceInstaller;
-import org.esa.beam.util.SystemUtils;
 import org.esa.beam.util.math.MathUtils;
 
 import javax.media.jai.BorderExtender;
 import java.awt.*;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.net.URL;
 import java.util.Map;
 
 /**
@@ -84,6 +78,8 @@ public class AeAerosolOp extends TmBasisOp {
     private int iaerConv;
     @Parameter(defaultValue = "false")
     private boolean reshapedConvolution;
+    @Parameter(defaultValue = "false")
+    private boolean fftConvolution;
     @Parameter
     private String landExpression;
     @Parameter
@@ -150,16 +146,15 @@ public class AeAerosolOp extends TmBasisOp {
 
         String productType = l1bProduct.getProductType();
 
-        if (reshapedConvolution) {
+        if (fftConvolution) {
+            icolConvolutionAlgo = new IcolConvolutionFft(l1bProduct, coeffW);
+        } else if (reshapedConvolution) {
             icolConvolutionAlgo = new IcolConvolutionJaiConvolve(aeRayProduct, productType, coeffW, "rho_ray_aerc_", iaerConv,
                                                                  numSpectralBands, instrument.bandsToSkip);
         } else {
             icolConvolutionAlgo = new IcolConvolutionKernellLoop(l1bProduct, coeffW, IcolConstants.AE_CORRECTION_MODE_AEROSOL);
         }
 
-
-        aerosolScatteringFunctions = new AerosolScatteringFunctions();
-
         BandMathsOp bandArithmeticOp =
                 BandMathsOp.createBooleanExpressionBand(landExpression, landProduct);
         isLandBand = bandArithmeticOp.getTargetProduct().getBandAt(0);
@@ -211,6 +206,9 @@ public class AeAerosolOp extends TmBasisOp {
         // Landsat5 equivalents: TM4 (865, 775), TM3 (705), to be discussed
         double[] rhoBrr865 = new double[17];     // B13
 
+        final double[] tauaPair = new double[2];
+        final AerosolScatteringFunctions.RVBatch rvBatch = new AerosolScatteringFunctions.RVBatch(tauaPair.length);
+
         try {
             for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
                 for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++) {
@@ -295,20 +293,20 @@ public class AeAerosolOp extends TmBasisOp {
 
                         aot = userAot865;
                         searchIAOT = MathUtils.floorInt(aot * 10) + 1;  // RS, 21/12/2010
-                        for (int iiaot = searchIAOT; iiaot <= searchIAOT + 1; iiaot++) {
-                            taua = tauaConst * iiaot;
-                            AerosolScatteringFunctions.RV rv =
-                                    aerosolScatteringFunctions.aerosol_f(taua,
-                                                                         iaer,
-                                                                         pab,
-                                                                         sza.getSampleFloat(x, y),
-                                                                         vza.getSampleFloat(x, y),
-                                                                         phi);
+                        tauaPair[0] = tauaConst * searchIAOT;
+                        tauaPair[1] = tauaConst * (searchIAOT + 1);
+                        aerosolScatteringFunctions.aerosol_f(tauaPair, tauaPair.length, iaer, pab,
+                                                             sza.getSampleFloat(x, y),
+                                                             vza.getSampleFloat(x, y),
+                                                             phi, rvBatch);
+                        for (int i = 0; i < tauaPair.length; i++) {
+                            taua = tauaPair[i];
                             //  - this reflects ICOL D6a ATBD, eq. (2): rhoa = rho_a, rv.rhoa = rho_a0 !!!
-                            rhoa0 = rv.rhoa;
+                            rhoa0 = rvBatch.rhoa[i];
                             corrFac = 1.0 + paerFB * (r1v + r1s * (1.0 - zmaxPart - zmaxCloudPart));
                             rhoa = rhoa0 * corrFac;
-                            rhoBrr865[iiaot] = rhoa + rhoBrrBracket865 * rv.tds * (rv.tus - Math.exp(-taua / muv));
+                            rhoBrr865[searchIAOT + i] = rhoa + rhoBrrBracket865 * rvBatch.tds[i] *
+                                                               (rvBatch.tus[i] - Math.exp(-taua / muv));
                         }
                         // end 'old' case 1 water
 
@@ -328,33 +326,27 @@ public class AeAerosolOp extends TmBasisOp {
                                 final float rhoRaecIwvl = rhoRaec[iwvl].getSampleFloat(x, y);
                                 final float wvl = effectiveWavelengths[iwvl];
 
-                                //Compute the aerosols functions for the first aot
+                                //Compute the aerosols functions for both aots
                                 final double taua1 = 0.1 * searchIAOT * Math.pow((550.0 / wvl), (iaer / 10.0));
-                                final AerosolScatteringFunctions.RV rv1 =
-                                        aerosolScatteringFunctions.aerosol_f(taua1, iaer, pab,
-                                                                             sza.getSampleFloat(x, y),
-                                                                             vza.getSampleFloat(x, y),
-                                                                             phi);
-
-                                final double downwellingTransmittanceTerm = rv1.tds / (1.0 - roAerMean * rv1.sa);
+                                final double taua2 = 0.1 * (searchIAOT + 1) * Math.pow((550.0 / wvl), (iaer / 10.0));
+                                tauaPair[0] = taua1;
+                                tauaPair[1] = taua2;
+                                aerosolScatteringFunctions.aerosol_f(tauaPair, tauaPair.length, iaer, pab,
+                                                                     sza.getSampleFloat(x, y),
+                                                                     vza.getSampleFloat(x, y),
+                                                                     phi, rvBatch);
+
+                                final double downwellingTransmittanceTerm = rvBatch.tds[0] / (1.0 - roAerMean * rvBatch.sa[0]);
                                 double aerosol1 = (roAerMean - rhoRaecIwvl) * downwellingTransmittanceTerm;
-                                final double upwellingTransmittanceTerm = rv1.tus - Math.exp(-taua1 / muv);
+                                final double upwellingTransmittanceTerm = rvBatch.tus[0] - Math.exp(-taua1 / muv);
                                 aerosol1 *= upwellingTransmittanceTerm;
 
-                                final double fresnel1 = rv1.rhoa * paerFB * r1s * (zmaxPart + zmaxCloudPart);
+                                final double fresnel1 = rvBatch.rhoa[0] * paerFB * r1s * (zmaxPart + zmaxCloudPart);
                                 final double aea1 = aerosol1 - fresnel1;
 
-                                //Compute the aerosols functions for the second aot
-                                final double taua2 = 0.1 * (searchIAOT + 1) * Math.pow((550.0 / wvl), (iaer / 10.0));
-                                final AerosolScatteringFunctions.RV rv2 =
-                                        aerosolScatteringFunctions.aerosol_f(taua2, iaer, pab,
-                                                                             sza.getSampleFloat(x, y),
-                                                                             vza.getSampleFloat(x, y),
-                                                                             phi);
-
-                                double aea2 = (roAerMean - rhoRaecIwvl) * (rv2.tds / (1.0 - roAerMean * rv2.sa));
-                                aea2 = (rv2.tus - Math.exp(-taua2 / muv)) * aea2;
-                                aea2 = aea2 - rv2.rhoa * paerFB * r1s * (zmaxPart + zmaxCloudPart);
+                                double aea2 = (roAerMean - rhoRaecIwvl) * (rvBatch.tds[1] / (1.0 - roAerMean * rvBatch.sa[1]));
+                                aea2 = (rvBatch.tus[1] - Math.exp(-taua2 / muv)) * aea2;
+                                aea2 = aea2 - rvBatch.rhoa[1] * paerFB * r1s * (zmaxPart + zmaxCloudPart);
 
                                 //AOT INTERPOLATION to get AE_aer
                                 double aea = aerosolScatteringFunctions.interpolateLin(rhoBrr865[searchIAOT], aea1,
@@ -407,20 +399,10 @@ public class AeAerosolOp extends TmBasisOp {
     }
 
     private void loadAuxData() throws IOException {
-        String auxdataSrcPath = "auxdata/icol";
-        final String auxdataDestPath = ".beam/beam-meris-icol/" + auxdataSrcPath;
-
-        File auxdataTargetDir = new File(SystemUtils.getUserHomeDir(), auxdataDestPath);
-        URL sourceUrl = ResourceInstaller.getSourceUrl(this.getClass());
-
-        ResourceInstaller resourceInstaller = new ResourceInstaller(sourceUrl, auxdataSrcPath, auxdataTargetDir);
-        resourceInstaller.install(".*", new NullProgressMonitor());
-
-        File fresnelFile = new File(auxdataTargetDir, FresnelReflectionCoefficient.FRESNEL_COEFF);
-        final Reader reader = new FileReader(fresnelFile);
-        fresnelCoefficient = new FresnelReflectionCoefficient(reader);
-
-        coeffW = new CoeffW(auxdataTargetDir, reshapedConvolution, IcolConstants.AE_CORRECTION_MODE_AEROSOL);
+        final IcolAuxdata auxdata = IcolAuxdata.getInstance();
+        fresnelCoefficient = auxdata.getFresnelCoefficient();
+        coeffW = auxdata.getCoeffW(IcolConstants.AE_CORRECTION_MODE_AEROSOL);
+        aerosolScatteringFunctions = auxdata.getAerosolScatteringFunctions();
     }
 
     private Tile[] getRhoRaecTiles(Rectangle sourceRect) {
@@ -20,15 +20,16 @@ import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.meris.icol.landsat.tm.TmBasisOp;
+import org.esa.beam.meris.icol.utils.GeoCodingCache;
 import org.esa.beam.meris.icol.utils.LandsatUtils;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
 import org.esa.beam.util.math.MathUtils;
 import org.opengis.referencing.operation.MathTransform;
 
-import javax.media.jai.BorderExtender;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.text.ParseException;
+import java.util.Map;
 
 /**
  * Landsat 5 downscaling onto AE correction grid
@@ -58,10 +59,12 @@ public class DownscaleOp extends TmBasisOp {
     public static final String LONGITUDE_BAND_NAME = "longitude";
     public static final String ALTITUDE_BAND_NAME = "altitude";
 
-    private GeoCoding sourceGeocoding;
+    private GeoCodingCache sourceGeocoding;
     private ElevationModel getasseElevationModel;
 
     private int aveBlock;
+    private Band[] radianceSourceBands;
+    private Band[] radianceTargetBands;
 
     @SourceProduct(alias = "l1g")
     private Product sourceProduct;
@@ -89,7 +92,8 @@ public class DownscaleOp extends TmBasisOp {
         }
         getasseElevationModel = demDescriptor.createDem(Resampling.NEAREST_NEIGHBOUR);
 
-        sourceGeocoding = sourceProduct.getGeoCoding();
+        sourceGeocoding = new GeoCodingCache(sourceProduct.getGeoCoding(), sourceProduct.getSceneRasterWidth(),
+                                             sourceProduct.getSceneRasterHeight());
 
         aveBlock = landsatTargetResolution / (2 * LANDSAT_ORIGINAL_RESOLUTION);
 
@@ -136,10 +140,17 @@ public class DownscaleOp extends TmBasisOp {
                     "Start or stop time invalid or has wrong format - must be 'yyyymmdd hh:mm:ss'.");
         }
 
+        radianceSourceBands = new Band[radianceBandNames.length];
+        radianceTargetBands = new Band[radianceBandNames.length];
         for (int i = 0; i < radianceBandNames.length; i++) {
             Band band = targetProduct.addBand(radianceBandNames[i], ProductData.TYPE_FLOAT32);
             band.setGeophysicalNoDataValue(NO_DATA_VALUE);
             band.setNoDataValueUsed(true);
+            radianceSourceBands[i] = sourceProduct.getBand(radianceBandNames[i]);
+            if (radianceSourceBands[i] != null) {
+                OperatorUtils.copyBandProperties(radianceSourceBands[i], band);
+            }
+            radianceTargetBands[i] = band;
         }
 
         targetProduct.addBand(LATITUDE_BAND_NAME, ProductData.TYPE_FLOAT32);
@@ -157,82 +168,76 @@ public class DownscaleOp extends TmBasisOp {
     }
 
     @Override
-    public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
-
-        final Rectangle targetRectangle = targetTile.getRectangle();
-        final Rectangle sourceRectangle = new Rectangle(0, 0, sourceProduct.getSceneRasterWidth(),
-                                                  sourceProduct.getSceneRasterHeight());
-
-        Tile radianceSourceTile = null;
-        for (Band sourceBand : sourceProduct.getBands()) {
-            if (targetBand.getName().equals(sourceBand.getName())) {
-                radianceSourceTile = getSourceTile(sourceBand, sourceRectangle,
-                                                   BorderExtender.createInstance(BorderExtender.BORDER_COPY));
-                OperatorUtils.copyBandProperties(sourceBand, targetBand);
-            }
-        }
+    public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle targetRectangle, ProgressMonitor pm) throws
+                                                                                                             OperatorException {
+        final int aveSize = 2 * aveBlock;
+        final Rectangle sourceRectangle = getSourceFootprint(targetRectangle);
 
         pm.beginTask("Processing frame...", targetRectangle.height);
         try {
+            Tile[] radianceSourceTiles = new Tile[radianceSourceBands.length];
+            for (int i = 0; i < radianceSourceBands.length; i++) {
+                if (radianceSourceBands[i] != null) {
+                    radianceSourceTiles[i] = getSourceTile(radianceSourceBands[i], sourceRectangle);
+                }
+            }
+            Tile[] radianceTargetTiles = OperatorUtils.getTargetTiles(targetTiles, radianceTargetBands);
+
+            Tile latitudeTile = targetTiles.get(targetProduct.getBand(LATITUDE_BAND_NAME));
+            Tile longitudeTile = targetTiles.get(targetProduct.getBand(LONGITUDE_BAND_NAME));
+            Tile altitudeTile = targetTiles.get(targetProduct.getBand(ALTITUDE_BAND_NAME));
+            Tile szaTile = targetTiles.get(targetProduct.getBand(SUN_ZENITH_BAND_NAME));
+            Tile saaTile = targetTiles.get(targetProduct.getBand(SUN_AZIMUTH_BAND_NAME));
+            Tile vzaTile = targetTiles.get(targetProduct.getBand(VIEW_ZENITH_BAND_NAME));
+            Tile vaaTile = targetTiles.get(targetProduct.getBand(VIEW_AZIMUTH_BAND_NAME));
+            Tile airMassTile = targetTiles.get(targetProduct.getBand(AIR_MASS_BAND_NAME));
+            Tile scatteringAngleTile = targetTiles.get(targetProduct.getBand(SCATTERING_ANGLE_BAND_NAME));
+            Tile specularAngleTile = targetTiles.get(targetProduct.getBand(SPECULAR_ANGLE_BAND_NAME));
+
             // averaging
-            final int x1 = sourceRectangle.x;
-            final int x2 = sourceRectangle.x + sourceRectangle.width - 1;
-            final int y1 = sourceRectangle.y;
-            final int y2 = sourceRectangle.y + sourceRectangle.height - 1;
-
-            final int aveSize = 2 * aveBlock;
-            for (int iSrcY = y1 + aveBlock; iSrcY <= y2 + aveBlock; iSrcY += aveSize) {
-                for (int iSrcX = x1 + aveBlock; iSrcX <= x2 + aveBlock; iSrcX += aveSize) {
-                    final int iTarX = ((iSrcX - x1 - aveBlock) / aveSize);
-                    final int iTarY = ((iSrcY - y1 - aveBlock) / aveSize);
-
-                    if (!(LandsatUtils.isCoordinatesOutOfBounds(iTarX, iTarY, targetTile))) {
-                        final GeoPos geoPosAve = getGeoPosSpatialAverage(iSrcX, iSrcY);
-
-                        final double sza = LandsatUtils.getSunAngles(geoPosAve, doy, gmt).getZenith();
-                        final double saa = LandsatUtils.getSunAngles(geoPosAve, doy, gmt).getAzimuth();
-                        final double vza = 0.0f; // RS, 10/11/2009
-                        final double vaa = 0.0f; // RS, 10/11/2009
-
-                        final double mus = Math.cos(sza * MathUtils.DTOR);
-                        final double muv = Math.cos(vza * MathUtils.DTOR);
-                        final double nus = Math.sin(sza * MathUtils.DTOR);
-                        final double nuv = Math.sin(vza * MathUtils.DTOR);
-
-                        final double phi = saa - vaa;
-
-                        if (targetBand.getName().equals("latitude")) {
-                            targetTile.setSample(iTarX, iTarY, geoPosAve.getLat());
-                        } else if (targetBand.getName().equals("longitude")) {
-                            targetTile.setSample(iTarX, iTarY, geoPosAve.getLon());
-                        } else if (targetBand.getName().equals("altitude")) {
-                            final float altAve = getAltitudeSpatialAverage(iSrcX, iSrcY);
-                            targetTile.setSample(iTarX, iTarY, altAve);
-                        } else if (targetBand.getName().equals("sunZenith")) {
-                            targetTile.setSample(iTarX, iTarY, sza);
-                        } else if (targetBand.getName().equals("sunAzimuth")) {
-                            targetTile.setSample(iTarX, iTarY, saa);
-                        } else if (targetBand.getName().equals("viewZenith")) {
-                            targetTile.setSample(iTarX, iTarY, vza);
-                        } else if (targetBand.getName().equals("viewAzimuth")) {
-                            targetTile.setSample(iTarX, iTarY, vaa);
-                        } else if (targetBand.getName().equals("airMass")) {
-                            final double airMass = 1.0 / mus + 1.0 / muv;
-                            targetTile.setSample(iTarX, iTarY, airMass);
-                        } else if (targetBand.getName().equals("scatteringAngle")) {
-                            //compute the COSINE of the back scattering angle
-                            final double csb = mus * muv + nus * nuv * Math.cos(phi * MathUtils.DTOR);
-                            targetTile.setSample(iTarX, iTarY, csb);
-                        } else if (targetBand.getName().equals("specularAngle")) {
-                            //compute the COSINE of the forward scattering angle
-                            final double csf = mus * muv - nus * nuv * Math.cos(phi * MathUtils.DTOR);
-                            targetTile.setSample(iTarX, iTarY, csf);
-                        } else if (radianceSourceTile != null) {
-                            final float radianceAve = getRadianceSpatialAverage(radianceSourceTile, iSrcX, iSrcY);
-                            targetTile.setSample(iTarX, iTarY, radianceAve);
+            for (int iTarY = targetRectangle.y; iTarY < targetRectangle.y + targetRectangle.height; iTarY++) {
+                final int iSrcY = iTarY * aveSize + aveBlock;
+                for (int iTarX = targetRectangle.x; iTarX < targetRectangle.x + targetRectangle.width; iTarX++) {
+                    final int iSrcX = iTarX * aveSize + aveBlock;
+                    final GeoPos geoPosAve = getGeoPosSpatialAverage(iSrcX, iSrcY);
+
+                    final LandsatUtils.SunAngles sunAngles = LandsatUtils.getSunAngles(geoPosAve, doy, gmt);
+                    final double sza = sunAngles.getZenith();
+                    final double saa = sunAngles.getAzimuth();
+                    final double vza = 0.0f; // RS, 10/11/2009
+                    final double vaa = 0.0f; // RS, 10/11/2009
+
+                    final double mus = Math.cos(sza * MathUtils.DTOR);
+                    final double muv = Math.cos(vza * MathUtils.DTOR);
+                    final double nus = Math.sin(sza * MathUtils.DTOR);
+                    final double nuv = Math.sin(vza * MathUtils.DTOR);
+
+                    final double phi = saa - vaa;
+
+                    latitudeTile.setSample(iTarX, iTarY, geoPosAve.getLat());
+                    longitudeTile.setSample(iTarX, iTarY, geoPosAve.getLon());
+                    altitudeTile.setSample(iTarX, iTarY, getAltitudeSpatialAverage(iSrcX, iSrcY));
+                    szaTile.setSample(iTarX, iTarY, sza);
+                    saaTile.setSample(iTarX, iTarY, saa);
+                    vzaTile.setSample(iTarX, iTarY, vza);
+                    vaaTile.setSample(iTarX, iTarY, vaa);
+                    final double airMass = 1.0 / mus + 1.0 / muv;
+                    airMassTile.setSample(iTarX, iTarY, airMass);
+                    //compute the COSINE of the back scattering angle
+                    final double csb = mus * muv + nus * nuv * Math.cos(phi * MathUtils.DTOR);
+                    scatteringAngleTile.setSample(iTarX, iTarY, csb);
+                    //compute the COSINE of the forward scattering angle
+                    final double csf = mus * muv - nus * nuv * Math.cos(phi * MathUtils.DTOR);
+                    specularAngleTile.setSample(iTarX, iTarY, csf);
+
+                    for (int i = 0; i < radianceSourceTiles.length; i++) {
+                        if (radianceSourceTiles[i] != null) {
+                            final float radianceAve = getRadianceSpatialAverage(radianceSourceTiles[i], iSrcX, iSrcY);
+                            radianceTargetTiles[i].setSample(iTarX, iTarY, radianceAve);
                         }
                     }
                 }
+                checkForCancellation();
                 pm.worked(1);
             }
         } catch (Exception e) {
@@ -242,6 +247,20 @@ public class DownscaleOp extends TmBasisOp {
         }
     }
 
+    /**
+     * Returns the source pixels averaged for the given target rectangle: target pixel <code>(x, y)</code> is
+     * the mean of the <code>(2 * aveBlock + 1)^2</code> source pixels centred at
+     * <code>(x * 2 * aveBlock + aveBlock, y * 2 * aveBlock + aveBlock)</code>, clipped to the scene.
+     */
+    private Rectangle getSourceFootprint(Rectangle targetRectangle) {
+        final int aveSize = 2 * aveBlock;
+        final Rectangle footprint = new Rectangle(targetRectangle.x * aveSize,
+                                                  targetRectangle.y * aveSize,
+                                                  targetRectangle.width * aveSize + 1,
+                                                  targetRectangle.height * aveSize + 1);
+        return footprint.intersection(new Rectangle(sourceProduct.getSceneRasterWidth(),
+                                                    sourceProduct.getSceneRasterHeight()));
+    }
 
     private float getRadianceSpatialAverage(Tile radianceTile, int iTarX, int iTarY) throws Exception {
 
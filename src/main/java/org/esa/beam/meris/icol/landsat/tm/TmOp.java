@@ -119,6 +119,9 @@ public class TmOp extends TmBasisOp {
     private boolean exportSeparateDebugBands = false;
     @Parameter
     private String landsatOutputProductsDir;
+    @Parameter(defaultValue = "false", description =
+            "If set to 'true', the downscaled and the AE corrected product are computed in memory for output product types 1 and 2, instead of being read from the products directory.")
+    private boolean landsatComputeIntermediateProducts;
 
     private String landsatStartTime;
     private String landsatStopTime;
@@ -134,19 +137,22 @@ public class TmOp extends TmBasisOp {
             return;
         }
 
-        Product downscaledSourceProduct = null;
-
-        final File downscaledSourceProductFile = new File(landsatOutputProductsDir + File.separator +
-                                                                  "L1N_" + sourceProduct.getName() +
-                                                                  LandsatConstants.LANDSAT_DOWNSCALED_PRODUCT_SUFFIX + ".dim");
-
-        try {
-            downscaledSourceProduct = ProductIO.readProduct(downscaledSourceProductFile.getAbsolutePath());
-        } catch (IOException e) {
-            throw new OperatorException("Cannot read downscaled source product for AE correction: " + e.getMessage());
+        Product downscaledSourceProduct;
+        if (landsatComputeIntermediateProducts) {
+            downscaledSourceProduct = createDownscaledProduct();
+            ProductUtils.copyMetadata(sourceProduct, downscaledSourceProduct);
+        } else {
+            final File downscaledSourceProductFile = new File(landsatOutputProductsDir + File.separator +
+                                                                      "L1N_" + sourceProduct.getName() +
+                                                                      LandsatConstants.LANDSAT_DOWNSCALED_PRODUCT_SUFFIX + ".dim");
+            try {
+                downscaledSourceProduct = ProductIO.readProduct(downscaledSourceProductFile.getAbsolutePath());
+            } catch (IOException e) {
+                throw new OperatorException("Cannot read downscaled source product for AE correction: " + e.getMessage());
+            }
         }
 
-        if (landsatOutputProductType == LandsatConstants.OUTPUT_PRODUCT_TYPE_UPSCALE) {
+        if (landsatOutputProductType == LandsatConstants.OUTPUT_PRODUCT_TYPE_UPSCALE && !landsatComputeIntermediateProducts) {
             // check if both original and AE corrected product exists on AE grid, in parent directory...
             final File aeCorrProductFile = new File(landsatOutputProductsDir + File.separator +
                                                             "L1N_" + sourceProduct.getName() +
@@ -244,9 +250,14 @@ public class TmOp extends TmBasisOp {
         DebugUtils.addSingleDebugFlagBand(correctionProduct, landProduct, landFlagCoding, LandClassificationOp.LAND_FLAGS);
 
         // now we have the final product on the AE correction grid
-        targetProduct = correctionProduct;
-        OperatorUtils.copyBandProperties(sourceProduct, targetProduct);
-        ProductUtils.copyMetadata(sourceProduct, targetProduct);
+        OperatorUtils.copyBandProperties(sourceProduct, correctionProduct);
+        ProductUtils.copyMetadata(sourceProduct, correctionProduct);
+        if (landsatOutputProductType == LandsatConstants.OUTPUT_PRODUCT_TYPE_UPSCALE) {
+            // upscale within the same graph, the AE corrected product is not written in between
+            targetProduct = createUpscaledToOriginalProduct(downscaledSourceProduct, correctionProduct);
+        } else {
+            targetProduct = correctionProduct;
+        }
     }
 
     private Product createRadianceCorrectionProduct(Product conversionProduct, Product gasProduct, Product aemaskRayleighProduct, Product aemaskAerosolProduct, Product aeRayProduct, Product aeAerProduct) {
@@ -12,7 +12,13 @@ import org.esa.beam.util.math.Interp;
  * @version $Revision: 8078 $ $Date: 2010-01-22 17:24:28 +0100 (Fr, 22 Jan 2010) $
  */
 public class TmRayleighCorrection implements Constants {
-    private LocalHelperVariables lh;
+    // the module is shared by the tile threads of an operator, each thread gets its own helper variables
+    private final ThreadLocal<LocalHelperVariables> localHelperVariables = new ThreadLocal<LocalHelperVariables>() {
+        @Override
+        protected LocalHelperVariables initialValue() {
+            return new LocalHelperVariables();
+        }
+    };
 
     private L2AuxData auxdata;
 
@@ -21,7 +27,6 @@ public class TmRayleighCorrection implements Constants {
      */
     public TmRayleighCorrection(L2AuxData auxData) {
         auxdata = auxData;
-        lh = new LocalHelperVariables();
     }
 
     /**
@@ -45,6 +50,7 @@ public class TmRayleighCorrection implements Constants {
                              double mus, double muv, double airMass,
                              double[] phaseRayl, double[] tauRayl, double[] refRayl) {
 
+        final LocalHelperVariables lh = localHelperVariables.get();
         FractIndex tsi = lh.ref_rayleigh_i[0];         /* interp coordinates for thetas in LUT scale */
         FractIndex tvi = lh.ref_rayleigh_i[1];          /* interp coordinates for thetav in LUT scale */
 
@@ -183,6 +189,7 @@ public class TmRayleighCorrection implements Constants {
     \*-----------------------------------------------------------------------------*/
 
     public void sphAlb_rayleigh(double[] tauRayl, double[] sphalbRayl) {
+        final LocalHelperVariables lh = localHelperVariables.get();
 
         for (int bandId = 0; bandId < LandsatConstants.LANDSAT5_NUM_SPECTRAL_BANDS; bandId++) {
             if (bandId != LandsatConstants.LANDSAT5_RADIANCE_6_BAND_INDEX) {
@@ -258,7 +265,7 @@ public class TmRayleighCorrection implements Constants {
     }
 
     public LocalHelperVariables getLh() {
-        return lh;
+        return localHelperVariables.get();
     }
 
     public L2AuxData getAuxdata() {
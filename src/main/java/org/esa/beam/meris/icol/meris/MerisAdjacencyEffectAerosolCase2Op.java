@@ -16,7 +16,6 @@
  */
 package org.esa.beam.meris.icol.meris;
 
-import com.bc.ceres.core.NullProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
@@ -34,11 +33,14 @@ import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.gpf.operators.standard.BandMathsOp;
 import org.esa.beam.meris.brr.CloudClassificationOp;
 import org.esa.beam.meris.icol.AerosolScatteringFunctions;
-import org.esa.beam.meris.icol.AerosolScatteringFunctions.RV;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions.RVBatch;
 import org.esa.beam.meris.icol.CoeffW;
 import org.esa.beam.meris.icol.FresnelReflectionCoefficient;
+import org.esa.beam.meris.icol.IcolAuxdata;
 import org.esa.beam.meris.icol.IcolConstants;
 import org.esa.beam.meris.icol.IcolConvolutionAlgo;
+import org.esa.beam.meris.icol.IcolConvolutionBoxSum;
+import org.esa.beam.meris.icol.IcolConvolutionFft;
 import org.esa.beam.meris.icol.IcolConvolutionJaiConvolve;
 import org.esa.beam.meris.icol.IcolConvolutionKernellLoop;
 import org.esa.beam.meris.icol.common.AdjacencyEffectMaskOp;
@@ -47,17 +49,12 @@ import org.esa.beam.meris.icol.utils.IcolUtils;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.util.BitSetter;
-import org.esa.beam.util.ResourceInstaller;
-import org.esa.beam.util.SystemUtils;
 import org.esa.beam.util.math.MathUtils;
 
 import javax.media.jai.BorderExtender;
 import java.awt.Rectangle;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.net.URL;
+import java.util.Arrays;
 import java.util.Map;
 
 import static org.esa.beam.meris.l2auxdata.Constants.*;
@@ -84,6 +81,8 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
     private static final double HA = 3000;
     private static final double NO_DATA_VALUE = -1.0;
     private static final double AE_AOT_THRESHOLD = 0.01;
+    // the number of aerosol models of the case 2 retrieval, iaer = 1..26
+    private static final int NUM_C2_MODELS = 26;
 
     private Band isLandBand;
 
@@ -123,6 +122,10 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
     private int iaerConv;
     @Parameter(defaultValue = "true")
     private boolean reshapedConvolution;
+    @Parameter(defaultValue = "false")
+    private boolean fftConvolution;
+    @Parameter(defaultValue = "false")
+    private boolean boxSumConvolution;
     @Parameter
     private String landExpression;
 
@@ -166,6 +169,9 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
 
     @Override
     public void initialize() throws OperatorException {
+        if (fftConvolution && boxSumConvolution) {
+            throw new OperatorException("Only one of 'fftConvolution' and 'boxSumConvolution' may be set.");
+        }
         userAot865 = IcolUtils.convertAOT(userAot, userAlpha, userAerosolReferenceWavelength, 865.0);
         bandsToSkip = new int[]{10, 14};
         targetProduct = createCompatibleProduct(aeRayProduct, "ae_" + aeRayProduct.getName(), "AE");
@@ -206,7 +212,13 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
         String productType = l1bProduct.getProductType();
 
 
-        if (reshapedConvolution) {
+        if (fftConvolution) {
+            icolConvolutionAlgo = new IcolConvolutionFft(l1bProduct, coeffW);
+            lcFlagConvAlgo = icolConvolutionAlgo;
+        } else if (boxSumConvolution) {
+            icolConvolutionAlgo = new IcolConvolutionBoxSum(l1bProduct, coeffW);
+            lcFlagConvAlgo = icolConvolutionAlgo;
+        } else if (reshapedConvolution) {
             icolConvolutionAlgo = new IcolConvolutionJaiConvolve(aeRayProduct, productType, coeffW, "rho_ray_aerc_", iaerConv,
                                                                  EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS,
                                                                  bandsToSkip);
@@ -215,9 +227,8 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
             icolConvolutionAlgo = new IcolConvolutionKernellLoop(l1bProduct, coeffW, IcolConstants.AE_CORRECTION_MODE_AEROSOL);
             lcFlagConvAlgo = new IcolConvolutionKernellLoop(l1bProduct, coeffW, IcolConstants.AE_CORRECTION_MODE_RAYLEIGH);
         }
-
-
-        aerosolScatteringFunctions = new AerosolScatteringFunctions();
+        OperatorUtils.setPreferredTileSize(targetProduct, icolConvolutionAlgo,
+                                           EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS);
 
         BandMathsOp bandArithmeticOp =
                 BandMathsOp.createBooleanExpressionBand(landExpression, landProduct);
@@ -240,20 +251,10 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
     }
 
     private void loadAuxData() throws IOException {
-        String auxdataSrcPath = "auxdata/icol";
-        final String auxdataDestPath = ".beam/beam-meris-icol/" + auxdataSrcPath;
-
-        File auxdataTargetDir = new File(SystemUtils.getUserHomeDir(), auxdataDestPath);
-        URL sourceUrl = ResourceInstaller.getSourceUrl(this.getClass());
-
-        ResourceInstaller resourceInstaller = new ResourceInstaller(sourceUrl, auxdataSrcPath, auxdataTargetDir);
-        resourceInstaller.install(".*", new NullProgressMonitor());
-
-        File fresnelFile = new File(auxdataTargetDir, FresnelReflectionCoefficient.FRESNEL_COEFF);
-        final Reader reader = new FileReader(fresnelFile);
-        fresnelCoefficient = new FresnelReflectionCoefficient(reader);
-
-        coeffW = new CoeffW(auxdataTargetDir, reshapedConvolution, IcolConstants.AE_CORRECTION_MODE_AEROSOL);
+        final IcolAuxdata auxdata = IcolAuxdata.getInstance();
+        fresnelCoefficient = auxdata.getFresnelCoefficient();
+        coeffW = auxdata.getCoeffW(IcolConstants.AE_CORRECTION_MODE_AEROSOL);
+        aerosolScatteringFunctions = auxdata.getAerosolScatteringFunctions();
     }
 
     private Tile[] getTargetTiles(Map<Band, Tile> targetTiles, Band[] bands) {
@@ -281,9 +282,9 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
                                                       EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS, bandsToSkip,
                                                       sourceRect);
 
-        Tile isMaskLand = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.LAND_MASK_NAME), targetRect,
+        Tile isMaskLand = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.LAND_MASK_NAME), sourceRect,
                                         BorderExtender.createInstance(BorderExtender.BORDER_COPY));
-        Tile isMaskCloud = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.CLOUD_MASK_NAME), targetRect,
+        Tile isMaskCloud = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.CLOUD_MASK_NAME), sourceRect,
                                          BorderExtender.createInstance(BorderExtender.BORDER_COPY));
 
         IcolConvolutionAlgo.Convolver convolver = null;
@@ -334,6 +335,21 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
         final IcolConvolutionAlgo.Convolver lcFlagConvolver =
                 lcFlagConvAlgo.createConvolver(this, new Tile[]{isMaskLand, isMaskCloud}, targetRect, pm);
 
+        final double[] tauaPair = new double[2];
+        final double[] tauaSingle = new double[1];
+        final RVBatch rvBatch = new RVBatch(tauaPair.length);
+        // aerosol functions of the case 2 models for single AOTs, their geometry terms are kept per model
+        final RVBatch[] rvSingleC2 = new RVBatch[NUM_C2_MODELS + 1];
+        // retrieval tables of the case 2 models, these do not depend on the water reflectance and are filled
+        // per pixel up to the AOT steps reached (index is the model)
+        final Case2StepTable[] stepTablesC2 = new Case2StepTable[NUM_C2_MODELS + 1];
+        final double[] paerFBC2 = new double[NUM_C2_MODELS + 1];
+        final boolean[] modelC2Prepared = new boolean[NUM_C2_MODELS + 1];
+        for (int iaerC2 = 1; iaerC2 <= NUM_C2_MODELS; iaerC2++) {
+            rvSingleC2[iaerC2] = new RVBatch(1);
+            stepTablesC2[iaerC2] = new Case2StepTable(aerosolScatteringFunctions, iaerC2, rvSingleC2[iaerC2]);
+        }
+
         try {
             for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
                 for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++) {
@@ -465,6 +481,9 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
                             // the final index of retrieved water reflectance rhoW705
                             int jrhow705;
 
+                            Arrays.fill(modelC2Prepared, false);
+                            final double fresnelFactor = r1v + r1s * (1.0 - zmaxPart - zmaxCloudPart);
+
                             // rhoW705 loop (B9, Gerald Moore table):
                             for (int irhow705 = 0; irhow705 < 20; irhow705++) {
                                 rhoB9Table[irhow705] = irhow705 * 0.005f;
@@ -472,33 +491,26 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
                                     // 'best' value of rhoBrr705 retrieved with previous irhoW
                                     rhoBrr705BestPrev = rhoBrr705[searchIAOT];
                                 }
-                                double[] aot865 = new double[26];
-                                double taua865C2;
+                                double[] aot865 = new double[NUM_C2_MODELS];
                                 // loop over the 26 aerosol models:
-                                for (int iaerC2 = 1; iaerC2 <= 26; iaerC2++) {
-                                    double rhoBrrBracket775C2 = rhoBrr775Bracket06 + (iaerC2 - 6) * deltaRhoBrr775Bracket06;
-                                    double rhoBrrBracket865C2 = rhoBrr865Bracket06 + (iaerC2 - 6) * deltaRhoBrr865Bracket06;
-
-                                    // aot at 865nm depending on case 2 aerosol model:
-                                    final double taua865IaerC2 = 0.1 * Math.pow((550.0 / 865.0), (iaerC2 - 1) / 10.0);
-
-                                    pab = aerosolScatteringFunctions.aerosolPhase(thetab, iaerC2);
-                                    paerFB = aerosolScatteringFunctions.aerosolPhaseFB(thetaf, thetab, iaerC2);
-                                    corrFac = 1.0 + paerFB * (r1v + r1s * (1.0 - zmaxPart - zmaxCloudPart));
+                                for (int iaerC2 = 1; iaerC2 <= NUM_C2_MODELS; iaerC2++) {
+                                    final Case2StepTable stepTable = stepTablesC2[iaerC2];
+                                    if (!modelC2Prepared[iaerC2]) {
+                                        double rhoBrrBracket775C2 = rhoBrr775Bracket06 + (iaerC2 - 6) * deltaRhoBrr775Bracket06;
+                                        double rhoBrrBracket865C2 = rhoBrr865Bracket06 + (iaerC2 - 6) * deltaRhoBrr865Bracket06;
+                                        final double pabC2 = aerosolScatteringFunctions.aerosolPhase(thetab, iaerC2);
+                                        paerFBC2[iaerC2] = aerosolScatteringFunctions.aerosolPhaseFB(thetaf, thetab,
+                                                                                                     iaerC2);
+                                        corrFac = 1.0 + paerFBC2[iaerC2] * fresnelFactor;
+                                        stepTable.setPixel(pabC2, sza.getSampleFloat(x, y), vza.getSampleFloat(x, y),
+                                                           phi, corrFac, rhoBrrBracket865C2, rhoBrrBracket775C2, muv);
+                                        modelC2Prepared[iaerC2] = true;
+                                    }
+                                    paerFB = paerFBC2[iaerC2];
                                     searchIAOT = -1;
                                     for (int iiaot = 1; iiaot <= 16 && searchIAOT == -1; iiaot++) {
-                                        // rhoBrr865 computation as for case 1, but with case 2 aerosol model and aot indices:
-                                        taua865C2 = taua865IaerC2 * iiaot;
-                                        RV rv = aerosolScatteringFunctions.aerosol_f(taua865C2, iaerC2, pab,
-                                                                                     sza.getSampleFloat(x, y),
-                                                                                     vza.getSampleFloat(x, y), phi);
-                                        //  - this reflects ICOL D6a ATBD, eq. (2): rhoa = rho_a, rv.rhoa = rho_a0 !!!
-                                        final double rhoa0 = rv.rhoa;
-                                        final double rhoa = rhoa0 * corrFac;
-                                        rhoBrr865[iiaot] = rhoa + rhoBrrBracket865C2 * rv.tds * (rv.tus - Math.exp(
-                                                -taua865C2 / muv));
-                                        // now add water reflectance contribution in B13 from table for given rhoW index
-                                        rhoBrr865[iiaot] += (rhoB13Table[irhow705] * rv.tds * rv.tus);
+                                        // add water reflectance contribution in B13 from table for given rhoW index
+                                        rhoBrr865[iiaot] = stepTable.getRhoBrr865(iiaot, rhoB13Table[irhow705]);
 
                                         // if we reached the MERIS measurement in B13, we are done and have the final
                                         // index of aot at 865nm (aot865best, third unknown) for THIS aerosol type
@@ -509,22 +521,16 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
                                     } // end iaot loop
                                     if (searchIAOT != -1) {
                                         // interpolate aot865 for retrieved index and given case 2 aerosol model
-                                        aot865[iaerC2 - 1] = aerosolScatteringFunctions.interpolateLin(
+                                        final double aotStep = aerosolScatteringFunctions.interpolateLin(
                                                 rhoBrr865[searchIAOT], searchIAOT,
-                                                rhoBrr865[searchIAOT + 1], searchIAOT + 1, rho_13) * taua865IaerC2;
+                                                rhoBrr865[searchIAOT + 1], searchIAOT + 1, rho_13);
+                                        aot865[iaerC2 - 1] = aotStep * stepTable.getTaua865();
 
                                         // rhoBrr775 computation as for case 1, but with case 2 aerosol model index and DERIVED AOT 865!!:
-                                        double taua775C2 = aot865[iaerC2 - 1] * Math.pow((865.0 / 775.0),
-                                                                                         (iaerC2 - 1) / 10.0);
-                                        RV rv775 = aerosolScatteringFunctions.aerosol_f(taua775C2, iaerC2, pab,
-                                                                                        sza.getSampleFloat(x, y),
-                                                                                        vza.getSampleFloat(x, y), phi);
-                                        final double rhoa0775 = rv775.rhoa;
-                                        final double rhoa775 = rhoa0775 * corrFac;
-                                        rhoBrr775[searchIAOT] = rhoa775 + rhoBrrBracket775C2 * rv775.tds * (rv775.tus - Math.exp(
-                                                -taua775C2 / muv));
-                                        // now add water reflectance contribution in B12 from table for given rhoW index
-                                        rhoBrr775[searchIAOT] += (rhoB12Table[irhow705] * rv775.tds * rv775.tus);
+                                        // interpolated between the AOT steps, including the water reflectance
+                                        // contribution in B12 from table for given rhoW index
+                                        rhoBrr775[searchIAOT] = stepTable.getRhoBrr775(searchIAOT, aotStep - searchIAOT,
+                                                                                       rhoB12Table[irhow705]);
 
                                         // ATBD D6a, 2.2, (iii) for ICOL 2.0
                                         // if we reached the MERIS measurement in B12, we are done and have the final
@@ -542,18 +548,20 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
                                     double tauaConst705 = aot865[iaer - 1] * Math.pow((865.0 / 705.0),
                                                                                       ((iaer - 1) / 10.0));
                                     pab = aerosolScatteringFunctions.aerosolPhase(thetab, iaer);
-                                    RV rv = aerosolScatteringFunctions.aerosol_f(tauaConst705, iaer, pab,
-                                                                                 sza.getSampleFloat(x, y),
-                                                                                 vza.getSampleFloat(x, y), phi);
+                                    tauaSingle[0] = tauaConst705;
+                                    final RVBatch rv705 = rvSingleC2[iaer];
+                                    aerosolScatteringFunctions.aerosol_f(tauaSingle, 1, iaer, pab,
+                                                                         sza.getSampleFloat(x, y),
+                                                                         vza.getSampleFloat(x, y), phi, rv705);
                                     //  - this reflects ICOL D6a ATBD, eq. (2): rhoa = rho_a, rv.rhoa = rho_a0 !!!
-                                    final double rhoa0705 = rv.rhoa;
-                                    corrFac = 1.0 + paerFB * (r1v + r1s * (1.0 - zmaxPart - zmaxCloudPart));
+                                    final double rhoa0705 = rv705.rhoa[0];
+                                    corrFac = 1.0 + paerFB * fresnelFactor;
                                     final double rhoa705 = rhoa0705 * corrFac;
                                     double rhoBrrBracket705C1 = rhoBrr705Bracket06 + (iaer - 5) * deltaRhoBrr705Bracket06;
-                                    rhoBrr705[searchIAOT] = rhoa705 + rhoBrrBracket705C1 * rv.tds * (rv.tus - Math.exp(
+                                    rhoBrr705[searchIAOT] = rhoa705 + rhoBrrBracket705C1 * rv705.tds[0] * (rv705.tus[0] - Math.exp(
                                             -tauaConst705 / muv));
                                     // now add water reflectance contribution in B9 from table for given rhoW index
-                                    rhoBrr705[searchIAOT] += (rhoB9Table[irhow705] * rv.tds * rv.tus);
+                                    rhoBrr705[searchIAOT] += (rhoB9Table[irhow705] * rv705.tds[0] * rv705.tus[0]);
 
                                     // if we reached the MERIS measurement in B9, we are done and have the final
                                     // 'experimental' water reflectance at 705nm (ATBD D6a, eq. 11).
@@ -590,16 +598,19 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
                             searchIAOT = MathUtils.floorInt(aot * 10);
                             iaer = getAerosolModelIndex(userAlpha);
                             double rhoBrrBracket865C1 = rhoBrr865Bracket06 + (iaer - 5) * deltaRhoBrr865Bracket06;
-                            for (int iiaot = searchIAOT; iiaot <= searchIAOT + 1; iiaot++) {
-                                final double taua = taua865Iaer * iiaot;
-                                RV rv = aerosolScatteringFunctions.aerosol_f(taua, iaer, pab, sza.getSampleFloat(x, y),
-                                                                             vza.getSampleFloat(x, y), phi);
+                            tauaPair[0] = taua865Iaer * searchIAOT;
+                            tauaPair[1] = taua865Iaer * (searchIAOT + 1);
+                            aerosolScatteringFunctions.aerosol_f(tauaPair, tauaPair.length, iaer, pab,
+                                                                 sza.getSampleFloat(x, y), vza.getSampleFloat(x, y),
+                                                                 phi, rvBatch);
+                            for (int i = 0; i < tauaPair.length; i++) {
+                                final double taua = tauaPair[i];
                                 //  - this reflects ICOL D6a ATBD, eq. (2): rhoa = rho_a, rv.rhoa = rho_a0 !!!
-                                final double rhoa0865 = rv.rhoa;
+                                final double rhoa0865 = rvBatch.rhoa[i];
                                 corrFac = 1.0 + paerFB * (r1v + r1s * (1.0 - zmaxPart - zmaxCloudPart));
                                 final double rhoa865 = rhoa0865 * corrFac;
-                                rhoBrr865[iiaot] = rhoa865 + rhoBrrBracket865C1 * rv.tds * (rv.tus - Math.exp(
-                                        -taua / muv));
+                                rhoBrr865[searchIAOT + i] = rhoa865 + rhoBrrBracket865C1 * rvBatch.tds[i] *
+                                                                      (rvBatch.tus[i] - Math.exp(-taua / muv));
                             }
                         }
                         //  end case 2 algorithm
@@ -638,17 +649,20 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
                                 Band band = (Band) rhoRaec[iwvl].getRasterDataNode();
                                 float wvl = band.getSpectralWavelength();
 
-                                //Compute the aerosols functions for the first aot
+                                //Compute the aerosols functions for both aots
                                 final double taua1 = 0.1 * searchIAOT * Math.pow((550.0 / wvl), (iaer / 10.0));
-                                RV rv1 = aerosolScatteringFunctions.aerosol_f(taua1, iaer, pab,
-                                                                              sza.getSampleFloat(x, y),
-                                                                              vza.getSampleFloat(x, y), phi);
+                                final double taua2 = 0.1 * (searchIAOT + 1) * Math.pow((550.0 / wvl), (iaer / 10.0));
+                                tauaPair[0] = taua1;
+                                tauaPair[1] = taua2;
+                                aerosolScatteringFunctions.aerosol_f(tauaPair, tauaPair.length, iaer, pab,
+                                                                     sza.getSampleFloat(x, y),
+                                                                     vza.getSampleFloat(x, y), phi, rvBatch);
 
                                 double aerosol1;
-                                aerosol1 = (roAerMean - rhoRaecIwvl) * (rv1.tds / (1.0 - roAerMean * rv1.sa));
-                                aerosol1 = (rv1.tus - Math.exp(-taua1 / muv)) * aerosol1;
+                                aerosol1 = (roAerMean - rhoRaecIwvl) * (rvBatch.tds[0] / (1.0 - roAerMean * rvBatch.sa[0]));
+                                aerosol1 = (rvBatch.tus[0] - Math.exp(-taua1 / muv)) * aerosol1;
 
-                                final double fresnel1 = rv1.rhoa * paerFB * r1s * (zmaxPart + zmaxCloudPart);
+                                final double fresnel1 = rvBatch.rhoa[0] * paerFB * r1s * (zmaxPart + zmaxCloudPart);
                                 final double aea1 = aerosol1 - fresnel1;
 
                                 if (exportSeparateDebugBands) {
@@ -656,15 +670,9 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
                                     fresnelDebug[iwvl].setSample(x, y, fresnel1);
                                 }
 
-                                //Compute the aerosols functions for the second aot
-                                final double taua2 = 0.1 * (searchIAOT + 1) * Math.pow((550.0 / wvl), (iaer / 10.0));
-                                RV rv2 = aerosolScatteringFunctions.aerosol_f(taua2, iaer, pab,
-                                                                              sza.getSampleFloat(x, y),
-                                                                              vza.getSampleFloat(x, y), phi);
-
-                                double aea2 = (roAerMean - rhoRaecIwvl) * (rv2.tds / (1.0 - roAerMean * rv2.sa));
-                                aea2 = (rv2.tus - Math.exp(-taua2 / muv)) * aea2;
-                                aea2 = aea2 - rv2.rhoa * paerFB * r1s * (zmaxPart + zmaxCloudPart);
+                                double aea2 = (roAerMean - rhoRaecIwvl) * (rvBatch.tds[1] / (1.0 - roAerMean * rvBatch.sa[1]));
+                                aea2 = (rvBatch.tus[1] - Math.exp(-taua2 / muv)) * aea2;
+                                aea2 = aea2 - rvBatch.rhoa[1] * paerFB * r1s * (zmaxPart + zmaxCloudPart);
 
                                 //AOT INTERPOLATION to get AE_aer
                                 double aea = aerosolScatteringFunctions.interpolateLin(rhoBrr865[searchIAOT], aea1,
@@ -745,6 +753,128 @@ public class MerisAdjacencyEffectAerosolCase2Op extends MerisBasisOp {
         return iaer;
     }
 
+    /**
+     * The reflectances at 865nm and 775nm of a case 2 model for a pixel at the AOT steps <code>iiaot</code> =
+     * 1..16, as the sums of the aerosol part and the water reflectance times the water transfer part. Neither part
+     * depends on the water reflectance, so the steps are evaluated once per pixel, and only when the search first
+     * reaches them.
+     * <p/>
+     * At 775nm the AOT retrieved at 865nm lies between two steps, the reflectance is interpolated linearly between
+     * them. Compared to evaluating the aerosol functions at the retrieved AOT the relative deviation is below 1.5%.
+     * It mainly stems from the upward transmittance of <code>aerosol_f</code>, which jumps at the AOT
+     * nodes of the transmittance tables; the interpolation between the steps smooths these jumps.
+     */
+    static class Case2StepTable {
+
+        static final int NUM_STEPS = 16;
+
+        private final AerosolScatteringFunctions aerosolScatteringFunctions;
+        private final int iaer;
+        private final double taua865;
+        private final double taua775;
+        private final RVBatch rv;
+        private final double[] taua = new double[1];
+        // index is the AOT step, step 0 is never evaluated at 865nm
+        private final double[] aerosolPart865 = new double[NUM_STEPS + 1];
+        private final double[] waterPart865 = new double[NUM_STEPS + 1];
+        private final double[] aerosolPart775 = new double[NUM_STEPS + 1];
+        private final double[] waterPart775 = new double[NUM_STEPS + 1];
+
+        private int numSteps865;
+        private int numSteps775;
+        private double pab;
+        private float sza;
+        private float vza;
+        private float phi;
+        private double corrFac;
+        private double rhoBrrBracket865;
+        private double rhoBrrBracket775;
+        private double muv;
+
+        /**
+         * @param aerosolScatteringFunctions - the aerosol functions
+         * @param iaer                       - the case 2 aerosol model
+         * @param rv                         - the result buffer for single AOTs of the model, its geometry terms
+         *                                     are shared with the other evaluations of the model for the pixel
+         */
+        Case2StepTable(AerosolScatteringFunctions aerosolScatteringFunctions, int iaer, RVBatch rv) {
+            this.aerosolScatteringFunctions = aerosolScatteringFunctions;
+            this.iaer = iaer;
+            this.rv = rv;
+            // aot at 865nm depending on case 2 aerosol model:
+            taua865 = 0.1 * Math.pow((550.0 / 865.0), (iaer - 1) / 10.0);
+            taua775 = taua865 * Math.pow((865.0 / 775.0), (iaer - 1) / 10.0);
+        }
+
+        void setPixel(double pab, float sza, float vza, float phi, double corrFac, double rhoBrrBracket865,
+                      double rhoBrrBracket775, double muv) {
+            this.pab = pab;
+            this.sza = sza;
+            this.vza = vza;
+            this.phi = phi;
+            this.corrFac = corrFac;
+            this.rhoBrrBracket865 = rhoBrrBracket865;
+            this.rhoBrrBracket775 = rhoBrrBracket775;
+            this.muv = muv;
+            numSteps865 = 0;
+            numSteps775 = 0;
+        }
+
+        /**
+         * @return the AOT at 865nm of the first step, step <code>iiaot</code> has <code>iiaot</code> times this AOT
+         */
+        double getTaua865() {
+            return taua865;
+        }
+
+        /**
+         * @param iiaot   - the AOT step, 1..16
+         * @param rhoW865 - the water reflectance at 865nm
+         * @return the reflectance at 865nm
+         * @throws IOException - if a text table cannot be read
+         */
+        double getRhoBrr865(int iiaot, double rhoW865) throws IOException {
+            while (numSteps865 < iiaot) {
+                numSteps865++;
+                evaluate(numSteps865, taua865 * numSteps865, rhoBrrBracket865, aerosolPart865, waterPart865);
+            }
+            return aerosolPart865[iiaot] + rhoW865 * waterPart865[iiaot];
+        }
+
+        /**
+         * @param iiaot   - the AOT step below the retrieved AOT, 0..15
+         * @param weight  - the position of the retrieved AOT between the step and the following one
+         * @param rhoW775 - the water reflectance at 775nm
+         * @return the reflectance at 775nm
+         * @throws IOException - if a text table cannot be read
+         */
+        double getRhoBrr775(int iiaot, double weight, double rhoW775) throws IOException {
+            while (numSteps775 <= iiaot + 1) {
+                evaluate(numSteps775, taua775 * numSteps775, rhoBrrBracket775, aerosolPart775, waterPart775);
+                numSteps775++;
+            }
+            final double aerosolPart = aerosolPart775[iiaot] + weight * (aerosolPart775[iiaot + 1] -
+                                                                         aerosolPart775[iiaot]);
+            final double waterPart = waterPart775[iiaot] + weight * (waterPart775[iiaot + 1] - waterPart775[iiaot]);
+            return aerosolPart + rhoW775 * waterPart;
+        }
+
+        int getNumEvaluatedSteps() {
+            return numSteps865;
+        }
+
+        private void evaluate(int iiaot, double aot, double rhoBrrBracket, double[] aerosolPart, double[] waterPart)
+                throws IOException {
+            taua[0] = aot;
+            aerosolScatteringFunctions.aerosol_f(taua, 1, iaer, pab, sza, vza, phi, rv);
+            // rhoBrr computation as for case 1, but with case 2 aerosol model and aot indices:
+            //  - this reflects ICOL D6a ATBD, eq. (2): rhoa = rho_a, rv.rhoa = rho_a0 !!!
+            final double rhoa = rv.rhoa[0] * corrFac;
+            aerosolPart[iiaot] = rhoa + rhoBrrBracket * rv.tds[0] * (rv.tus[0] - Math.exp(-aot / muv));
+            waterPart[iiaot] = rv.tds[0] * rv.tus[0];
+        }
+    }
+
     public static class Spi extends OperatorSpi {
 
         public Spi() {
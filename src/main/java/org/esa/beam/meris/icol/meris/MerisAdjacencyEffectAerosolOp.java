@@ -16,7 +16,6 @@
  */
 package org.esa.beam.meris.icol.meris;
 
-import com.bc.ceres.core.NullProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
@@ -34,11 +33,14 @@ import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.gpf.operators.standard.BandMathsOp;
 import org.esa.beam.meris.brr.CloudClassificationOp;
 import org.esa.beam.meris.icol.AerosolScatteringFunctions;
-import org.esa.beam.meris.icol.AerosolScatteringFunctions.RV;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions.RVBatch;
 import org.esa.beam.meris.icol.CoeffW;
 import org.esa.beam.meris.icol.FresnelReflectionCoefficient;
+import org.esa.beam.meris.icol.IcolAuxdata;
 import org.esa.beam.meris.icol.IcolConstants;
+import org.esa.beam.meris.icol.IcolConvolutionBoxSum;
 import org.esa.beam.meris.icol.IcolConvolutionAlgo;
+import org.esa.beam.meris.icol.IcolConvolutionFft;
 import org.esa.beam.meris.icol.IcolConvolutionJaiConvolve;
 import org.esa.beam.meris.icol.IcolConvolutionKernellLoop;
 import org.esa.beam.meris.icol.common.AdjacencyEffectMaskOp;
@@ -47,17 +49,11 @@ import org.esa.beam.meris.icol.utils.IcolUtils;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.util.BitSetter;
-import org.esa.beam.util.ResourceInstaller;
-import org.esa.beam.util.SystemUtils;
 import org.esa.beam.util.math.MathUtils;
 
 import javax.media.jai.BorderExtender;
 import java.awt.Rectangle;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.net.URL;
 import java.util.Map;
 
 import static org.esa.beam.meris.l2auxdata.Constants.*;
@@ -125,10 +121,17 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
     private int iaerConv;
     @Parameter(defaultValue = "true")
     private boolean reshapedConvolution;
+    @Parameter(defaultValue = "false")
+    private boolean fftConvolution;
+    @Parameter(defaultValue = "false")
+    private boolean boxSumConvolution;
     @Parameter(defaultValue = "true")
     private boolean openclConvolution = true;
     @Parameter
     private String landExpression;
+    @Parameter(defaultValue = "false",
+               description = "Interpolate the geometry dependent aerosol terms from the tie-point nodes")
+    private boolean tiePointAerosolFunctions;
 
     IcolConvolutionAlgo icolConvolutionAlgo;
     IcolConvolutionAlgo lcFlagConvAlgo;
@@ -169,6 +172,9 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
 
     @Override
     public void initialize() throws OperatorException {
+        if (fftConvolution && boxSumConvolution) {
+            throw new OperatorException("Only one of 'fftConvolution' and 'boxSumConvolution' may be set.");
+        }
         userAot865 = IcolUtils.convertAOT(userAot, userAlpha, userAerosolReferenceWavelength, 865.0);
         bandsToSkip = new int[]{10, 14};
         targetProduct = createCompatibleProduct(aeRayProduct, "ae_" + aeRayProduct.getName(), "AE");
@@ -207,7 +213,13 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
 
         String productType = l1bProduct.getProductType();
 
-        if (reshapedConvolution) {
+        if (fftConvolution) {
+            icolConvolutionAlgo = new IcolConvolutionFft(l1bProduct, coeffW);
+            lcFlagConvAlgo = icolConvolutionAlgo;
+        } else if (boxSumConvolution) {
+            icolConvolutionAlgo = new IcolConvolutionBoxSum(l1bProduct, coeffW);
+            lcFlagConvAlgo = icolConvolutionAlgo;
+        } else if (reshapedConvolution) {
             icolConvolutionAlgo = new IcolConvolutionJaiConvolve(aeRayProduct, productType, coeffW, "rho_ray_aerc_", iaerConv,
                                                                  EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS,
                                                                  bandsToSkip);
@@ -216,9 +228,8 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
             icolConvolutionAlgo = new IcolConvolutionKernellLoop(l1bProduct, coeffW, IcolConstants.AE_CORRECTION_MODE_AEROSOL);
             lcFlagConvAlgo = new IcolConvolutionKernellLoop(l1bProduct, coeffW, IcolConstants.AE_CORRECTION_MODE_RAYLEIGH);
         }
-
-
-        aerosolScatteringFunctions = new AerosolScatteringFunctions();
+        OperatorUtils.setPreferredTileSize(targetProduct, icolConvolutionAlgo,
+                                           EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS);
 
         BandMathsOp bandArithmeticOp =
                 BandMathsOp.createBooleanExpressionBand(landExpression, landProduct);
@@ -241,20 +252,10 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
     }
 
     private void loadAuxData() throws IOException {
-        String auxdataSrcPath = "auxdata/icol";
-        final String auxdataDestPath = ".beam/beam-meris-icol/" + auxdataSrcPath;
-
-        File auxdataTargetDir = new File(SystemUtils.getUserHomeDir(), auxdataDestPath);
-        URL sourceUrl = ResourceInstaller.getSourceUrl(this.getClass());
-
-        ResourceInstaller resourceInstaller = new ResourceInstaller(sourceUrl, auxdataSrcPath, auxdataTargetDir);
-        resourceInstaller.install(".*", new NullProgressMonitor());
-
-        File fresnelFile = new File(auxdataTargetDir, FresnelReflectionCoefficient.FRESNEL_COEFF);
-        final Reader reader = new FileReader(fresnelFile);
-        fresnelCoefficient = new FresnelReflectionCoefficient(reader);
-
-        coeffW = new CoeffW(auxdataTargetDir, reshapedConvolution, IcolConstants.AE_CORRECTION_MODE_AEROSOL);
+        final IcolAuxdata auxdata = IcolAuxdata.getInstance();
+        fresnelCoefficient = auxdata.getFresnelCoefficient();
+        coeffW = auxdata.getCoeffW(IcolConstants.AE_CORRECTION_MODE_AEROSOL);
+        aerosolScatteringFunctions = auxdata.getAerosolScatteringFunctions();
     }
 
     private Tile[] getTargetTiles(Map<Band, Tile> targetTiles, Band[] bands) {
@@ -290,12 +291,13 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
                                                        sourceRect);
         }
 
-        Tile isMaskLand = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.LAND_MASK_NAME), targetRect,
+        Tile isMaskLand = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.LAND_MASK_NAME), sourceRect,
                                         BorderExtender.createInstance(BorderExtender.BORDER_COPY));
-        Tile isMaskCloud = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.CLOUD_MASK_NAME), targetRect,
+        Tile isMaskCloud = getSourceTile(cloudLandMaskProduct.getBand(CloudLandMaskOp.CLOUD_MASK_NAME), sourceRect,
                                          BorderExtender.createInstance(BorderExtender.BORDER_COPY));
 
         IcolConvolutionAlgo.Convolver convolver = null;
+        TiePointAerosolFunctions tiePointFunctions = null;
 
         Tile flagTile = targetTiles.get(flagBand);
 
@@ -343,6 +345,10 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
         final IcolConvolutionAlgo.Convolver lcFlagConvolver =
                 lcFlagConvAlgo.createConvolver(this, new Tile[]{isMaskLand, isMaskCloud}, targetRect, pm);
 
+        final double[] tauaPair = new double[2];
+        final RVBatch rvBatch = new RVBatch(tauaPair.length);
+        Rho865Inversion rho865Inversion = null;
+
         try {
             for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
                 for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++) {
@@ -396,6 +402,10 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
                             zmaxs = ZmaxOp.getSourceTiles(this, zmaxProduct, targetRect, pm);
                             zmaxCloud = ZmaxOp.getSourceTile(this, zmaxCloudProduct, targetRect);
                             convolver = icolConvolutionAlgo.createConvolver(this, rhoRaec, targetRect, pm);
+                            if (tiePointAerosolFunctions) {
+                                tiePointFunctions = createTiePointAerosolFunctions(targetRect);
+                            }
+                            rho865Inversion = new Rho865Inversion(tiePointFunctions, rvBatch);
                         }
                         // end of optimisation attempt
 
@@ -426,21 +436,31 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
                         final double r1s = fresnelCoefficient.getCoeffFor(sza.getSampleFloat(x, y));
 
                         float phi = saa.getSampleFloat(x, y) - vaa.getSampleFloat(x, y);
-                        double mus = Math.cos(sza.getSampleFloat(x, y) * MathUtils.DTOR);
-                        double nus = Math.sin(sza.getSampleFloat(x, y) * MathUtils.DTOR);
                         double muv = Math.cos(vza.getSampleFloat(x, y) * MathUtils.DTOR);
-                        double nuv = Math.sin(vza.getSampleFloat(x, y) * MathUtils.DTOR);
 
-                        //compute the back scattering angle
-                        double csb = mus * muv + nus * nuv * Math.cos(phi * MathUtils.DTOR);
-                        double thetab = Math.acos(-csb) * MathUtils.RTOD;
-                        //compute the forward scattering angle
-                        double csf = mus * muv - nus * nuv * Math.cos(phi * MathUtils.DTOR);
-                        double thetaf = Math.acos(csf) * MathUtils.RTOD;
-
-                        double pab = aerosolScatteringFunctions.aerosolPhase(thetab, iaer);
-                        double tauaConst = 0.1 * Math.pow((550.0 / 865.0), ((iaer - 1) / 10.0));
-                        double paerFB = aerosolScatteringFunctions.aerosolPhaseFB(thetaf, thetab, iaer);
+                        double pab;
+                        double paerFB;
+                        if (tiePointFunctions != null) {
+                            // geometry terms interpolated into rvBatch, only the AOT dependency is evaluated below
+                            tiePointFunctions.interpolate(x, y, iaer, rvBatch);
+                            pab = tiePointFunctions.getPab();
+                            paerFB = tiePointFunctions.getPaerFB();
+                        } else {
+                            double mus = Math.cos(sza.getSampleFloat(x, y) * MathUtils.DTOR);
+                            double nus = Math.sin(sza.getSampleFloat(x, y) * MathUtils.DTOR);
+                            double nuv = Math.sin(vza.getSampleFloat(x, y) * MathUtils.DTOR);
+
+                            //compute the back scattering angle
+                            double csb = mus * muv + nus * nuv * Math.cos(phi * MathUtils.DTOR);
+                            double thetab = Math.acos(-csb) * MathUtils.RTOD;
+                            //compute the forward scattering angle
+                            double csf = mus * muv - nus * nuv * Math.cos(phi * MathUtils.DTOR);
+                            double thetaf = Math.acos(csf) * MathUtils.RTOD;
+
+                            pab = aerosolScatteringFunctions.aerosolPhase(thetab, iaer);
+                            paerFB = aerosolScatteringFunctions.aerosolPhaseFB(thetaf, thetab, iaer);
+                        }
+                        double tauaConst = computeTaua865(iaer);
 
                         double zmaxPart = ZmaxOp.computeZmaxPart(zmaxs, x, y, HA);
                         if (isLand.getSampleBoolean(x, y)) {
@@ -460,18 +480,9 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
                         double corrFac;
                         if (!isLand.getSampleBoolean(x, y) && icolAerosolForWater) {
                             corrFac = 1.0 + paerFB * (r1v + r1s * (1.0 - zmaxPart - zmaxCloudPart));
-                            for (int iiaot = 1; iiaot <= 16 && searchIAOT == -1; iiaot++) {
-                                taua = tauaConst * iiaot;
-                                RV rv = aerosolScatteringFunctions.aerosol_f(taua, iaer, pab, sza.getSampleFloat(x, y),
-                                                                             vza.getSampleFloat(x, y), phi);
-                                //  - this reflects ICOL D6a ATBD, eq. (2): rhoa = rho_a, rv.rhoa = rho_a0 !!!
-                                rhoa0 = rv.rhoa;
-                                rhoa = rhoa0 * corrFac;
-                                rhoBrr865[iiaot] = rhoa + rhoBrrBracket865 * rv.tds * (rv.tus - Math.exp(-taua / muv));
-                                if (rhoBrr865[iiaot] > rho_13) {
-                                    searchIAOT = iiaot - 1;
-                                }
-                            }
+                            rho865Inversion.setPixel(iaer, pab, sza.getSampleFloat(x, y), vza.getSampleFloat(x, y),
+                                                     phi, tauaConst, corrFac, rhoBrrBracket865, muv);
+                            searchIAOT = rho865Inversion.search(rho_13, rhoBrr865);
 
                             if (searchIAOT != -1) {
                                 aot = aerosolScatteringFunctions.interpolateLin(rhoBrr865[searchIAOT], searchIAOT,
@@ -484,14 +495,17 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
                             aot = userAot865;
                             searchIAOT = MathUtils.floorInt(aot * 10);
                             corrFac = 1.0 + paerFB * (r1v + r1s * (1.0 - zmaxPart - zmaxCloudPart));
-                            for (int iiaot = searchIAOT; iiaot <= searchIAOT + 1; iiaot++) {
-                                taua = tauaConst * iiaot;
-                                RV rv = aerosolScatteringFunctions.aerosol_f(taua, iaer, pab, sza.getSampleFloat(x, y),
-                                                                             vza.getSampleFloat(x, y), phi);
+                            tauaPair[0] = tauaConst * searchIAOT;
+                            tauaPair[1] = tauaConst * (searchIAOT + 1);
+                            computeAerosolFunctions(tauaPair, iaer, pab, sza.getSampleFloat(x, y),
+                                                    vza.getSampleFloat(x, y), phi, tiePointFunctions, rvBatch);
+                            for (int i = 0; i < tauaPair.length; i++) {
+                                taua = tauaPair[i];
                                 //  - this reflects ICOL D6a ATBD, eq. (2): rhoa = rho_a, rv.rhoa = rho_a0 !!!
-                                rhoa0 = rv.rhoa;
+                                rhoa0 = rvBatch.rhoa[i];
                                 rhoa = rhoa0 * corrFac;
-                                rhoBrr865[iiaot] = rhoa + rhoBrrBracket865 * rv.tds * (rv.tus - Math.exp(-taua / muv));
+                                rhoBrr865[searchIAOT + i] = rhoa + rhoBrrBracket865 * rvBatch.tds[i] *
+                                                                   (rvBatch.tus[i] - Math.exp(-taua / muv));
                             }
                         }
                         // end old case 1 water
@@ -525,16 +539,19 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
                                 Band band = (Band) rhoRaec[iwvl].getRasterDataNode();
                                 float wvl = band.getSpectralWavelength();
 
-                                //Compute the aerosols functions for the first aot
+                                //Compute the aerosols functions for both aots
                                 final double taua1 = 0.1 * searchIAOT * Math.pow((550.0 / wvl), (iaer / 10.0));
-                                RV rv1 = aerosolScatteringFunctions.aerosol_f(taua1, iaer, pab,
-                                                                              sza.getSampleFloat(x, y),
-                                                                              vza.getSampleFloat(x, y), phi);
+                                final double taua2 = 0.1 * (searchIAOT + 1) * Math.pow((550.0 / wvl), (iaer / 10.0));
+                                tauaPair[0] = taua1;
+                                tauaPair[1] = taua2;
+                                computeAerosolFunctions(tauaPair, iaer, pab, sza.getSampleFloat(x, y),
+                                                        vza.getSampleFloat(x, y), phi, tiePointFunctions, rvBatch);
 
-                                double aerosol1 = (rhoAerMean - rhoRaecIwvl) * (rv1.tds / (1.0 - rhoAerMean * rv1.sa));
-                                aerosol1 = (rv1.tus - Math.exp(-taua1 / muv)) * aerosol1;
+                                double aerosol1 = (rhoAerMean - rhoRaecIwvl) *
+                                                  (rvBatch.tds[0] / (1.0 - rhoAerMean * rvBatch.sa[0]));
+                                aerosol1 = (rvBatch.tus[0] - Math.exp(-taua1 / muv)) * aerosol1;
 
-                                final double fresnel1 = rv1.rhoa * paerFB * r1s * (zmaxPart + zmaxCloudPart);
+                                final double fresnel1 = rvBatch.rhoa[0] * paerFB * r1s * (zmaxPart + zmaxCloudPart);
                                 final double aea1 = aerosol1 - fresnel1;
 
                                 if (exportSeparateDebugBands) {
@@ -542,15 +559,10 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
                                     fresnelDebug[iwvl].setSample(x, y, fresnel1);
                                 }
 
-                                //Compute the aerosols functions for the second aot
-                                final double taua2 = 0.1 * (searchIAOT + 1) * Math.pow((550.0 / wvl), (iaer / 10.0));
-                                RV rv2 = aerosolScatteringFunctions.aerosol_f(taua2, iaer, pab,
-                                                                              sza.getSampleFloat(x, y),
-                                                                              vza.getSampleFloat(x, y), phi);
-
-                                double aerosol2 = (rhoAerMean - rhoRaecIwvl) * (rv2.tds / (1.0 - rhoAerMean * rv2.sa));
-                                aerosol2 = (rv2.tus - Math.exp(-taua2 / muv)) * aerosol2;
-                                aerosol2 = aerosol2 - rv2.rhoa * paerFB * r1s * (zmaxPart + zmaxCloudPart);
+                                double aerosol2 = (rhoAerMean - rhoRaecIwvl) *
+                                                  (rvBatch.tds[1] / (1.0 - rhoAerMean * rvBatch.sa[1]));
+                                aerosol2 = (rvBatch.tus[1] - Math.exp(-taua2 / muv)) * aerosol2;
+                                aerosol2 = aerosol2 - rvBatch.rhoa[1] * paerFB * r1s * (zmaxPart + zmaxCloudPart);
 
                                 //AOT INTERPOLATION to get AE_aer
                                 double aea = aerosolScatteringFunctions.interpolateLin(rhoBrr865[searchIAOT], aea1,
@@ -604,6 +616,115 @@ public class MerisAdjacencyEffectAerosolOp extends MerisBasisOp {
         }
     }
 
+    /**
+     * The AOT at 865nm of the first AOT step of the given aerosol model, step <code>iiaot</code> has
+     * <code>iiaot</code> times this AOT.
+     */
+    static double computeTaua865(int iaer) {
+        return 0.1 * Math.pow((550.0 / 865.0), ((iaer - 1) / 10.0));
+    }
+
+    /**
+     * Inverts the reflectance at 865nm as a function of the AOT steps <code>iiaot</code> = 1..16 by searching the
+     * first step whose reflectance exceeds the measured one. As in the original retrieval loop the steps are
+     * visited in ascending order and the search stops at the first crossing. Bisection would need five steps but
+     * can miss the first crossing where the reflectance is not monotone in the AOT.
+     */
+    abstract static class AotStepSearch {
+
+        static final int NUM_STEPS = 16;
+
+        /**
+         * @param rho_13    - the reflectance to invert
+         * @param rhoBrr865 - receives the reflectances of the evaluated steps, among them the bracketing ones
+         * @return the step below the first one exceeding the reflectance (the lower bracket is 0 for step 0),
+         *         or -1 if no step exceeds it
+         * @throws IOException - if a text table cannot be read
+         */
+        int search(double rho_13, double[] rhoBrr865) throws IOException {
+            for (int iiaot = 1; iiaot <= NUM_STEPS; iiaot++) {
+                rhoBrr865[iiaot] = computeRhoBrr865(iiaot);
+                if (rhoBrr865[iiaot] > rho_13) {
+                    return iiaot - 1;
+                }
+            }
+            return -1;
+        }
+
+        abstract double computeRhoBrr865(int iiaot) throws IOException;
+    }
+
+    /**
+     * The AOT step search for a pixel. With tie-point aerosol functions the step reflectances are interpolated from
+     * the tables of the tie-point nodes, otherwise they are evaluated with the geometry terms shared by all steps.
+     */
+    private class Rho865Inversion extends AotStepSearch {
+
+        private final TiePointAerosolFunctions tiePointFunctions;
+        private final RVBatch rvBatch;
+        private final double[] taua = new double[1];
+
+        private int iaer;
+        private double pab;
+        private float sza;
+        private float vza;
+        private float phi;
+        private double tauaConst;
+        private double corrFac;
+        private double rhoBrrBracket865;
+        private double muv;
+
+        Rho865Inversion(TiePointAerosolFunctions tiePointFunctions, RVBatch rvBatch) {
+            this.tiePointFunctions = tiePointFunctions;
+            this.rvBatch = rvBatch;
+        }
+
+        void setPixel(int iaer, double pab, float sza, float vza, float phi, double tauaConst, double corrFac,
+                      double rhoBrrBracket865, double muv) {
+            this.iaer = iaer;
+            this.pab = pab;
+            this.sza = sza;
+            this.vza = vza;
+            this.phi = phi;
+            this.tauaConst = tauaConst;
+            this.corrFac = corrFac;
+            this.rhoBrrBracket865 = rhoBrrBracket865;
+            this.muv = muv;
+        }
+
+        @Override
+        double computeRhoBrr865(int iiaot) throws IOException {
+            if (tiePointFunctions != null) {
+                return tiePointFunctions.getRhoa865(iiaot) * corrFac +
+                       rhoBrrBracket865 * tiePointFunctions.getTransmission865(iiaot);
+            }
+            taua[0] = tauaConst * iiaot;
+            computeAerosolFunctions(taua, iaer, pab, sza, vza, phi, tiePointFunctions, rvBatch);
+            //  - this reflects ICOL D6a ATBD, eq. (2): rhoa = rho_a, rv.rhoa = rho_a0 !!!
+            final double rhoa = rvBatch.rhoa[0] * corrFac;
+            return rhoa + rhoBrrBracket865 * rvBatch.tds[0] * (rvBatch.tus[0] - Math.exp(-taua[0] / muv));
+        }
+    }
+
+    private TiePointAerosolFunctions createTiePointAerosolFunctions(Rectangle targetRect) {
+        return new TiePointAerosolFunctions(aerosolScatteringFunctions,
+                                            l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME),
+                                            l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME),
+                                            l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME),
+                                            l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME),
+                                            targetRect);
+    }
+
+    private void computeAerosolFunctions(double[] taua, int iaer, double pab, float sza, float vza, float phi,
+                                         TiePointAerosolFunctions tiePointFunctions, RVBatch rv) throws IOException {
+        if (tiePointFunctions != null) {
+            // rv already holds the geometry terms interpolated for the pixel
+            aerosolScatteringFunctions.aerosol_f(taua, taua.length, pab, rv);
+        } else {
+            aerosolScatteringFunctions.aerosol_f(taua, taua.length, iaer, pab, sza, vza, phi, rv);
+        }
+    }
+
     public static class Spi extends OperatorSpi {
 
         public Spi() {
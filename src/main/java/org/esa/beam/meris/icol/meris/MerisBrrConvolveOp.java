@@ -1,6 +1,5 @@
 package org.esa.beam.meris.icol.meris;
 
-import com.bc.ceres.core.NullProgressMonitor;
 import com.bc.ceres.glevel.MultiLevelImage;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.Product;
@@ -12,18 +11,15 @@ import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.meris.icol.CoeffW;
+import org.esa.beam.meris.icol.IcolAuxdata;
 import org.esa.beam.meris.icol.IcolConstants;
 import org.esa.beam.meris.icol.utils.Convoluter;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
 import org.esa.beam.util.ProductUtils;
-import org.esa.beam.util.ResourceInstaller;
-import org.esa.beam.util.SystemUtils;
 
 import javax.media.jai.KernelJAI;
 import java.awt.image.RenderedImage;
-import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 
 /**
  * @author Olaf Danne
@@ -100,15 +96,8 @@ public class MerisBrrConvolveOp extends Operator {
     }
 
     private void loadAuxData() throws IOException {
-        String auxdataSrcPath = "auxdata/icol";
-        final String auxdataDestPath = ".beam/beam-meris-icol/" + auxdataSrcPath;
-        File auxdataTargetDir = new File(SystemUtils.getUserHomeDir(), auxdataDestPath);
-        URL sourceUrl = ResourceInstaller.getSourceUrl(this.getClass());
-
-        ResourceInstaller resourceInstaller = new ResourceInstaller(sourceUrl, auxdataSrcPath, auxdataTargetDir);
-        resourceInstaller.install(".*", new NullProgressMonitor());
-
-        coeffW = new CoeffW(auxdataTargetDir, false, IcolConstants.AE_CORRECTION_MODE_RAYLEIGH);
+        final IcolAuxdata auxdata = IcolAuxdata.getInstance();
+        coeffW = auxdata.getCoeffW(IcolConstants.AE_CORRECTION_MODE_RAYLEIGH);
     }
 
     public static class Spi extends OperatorSpi {
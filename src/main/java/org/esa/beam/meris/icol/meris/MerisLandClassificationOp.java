@@ -21,8 +21,6 @@ import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.FlagCoding;
 import org.esa.beam.framework.datamodel.GeoCoding;
-import org.esa.beam.framework.datamodel.GeoPos;
-import org.esa.beam.framework.datamodel.PixelPos;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
 import org.esa.beam.framework.gpf.OperatorException;
@@ -36,6 +34,8 @@ import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.meris.brr.GaseousCorrectionOp;
 import org.esa.beam.meris.brr.HelperFunctions;
 import org.esa.beam.meris.brr.Rad2ReflOp;
+import org.esa.beam.meris.icol.utils.GeoCodingCache;
+import org.esa.beam.meris.icol.utils.WaterFractionRaster;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
@@ -77,20 +77,35 @@ public class MerisLandClassificationOp extends MerisBasisOp implements Constants
     private Product targetProduct;
 
     @Parameter(defaultValue = "true",
-               description = "If set to 'true', use new, improved land/water mask.")
+               description = "If set to 'true', use new, improved land/water mask. RR products use its 150 m level.")
     private boolean useAdvancedLandWaterMask;
 
+    @Parameter(defaultValue = "1", interval = "[1,4]",
+               description = "The number of land/water mask samples per pixel in each direction. " +
+                             "A pixel is land if less than half of its samples are water.")
+    private int watermaskSuperSampling;
+
     private WatermaskClassifier classifier;
+    private GeoCodingCache geoCodingCache;
     private static int WATERMASK_RESOLUTION_DEFAULT = 50;
+    // RR products use the coarser 150 m level of the classifier, one lookup per 1.2 km pixel as for FR
+    private static int WATERMASK_RESOLUTION_RR = 150;
 
     @Override
     public void initialize() throws OperatorException {
         if (useAdvancedLandWaterMask) {
+            final boolean isReducedResolution = l1bProduct.getProductType().contains("_RR");
             try {
-                classifier = new WatermaskClassifier(WATERMASK_RESOLUTION_DEFAULT);
+                classifier = new WatermaskClassifier(isReducedResolution ? WATERMASK_RESOLUTION_RR :
+                                                     WATERMASK_RESOLUTION_DEFAULT);
             } catch (IOException e) {
                 getLogger().warning("Watermask classifier could not be initialized - fallback mode is used.");
             }
+            final GeoCoding geoCoding = l1bProduct.getGeoCoding();
+            if (geoCoding != null && geoCoding.canGetGeoPos()) {
+                geoCodingCache = new GeoCodingCache(geoCoding, l1bProduct.getSceneRasterWidth(),
+                                                    l1bProduct.getSceneRasterHeight());
+            }
         }
 
         try {
@@ -177,7 +192,13 @@ public class MerisLandClassificationOp extends MerisBasisOp implements Constants
             final Object r7threshArray = auxData.r7thresh.getJavaArray();
             final Object r13threshArray = auxData.r13thresh.getJavaArray();
 
-            GeoPos geoPos = null;
+            // the land/water mask is resampled once for the whole tile
+            WaterFractionRaster waterFractions = null;
+            if (useAdvancedLandWaterMask && classifier != null && geoCodingCache != null) {
+                waterFractions = new WaterFractionRaster(classifier, geoCodingCache, rectangle,
+                                                         watermaskSuperSampling);
+            }
+
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y += Constants.SUBWIN_HEIGHT) {
                 for (int x = rectangle.x; x < rectangle.x + rectangle.width; x += Constants.SUBWIN_WIDTH) {
 
@@ -265,20 +286,15 @@ public class MerisLandClassificationOp extends MerisBasisOp implements Constants
                                 is_land_consolidated = is_land;
                             }
 
-                            if (useAdvancedLandWaterMask) {
-                                WatermaskStrategy strategy = new MerisWatermaskStrategy();
-                                final GeoCoding geoCoding = l1bProduct.getGeoCoding();
-                                if (geoCoding.canGetGeoPos()) {
-                                    geoPos = geoCoding.getGeoPos(new PixelPos(ix, iy), geoPos);
-                                    byte waterMaskSample = strategy.getWatermaskSample(geoPos.lat, geoPos.lon);
-                                    if (!(waterMaskSample == WatermaskClassifier.INVALID_VALUE)) {
-                                        is_land = (waterMaskSample == WatermaskClassifier.LAND_VALUE);
-                                        is_land_consolidated = is_land;
-                                        final boolean isGlint = (is_glint && !is_land);
-                                        final boolean isLoinld = (is_water && !is_land);
-                                        targetTile.setSample(ix, iy, F_MEGLINT, isGlint);
-                                        targetTile.setSample(ix, iy, F_LOINLD, isLoinld);
-                                    }
+                            if (waterFractions != null) {
+                                final byte waterFraction = waterFractions.getWaterFraction(ix, iy);
+                                if (waterFraction != WaterFractionRaster.INVALID_FRACTION) {
+                                    is_land = (waterFraction < 50);
+                                    is_land_consolidated = is_land;
+                                    final boolean isGlint = (is_glint && !is_land);
+                                    final boolean isLoinld = (is_water && !is_land);
+                                    targetTile.setSample(ix, iy, F_MEGLINT, isGlint);
+                                    targetTile.setSample(ix, iy, F_LOINLD, isLoinld);
                                 }
                             }
 
@@ -377,21 +393,4 @@ public class MerisLandClassificationOp extends MerisBasisOp implements Constants
         }
     }
 
-    private interface WatermaskStrategy {
-
-        byte getWatermaskSample(float lat, float lon);
-    }
-
-    private class MerisWatermaskStrategy implements WatermaskStrategy {
-
-        @Override
-        public byte getWatermaskSample(float lat, float lon) {
-            int waterMaskSample = WatermaskClassifier.INVALID_VALUE;
-            if (classifier != null) {
-                waterMaskSample = classifier.getWaterMaskSample(lat, lon);
-            }
-            return (byte) waterMaskSample;
-        }
-    }
-
 }
@@ -44,7 +44,9 @@ import org.esa.beam.meris.icol.utils.DebugUtils;
 import org.esa.beam.meris.icol.utils.IcolUtils;
 import org.esa.beam.meris.icol.utils.OperatorUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 
@@ -122,13 +124,20 @@ public class MerisOp extends Operator {
     private int productType = 0;
     //    @Parameter(defaultValue = "true")
     private boolean reshapedConvolution = true;  // currently no user option
+    @Parameter(defaultValue = "false",
+               description = "If set to 'true', the AE convolutions are computed in full resolution using FFT.")
+    private boolean fftConvolution = false;
+    @Parameter(defaultValue = "false",
+               description = "If set to 'true', the AE convolutions are computed in full resolution using summed-area tables.")
+    private boolean boxSumConvolution = false;
     //    @Parameter(defaultValue = "false",
 //               description = "If set to 'true', the convolution shall be computed on GPU device if available.")
 // currently no user option
     private boolean openclConvolution = false;
     //    @Parameter(defaultValue = "64", description = "The tile size used.")
-    // currently no user option
-    private int tileSize = 64;
+    // currently no user option. This is the tile size of the per-pixel operators, the operators with a large
+    // source extension choose larger tiles (see OperatorUtils.computeTileSize)
+    private int tileSize = OperatorUtils.MIN_TILE_SIZE;
     @Parameter(defaultValue = "EVERYWHERE", valueSet = {"EVERYWHERE", "COASTAL_ZONE", "COASTAL_OCEAN", "OCEAN"},
                description = "The area where the AE correction will be applied.")
     private AeArea aeArea;
@@ -136,12 +145,29 @@ public class MerisOp extends Operator {
                description = "If set to 'true', use new, improved land/water mask.")
     private boolean useAdvancedLandWaterMask = true;
 
+    // the requested outputs, which determine the bands exported by the operators of the chain and whether the
+    // aerosol AE stage (its AE mask, convolution and correction) is created at all; the Rayleigh AE stage and
+    // its inputs are always read by the reflectance correction
+    private boolean radianceOutput;
+    private boolean aerosolOutput;
+    private boolean additionalDebugBands;
+    // the products which keep their tiles in scratch files, disposed with this operator
+    private final List<Product> materializedProducts = new ArrayList<Product>();
+
     @Override
     public void initialize() throws OperatorException {
         // JAI.getDefaultInstance().getTileScheduler().setParallelism(1); // only for debugging purpose!!
 
         OperatorUtils.validateMerisInputBands(sourceProduct);
 
+        if (fftConvolution && boxSumConvolution) {
+            throw new OperatorException("Only one of 'fftConvolution' and 'boxSumConvolution' may be set.");
+        }
+        if (productType != 0 && productType != 1) {
+            throw new OperatorException("Unknown product type: " + productType +
+                                        " - must be 0 (radiance product) or 1 (rho TOA product).");
+        }
+
         if (tileSize > 0) {
             sourceProduct.setPreferredTileSize(tileSize, tileSize);
         }
@@ -149,6 +175,12 @@ public class MerisOp extends Operator {
         getLogger().info("Tile size of source product is " + sourceProduct.getPreferredTileSize());
         getLogger().info("Applying AE over: " + aeArea);
 
+        radianceOutput = productType == 0;
+        additionalDebugBands = radianceOutput && "RS".equals(System.getProperty("additionalOutputBands"));
+        // the radiance correction reads the aerosol corrected reflectances, the rho TOA product may do without
+        aerosolOutput = radianceOutput || exportRhoToaAerosol || exportAeAerosol || exportAlphaAot ||
+                        (icolAerosolCase2 && icolAerosolForWater);
+
         Product rad2reflProduct = createRad2ReflProduct();
         Product ctpProduct = createCtpProduct();
         Product cloudClassificationProduct = createCloudClassificationProduct(rad2reflProduct, ctpProduct);
@@ -161,50 +193,71 @@ public class MerisOp extends Operator {
         Product fresnelProduct = createFresnelProduct(gasProduct, landProduct);
         Product rayleighProduct = createRayleighProduct(cloudClassificationProduct, landProduct, fresnelProduct);
         Product aemaskRayleighProduct = createAeMaskRayleighProduct(landProduct);
-        Product aemaskAerosolProduct = createAeMaskProduct(landProduct);
-        Product coastDistanceProduct = createCoastDistanceProduct(landProduct);
-        Product cloudDistanceProduct = createCloudDistanceProduct(cloudClassificationProduct);
+        Product aemaskAerosolProduct = aerosolOutput ? createAeMaskProduct(landProduct) : null;
+        // the distance and convolution products are expensive to compute and read with large source extensions
+        Product coastDistanceProduct = materialize(createCoastDistanceProduct(landProduct), "coastDistanceProduct");
+        Product cloudDistanceProduct = materialize(createCloudDistanceProduct(cloudClassificationProduct),
+                                                   "cloudDistanceProduct");
         Product zmaxProduct = createZMaxProduct(aemaskRayleighProduct, coastDistanceProduct);
         Product zmaxCloudProduct = createZMaxCloudProduct(aemaskRayleighProduct, cloudDistanceProduct);
 
         Product brrCloudProduct = createBrrCloudProduct(rad2reflProduct, cloudClassificationProduct, landProduct,
                                                         rayleighProduct);
 
-        Product brrConvolveProduct = createBrrConvolveProduct(brrCloudProduct);
+        Product brrConvolveProduct = materialize(createBrrConvolveProduct(brrCloudProduct), "brrConvolveProduct");
 
         Product aeRayProduct = createAeRayProduct(rad2reflProduct, cloudClassificationProduct, gasProduct, landProduct,
                                                   cloudLandMaskProduct,
                                                   aemaskRayleighProduct, zmaxProduct, zmaxCloudProduct, brrCloudProduct,
                                                   brrConvolveProduct);
 
-        Product rayAercConvolveProduct = createRayAercConvolveProduct(aeRayProduct);
-        Product aeAerProduct = createAeAerProduct(cloudClassificationProduct, landProduct,
-                                                  cloudLandMaskProduct, aemaskAerosolProduct,
-                                                  zmaxProduct, zmaxCloudProduct, aeRayProduct, rayAercConvolveProduct);
+        Product aeAerProduct = null;
+        if (aerosolOutput) {
+            Product rayAercConvolveProduct = materialize(createRayAercConvolveProduct(aeRayProduct),
+                                                         "rayAercConvolveProduct");
+            aeAerProduct = createAeAerProduct(cloudClassificationProduct, landProduct, cloudLandMaskProduct,
+                                              aemaskAerosolProduct, zmaxProduct, zmaxCloudProduct, aeRayProduct,
+                                              rayAercConvolveProduct);
+        }
         Product reverseRhoToaProduct = createReverseRhoToaProduct(rad2reflProduct, cloudClassificationProduct,
                                                                   gasProduct, landProduct, aemaskRayleighProduct,
                                                                   aemaskAerosolProduct, aeRayProduct, aeAerProduct);
         Product finalRhoToaProduct = createFinalRhoToaProduct(rad2reflProduct, reverseRhoToaProduct);
 
-        if (productType == 0) {
+        if (radianceOutput) {
             // radiance output product
             Product reverseRadianceProduct = createReverseRadianceProduct(gasProduct, aemaskAerosolProduct,
                                                                           aeAerProduct, finalRhoToaProduct);
 
             // additional output bands for RS
-            if (System.getProperty("additionalOutputBands") != null && System.getProperty(
-                    "additionalOutputBands").equals("RS")) {
+            if (additionalDebugBands) {
 
                 addDebugBands(rad2reflProduct, ctpProduct, cloudClassificationProduct, landProduct,
                               aemaskRayleighProduct, aemaskAerosolProduct, coastDistanceProduct, zmaxProduct,
                               brrCloudProduct, brrConvolveProduct, aeRayProduct, aeAerProduct, reverseRadianceProduct);
             }
             targetProduct = reverseRadianceProduct;
-        } else if (productType == 1) {
+        } else {
             targetProduct = finalRhoToaProduct;
         }
     }
 
+    @Override
+    public void dispose() {
+        for (Product product : materializedProducts) {
+            product.dispose();
+        }
+        materializedProducts.clear();
+        super.dispose();
+    }
+
+    private Product materialize(Product product, String variableName) {
+        final Product materializedProduct = OperatorUtils.materialize(product, variableName, getLogger());
+        if (materializedProduct != product) {
+            materializedProducts.add(materializedProduct);
+        }
+        return materializedProduct;
+    }
 
     private void addDebugBands(Product rad2reflProduct, Product ctpProduct, Product cloudClassificationProduct,
                                Product landProduct, Product aemaskRayleighProduct, Product aemaskAerosolProduct,
@@ -291,23 +344,29 @@ public class MerisOp extends Operator {
         reverseRhoToaInput.put("land", landProduct);
         reverseRhoToaInput.put("cloud", cloudClassificationProduct);
         reverseRhoToaInput.put("aemaskRayleigh", aemaskRayleighProduct);
-        reverseRhoToaInput.put("aemaskAerosol", aemaskAerosolProduct);
         reverseRhoToaInput.put("gascor", gasProduct);
         reverseRhoToaInput.put("ae_ray", aeRayProduct);
-        reverseRhoToaInput.put("ae_aerosol", aeAerProduct);
+        if (aerosolOutput) {
+            reverseRhoToaInput.put("aemaskAerosol", aemaskAerosolProduct);
+            reverseRhoToaInput.put("ae_aerosol", aeAerProduct);
+        }
         Map<String, Object> reverseRhoToaParams = new HashMap<String, Object>(7);
         reverseRhoToaParams.put("exportRhoToa", true);
-        reverseRhoToaParams.put("exportRhoToaRayleigh", exportRhoToaRayleigh);
-        reverseRhoToaParams.put("exportRhoToaAerosol", exportRhoToaAerosol);
-        if (productType == 0 && System.getProperty("additionalOutputBands") != null && System.getProperty(
-                "additionalOutputBands").equals("RS")) {
-            // they already exist in this case
-            exportAeRayleigh = false;
-            exportAeAerosol = false;
+        if (radianceOutput) {
+            // the radiance correction only reads the rho_toa_AEAC bands, the debug bands are taken from the
+            // AE products themselves
+            reverseRhoToaParams.put("exportRhoToaRayleigh", false);
+            reverseRhoToaParams.put("exportRhoToaAerosol", true);
+            reverseRhoToaParams.put("exportAeRayleigh", false);
+            reverseRhoToaParams.put("exportAeAerosol", false);
+            reverseRhoToaParams.put("exportAlphaAot", false);
+        } else {
+            reverseRhoToaParams.put("exportRhoToaRayleigh", exportRhoToaRayleigh);
+            reverseRhoToaParams.put("exportRhoToaAerosol", exportRhoToaAerosol);
+            reverseRhoToaParams.put("exportAeRayleigh", exportAeRayleigh);
+            reverseRhoToaParams.put("exportAeAerosol", exportAeAerosol);
+            reverseRhoToaParams.put("exportAlphaAot", exportAlphaAot);
         }
-        reverseRhoToaParams.put("exportAeRayleigh", exportAeRayleigh);
-        reverseRhoToaParams.put("exportAeAerosol", exportAeAerosol);
-        reverseRhoToaParams.put("exportAlphaAot", exportAlphaAot);
         reverseRhoToaParams.put("icolAerosolCase2", icolAerosolCase2);
         reverseRhoToaParams.put("icolAerosolForWater", icolAerosolForWater);
 
@@ -334,16 +393,14 @@ public class MerisOp extends Operator {
         aeAerInput.put("cloudLandMask", cloudLandMaskProduct);
         aeAerInput.put("zmaxCloud", zmaxCloudProduct);
         Map<String, Object> aeAerosolParams = new HashMap<String, Object>(8);
-        if (productType == 0 && System.getProperty("additionalOutputBands") != null && System.getProperty(
-                "additionalOutputBands").equals("RS")) {
-            exportSeparateDebugBands = true;
-        }
-        aeAerosolParams.put("exportSeparateDebugBands", exportSeparateDebugBands);
+        aeAerosolParams.put("exportSeparateDebugBands", exportSeparateDebugBands || additionalDebugBands);
         aeAerosolParams.put("icolAerosolForWater", icolAerosolForWater);
         aeAerosolParams.put("userAerosolReferenceWavelength", userAerosolReferenceWavelength);
         aeAerosolParams.put("userAlpha", userAlpha);
         aeAerosolParams.put("userAot", userAot);
         aeAerosolParams.put("reshapedConvolution", reshapedConvolution);
+        aeAerosolParams.put("fftConvolution", fftConvolution);
+        aeAerosolParams.put("boxSumConvolution", boxSumConvolution);
         aeAerosolParams.put("landExpression", "land_classif_flags.F_LANDCONS || land_classif_flags.F_ICE");
         Product aeAerProduct;
         if (icolAerosolCase2 && icolAerosolForWater) {
@@ -401,13 +458,10 @@ public class MerisOp extends Operator {
         Map<String, Object> aeRayParams = new HashMap<String, Object>(5);
         aeRayParams.put("landExpression", "land_classif_flags.F_LANDCONS || land_classif_flags.F_ICE");
         aeRayParams.put("cloudExpression", "cloud_classif_flags.F_CLOUD");
-        // todo simplify expression
-        final String debugProperty = System.getProperty("additionalOutputBands");
-        if (productType == 0 && debugProperty != null && debugProperty.equals("RS")) {
-            exportSeparateDebugBands = true;
-        }
-        aeRayParams.put("exportSeparateDebugBands", exportSeparateDebugBands);
+        aeRayParams.put("exportSeparateDebugBands", exportSeparateDebugBands || additionalDebugBands);
         aeRayParams.put("reshapedConvolution", reshapedConvolution);
+        aeRayParams.put("fftConvolution", fftConvolution);
+        aeRayParams.put("boxSumConvolution", boxSumConvolution);
         aeRayParams.put("openclConvolution", openclConvolution);
         aeRayParams.put("instrument", Instrument.MERIS);
         return GPF.createProduct(OperatorSpi.getOperatorAlias(AdjacencyEffectRayleighOp.class), aeRayParams,
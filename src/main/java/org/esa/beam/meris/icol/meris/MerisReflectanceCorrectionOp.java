@@ -76,13 +76,13 @@ public class MerisReflectanceCorrectionOp extends Operator {
     private Product cloudProduct;
     @SourceProduct(alias = "aemaskRayleigh")
     private Product aemaskRayleighProduct;
-    @SourceProduct(alias = "aemaskAerosol")
+    @SourceProduct(alias = "aemaskAerosol", optional = true)
     private Product aemaskAerosolProduct;
     @SourceProduct(alias = "gascor")
     private Product gasCorProduct;
     @SourceProduct(alias = "ae_ray")
     private Product aeRayProduct;
-    @SourceProduct(alias = "ae_aerosol")
+    @SourceProduct(alias = "ae_aerosol", optional = true)
     private Product aeAerosolProduct;
 
     @TargetProduct
@@ -111,6 +111,12 @@ public class MerisReflectanceCorrectionOp extends Operator {
 
     @Override
     public void initialize() throws OperatorException {
+        // without the aerosol AE products only the Rayleigh corrected outputs can be computed
+        final boolean aerosolCorrected = aemaskAerosolProduct != null && aeAerosolProduct != null;
+        if (!aerosolCorrected && (exportRhoToaAerosol || exportAeAerosol || exportAlphaAot ||
+                                  (icolAerosolCase2 && icolAerosolForWater))) {
+            throw new OperatorException("The aerosol outputs require the 'aemaskAerosol' and 'ae_aerosol' products.");
+        }
         String productType = l1bProduct.getProductType();
         final int index = productType.indexOf("_1");
         if (index != -1) {
@@ -155,8 +161,10 @@ public class MerisReflectanceCorrectionOp extends Operator {
 
         ProductUtils.copyBand("land_flag_ray_conv", aeRayProduct, targetProduct, true);
         ProductUtils.copyBand("cloud_flag_ray_conv", aeRayProduct, targetProduct, true);
-        ProductUtils.copyBand("land_flag_aer_conv", aeAerosolProduct, targetProduct, true);
-        ProductUtils.copyBand("cloud_flag_aer_conv", aeAerosolProduct, targetProduct, true);
+        if (aerosolCorrected) {
+            ProductUtils.copyBand("land_flag_aer_conv", aeAerosolProduct, targetProduct, true);
+            ProductUtils.copyBand("cloud_flag_aer_conv", aeAerosolProduct, targetProduct, true);
+        }
 
         // create and add the flags coding
         FlagCoding flagCoding = createFlagCoding(aeFlagBand.getName());
@@ -164,7 +172,9 @@ public class MerisReflectanceCorrectionOp extends Operator {
         aeFlagBand.setSampleCoding(flagCoding);
 
         ProductUtils.copyFlagBands(l1bProduct, targetProduct, true);
-        ProductUtils.copyFlagBands(aeAerosolProduct, targetProduct, true);//needed ???
+        if (aerosolCorrected) {
+            ProductUtils.copyFlagBands(aeAerosolProduct, targetProduct, true);//needed ???
+        }
     }
 
     private FlagCoding createFlagCoding(String bandName) {
@@ -277,10 +287,15 @@ public class MerisReflectanceCorrectionOp extends Operator {
             Tile cloud = getSourceTile(cloudProduct.getBand(CloudClassificationOp.CLOUD_FLAGS), rect);
             Tile aemaskRayleigh = getSourceTile(aemaskRayleighProduct.getBand(AdjacencyEffectMaskOp.AE_MASK_RAYLEIGH),
                                                 rect);
-            Tile aemaskAerosol = getSourceTile(aemaskAerosolProduct.getBand(AdjacencyEffectMaskOp.AE_MASK_AEROSOL),
-                                               rect);
             Tile gasCor0 = getSourceTile(gasCorProduct.getBand(GaseousCorrectionOp.RHO_NG_BAND_PREFIX + "_1"), rect);
-            Tile aerosol = getSourceTile(aeAerosolProduct.getBand(MerisAdjacencyEffectAerosolOp.AOT_FLAGS), rect);
+            // the aerosol flags are not set if the aerosol AE correction has not been computed
+            Tile aemaskAerosol = null;
+            Tile aerosol = null;
+            if (aeAerosolProduct != null) {
+                aemaskAerosol = getSourceTile(aemaskAerosolProduct.getBand(AdjacencyEffectMaskOp.AE_MASK_AEROSOL),
+                                              rect);
+                aerosol = getSourceTile(aeAerosolProduct.getBand(MerisAdjacencyEffectAerosolOp.AOT_FLAGS), rect);
+            }
 
             for (int y = rect.y; y < rect.y + rect.height; y++) {
                 for (int x = rect.x; x < rect.x + rect.width; x++) {
@@ -288,9 +303,6 @@ public class MerisReflectanceCorrectionOp extends Operator {
                     if (aemaskRayleigh.getSampleInt(x, y) == 1) {
                         result += FLAG_AE_MASK_RAYLEIGH;
                     }
-                    if (aemaskAerosol.getSampleInt(x, y) == 1) {
-                        result += FLAG_AE_MASK_AEROSOL;
-                    }
                     if (land.getSampleBit(x, y, 3)) {
                         result += FLAG_LANDCONS;
                     }
@@ -300,21 +312,27 @@ public class MerisReflectanceCorrectionOp extends Operator {
                     if (aemaskRayleigh.getSampleInt(x, y) == 1 && gasCor0.getSampleFloat(x, y) != -1) {
                         result += FLAG_AE_APPLIED_RAYLEIGH;
                     }
-                    boolean aotError = aerosol.getSampleBit(x, y, 1);
-                    if (aemaskAerosol.getSampleInt(x, y) == 1 && gasCor0.getSampleFloat(x, y) != -1 && !aotError) {
-                        result += FLAG_AE_APPLIED_AEROSOL;
-                    }
-                    if (aerosol.getSampleBit(x, y, 0)) {
-                        result += FLAG_ALPHA_OUT_OF_RANGE;
-                    }
-                    if (aotError) {
-                        result += FLAG_AOT_OUT_OF_RANGE;
-                    }
-                    if (aerosol.getSampleBit(x, y, 3)) {
-                        result += FLAG_HIGH_TURBID_WATER;
-                    }
-                    if (aerosol.getSampleBit(x, y, 4)) {
-                        result += FLAG_SUNGLINT;
+                    if (aerosol != null) {
+                        if (aemaskAerosol.getSampleInt(x, y) == 1) {
+                            result += FLAG_AE_MASK_AEROSOL;
+                        }
+                        boolean aotError = aerosol.getSampleBit(x, y, 1);
+                        if (aemaskAerosol.getSampleInt(x, y) == 1 && gasCor0.getSampleFloat(x, y) != -1 &&
+                            !aotError) {
+                            result += FLAG_AE_APPLIED_AEROSOL;
+                        }
+                        if (aerosol.getSampleBit(x, y, 0)) {
+                            result += FLAG_ALPHA_OUT_OF_RANGE;
+                        }
+                        if (aotError) {
+                            result += FLAG_AOT_OUT_OF_RANGE;
+                        }
+                        if (aerosol.getSampleBit(x, y, 3)) {
+                            result += FLAG_HIGH_TURBID_WATER;
+                        }
+                        if (aerosol.getSampleBit(x, y, 4)) {
+                            result += FLAG_SUNGLINT;
+                        }
                     }
                     targetTile.setSample(x, y, result);
                 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.meris;
+
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions.RVBatch;
+import org.esa.beam.util.math.MathUtils;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+
+/**
+ * Evaluates the geometry dependent terms of the aerosol scattering functions (the transmittances at the AOT
+ * nodes, the multiple scattering polynomial, the primary reflectance geometry and the phase functions) on the
+ * tie-point nodes covering a tile, and bilinearly interpolates them to the pixels.
+ * <p/>
+ * The MERIS angles are themselves bilinearly interpolated from the tie-points, so the error only results from
+ * the non-linearity of the terms within a tie-point cell. For typical cells (e.g. 0.2 deg in sun zenith,
+ * 1 deg in view zenith and 2 deg in azimuth) the relative error of <code>rhoa</code>, <code>tds</code> and
+ * <code>tus</code> is below 1.0E-4. Where a cell crosses a zenith node of the tables, the exact values are
+ * discontinuous and the interpolation smooths the jump, the deviation there reaches about 1.5%.
+ * <p/>
+ * For the AOT retrieval at 865nm the reflectance terms of all AOT steps are tabulated on the nodes as well, so
+ * that the inversion of a pixel only interpolates table entries instead of evaluating <code>aerosol_f</code>.
+ * <p/>
+ * The node terms are computed lazily for the aerosol models actually requested. Instances are used by a
+ * single tile computation and are not thread safe.
+ */
+class TiePointAerosolFunctions {
+
+    // length of the arrays indexed by the aerosol model iaer = 1..26
+    static final int MAX_IAER = 27;
+
+    private final AerosolScatteringFunctions aerosolScatteringFunctions;
+    private final float[] szaTiePoints;
+    private final float[] vzaTiePoints;
+    private final float[] saaTiePoints;
+    private final float[] vaaTiePoints;
+    private final int gridWidth;
+    private final int gridHeight;
+    private final double offsetX;
+    private final double offsetY;
+    private final double subSamplingX;
+    private final double subSamplingY;
+
+    // the nodes of the tile, [i0, i0 + nodeWidth) x [j0, j0 + nodeHeight)
+    private final int i0;
+    private final int j0;
+    private final int nodeWidth;
+    private final int nodeHeight;
+
+    private final RVBatch[][] nodeTerms = new RVBatch[MAX_IAER][];
+    private final double[][] nodePab = new double[MAX_IAER][];
+    private final double[][] nodePaerFB = new double[MAX_IAER][];
+    // the terms of the 865nm AOT steps, [iaer][node][iiaot]
+    private final double[][][] nodeRhoa865 = new double[MAX_IAER][][];
+    private final double[][][] nodeTransmission865 = new double[MAX_IAER][][];
+
+    private double pab;
+    private double paerFB;
+
+    // the model, the nodes and the weights of the last interpolated pixel
+    private int iaer;
+    private int k00;
+    private int k10;
+    private int k01;
+    private int k11;
+    private double wx;
+    private double wy;
+
+    TiePointAerosolFunctions(AerosolScatteringFunctions aerosolScatteringFunctions, TiePointGrid sza,
+                             TiePointGrid vza, TiePointGrid saa, TiePointGrid vaa, Rectangle targetRect) {
+        this.aerosolScatteringFunctions = aerosolScatteringFunctions;
+        szaTiePoints = sza.getTiePoints();
+        vzaTiePoints = vza.getTiePoints();
+        saaTiePoints = saa.getTiePoints();
+        vaaTiePoints = vaa.getTiePoints();
+        gridWidth = sza.getGridWidth();
+        gridHeight = sza.getGridHeight();
+        offsetX = sza.getOffsetX();
+        offsetY = sza.getOffsetY();
+        subSamplingX = sza.getSubSamplingX();
+        subSamplingY = sza.getSubSamplingY();
+
+        i0 = cellIndex(fractionalX(targetRect.x), gridWidth);
+        j0 = cellIndex(fractionalY(targetRect.y), gridHeight);
+        nodeWidth = cellIndex(fractionalX(targetRect.x + targetRect.width - 1), gridWidth) - i0 + 2;
+        nodeHeight = cellIndex(fractionalY(targetRect.y + targetRect.height - 1), gridHeight) - j0 + 2;
+    }
+
+    /**
+     * Interpolates the geometry terms of the given aerosol model to the pixel. Afterwards <code>rv</code> can be
+     * evaluated with {@link AerosolScatteringFunctions#aerosol_f(double[], int, double, RVBatch)}, the phase
+     * functions of the pixel are provided by {@link #getPab()} and {@link #getPaerFB()}.
+     *
+     * @param x    - the pixel x coordinate
+     * @param y    - the pixel y coordinate
+     * @param iaer - the aerosol model
+     * @param rv   - the buffer receiving the interpolated terms
+     * @throws IOException - if a text table cannot be read
+     */
+    void interpolate(int x, int y, int iaer, RVBatch rv) throws IOException {
+        if (nodeTerms[iaer] == null) {
+            computeNodeTerms(iaer);
+        }
+        final double fx = fractionalX(x);
+        final double fy = fractionalY(y);
+        final int ci = cellIndex(fx, gridWidth);
+        final int cj = cellIndex(fy, gridHeight);
+        this.iaer = iaer;
+        wx = fx - ci;
+        wy = fy - cj;
+        k00 = (cj - j0) * nodeWidth + (ci - i0);
+        k10 = k00 + 1;
+        k01 = k00 + nodeWidth;
+        k11 = k01 + 1;
+        final RVBatch[] terms = nodeTerms[iaer];
+        rv.interpolateGeometry(terms[k00], terms[k10], terms[k01], terms[k11], wx, wy);
+        pab = interpolate(nodePab[iaer], k00, k10, k01, k11, wx, wy);
+        paerFB = interpolate(nodePaerFB[iaer], k00, k10, k01, k11, wx, wy);
+    }
+
+    /**
+     * @return the aerosol phase function in backscattering direction of the last interpolated pixel
+     */
+    double getPab() {
+        return pab;
+    }
+
+    /**
+     * @return the aerosol forward/backward phase function term of the last interpolated pixel
+     */
+    double getPaerFB() {
+        return paerFB;
+    }
+
+    /**
+     * Provides the aerosol reflectance <code>rho_a0</code> of an AOT step at 865nm for the last interpolated pixel.
+     *
+     * @param iiaot - the AOT step, 1..{@link MerisAdjacencyEffectAerosolOp.AotStepSearch#NUM_STEPS}
+     * @return the reflectance interpolated from the node tables
+     * @throws IOException - if a text table cannot be read
+     */
+    double getRhoa865(int iiaot) throws IOException {
+        if (nodeRhoa865[iaer] == null) {
+            computeNodeSteps865(iaer);
+        }
+        final double[][] steps = nodeRhoa865[iaer];
+        return interpolate(steps[k00][iiaot], steps[k10][iiaot], steps[k01][iiaot], steps[k11][iiaot], wx, wy);
+    }
+
+    /**
+     * Provides the transmission term <code>tds * (tus - exp(-taua / muv))</code> of an AOT step at 865nm for the
+     * last interpolated pixel, the factor of the mean reflectance <code>&lt;RO_AER&gt;</code>.
+     *
+     * @param iiaot - the AOT step, 1..{@link MerisAdjacencyEffectAerosolOp.AotStepSearch#NUM_STEPS}
+     * @return the transmission term interpolated from the node tables
+     * @throws IOException - if a text table cannot be read
+     */
+    double getTransmission865(int iiaot) throws IOException {
+        if (nodeTransmission865[iaer] == null) {
+            computeNodeSteps865(iaer);
+        }
+        final double[][] steps = nodeTransmission865[iaer];
+        return interpolate(steps[k00][iiaot], steps[k10][iiaot], steps[k01][iiaot], steps[k11][iiaot], wx, wy);
+    }
+
+    private void computeNodeSteps865(int iaer) throws IOException {
+        final int numSteps = MerisAdjacencyEffectAerosolOp.AotStepSearch.NUM_STEPS;
+        final double taua865 = MerisAdjacencyEffectAerosolOp.computeTaua865(iaer);
+        final double[] taua = new double[numSteps];
+        for (int i = 0; i < numSteps; i++) {
+            taua[i] = taua865 * (i + 1);
+        }
+        final RVBatch rv = new RVBatch(numSteps);
+        final RVBatch[] terms = nodeTerms[iaer];
+        final int numNodes = nodeWidth * nodeHeight;
+        final double[][] rhoa = new double[numNodes][numSteps + 1];
+        final double[][] transmission = new double[numNodes][numSteps + 1];
+        for (int j = 0; j < nodeHeight; j++) {
+            for (int i = 0; i < nodeWidth; i++) {
+                final int k = j * nodeWidth + i;
+                final float vza = vzaTiePoints[(j0 + j) * gridWidth + (i0 + i)];
+                final double muv = Math.cos(vza * MathUtils.DTOR);
+                // copies the terms of the node
+                rv.interpolateGeometry(terms[k], terms[k], terms[k], terms[k], 0.0, 0.0);
+                aerosolScatteringFunctions.aerosol_f(taua, numSteps, nodePab[iaer][k], rv);
+                for (int s = 0; s < numSteps; s++) {
+                    rhoa[k][s + 1] = rv.rhoa[s];
+                    transmission[k][s + 1] = rv.tds[s] * (rv.tus[s] - Math.exp(-taua[s] / muv));
+                }
+            }
+        }
+        nodeRhoa865[iaer] = rhoa;
+        nodeTransmission865[iaer] = transmission;
+    }
+
+    private void computeNodeTerms(int iaer) throws IOException {
+        final int numNodes = nodeWidth * nodeHeight;
+        final RVBatch[] terms = new RVBatch[numNodes];
+        final double[] pabs = new double[numNodes];
+        final double[] paerFBs = new double[numNodes];
+        for (int j = 0; j < nodeHeight; j++) {
+            for (int i = 0; i < nodeWidth; i++) {
+                final int k = j * nodeWidth + i;
+                final int tiePointIndex = (j0 + j) * gridWidth + (i0 + i);
+                final float sza = szaTiePoints[tiePointIndex];
+                final float vza = vzaTiePoints[tiePointIndex];
+                final float phi = saaTiePoints[tiePointIndex] - vaaTiePoints[tiePointIndex];
+
+                terms[k] = new RVBatch(0);
+                aerosolScatteringFunctions.computeGeometryTerms(iaer, sza, vza, phi, terms[k]);
+
+                final double mus = Math.cos(sza * MathUtils.DTOR);
+                final double nus = Math.sin(sza * MathUtils.DTOR);
+                final double muv = Math.cos(vza * MathUtils.DTOR);
+                final double nuv = Math.sin(vza * MathUtils.DTOR);
+                final double csb = mus * muv + nus * nuv * Math.cos(phi * MathUtils.DTOR);
+                final double thetab = Math.acos(-csb) * MathUtils.RTOD;
+                final double csf = mus * muv - nus * nuv * Math.cos(phi * MathUtils.DTOR);
+                final double thetaf = Math.acos(csf) * MathUtils.RTOD;
+                pabs[k] = aerosolScatteringFunctions.aerosolPhase(thetab, iaer);
+                paerFBs[k] = aerosolScatteringFunctions.aerosolPhaseFB(thetaf, thetab, iaer);
+            }
+        }
+        nodeTerms[iaer] = terms;
+        nodePab[iaer] = pabs;
+        nodePaerFB[iaer] = paerFBs;
+    }
+
+    private double fractionalX(int x) {
+        return (x + 0.5 - offsetX) / subSamplingX;
+    }
+
+    private double fractionalY(int y) {
+        return (y + 0.5 - offsetY) / subSamplingY;
+    }
+
+    // the index of the cell containing the fractional tie-point coordinate, border cells are extrapolated
+    private static int cellIndex(double f, int gridSize) {
+        final int i = MathUtils.floorInt(f);
+        if (i < 0) {
+            return 0;
+        } else if (i > gridSize - 2) {
+            return gridSize - 2;
+        }
+        return i;
+    }
+
+    private static double interpolate(double[] values, int k00, int k10, int k01, int k11, double wx, double wy) {
+        return interpolate(values[k00], values[k10], values[k01], values[k11], wx, wy);
+    }
+
+    private static double interpolate(double v00, double v10, double v01, double v11, double wx, double wy) {
+        final double v0 = v00 + wx * (v10 - v00);
+        final double v1 = v01 + wx * (v11 - v01);
+        return v0 + wy * (v1 - v0);
+    }
+}
@@ -4,8 +4,9 @@ import org.esa.beam.framework.gpf.internal.OperatorImage;
 import org.esa.beam.framework.gpf.monitor.TileComputationEvent;
 import org.esa.beam.framework.gpf.monitor.TileComputationObserver;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TilePrinter extends TileComputationObserver {
 
@@ -61,8 +62,8 @@ public class TilePrinter extends TileComputationObserver {
         }
     }
 
-    private final Set<TileEvent> recordedEventSet = new HashSet<TileEvent>();
-    private int counter = 0;
+    private final ConcurrentMap<TileEvent, Boolean> recordedEvents = new ConcurrentHashMap<TileEvent, Boolean>();
+    private final AtomicInteger counter = new AtomicInteger();
 
     @Override
     public void start() {
@@ -72,17 +73,10 @@ public class TilePrinter extends TileComputationObserver {
     @Override
     public void tileComputed(TileComputationEvent event) {
         TileEvent tileEvent = new TileEvent(event);
-        boolean newEvent = false;
-        synchronized (recordedEventSet) {
-            if (!recordedEventSet.contains(tileEvent)) {
-                recordedEventSet.add(tileEvent);
-                newEvent = true;
-            }
-        }
+        final boolean newEvent = recordedEvents.putIfAbsent(tileEvent, Boolean.TRUE) == null;
 
-        counter++;
         System.out.printf("%d\t%d\t%d\t%d\t%d\t%f\t%s\t%s\n",
-                          counter,
+                          counter.incrementAndGet(),
                           tileEvent.tileX,
                           tileEvent.tileY,
                           tileEvent.image.getTileWidth(),
@@ -0,0 +1,310 @@
+package org.esa.beam.meris.icol.performance;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.gpf.internal.OperatorImage;
+import org.esa.beam.framework.gpf.monitor.TileComputationEvent;
+import org.esa.beam.framework.gpf.monitor.TileComputationObserver;
+import org.esa.beam.util.logging.BeamLogManager;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tile computation observer collecting per operator and band statistics of the tile computation
+ * times, tile counts and source tile fan-out. At the end of the run (when the observer is stopped or
+ * the JVM shuts down) the statistics are written as <code>tile-profile.csv</code> and
+ * <code>tile-profile.json</code> into the directory given by the system property
+ * {@link #REPORT_DIR_PROPERTY} (default: the working directory), and a summary is logged at INFO level.
+ * <p/>
+ * Usage: <code>-Dbeam.gpf.tileComputationObserver=org.esa.beam.meris.icol.performance.TileProfiler</code>
+ * <p/>
+ * Source tiles pulled in by <code>getSourceTile</code> which are not yet in the tile cache are computed on the
+ * same thread, nested in the computation of the target tile. The self time of a tile is its duration minus the
+ * durations of these nested source tiles, so the time of an upstream operator is not charged to the downstream
+ * operators. The fan-out of a tile is the number of its direct source tiles computed this way.
+ * <p/>
+ * The statistics are kept per operator image. The images are referenced weakly, so that the profiler does not
+ * keep operator graphs of finished products alive. Each thread keeps its own map from image to statistics, so
+ * only the first tile of an image computed on a thread looks up the shared map under its lock.
+ */
+public class TileProfiler extends TileComputationObserver {
+
+    public static final String REPORT_DIR_PROPERTY = "icol.tileProfiler.reportDir";
+    public static final String CSV_FILENAME = "tile-profile.csv";
+    public static final String JSON_FILENAME = "tile-profile.json";
+
+    private final Map<OperatorImage, TileStatistics> statisticsMap;
+    private final Queue<TileStatistics> statisticsList;
+    private final ThreadLocal<PendingTiles> pendingTiles;
+    private final AtomicBoolean stopped;
+    private long startMillis;
+
+    public TileProfiler() {
+        statisticsMap = Collections.synchronizedMap(new WeakHashMap<OperatorImage, TileStatistics>());
+        statisticsList = new ConcurrentLinkedQueue<TileStatistics>();
+        pendingTiles = new ThreadLocal<PendingTiles>() {
+            @Override
+            protected PendingTiles initialValue() {
+                return new PendingTiles();
+            }
+        };
+        stopped = new AtomicBoolean();
+    }
+
+    @Override
+    public void start() {
+        startMillis = System.currentTimeMillis();
+        Runtime.getRuntime().addShutdownHook(new Thread("TileProfiler") {
+            @Override
+            public void run() {
+                TileProfiler.this.stop();
+            }
+        });
+    }
+
+    @Override
+    public void tileComputed(TileComputationEvent event) {
+        final PendingTiles pending = pendingTiles.get();
+        pending.complete(event.getStartNanos(), event.getEndNanos());
+        final OperatorImage image = event.getImage();
+        TileStatistics statistics = pending.getStatistics(image);
+        if (statistics == null) {
+            statistics = getStatistics(image);
+            pending.putStatistics(image, statistics);
+        }
+        statistics.add(event.getEndNanos() - event.getStartNanos(), pending.getSelfNanos(),
+                       pending.getSourceTileCount());
+    }
+
+    private TileStatistics getStatistics(OperatorImage image) {
+        TileStatistics statistics = statisticsMap.get(image);
+        if (statistics == null) {
+            synchronized (statisticsMap) {
+                statistics = statisticsMap.get(image);
+                if (statistics == null) {
+                    final Band band = image.getTargetBand();
+                    final String operatorName = image.getOperatorContext().getOperator().getClass().getSimpleName();
+                    final String bandName = band != null ? band.getName() : "";
+                    statistics = new TileStatistics(operatorName, bandName,
+                                                    image.getNumXTiles() * image.getNumYTiles());
+                    statisticsMap.put(image, statistics);
+                    statisticsList.add(statistics);
+                }
+            }
+        }
+        return statistics;
+    }
+
+    @Override
+    public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        final List<TileStatistics> sortedList = getSortedStatistics();
+        final File reportDir = new File(System.getProperty(REPORT_DIR_PROPERTY, "."));
+        try {
+            writeCsv(sortedList, new File(reportDir, CSV_FILENAME));
+            writeJson(sortedList, new File(reportDir, JSON_FILENAME));
+        } catch (IOException e) {
+            BeamLogManager.getSystemLogger().log(Level.WARNING, "Failed to write tile profile: " + e.getMessage(), e);
+        }
+        logSummary(sortedList);
+    }
+
+    /**
+     * @return the statistics, sorted by decreasing self time
+     */
+    List<TileStatistics> getSortedStatistics() {
+        final List<TileStatistics> sortedList = new ArrayList<TileStatistics>(statisticsList);
+        Collections.sort(sortedList, new Comparator<TileStatistics>() {
+            @Override
+            public int compare(TileStatistics s1, TileStatistics s2) {
+                final long t1 = s1.getSelfNanos();
+                final long t2 = s2.getSelfNanos();
+                return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        return sortedList;
+    }
+
+    static void writeCsv(List<TileStatistics> statisticsList, File file) throws IOException {
+        final PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.print("operator,band,tiles,imageTiles,selfMs,totalMs,meanSelfMs,p50Ms,p90Ms,p99Ms,maxMs,sourceTiles");
+            for (int i = 0; i < TileStatistics.NUM_BINS; i++) {
+                writer.print(",bin" + i);
+            }
+            writer.println();
+            for (TileStatistics statistics : statisticsList) {
+                writer.print(String.format(Locale.ENGLISH, "%s,%s,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d",
+                                           statistics.getOperatorName(),
+                                           statistics.getBandName(),
+                                           statistics.getTileCount(),
+                                           statistics.getImageTileCount(),
+                                           toMillis(statistics.getSelfNanos()),
+                                           toMillis(statistics.getTotalNanos()),
+                                           toMillis(getMeanNanos(statistics)),
+                                           toMillis(statistics.getQuantileNanos(0.5)),
+                                           toMillis(statistics.getQuantileNanos(0.9)),
+                                           toMillis(statistics.getQuantileNanos(0.99)),
+                                           toMillis(statistics.getMaxNanos()),
+                                           statistics.getSourceTileCount()));
+                for (long count : statistics.getHistogram()) {
+                    writer.print("," + count);
+                }
+                writer.println();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    static void writeJson(List<TileStatistics> statisticsList, File file) throws IOException {
+        final PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.println("{");
+            writer.println("  \"histogramBinsMicros\": \"bin i counts self times in [2^(i-1), 2^i[ microseconds\",");
+            writer.println("  \"images\": [");
+            for (int i = 0; i < statisticsList.size(); i++) {
+                final TileStatistics statistics = statisticsList.get(i);
+                writer.println("    {");
+                writer.println("      \"operator\": \"" + escapeJson(statistics.getOperatorName()) + "\",");
+                writer.println("      \"band\": \"" + escapeJson(statistics.getBandName()) + "\",");
+                writer.println("      \"tiles\": " + statistics.getTileCount() + ",");
+                writer.println("      \"imageTiles\": " + statistics.getImageTileCount() + ",");
+                writer.println("      \"selfNanos\": " + statistics.getSelfNanos() + ",");
+                writer.println("      \"totalNanos\": " + statistics.getTotalNanos() + ",");
+                writer.println("      \"maxNanos\": " + statistics.getMaxNanos() + ",");
+                writer.println("      \"sourceTiles\": " + statistics.getSourceTileCount() + ",");
+                final StringBuilder histogram = new StringBuilder();
+                for (long count : statistics.getHistogram()) {
+                    if (histogram.length() > 0) {
+                        histogram.append(", ");
+                    }
+                    histogram.append(count);
+                }
+                writer.println("      \"histogram\": [" + histogram + "]");
+                writer.println(i < statisticsList.size() - 1 ? "    }," : "    }");
+            }
+            writer.println("  ]");
+            writer.println("}");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void logSummary(List<TileStatistics> statisticsList) {
+        final Logger logger = BeamLogManager.getSystemLogger();
+        if (!logger.isLoggable(Level.INFO)) {
+            return;
+        }
+        final StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Tile profile after %d ms (%d images):%n",
+                                     System.currentTimeMillis() - startMillis, statisticsList.size()));
+        summary.append(String.format("Operator\tBand\tTiles\tSelf[ms]\tTotal[ms]\tMeanSelf[ms]\tMax[ms]" +
+                                     "\tSourceTiles%n"));
+        for (TileStatistics statistics : statisticsList) {
+            summary.append(String.format(Locale.ENGLISH, "%s\t%s\t%d\t%.1f\t%.1f\t%.3f\t%.3f\t%d%n",
+                                         statistics.getOperatorName(),
+                                         statistics.getBandName(),
+                                         statistics.getTileCount(),
+                                         toMillis(statistics.getSelfNanos()),
+                                         toMillis(statistics.getTotalNanos()),
+                                         toMillis(getMeanNanos(statistics)),
+                                         toMillis(statistics.getMaxNanos()),
+                                         statistics.getSourceTileCount()));
+        }
+        logger.info(summary.toString());
+    }
+
+    private static long getMeanNanos(TileStatistics statistics) {
+        final long tileCount = statistics.getTileCount();
+        return tileCount > 0 ? statistics.getSelfNanos() / tileCount : 0L;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos * 1.0E-6;
+    }
+
+    private static String escapeJson(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * The tiles completed on a thread whose parent tile has not been completed yet. When a tile is completed,
+     * the pending tiles which started after it are its direct source tiles: their own source tiles have been
+     * removed when they were completed. To keep the memory bounded, only the most recent tiles are kept.
+     */
+    static class PendingTiles {
+
+        private static final int MAX_PENDING_TILES = 1024;
+
+        // start and duration of each pending tile
+        private final Deque<long[]> tiles;
+        // the statistics of the images whose tiles have been computed on this thread, confined to the thread
+        private final Map<OperatorImage, TileStatistics> statisticsMap;
+        private long selfNanos;
+        private int sourceTileCount;
+
+        PendingTiles() {
+            tiles = new ArrayDeque<long[]>();
+            statisticsMap = new WeakHashMap<OperatorImage, TileStatistics>();
+        }
+
+        TileStatistics getStatistics(OperatorImage image) {
+            return statisticsMap.get(image);
+        }
+
+        void putStatistics(OperatorImage image, TileStatistics statistics) {
+            statisticsMap.put(image, statistics);
+        }
+
+        /**
+         * Removes the direct source tiles of the tile from the pending tiles and adds the tile itself.
+         */
+        void complete(long startNanos, long endNanos) {
+            final long nanos = endNanos - startNanos;
+            long sourceNanos = 0L;
+            sourceTileCount = 0;
+            while (!tiles.isEmpty() && tiles.peekLast()[0] >= startNanos) {
+                sourceNanos += tiles.removeLast()[1];
+                sourceTileCount++;
+            }
+            selfNanos = Math.max(0L, nanos - sourceNanos);
+            tiles.addLast(new long[]{startNanos, nanos});
+            if (tiles.size() > MAX_PENDING_TILES) {
+                tiles.removeFirst();
+            }
+        }
+
+        /**
+         * @return the self time of the last completed tile
+         */
+        long getSelfNanos() {
+            return selfNanos;
+        }
+
+        /**
+         * @return the number of direct source tiles of the last completed tile
+         */
+        int getSourceTileCount() {
+            return sourceTileCount;
+        }
+    }
+}
@@ -19,12 +19,14 @@ public class TileRecorder {
     static {
         GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
         JAI.getDefaultInstance().getTileCache().setMemoryCapacity(TILE_CACHE_MEGAS * 1024 * 1024);
-        System.setProperty("beam.gpf.tileComputationObserver", TilePrinter.class.getName());
+        if (System.getProperty("beam.gpf.tileComputationObserver") == null) {
+            System.setProperty("beam.gpf.tileComputationObserver", TileProfiler.class.getName());
+        }
     }
 
     public static void main(String[] args) throws IOException {
         if (args.length == 0) {
-            System.out.println("Usage: TileRecorder <product>");
+            System.out.println("Usage: TileRecorder <product> [all]");
             System.exit(1);
         }
 
@@ -34,11 +36,20 @@ public class TileRecorder {
 
         final Product targetProduct = merisOp.getTargetProduct();
         Band[] bands = targetProduct.getBands();
+        final boolean allTiles = args.length > 1 && "all".equals(args[1]);
 
         long tt0 = System.currentTimeMillis();
         for (Band band : bands) {
             //if ("aot_flags".equals(band.getName())) {
             MultiLevelImage sourceImage = band.getSourceImage();
+            if (allTiles) {
+                for (int tileY = 0; tileY < sourceImage.getNumYTiles(); tileY++) {
+                    for (int tileX = 0; tileX < sourceImage.getNumXTiles(); tileX++) {
+                        sourceImage.getTile(tileX, tileY);
+                    }
+                }
+                continue;
+            }
             // Fetch center tile only
             int tileX = sourceImage.getNumXTiles() / 2;
             int tileY = sourceImage.getNumYTiles() / 2;
@@ -49,6 +60,7 @@ public class TileRecorder {
             //}
         }
         long tt1 = System.currentTimeMillis();
-        System.out.println("Complete computation of center tile took " + (tt1 - tt0) + " ms");
+        System.out.println("Complete computation of " + (allTiles ? "all tiles" : "center tile") +
+                           " took " + (tt1 - tt0) + " ms");
     }
 }
@@ -0,0 +1,123 @@
+package org.esa.beam.meris.icol.performance;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tile computation statistics of a single operator image (operator and target band).
+ * All counters are updated with atomic operations only, so tile threads never block each other.
+ * <p/>
+ * The total time of a tile includes the source tiles computed while it was computed, the self time does not
+ * (see {@link TileProfiler}). The self times are collected in a histogram with power of two bins: bin
+ * <code>i</code> counts the tiles which took <code>[2^(i-1), 2^i[</code> microseconds (bin 0: less than one
+ * microsecond). The maximum and the quantiles refer to the self times as well.
+ */
+class TileStatistics {
+
+    static final int NUM_BINS = 40;
+
+    private final String operatorName;
+    private final String bandName;
+    private final int imageTileCount;
+    private final AtomicLong tileCount;
+    private final AtomicLong totalNanos;
+    private final AtomicLong selfNanos;
+    private final AtomicLong maxNanos;
+    private final AtomicLong sourceTileCount;
+    private final AtomicLongArray histogram;
+
+    TileStatistics(String operatorName, String bandName, int imageTileCount) {
+        this.operatorName = operatorName;
+        this.bandName = bandName;
+        this.imageTileCount = imageTileCount;
+        tileCount = new AtomicLong();
+        totalNanos = new AtomicLong();
+        selfNanos = new AtomicLong();
+        maxNanos = new AtomicLong();
+        sourceTileCount = new AtomicLong();
+        histogram = new AtomicLongArray(NUM_BINS);
+    }
+
+    void add(long nanos, long tileSelfNanos, int sourceTiles) {
+        tileCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        selfNanos.addAndGet(tileSelfNanos);
+        sourceTileCount.addAndGet(sourceTiles);
+        histogram.incrementAndGet(getBin(tileSelfNanos));
+        long max = maxNanos.get();
+        while (tileSelfNanos > max && !maxNanos.compareAndSet(max, tileSelfNanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    static int getBin(long nanos) {
+        final long micros = nanos / 1000;
+        final int bin = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bin, NUM_BINS - 1);
+    }
+
+    String getOperatorName() {
+        return operatorName;
+    }
+
+    String getBandName() {
+        return bandName;
+    }
+
+    /**
+     * @return the number of tiles of the image, the ratio <code>tileCount / imageTileCount</code> exceeds 1
+     *         if tiles have been computed more than once (e.g. after having been removed from the tile cache)
+     */
+    int getImageTileCount() {
+        return imageTileCount;
+    }
+
+    long getTileCount() {
+        return tileCount.get();
+    }
+
+    long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    long getSelfNanos() {
+        return selfNanos.get();
+    }
+
+    long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    long getSourceTileCount() {
+        return sourceTileCount.get();
+    }
+
+    long[] getHistogram() {
+        final long[] counts = new long[NUM_BINS];
+        for (int i = 0; i < NUM_BINS; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the duration (in nanoseconds) below which the given fraction of the tiles has been computed,
+     *         estimated as the upper bound of the histogram bin containing this quantile
+     */
+    long getQuantileNanos(double fraction) {
+        final long[] counts = getHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        final long rank = (long) Math.ceil(fraction * total);
+        long cumulated = 0;
+        for (int i = 0; i < NUM_BINS; i++) {
+            cumulated += counts[i];
+            if (cumulated >= rank && cumulated > 0) {
+                return (1L << i) * 1000L;
+            }
+        }
+        return 0L;
+    }
+}
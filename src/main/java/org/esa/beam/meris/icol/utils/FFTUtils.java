@@ -22,25 +22,13 @@ public class FFTUtils {
      */
     public static Complex[] simpleDFT(float[] xr, float[] xi, boolean forward) {
         int N = xr.length;
-        Complex[] X = new Complex[N];
-        for (int n=0; n<N; n++) {
-            X[n] = new Complex();
-            X[n].real = 0.0;
-            X[n].imag = 0.0;
-            for (int m=0; m<N; m++) {
-                double w = 2.0 * Math.PI * m * n / N;
-                if (forward) {
-                    w *= -1.0;
-                }
-                double wr = Math.cos(w);
-                double wi = Math.sin(w);
-                X[n].real += (wr*xr[m] - wi*xi[m]); 
-                X[n].imag += (wr*xi[m] + wi*xr[m]);
-            }
-            X[n].real *= (2.0/Math.sqrt(N));
-            X[n].imag *= (2.0/Math.sqrt(N));
+        double[] re = new double[N];
+        double[] im = new double[N];
+        for (int m=0; m<N; m++) {
+            re[m] = xr[m];
+            im[m] = xi[m];
         }
-        return X;
+        return scaledFFT(re, im, forward);
     }
 
     /**
@@ -52,25 +40,13 @@ public class FFTUtils {
      */
     public static Complex[] simpleDFT(Complex[] x, boolean forward) {
         int N = x.length;
-        Complex[] X = new Complex[N];
-        for (int n=0; n<N; n++) {
-            X[n] = new Complex();
-            X[n].real = 0.0;
-            X[n].imag = 0.0;
-            for (int m=0; m<N; m++) {
-                double w = 2.0 * Math.PI * m * n / N;
-                if (forward) {
-                    w *= -1.0;
-                }
-                double wr = Math.cos(w);
-                double wi = Math.sin(w);
-                X[n].real += (wr*x[m].real - wi*x[m].imag);
-                X[n].imag += (wr*x[m].imag + wi*x[m].real);
-            }
-            X[n].real *= (2.0/Math.sqrt(N));
-            X[n].imag *= (2.0/Math.sqrt(N));
+        double[] re = new double[N];
+        double[] im = new double[N];
+        for (int m=0; m<N; m++) {
+            re[m] = x[m].real;
+            im[m] = x[m].imag;
         }
-        return X;
+        return scaledFFT(re, im, forward);
     }
 
     /**
@@ -82,25 +58,37 @@ public class FFTUtils {
      */
     public static Complex[] simpleDFT(float[] x, boolean forward) {
         int N = x.length/2;
-        Complex[] X = new Complex[N];
-        for (int n=0; n<N; n++) {
-            X[n] = new Complex();
-            X[n].real = 0.0;
-            X[n].imag = 0.0;
-            for (int m=0; m<N; m++) {
-                double w = 2.0 * Math.PI * m * n / N;
-                if (forward) {
-                    w *= -1.0;
-                }
-                double wr = Math.cos(w);
-                double wi = Math.sin(w);
-                X[n].real += (wr*x[2*m] - wi*x[2*m+1]);
-                X[n].imag += (wr*x[2*m+1] + wi*x[2*m]);
-            }
-            X[n].real *= (2.0/Math.sqrt(N));
-            X[n].imag *= (2.0/Math.sqrt(N));
+        double[] re = new double[N];
+        double[] im = new double[N];
+        for (int m=0; m<N; m++) {
+            re[m] = x[2*m];
+            im[m] = x[2*m+1];
+        }
+        return scaledFFT(re, im, forward);
+    }
+
+    /**
+     * In-place 2D FFT of a complex array stored row by row. Rows are transformed first, then columns.
+     *
+     * @param re - real parts (fftX.getSize() * fftY.getSize() elements), replaced by the result
+     * @param im - imaginary parts, replaced by the result
+     * @param fftX - the transform for the rows
+     * @param workspaceX - the workspace of <code>fftX</code>
+     * @param fftY - the transform for the columns
+     * @param workspaceY - the workspace of <code>fftY</code>
+     * @param forward - direction (true if forward)
+     */
+    public static void fft2D(double[] re, double[] im,
+                             MixedRadixFFT fftX, double[][] workspaceX,
+                             MixedRadixFFT fftY, double[][] workspaceY, boolean forward) {
+        final int width = fftX.getSize();
+        final int height = fftY.getSize();
+        for (int j = 0; j < height; j++) {
+            fftX.transform(re, im, j * width, 1, workspaceX, forward);
+        }
+        for (int i = 0; i < width; i++) {
+            fftY.transform(re, im, i, width, workspaceY, forward);
         }
-        return X;
     }
 
     /**
@@ -212,6 +200,17 @@ public class FFTUtils {
     // END OF PUBLIC
     /////////////////////////////////////////////////////////////////////
 
+    private static Complex[] scaledFFT(double[] re, double[] im, boolean forward) {
+        int N = re.length;
+        MixedRadixFFT.getInstance(N).transform(re, im, forward);
+        Complex[] X = new Complex[N];
+        final double scale = 2.0/Math.sqrt(N);
+        for (int n=0; n<N; n++) {
+            X[n] = new Complex(re[n] * scale, im[n] * scale);
+        }
+        return X;
+    }
+
     private static Complex[][] getFFTResultAsTransposedComplexArray(float[][] fftResultArray) {
         int NY = fftResultArray.length;
         int NX = fftResultArray[0].length;
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.utils;
+
+import org.esa.beam.framework.datamodel.GeoCoding;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+
+/**
+ * Fast geo-location of the pixels of a product for operators which call the geo-coding per pixel.
+ * <p/>
+ * The geo-coding is evaluated once at nodes every {@link #NODE_STEP} pixels (at the pixel centres
+ * <code>0.5 + k * NODE_STEP</code>), pixel positions in between are bilinearly interpolated. For a tie-point
+ * geo-coding whose subsampling is a multiple of the node step (MERIS FR and RR), this reproduces its bilinear
+ * interpolation. For a map geo-coding the deviation within an 8 pixel cell is far below a pixel.
+ * <p/>
+ * The inverse lookup uses a grid hash of the node cells in geographic coordinates: a geographic position is
+ * only tested against the few cells of its bin, and located in the cell by inverting the bilinear interpolation.
+ * Positions not covered by any cell, outside the scene or in cells across the antimeridian are passed to the
+ * geo-coding itself, so positions outside the scene are treated exactly as before.
+ * <p/>
+ * Instances are immutable after construction, apart from the lazily built grid hash, and thread safe.
+ */
+public class GeoCodingCache {
+
+    public static final int NODE_STEP = 8;
+
+    private static final int MAX_INVERSE_ITERATIONS = 8;
+    private static final double CELL_TOLERANCE = 1.0E-4;
+
+    private final GeoCoding geoCoding;
+    private final int sceneWidth;
+    private final int sceneHeight;
+    private final int nodeWidth;
+    private final int nodeHeight;
+    private final float[] nodeLat;
+    private final float[] nodeLon;
+
+    private volatile GridHash gridHash;
+
+    public GeoCodingCache(GeoCoding geoCoding, int sceneWidth, int sceneHeight) {
+        this.geoCoding = geoCoding;
+        this.sceneWidth = sceneWidth;
+        this.sceneHeight = sceneHeight;
+        nodeWidth = (sceneWidth - 1) / NODE_STEP + 2;
+        nodeHeight = (sceneHeight - 1) / NODE_STEP + 2;
+        nodeLat = new float[nodeWidth * nodeHeight];
+        nodeLon = new float[nodeWidth * nodeHeight];
+        final PixelPos pixelPos = new PixelPos();
+        GeoPos geoPos = new GeoPos();
+        for (int j = 0; j < nodeHeight; j++) {
+            pixelPos.y = 0.5f + j * NODE_STEP;
+            for (int i = 0; i < nodeWidth; i++) {
+                pixelPos.x = 0.5f + i * NODE_STEP;
+                geoPos = geoCoding.getGeoPos(pixelPos, geoPos);
+                nodeLat[j * nodeWidth + i] = geoPos.lat;
+                nodeLon[j * nodeWidth + i] = geoPos.lon;
+            }
+        }
+    }
+
+    public GeoCoding getGeoCoding() {
+        return geoCoding;
+    }
+
+    /**
+     * Same as {@link GeoCoding#getGeoPos(PixelPos, GeoPos)}.
+     *
+     * @param pixelPos - the pixel position
+     * @param geoPos   - the geographical position to be set, may be <code>null</code>
+     * @return the geographical position
+     */
+    public GeoPos getGeoPos(PixelPos pixelPos, GeoPos geoPos) {
+        if (geoPos == null) {
+            geoPos = new GeoPos();
+        }
+        final double fx = (pixelPos.x - 0.5) / NODE_STEP;
+        final double fy = (pixelPos.y - 0.5) / NODE_STEP;
+        final int i = clampCell((int) Math.floor(fx), nodeWidth);
+        final int j = clampCell((int) Math.floor(fy), nodeHeight);
+        final double wx = fx - i;
+        final double wy = fy - j;
+        final int k00 = j * nodeWidth + i;
+        final int k01 = k00 + nodeWidth;
+        final float lon00 = nodeLon[k00];
+        geoPos.lat = (float) interpolate(nodeLat[k00], nodeLat[k00 + 1], nodeLat[k01], nodeLat[k01 + 1], wx, wy);
+        // relative to the first node, so that cells across the antimeridian are interpolated correctly
+        final double lon = lon00 + interpolate(0.0, deltaLon(lon00, nodeLon[k00 + 1]), deltaLon(lon00, nodeLon[k01]),
+                                               deltaLon(lon00, nodeLon[k01 + 1]), wx, wy);
+        geoPos.lon = (float) (lon > 180.0 ? lon - 360.0 : (lon < -180.0 ? lon + 360.0 : lon));
+        return geoPos;
+    }
+
+    /**
+     * Same as {@link GeoCoding#getPixelPos(GeoPos, PixelPos)}.
+     *
+     * @param geoPos   - the geographical position
+     * @param pixelPos - the pixel position to be set, may be <code>null</code>
+     * @return the pixel position
+     */
+    public PixelPos getPixelPos(GeoPos geoPos, PixelPos pixelPos) {
+        if (pixelPos == null) {
+            pixelPos = new PixelPos();
+        }
+        GridHash hash = gridHash;
+        if (hash == null) {
+            hash = createGridHash();
+        }
+        if (!hash.findPixelPos(geoPos.lat, geoPos.lon, pixelPos)) {
+            return geoCoding.getPixelPos(geoPos, pixelPos);
+        }
+        return pixelPos;
+    }
+
+    private synchronized GridHash createGridHash() {
+        if (gridHash == null) {
+            gridHash = new GridHash();
+        }
+        return gridHash;
+    }
+
+    private static int clampCell(int i, int nodeSize) {
+        return i < 0 ? 0 : (i > nodeSize - 2 ? nodeSize - 2 : i);
+    }
+
+    private static double deltaLon(double lon0, double lon) {
+        final double delta = lon - lon0;
+        return delta > 180.0 ? delta - 360.0 : (delta < -180.0 ? delta + 360.0 : delta);
+    }
+
+    private static double interpolate(double v00, double v10, double v01, double v11, double wx, double wy) {
+        final double v0 = v00 + wx * (v10 - v00);
+        final double v1 = v01 + wx * (v11 - v01);
+        return v0 + wy * (v1 - v0);
+    }
+
+    /**
+     * The node cells binned by their geographical bounding boxes, stored as one index array per bin.
+     */
+    private class GridHash {
+
+        private final double minLat;
+        private final double minLon;
+        private final double binSizeLat;
+        private final double binSizeLon;
+        private final int binsX;
+        private final int binsY;
+        private final int[] binStart;
+        private final int[] cells;
+
+        GridHash() {
+            final int numCells = (nodeWidth - 1) * (nodeHeight - 1);
+            final float[] bounds = new float[4 * numCells];
+            double latMin = Double.MAX_VALUE;
+            double latMax = -Double.MAX_VALUE;
+            double lonMin = Double.MAX_VALUE;
+            double lonMax = -Double.MAX_VALUE;
+            double sumLatExtent = 0.0;
+            double sumLonExtent = 0.0;
+            int numValidCells = 0;
+            for (int c = 0; c < numCells; c++) {
+                final int k00 = (c / (nodeWidth - 1)) * nodeWidth + c % (nodeWidth - 1);
+                final int[] corners = {k00, k00 + 1, k00 + nodeWidth, k00 + nodeWidth + 1};
+                float cellLatMin = Float.MAX_VALUE;
+                float cellLatMax = -Float.MAX_VALUE;
+                float cellLonMin = Float.MAX_VALUE;
+                float cellLonMax = -Float.MAX_VALUE;
+                for (int k : corners) {
+                    cellLatMin = Math.min(cellLatMin, nodeLat[k]);
+                    cellLatMax = Math.max(cellLatMax, nodeLat[k]);
+                    cellLonMin = Math.min(cellLonMin, nodeLon[k]);
+                    cellLonMax = Math.max(cellLonMax, nodeLon[k]);
+                }
+                // invalid cells and cells across the antimeridian are left to the geo-coding
+                if (Float.isNaN(cellLatMin) || Float.isNaN(cellLonMin) || Float.isNaN(cellLatMax) ||
+                    Float.isNaN(cellLonMax) || cellLonMax - cellLonMin > 180.0f) {
+                    bounds[4 * c] = Float.NaN;
+                    continue;
+                }
+                bounds[4 * c] = cellLatMin;
+                bounds[4 * c + 1] = cellLatMax;
+                bounds[4 * c + 2] = cellLonMin;
+                bounds[4 * c + 3] = cellLonMax;
+                latMin = Math.min(latMin, cellLatMin);
+                latMax = Math.max(latMax, cellLatMax);
+                lonMin = Math.min(lonMin, cellLonMin);
+                lonMax = Math.max(lonMax, cellLonMax);
+                sumLatExtent += cellLatMax - cellLatMin;
+                sumLonExtent += cellLonMax - cellLonMin;
+                numValidCells++;
+            }
+            if (numValidCells == 0) {
+                minLat = minLon = 0.0;
+                binSizeLat = binSizeLon = 1.0;
+                binsX = binsY = 0;
+                binStart = new int[1];
+                cells = new int[0];
+                return;
+            }
+            // bins of about two cells, so that a cell overlaps few bins
+            minLat = latMin;
+            minLon = lonMin;
+            binSizeLat = Math.max(2.0 * sumLatExtent / numValidCells, 1.0E-6);
+            binSizeLon = Math.max(2.0 * sumLonExtent / numValidCells, 1.0E-6);
+            binsX = (int) ((lonMax - lonMin) / binSizeLon) + 1;
+            binsY = (int) ((latMax - latMin) / binSizeLat) + 1;
+
+            // counting sort of the cells into the bins
+            binStart = new int[binsX * binsY + 1];
+            for (int c = 0; c < numCells; c++) {
+                if (!Float.isNaN(bounds[4 * c])) {
+                    for (int by = binY(bounds[4 * c]); by <= binY(bounds[4 * c + 1]); by++) {
+                        for (int bx = binX(bounds[4 * c + 2]); bx <= binX(bounds[4 * c + 3]); bx++) {
+                            binStart[by * binsX + bx + 1]++;
+                        }
+                    }
+                }
+            }
+            for (int bin = 0; bin < binsX * binsY; bin++) {
+                binStart[bin + 1] += binStart[bin];
+            }
+            cells = new int[binStart[binsX * binsY]];
+            final int[] fill = new int[binsX * binsY];
+            for (int c = 0; c < numCells; c++) {
+                if (!Float.isNaN(bounds[4 * c])) {
+                    for (int by = binY(bounds[4 * c]); by <= binY(bounds[4 * c + 1]); by++) {
+                        for (int bx = binX(bounds[4 * c + 2]); bx <= binX(bounds[4 * c + 3]); bx++) {
+                            final int bin = by * binsX + bx;
+                            cells[binStart[bin] + fill[bin]++] = c;
+                        }
+                    }
+                }
+            }
+        }
+
+        private int binX(double lon) {
+            return Math.min(Math.max((int) ((lon - minLon) / binSizeLon), 0), binsX - 1);
+        }
+
+        private int binY(double lat) {
+            return Math.min(Math.max((int) ((lat - minLat) / binSizeLat), 0), binsY - 1);
+        }
+
+        boolean findPixelPos(float lat, float lon, PixelPos pixelPos) {
+            if (binsX == 0 || Float.isNaN(lat) || Float.isNaN(lon)) {
+                return false;
+            }
+            final double bx = (lon - minLon) / binSizeLon;
+            final double by = (lat - minLat) / binSizeLat;
+            if (bx < 0 || by < 0 || bx >= binsX || by >= binsY) {
+                return false;
+            }
+            final int bin = (int) by * binsX + (int) bx;
+            for (int n = binStart[bin]; n < binStart[bin + 1]; n++) {
+                final int c = cells[n];
+                final int ci = c % (nodeWidth - 1);
+                final int cj = c / (nodeWidth - 1);
+                if (locateInCell(ci, cj, lat, lon, pixelPos)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Inverts the bilinear interpolation of the cell by Newton iteration.
+         */
+        private boolean locateInCell(int ci, int cj, double lat, double lon, PixelPos pixelPos) {
+            final int k00 = cj * nodeWidth + ci;
+            final int k01 = k00 + nodeWidth;
+            final double lat00 = nodeLat[k00];
+            final double lat10 = nodeLat[k00 + 1];
+            final double lat01 = nodeLat[k01];
+            final double lat11 = nodeLat[k01 + 1];
+            final double lon00 = nodeLon[k00];
+            final double lon10 = nodeLon[k00 + 1];
+            final double lon01 = nodeLon[k01];
+            final double lon11 = nodeLon[k01 + 1];
+            double u = 0.5;
+            double v = 0.5;
+            for (int iter = 0; iter < MAX_INVERSE_ITERATIONS; iter++) {
+                final double fLat = interpolate(lat00, lat10, lat01, lat11, u, v) - lat;
+                final double fLon = interpolate(lon00, lon10, lon01, lon11, u, v) - lon;
+                final double dLatDu = (1 - v) * (lat10 - lat00) + v * (lat11 - lat01);
+                final double dLatDv = (1 - u) * (lat01 - lat00) + u * (lat11 - lat10);
+                final double dLonDu = (1 - v) * (lon10 - lon00) + v * (lon11 - lon01);
+                final double dLonDv = (1 - u) * (lon01 - lon00) + u * (lon11 - lon10);
+                final double det = dLatDu * dLonDv - dLatDv * dLonDu;
+                if (det == 0.0) {
+                    return false;
+                }
+                final double du = (fLat * dLonDv - fLon * dLatDv) / det;
+                final double dv = (fLon * dLatDu - fLat * dLonDu) / det;
+                u -= du;
+                v -= dv;
+                if (Math.abs(du) < 1.0E-7 && Math.abs(dv) < 1.0E-7) {
+                    break;
+                }
+            }
+            if (u < -CELL_TOLERANCE || u > 1.0 + CELL_TOLERANCE || v < -CELL_TOLERANCE || v > 1.0 + CELL_TOLERANCE) {
+                return false;
+            }
+            final double x = 0.5 + (ci + u) * NODE_STEP;
+            final double y = 0.5 + (cj + v) * NODE_STEP;
+            // the outermost nodes lie outside the scene, positions there are left to the geo-coding
+            if (x < 0.0 || y < 0.0 || x > sceneWidth || y > sceneHeight) {
+                return false;
+            }
+            pixelPos.x = (float) x;
+            pixelPos.y = (float) y;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.utils;
+
+import org.esa.beam.framework.gpf.OperatorException;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.SourcelessOpImage;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A single-banded image which keeps every tile of its source image in a memory-mapped scratch file once it has
+ * been computed. Tiles evicted from the tile cache are read from the scratch file instead of being computed
+ * again by the source.
+ * <p/>
+ * The image has the tile grid of its source. The scratch file holds a full-sized slot for every tile; it is
+ * mapped per row of tiles when the first tile of the row is stored, so that the mapped regions stay below 2 GB.
+ * Integral samples are stored as int, floating point samples as float or double.
+ * <p/>
+ * A tile is only stored if computing it took longer than storing and reading it back is expected to take, so
+ * that tiles which are cheap to compute (e.g. because the source still has them in the tile cache) do not
+ * occupy the scratch file. The store time per sample is measured with every stored tile; until the first tile
+ * is stored it is unknown, so the first tile is always stored.
+ * <p/>
+ * {@link #dispose()} unmaps the tile rows, closes the scratch file and deletes it. Tiles requested afterwards
+ * are computed by the source and no longer stored.
+ */
+public class MaterializedOpImage extends SourcelessOpImage {
+
+    private final RenderedImage source;
+    private final int dataType;
+    private final int bytesPerSample;
+    private final int tileSlotSize;
+    private final File scratchFile;
+    private final RandomAccessFile scratchAccess;
+    private final AtomicReferenceArray<MappedByteBuffer> tileRows;
+    // 1 for the tiles stored in the scratch file
+    private final AtomicIntegerArray storedTiles;
+    // tiles are computed under the read lock, the mapped tile rows are released under the write lock
+    private final ReadWriteLock disposeLock;
+    private boolean disposed;
+    // measured time to write a sample, updated without synchronisation as it is only an estimate
+    private volatile double storeNanosPerSample;
+
+    public MaterializedOpImage(RenderedImage source, String scratchName) throws IOException {
+        super(new ImageLayout(source), null, source.getSampleModel(), source.getMinX(), source.getMinY(),
+              source.getWidth(), source.getHeight());
+        if (source.getSampleModel().getNumBands() != 1) {
+            throw new IllegalArgumentException("source must be single-banded");
+        }
+        this.source = source;
+        dataType = source.getSampleModel().getDataType();
+        bytesPerSample = dataType == DataBuffer.TYPE_DOUBLE ? 8 : 4;
+        tileSlotSize = getTileWidth() * getTileHeight() * bytesPerSample;
+        scratchFile = File.createTempFile(scratchName + "_", ".scratch");
+        scratchFile.deleteOnExit();
+        scratchAccess = new RandomAccessFile(scratchFile, "rw");
+        scratchAccess.setLength((long) getNumXTiles() * getNumYTiles() * tileSlotSize);
+        tileRows = new AtomicReferenceArray<MappedByteBuffer>(getNumYTiles());
+        storedTiles = new AtomicIntegerArray(getNumXTiles() * getNumYTiles());
+        disposeLock = new ReentrantReadWriteLock();
+    }
+
+    public File getScratchFile() {
+        return scratchFile;
+    }
+
+    @Override
+    public Raster computeTile(int tileX, int tileY) {
+        final int tileIndex = (tileY - getMinTileY()) * getNumXTiles() + (tileX - getMinTileX());
+        final WritableRaster tile = createWritableRaster(getSampleModel(), new Point(tileXToX(tileX),
+                                                                                      tileYToY(tileY)));
+        final Rectangle rect = tile.getBounds().intersection(getBounds());
+        disposeLock.readLock().lock();
+        try {
+            if (disposed) {
+                tile.setRect(source.getData(rect));
+            } else if (storedTiles.get(tileIndex) == 1) {
+                readTile(getTileSlot(tileX, tileY), tile, rect);
+            } else {
+                final long startTime = System.nanoTime();
+                final Raster sourceTile = source.getData(rect);
+                final long computeTime = System.nanoTime() - startTime;
+                tile.setRect(sourceTile);
+                final int numSamples = rect.width * rect.height;
+                // storing and reading back take about twice the time of writing the samples
+                if (computeTime >= 2.0 * storeNanosPerSample * numSamples) {
+                    final long storeStartTime = System.nanoTime();
+                    // a tile computed concurrently by two threads is stored twice with the same samples
+                    writeTile(sourceTile, rect, getTileSlot(tileX, tileY));
+                    storedTiles.set(tileIndex, 1);
+                    storeNanosPerSample = (double) (System.nanoTime() - storeStartTime) / numSamples;
+                }
+            }
+        } finally {
+            disposeLock.readLock().unlock();
+        }
+        return tile;
+    }
+
+    @Override
+    public void dispose() {
+        disposeLock.writeLock().lock();
+        try {
+            if (!disposed) {
+                disposed = true;
+                for (int row = 0; row < tileRows.length(); row++) {
+                    final MappedByteBuffer tileRow = tileRows.getAndSet(row, null);
+                    if (tileRow != null) {
+                        unmap(tileRow);
+                    }
+                }
+                try {
+                    scratchAccess.getChannel().close();
+                    scratchAccess.close();
+                } catch (IOException ignored) {
+                    // the file is deleted anyway
+                }
+                scratchFile.delete();
+            }
+        } finally {
+            disposeLock.writeLock().unlock();
+        }
+        super.dispose();
+    }
+
+    /**
+     * Releases a mapped buffer immediately instead of leaving it to the garbage collector, which keeps the
+     * mapping, and on some platforms the file, alive until the buffer is collected. There is no public API for
+     * this, so the cleaner of the buffer (up to Java 8) or <code>Unsafe.invokeCleaner</code> (from Java 9) is
+     * called by reflection. If neither is accessible, the buffer is left to the garbage collector.
+     * The buffer must not be accessed afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+            return;
+        } catch (Exception ignored) {
+            // not accessible, try the Java 9 API below
+        }
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(unsafeField.get(null), buffer);
+        } catch (Exception ignored) {
+            // left to the garbage collector
+        }
+    }
+
+    private ByteBuffer getTileSlot(int tileX, int tileY) {
+        final int row = tileY - getMinTileY();
+        MappedByteBuffer tileRow = tileRows.get(row);
+        if (tileRow == null) {
+            final long rowSize = (long) getNumXTiles() * tileSlotSize;
+            try {
+                tileRow = scratchAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, row * rowSize, rowSize);
+            } catch (IOException e) {
+                throw new OperatorException("Failed to map scratch file " + scratchFile, e);
+            }
+            if (!tileRows.compareAndSet(row, null, tileRow)) {
+                // mapped concurrently by another thread
+                unmap(tileRow);
+                tileRow = tileRows.get(row);
+            }
+        }
+        // a view of the slot, so that concurrent accesses do not share a position
+        final ByteBuffer slot = tileRow.duplicate();
+        slot.position((tileX - getMinTileX()) * tileSlotSize);
+        slot.limit(slot.position() + tileSlotSize);
+        return slot.slice();
+    }
+
+    private void writeTile(Raster raster, Rectangle rect, ByteBuffer slot) {
+        if (dataType == DataBuffer.TYPE_DOUBLE) {
+            final double[] samples = raster.getSamples(rect.x, rect.y, rect.width, rect.height, 0,
+                                                       (double[]) null);
+            slot.asDoubleBuffer().put(samples);
+        } else if (dataType == DataBuffer.TYPE_FLOAT) {
+            final float[] samples = raster.getSamples(rect.x, rect.y, rect.width, rect.height, 0, (float[]) null);
+            slot.asFloatBuffer().put(samples);
+        } else {
+            final int[] samples = raster.getSamples(rect.x, rect.y, rect.width, rect.height, 0, (int[]) null);
+            slot.asIntBuffer().put(samples);
+        }
+    }
+
+    private void readTile(ByteBuffer slot, WritableRaster tile, Rectangle rect) {
+        final int numSamples = rect.width * rect.height;
+        if (dataType == DataBuffer.TYPE_DOUBLE) {
+            final double[] samples = new double[numSamples];
+            slot.asDoubleBuffer().get(samples);
+            tile.setSamples(rect.x, rect.y, rect.width, rect.height, 0, samples);
+        } else if (dataType == DataBuffer.TYPE_FLOAT) {
+            final float[] samples = new float[numSamples];
+            slot.asFloatBuffer().get(samples);
+            tile.setSamples(rect.x, rect.y, rect.width, rect.height, 0, samples);
+        } else {
+            final int[] samples = new int[numSamples];
+            slot.asIntBuffer().get(samples);
+            tile.setSamples(rect.x, rect.y, rect.width, rect.height, 0, samples);
+        }
+    }
+}
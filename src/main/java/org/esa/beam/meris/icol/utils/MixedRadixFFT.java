@@ -0,0 +1,244 @@
+package org.esa.beam.meris.icol.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pure Java, in-place complex FFT of arbitrary length.
+ * Uses a self-sorting (Stockham) decimation-in-frequency scheme with a dedicated radix-2 butterfly and
+ * generic radix-p butterflies for the remaining prime factors. Transform lengths which are products of
+ * 2, 3 and 5 (see {@link #nextFastSize(int)}) are the efficient ones.
+ * <p/>
+ * Instances are immutable (they only hold the factorisation and the twiddle tables) and may be shared between
+ * threads, whereas a workspace (see {@link #createWorkspace()}) must not be shared.
+ */
+public final class MixedRadixFFT {
+
+    private static final ConcurrentMap<Integer, MixedRadixFFT> INSTANCES = new ConcurrentHashMap<Integer, MixedRadixFFT>();
+
+    private final int n;
+    private final int[] factors;
+    private final double[] cosTable;
+    private final double[] sinTable;
+
+    /**
+     * Returns a shared transform instance for the given length.
+     *
+     * @param n - the transform length
+     * @return the transform
+     */
+    public static MixedRadixFFT getInstance(int n) {
+        MixedRadixFFT fft = INSTANCES.get(n);
+        if (fft == null) {
+            fft = new MixedRadixFFT(n);
+            final MixedRadixFFT existing = INSTANCES.putIfAbsent(n, fft);
+            if (existing != null) {
+                fft = existing;
+            }
+        }
+        return fft;
+    }
+
+    /**
+     * Returns the smallest length <code>&gt;= n</code> which only has the prime factors 2, 3 and 5.
+     *
+     * @param n - the minimum length
+     * @return the fast transform length
+     */
+    public static int nextFastSize(int n) {
+        if (n <= 1) {
+            return 1;
+        }
+        int size = n;
+        while (true) {
+            int rest = size;
+            while (rest % 2 == 0) {
+                rest /= 2;
+            }
+            while (rest % 3 == 0) {
+                rest /= 3;
+            }
+            while (rest % 5 == 0) {
+                rest /= 5;
+            }
+            if (rest == 1) {
+                return size;
+            }
+            size++;
+        }
+    }
+
+    public MixedRadixFFT(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n < 1");
+        }
+        this.n = n;
+        this.factors = factorize(n);
+        this.cosTable = new double[n];
+        this.sinTable = new double[n];
+        for (int j = 0; j < n; j++) {
+            final double phi = 2.0 * Math.PI * j / n;
+            cosTable[j] = Math.cos(phi);
+            sinTable[j] = Math.sin(phi);
+        }
+    }
+
+    public int getSize() {
+        return n;
+    }
+
+    /**
+     * Creates the scratch arrays needed by {@link #transform(double[], double[], int, int, double[][], boolean)}.
+     * A workspace must not be used concurrently by several threads.
+     *
+     * @return the workspace
+     */
+    public double[][] createWorkspace() {
+        int maxFactor = 1;
+        for (int factor : factors) {
+            maxFactor = Math.max(maxFactor, factor);
+        }
+        return new double[][]{
+                new double[n], new double[n], new double[n], new double[n],
+                new double[maxFactor], new double[maxFactor]
+        };
+    }
+
+    /**
+     * Convenience method which allocates its own workspace.
+     *
+     * @param re      - real parts, replaced by the result
+     * @param im      - imaginary parts, replaced by the result
+     * @param forward - direction (true if forward, i.e. <code>exp(-2 pi i jk/n)</code>)
+     */
+    public void transform(double[] re, double[] im, boolean forward) {
+        transform(re, im, 0, 1, createWorkspace(), forward);
+    }
+
+    /**
+     * Computes the unnormalised DFT of the sequence <code>re[offset + k * stride] + i im[offset + k * stride]</code>,
+     * <code>k = 0..n-1</code>, in place.
+     *
+     * @param re        - real parts, replaced by the result
+     * @param im        - imaginary parts, replaced by the result
+     * @param offset    - index of the first element
+     * @param stride    - distance between two subsequent elements
+     * @param workspace - scratch arrays as created by {@link #createWorkspace()}
+     * @param forward   - direction (true if forward)
+     */
+    public void transform(double[] re, double[] im, int offset, int stride, double[][] workspace, boolean forward) {
+        if (n == 1) {
+            return;
+        }
+        double[] xr = workspace[0];
+        double[] xi = workspace[1];
+        double[] yr = workspace[2];
+        double[] yi = workspace[3];
+        for (int k = 0, index = offset; k < n; k++, index += stride) {
+            xr[k] = re[index];
+            xi[k] = im[index];
+        }
+
+        final double sign = forward ? -1.0 : 1.0;
+        int m = n;
+        int s = 1;
+        for (int factor : factors) {
+            m /= factor;
+            if (factor == 2) {
+                radix2(m, s, xr, xi, yr, yi, sign);
+            } else {
+                radixP(factor, m, s, xr, xi, yr, yi, workspace[4], workspace[5], sign);
+            }
+            s *= factor;
+            double[] tmp = xr;
+            xr = yr;
+            yr = tmp;
+            tmp = xi;
+            xi = yi;
+            yi = tmp;
+        }
+
+        for (int k = 0, index = offset; k < n; k++, index += stride) {
+            re[index] = xr[k];
+            im[index] = xi[k];
+        }
+    }
+
+    private void radix2(int m, int s, double[] xr, double[] xi, double[] yr, double[] yi, double sign) {
+        for (int p = 0; p < m; p++) {
+            final int t = p * s;
+            final double wr = cosTable[t];
+            final double wi = sign * sinTable[t];
+            for (int q = 0; q < s; q++) {
+                final int ia = q + s * p;
+                final int ib = ia + s * m;
+                final double ar = xr[ia];
+                final double ai = xi[ia];
+                final double br = xr[ib];
+                final double bi = xi[ib];
+                final int io = q + s * 2 * p;
+                yr[io] = ar + br;
+                yi[io] = ai + bi;
+                final double dr = ar - br;
+                final double di = ai - bi;
+                yr[io + s] = dr * wr - di * wi;
+                yi[io + s] = dr * wi + di * wr;
+            }
+        }
+    }
+
+    private void radixP(int factor, int m, int s, double[] xr, double[] xi, double[] yr, double[] yi,
+                        double[] ar, double[] ai, double sign) {
+        // n / factor is the table step of the factor-th roots of unity
+        final int rootStep = n / factor;
+        for (int p = 0; p < m; p++) {
+            for (int q = 0; q < s; q++) {
+                for (int r = 0; r < factor; r++) {
+                    final int ia = q + s * (p + r * m);
+                    ar[r] = xr[ia];
+                    ai[r] = xi[ia];
+                }
+                for (int k = 0; k < factor; k++) {
+                    double sr = ar[0];
+                    double si = ai[0];
+                    for (int r = 1; r < factor; r++) {
+                        final int t = ((r * k) % factor) * rootStep;
+                        final double wr = cosTable[t];
+                        final double wi = sign * sinTable[t];
+                        sr += ar[r] * wr - ai[r] * wi;
+                        si += ar[r] * wi + ai[r] * wr;
+                    }
+                    final int t = p * k * s;
+                    final double wr = cosTable[t];
+                    final double wi = sign * sinTable[t];
+                    final int io = q + s * (factor * p + k);
+                    yr[io] = sr * wr - si * wi;
+                    yi[io] = sr * wi + si * wr;
+                }
+            }
+        }
+    }
+
+    private static int[] factorize(int n) {
+        List<Integer> factorList = new ArrayList<Integer>();
+        int rest = n;
+        for (int factor = 2; rest > 1; ) {
+            if (rest % factor == 0) {
+                factorList.add(factor);
+                rest /= factor;
+            } else {
+                factor = (factor == 2) ? 3 : factor + 2;
+                if (factor * factor > rest) {
+                    factor = rest;
+                }
+            }
+        }
+        int[] result = new int[factorList.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = factorList.get(i);
+        }
+        return result;
+    }
+}
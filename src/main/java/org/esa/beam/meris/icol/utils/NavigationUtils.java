@@ -45,8 +45,10 @@ public class NavigationUtils {
     }
 
     public static float distanceInMeters(GeoCoding geocoding, PixelPos p1, PixelPos p2) {
-        final GeoPos geoPosH = geocoding.getGeoPos(p1, null);
-        final GeoPos geoPosN = geocoding.getGeoPos(p2, null);
+        return distanceInMeters(geocoding.getGeoPos(p1, null), geocoding.getGeoPos(p2, null));
+    }
+
+    public static float distanceInMeters(GeoPos geoPosH, GeoPos geoPosN) {
         final float lamH = (float) (MathUtils.DTOR * geoPosH.getLon());
         final float phiH = (float) (MathUtils.DTOR * geoPosH.getLat());
         final float lamN = (float) (MathUtils.DTOR * geoPosN.getLon());
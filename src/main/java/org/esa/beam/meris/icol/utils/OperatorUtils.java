@@ -11,10 +11,15 @@ import org.esa.beam.framework.gpf.Operator;
 import org.esa.beam.framework.gpf.OperatorException;
 import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.gpf.operators.standard.WriteOp;
+import org.esa.beam.meris.icol.IcolConvolutionAlgo;
+import org.esa.beam.meris.icol.IcolConvolutionBoxSum;
+import org.esa.beam.meris.icol.IcolConvolutionFft;
 import org.esa.beam.meris.icol.Instrument;
 import org.esa.beam.util.Guardian;
 import org.esa.beam.util.ProductUtils;
 
+import javax.media.jai.JAI;
+import javax.media.jai.TileCache;
 import java.awt.Rectangle;
 import java.io.File;
 import java.io.IOException;
@@ -26,6 +31,16 @@ public class OperatorUtils {
 
     private static final int[] ALL_BANDS = new int[]{};
 
+    public static final int MIN_TILE_SIZE = 64;
+    public static final int MAX_TILE_SIZE = 512;
+    // maximum ratio of the source area read for a tile (with its extension) and the tile area
+    private static final double MAX_SOURCE_AREA_RATIO = 2.0;
+    // bytes per pixel of an extended source tile
+    private static final int SOURCE_SAMPLE_BYTES = 4;
+    // bytes per extended source pixel and band kept by the FFT and box-sum convolvers for the lifetime of a tile:
+    // two double arrays, the real and imaginary parts of the spectra or the value and weight sums
+    private static final int CONVOLUTION_BUFFER_BYTES = 16;
+
     private OperatorUtils() {
     }
 
@@ -154,6 +169,115 @@ public class OperatorUtils {
         targetBand.setValidPixelExpression(sourceBand.getValidPixelExpression());
     }
 
+    /**
+     * Chooses the tile size for an operator which reads its source tiles extended by the given number of
+     * pixels. Starting at {@link #MIN_TILE_SIZE}, the tile size is doubled until the extended source tile is at
+     * most {@link #MAX_SOURCE_AREA_RATIO} times the tile, up to {@link #MAX_TILE_SIZE}. The doubling also stops
+     * once a tile covers the smaller scene dimension, and before the source tiles of all processors exceed a
+     * quarter of the heap. All tile sizes are powers of two, so a single tile may be larger than a small scene.
+     *
+     * @param product         - the target product
+     * @param sourceExtension - the number of pixels the source tiles extend the target tile on each side
+     * @param numSourceBands  - the number of extended source tiles read per target tile
+     * @return the tile size
+     */
+    public static int computeTileSize(Product product, int sourceExtension, int numSourceBands) {
+        return computeTileSize(product, sourceExtension, numSourceBands, SOURCE_SAMPLE_BYTES);
+    }
+
+    /**
+     * Same as {@link #computeTileSize(Product, int, int)}, for operators which keep more than the source
+     * sample per extended source pixel and band in memory while computing a tile.
+     *
+     * @param product             - the target product
+     * @param sourceExtension     - the number of pixels the source tiles extend the target tile on each side
+     * @param numSourceBands      - the number of extended source tiles read per target tile
+     * @param bytesPerSourcePixel - the memory per extended source pixel and band
+     * @return the tile size
+     */
+    public static int computeTileSize(Product product, int sourceExtension, int numSourceBands,
+                                      int bytesPerSourcePixel) {
+        final int sceneSize = Math.min(product.getSceneRasterWidth(), product.getSceneRasterHeight());
+        final long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+        final int numThreads = Runtime.getRuntime().availableProcessors();
+        int tileSize = MIN_TILE_SIZE;
+        while (tileSize < MAX_TILE_SIZE && tileSize < sceneSize &&
+               getSourceAreaRatio(tileSize, sourceExtension) > MAX_SOURCE_AREA_RATIO) {
+            final long sourceTileSize = 2L * tileSize + 2L * sourceExtension;
+            if (sourceTileSize * sourceTileSize * bytesPerSourcePixel * numSourceBands * numThreads > memoryBudget) {
+                break;
+            }
+            tileSize *= 2;
+        }
+        return tileSize;
+    }
+
+    /**
+     * Chooses the tile size for an operator which shares its extended source data between the target tiles
+     * of a {@link SuperTileCache}. The super-tile already keeps the extended source area small, so the tile size
+     * of {@link #computeTileSize(Product, int, int)} is limited to {@link SuperTileCache#MAX_TARGET_TILE_SIZE},
+     * and several target tiles are served by each super-tile.
+     *
+     * @param product         - the target product
+     * @param sourceExtension - the number of pixels the source data extends the target tile on each side
+     * @param numSourceBands  - the number of extended source tiles read per super-tile
+     * @return the tile size
+     */
+    public static int computeSuperTiledTileSize(Product product, int sourceExtension, int numSourceBands) {
+        final int tileSize = computeTileSize(product, sourceExtension, numSourceBands);
+        return Math.min(tileSize, SuperTileCache.MAX_TARGET_TILE_SIZE);
+    }
+
+    /**
+     * Sets the tile size computed by {@link #computeSuperTiledTileSize} as preferred tile size of the target
+     * product. Operators reading their sources with a large extension through a {@link SuperTileCache} use this,
+     * the size of their super-tiles is derived from this tile size.
+     *
+     * @param targetProduct   - the target product
+     * @param sourceExtension - the number of pixels the source data extends the target tile on each side
+     * @param numSourceBands  - the number of extended source tiles read per super-tile
+     */
+    public static void setPreferredTileSize(Product targetProduct, int sourceExtension, int numSourceBands) {
+        final int tileSize = computeSuperTiledTileSize(targetProduct, sourceExtension, numSourceBands);
+        targetProduct.setPreferredTileSize(tileSize, tileSize);
+    }
+
+    /**
+     * Sets the preferred tile size of the target product of an operator convolving its source bands with the
+     * given algorithm. The source extension is taken from the algorithm, and the spectra of the FFT convolver
+     * and the summed-area tables of the box-sum convolver are included in the memory estimate.
+     *
+     * @param targetProduct   - the target product
+     * @param convolutionAlgo - the convolution algorithm
+     * @param numSourceBands  - the number of source bands convolved per target tile
+     */
+    public static void setPreferredTileSize(Product targetProduct, IcolConvolutionAlgo convolutionAlgo,
+                                            int numSourceBands) {
+        int bytesPerSourcePixel = SOURCE_SAMPLE_BYTES;
+        if (convolutionAlgo instanceof IcolConvolutionFft || convolutionAlgo instanceof IcolConvolutionBoxSum) {
+            bytesPerSourcePixel += CONVOLUTION_BUFFER_BYTES;
+        }
+        final int tileSize = computeTileSize(targetProduct, getSourceExtension(convolutionAlgo, targetProduct),
+                                             numSourceBands, bytesPerSourcePixel);
+        targetProduct.setPreferredTileSize(tileSize, tileSize);
+    }
+
+    /**
+     * @param convolutionAlgo - the convolution algorithm
+     * @param product         - the product
+     * @return the number of pixels the source tiles of the algorithm extend the target tile
+     */
+    public static int getSourceExtension(IcolConvolutionAlgo convolutionAlgo, Product product) {
+        final Rectangle centre = new Rectangle(product.getSceneRasterWidth() / 2,
+                                               product.getSceneRasterHeight() / 2, 1, 1);
+        return centre.x - convolutionAlgo.mapTargetRect(centre).x;
+    }
+
+    private static double getSourceAreaRatio(int tileSize, int sourceExtension) {
+        final double extendedSize = tileSize + 2.0 * sourceExtension;
+        return extendedSize * extendedSize / ((double) tileSize * tileSize);
+    }
+
     // @author Norman
 
     /**
@@ -166,7 +290,10 @@ public class OperatorUtils {
      * @param logger       A logger.
      * @return A new product instance which contains everything that {@code product} contains.
      * @throws OperatorException If an I/O error occurs.
+     * @deprecated Use {@link #materialize}, which keeps only the tiles worth storing, computes them on demand
+     *             instead of writing the whole product up front, and deletes its scratch files on dispose.
      */
+    @Deprecated
     public static Product persist(Product product, String variableName, Logger logger) throws OperatorException {
         if (product == null) {
             return null;
@@ -195,6 +322,55 @@ public class OperatorUtils {
         }
     }
 
+    /**
+     * Keeps the tiles of an expensive intermediate product in memory-mapped scratch files once they have been
+     * computed, so that tiles evicted from the tile cache are not computed again.
+     * <p/>
+     * Whether this pays off depends on two things. The first is whether the tiles are evicted at all: products
+     * which take less than a quarter of the tile cache, which they share with the other products of the chain,
+     * are likely to stay in the cache and are returned unchanged. The second is the cost of a tile: each
+     * {@link MaterializedOpImage} weighs the measured compute time of a tile against the measured time to store
+     * it, and only stores tiles which are more expensive to compute than to store and read back.
+     * The caller disposes the returned product if it is not the given one, which deletes the scratch files.
+     *
+     * @param product      A product to materialise.
+     * @param variableName The prefix of the scratch file names (tip: use the Product variable used in your source code).
+     * @param logger       A logger.
+     * @return A new product with the bands of {@code product}, or {@code product} itself.
+     * @throws OperatorException If a scratch file cannot be created.
+     */
+    public static Product materialize(Product product, String variableName, Logger logger) throws OperatorException {
+        if (product == null) {
+            return null;
+        }
+        long numBytes = 0;
+        for (Band band : product.getBands()) {
+            final int bytesPerSample = band.getDataType() == ProductData.TYPE_FLOAT64 ? 8 : 4;
+            numBytes += (long) band.getSceneRasterWidth() * band.getSceneRasterHeight() * bytesPerSample;
+        }
+        final TileCache tileCache = JAI.getDefaultInstance().getTileCache();
+        if (numBytes < tileCache.getMemoryCapacity() / 4) {
+            return product;
+        }
+        logger.info("Keeping tiles of product " + product.getName() + " in scratch files (" +
+                    numBytes / (1024 * 1024) + " MB)");
+        final Product materializedProduct = createCompatibleProduct(product, product.getName(),
+                                                                    product.getProductType(), true);
+        materializedProduct.setPreferredTileSize(product.getPreferredTileSize());
+        try {
+            for (Band band : product.getBands()) {
+                final Band materializedBand = ProductUtils.copyBand(band.getName(), product, materializedProduct,
+                                                                    false);
+                materializedBand.setSourceImage(new MaterializedOpImage(band.getSourceImage(),
+                                                                        variableName + "_" + band.getName()));
+            }
+        } catch (IOException e) {
+            throw new OperatorException(
+                    String.format("Failed to materialize product %s: %s", product.getName(), e.getMessage()), e);
+        }
+        return materializedProduct;
+    }
+
     /**
      * checks for mandatory properties of MERIS input product
      *
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.utils;
+
+import org.esa.beam.framework.gpf.OperatorException;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Shares the source data of operators with a large source extension between neighbouring target tiles.
+ * <p/>
+ * The scene is divided into super-tiles of a fixed size. The source data of a super-tile, including the
+ * extension it needs, is loaded once when the first target tile within it is computed and then serves all
+ * other target tiles within it. For a 64x64 FR tile with an extension of 320 pixels, a 512x512 super-tile
+ * reduces the source area read per target pixel from about 120 to about 5 pixels.
+ * <p/>
+ * The super-tile size is derived from the target tile size with {@link #computeSuperTileSize}, so that the
+ * super-tile grid is aligned with the tile grid and each super-tile serves several target tiles in each direction.
+ * The target tile size of these operators is limited to {@link #MAX_TARGET_TILE_SIZE}, the super-tile keeps their
+ * extended source area small.
+ * <p/>
+ * Target tiles which are not contained in a single super-tile (if the tile size does not divide the
+ * super-tile size) are loaded on their own. The most recently used super-tiles are kept, enough for two rows
+ * of super-tiles, so that the row-wise tile requests of a writer do not load a super-tile twice.
+ * <p/>
+ * Instances are thread safe. Concurrent requests for the same super-tile wait for a single load.
+ */
+public class SuperTileCache<T> {
+
+    // the minimum number of target tiles served per super-tile in each direction
+    public static final int MIN_TILES_PER_SUPER_TILE = 4;
+    // the maximum tile size of the target products using a super-tile cache
+    public static final int MAX_TARGET_TILE_SIZE = 128;
+
+    /**
+     * Loads the source data for a rectangle of the scene.
+     */
+    public interface Loader<T> {
+
+        /**
+         * @param rectangle - the super-tile or target tile rectangle, without the source extension
+         * @return the source data covering the rectangle and its source extension
+         * @throws OperatorException - if the source data cannot be read
+         */
+        T load(Rectangle rectangle) throws OperatorException;
+    }
+
+    private final Rectangle sceneRect;
+    private final int superTileSize;
+    private final Loader<T> loader;
+    private final Map<Rectangle, FutureTask<T>> superTiles;
+
+    public SuperTileCache(int sceneWidth, int sceneHeight, int superTileSize, Loader<T> loader) {
+        this.sceneRect = new Rectangle(sceneWidth, sceneHeight);
+        this.superTileSize = superTileSize;
+        this.loader = loader;
+        final int numColumns = (sceneWidth + superTileSize - 1) / superTileSize;
+        final int maxEntries = 2 * numColumns;
+        this.superTiles = new LinkedHashMap<Rectangle, FutureTask<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Rectangle, FutureTask<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Computes the super-tile size for the tiles of a target product: the smallest common multiple of the tile
+     * width and height, times {@link #MIN_TILES_PER_SUPER_TILE}, and doubled until it is at least twice the
+     * source extension, so that the extended source area of a super-tile is at most four times its area.
+     *
+     * @param tileSize        - the (preferred) tile size of the target product
+     * @param sourceExtension - the number of pixels the source data extends a super-tile on each side
+     * @return the super-tile size, a multiple of the tile width and height
+     */
+    public static int computeSuperTileSize(Dimension tileSize, int sourceExtension) {
+        int commonSize = tileSize.width;
+        while (commonSize % tileSize.height != 0) {
+            commonSize += tileSize.width;
+        }
+        int superTileSize = MIN_TILES_PER_SUPER_TILE * commonSize;
+        while (superTileSize < 2 * sourceExtension) {
+            superTileSize *= 2;
+        }
+        return superTileSize;
+    }
+
+    /**
+     * @param targetRect - the target tile rectangle
+     * @return the source data of the super-tile containing the target tile, or of the target tile alone
+     * @throws OperatorException - if the source data cannot be read
+     */
+    public T get(Rectangle targetRect) throws OperatorException {
+        final Rectangle superTileRect = getSuperTileRect(targetRect);
+        if (!superTileRect.contains(targetRect)) {
+            return loader.load(targetRect);
+        }
+        FutureTask<T> superTile;
+        synchronized (superTiles) {
+            superTile = superTiles.get(superTileRect);
+            if (superTile == null) {
+                superTile = new FutureTask<T>(new Callable<T>() {
+                    public T call() throws Exception {
+                        return loader.load(superTileRect);
+                    }
+                });
+                superTiles.put(superTileRect, superTile);
+            }
+        }
+        // a no-op if the super-tile is already loaded or being loaded by another thread
+        superTile.run();
+        try {
+            return superTile.get();
+        } catch (InterruptedException e) {
+            throw new OperatorException(e);
+        } catch (ExecutionException e) {
+            synchronized (superTiles) {
+                // the next request loads the super-tile again
+                if (superTiles.get(superTileRect) == superTile) {
+                    superTiles.remove(superTileRect);
+                }
+            }
+            final Throwable cause = e.getCause();
+            if (cause instanceof OperatorException) {
+                throw (OperatorException) cause;
+            }
+            throw new OperatorException(cause);
+        }
+    }
+
+    Rectangle getSuperTileRect(Rectangle targetRect) {
+        final int x = (targetRect.x / superTileSize) * superTileSize;
+        final int y = (targetRect.y / superTileSize) * superTileSize;
+        return new Rectangle(x, y, superTileSize, superTileSize).intersection(sceneRect);
+    }
+}
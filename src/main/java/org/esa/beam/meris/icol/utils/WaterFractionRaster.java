@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2007 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.esa.beam.meris.icol.utils;
+
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+import org.esa.beam.watermask.operator.WatermaskClassifier;
+
+import java.awt.Rectangle;
+
+/**
+ * The water fraction of the pixels of a tile, resampled once from the land/water mask of the
+ * {@link WatermaskClassifier}.
+ * <p/>
+ * Each pixel is sampled at the centres of its <code>superSampling x superSampling</code> sub-pixels, the positions
+ * <code>(x + (i + 0.5) / superSampling - 0.5, y + (j + 0.5) / superSampling - 0.5)</code>, and the water fraction
+ * is the percentage of the valid samples which are water. The sub-pixels are centred on <code>(x, y)</code>, the
+ * position of the former per-pixel lookup, so that a single sample is taken there. Each sample is a lookup of
+ * the classifier, the resolution of the classifier should therefore be chosen to match the pixel size rather
+ * than the super-sampling, e.g. the 150 m mask for a 1.2 km pixel.
+ */
+public class WaterFractionRaster {
+
+    public static final byte INVALID_FRACTION = -1;
+
+    private final Rectangle rectangle;
+    private final byte[] fractions;
+
+    public WaterFractionRaster(WatermaskClassifier classifier, GeoCodingCache geoCoding, Rectangle rectangle,
+                               int superSampling) {
+        this.rectangle = rectangle;
+        fractions = new byte[rectangle.width * rectangle.height];
+        final PixelPos pixelPos = new PixelPos();
+        GeoPos geoPos = new GeoPos();
+        int index = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, index++) {
+                int numWater = 0;
+                int numValid = 0;
+                for (int j = 0; j < superSampling; j++) {
+                    pixelPos.y = y + (j + 0.5f) / superSampling - 0.5f;
+                    for (int i = 0; i < superSampling; i++) {
+                        pixelPos.x = x + (i + 0.5f) / superSampling - 0.5f;
+                        geoPos = geoCoding.getGeoPos(pixelPos, geoPos);
+                        final int sample = classifier.getWaterMaskSample(geoPos.lat, geoPos.lon);
+                        if (sample != WatermaskClassifier.INVALID_VALUE) {
+                            numValid++;
+                            if (sample == WatermaskClassifier.WATER_VALUE) {
+                                numWater++;
+                            }
+                        }
+                    }
+                }
+                fractions[index] = numValid > 0 ? (byte) Math.round(100.0f * numWater / numValid) : INVALID_FRACTION;
+            }
+        }
+    }
+
+    /**
+     * @param x - the pixel x coordinate
+     * @param y - the pixel y coordinate
+     * @return the water fraction in percent, or {@link #INVALID_FRACTION} if the mask is not defined there
+     */
+    public byte getWaterFraction(int x, int y) {
+        return fractions[(y - rectangle.y) * rectangle.width + (x - rectangle.x)];
+    }
+}
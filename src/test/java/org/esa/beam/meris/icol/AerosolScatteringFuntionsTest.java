@@ -18,6 +18,15 @@ package org.esa.beam.meris.icol;
 
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 /**
  * Created by marcoz.
  *
@@ -68,4 +77,152 @@ public class AerosolScatteringFuntionsTest extends TestCase {
 		double d = aerosolScatteringFunctions.aerosolPhase(45, 1);
 		assertEquals(1.2018744286197576, d);
 	}
+
+	public void testAerosolBatch() throws Exception {
+		AerosolScatteringFunctions aerosolScatteringFunctions = new AerosolScatteringFunctions();
+		double[] aot = {0.0, 0.05, 0.23, 0.5, 1.2, 1.7, 2.4};
+		AerosolScatteringFunctions.RVBatch rvBatch = new AerosolScatteringFunctions.RVBatch(aot.length);
+		for (int iaer = 1; iaer <= 26; iaer += 5) {
+			aerosolScatteringFunctions.aerosol_f(aot, aot.length, iaer, 0.8, 35.0f, 20.0f, 70.0f, rvBatch);
+			for (int i = 0; i < aot.length; i++) {
+				AerosolScatteringFunctions.RV expected = aerosolScatteringFunctions.aerosol_f(aot[i], iaer, 0.8,
+																							  35.0f, 20.0f, 70.0f);
+				assertEquals(expected.tds, rvBatch.tds[i], 1.E-12);
+				assertEquals(expected.tus, rvBatch.tus[i], 1.E-12);
+				assertEquals(expected.sa, rvBatch.sa[i], 1.E-12);
+				assertEquals(expected.fa, rvBatch.fa[i], 1.E-10);
+				assertEquals(expected.rhoa, rvBatch.rhoa[i], 1.E-10);
+			}
+		}
+
+		int[] iaer = {1, 1, 7, 7, 7, 26, 26};
+		double[] pab = {0.8, 0.8, 0.8, 1.1, 1.1, 1.1, 0.6};
+		float[] sza = {35.0f, 35.0f, 35.0f, 35.0f, 52.0f, 52.0f, 52.0f};
+		float[] vza = {20.0f, 20.0f, 20.0f, 20.0f, 3.0f, 3.0f, 3.0f};
+		float[] phi = {70.0f, 70.0f, 70.0f, 70.0f, 70.0f, -110.0f, -110.0f};
+		aerosolScatteringFunctions.aerosol_f(aot, iaer, pab, sza, vza, phi, aot.length, rvBatch);
+		for (int i = 0; i < aot.length; i++) {
+			AerosolScatteringFunctions.RV expected = aerosolScatteringFunctions.aerosol_f(aot[i], iaer[i], pab[i],
+																						  sza[i], vza[i], phi[i]);
+			assertEquals(expected.tds, rvBatch.tds[i], 1.E-12);
+			assertEquals(expected.tus, rvBatch.tus[i], 1.E-12);
+			assertEquals(expected.sa, rvBatch.sa[i], 1.E-12);
+			assertEquals(expected.rhoa, rvBatch.rhoa[i], 1.E-10);
+		}
+	}
+
+	public void testInterpolatedGeometryTerms() throws Exception {
+		AerosolScatteringFunctions aerosolScatteringFunctions = new AerosolScatteringFunctions();
+		double[] aot = new double[16];
+		for (int i = 0; i < aot.length; i++) {
+			aot[i] = 0.1 * (i + 1);
+		}
+		// a tie-point cell with typical angle differences, not crossing a zenith node of the tables
+		float[] sza = {40.0f, 40.2f};
+		float[] vza = {10.0f, 11.0f};
+		float[] phi = {100.0f, 102.0f};
+		AerosolScatteringFunctions.RVBatch[] nodes = new AerosolScatteringFunctions.RVBatch[4];
+		AerosolScatteringFunctions.RVBatch interpolated = new AerosolScatteringFunctions.RVBatch(aot.length);
+		AerosolScatteringFunctions.RVBatch exact = new AerosolScatteringFunctions.RVBatch(aot.length);
+		for (int iaer = 1; iaer <= 26; iaer += 5) {
+			for (int k = 0; k < nodes.length; k++) {
+				nodes[k] = new AerosolScatteringFunctions.RVBatch(0);
+				aerosolScatteringFunctions.computeGeometryTerms(iaer, sza[k % 2], vza[k % 2], phi[k / 2], nodes[k]);
+			}
+			interpolated.interpolateGeometry(nodes[0], nodes[1], nodes[2], nodes[3], 0.5, 0.5);
+			aerosolScatteringFunctions.aerosol_f(aot, aot.length, 0.8, interpolated);
+			aerosolScatteringFunctions.aerosol_f(aot, aot.length, iaer, 0.8, 40.1f, 10.5f, 101.0f, exact);
+			for (int i = 0; i < aot.length; i++) {
+				assertEquals(exact.tds[i], interpolated.tds[i], 1.E-4 * exact.tds[i]);
+				assertEquals(exact.tus[i], interpolated.tus[i], 1.E-4 * exact.tus[i]);
+				assertEquals(exact.sa[i], interpolated.sa[i], 1.E-12);
+				assertEquals(exact.rhoa[i], interpolated.rhoa[i], 1.E-4 * exact.rhoa[i]);
+			}
+		}
+	}
+
+	public void testConcurrentEvaluation() throws Exception {
+		final int numThreads = 8;
+		final double[] expected = evaluateAll(new AerosolScatteringFunctions(), 0);
+
+		// a fresh instance, so that the text tables are loaded by concurrent first calls
+		final AerosolScatteringFunctions sharedFunctions = new AerosolScatteringFunctions();
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+			for (int t = 0; t < numThreads; t++) {
+				final int firstModel = t;
+				results.add(executor.submit(new Callable<double[]>() {
+					public double[] call() throws Exception {
+						startSignal.await();
+						return evaluateAll(sharedFunctions, firstModel);
+					}
+				}));
+			}
+			startSignal.countDown();
+			for (Future<double[]> result : results) {
+				double[] actual = result.get();
+				for (int i = 0; i < expected.length; i++) {
+					assertEquals(expected[i], actual[i], 0.0);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// evaluates all models, starting with a given one, and returns the results in a fixed order
+	private static double[] evaluateAll(AerosolScatteringFunctions functions, int firstModel) throws Exception {
+		final double[] aot = {0.05, 0.23, 0.5, 1.2};
+		final float[] sza = {12.0f, 35.0f, 52.0f};
+		final float[] vza = {3.0f, 20.0f, 38.0f};
+		final float[] phi = {-110.0f, 70.0f};
+		final int valuesPerModel = sza.length * vza.length * phi.length * (4 * aot.length + 1);
+		final double[] values = new double[26 * valuesPerModel];
+		final AerosolScatteringFunctions.RVBatch rv = new AerosolScatteringFunctions.RVBatch(aot.length);
+		for (int m = 0; m < 26; m++) {
+			final int iaer = (firstModel + m) % 26 + 1;
+			int index = (iaer - 1) * valuesPerModel;
+			for (float s : sza) {
+				for (float v : vza) {
+					for (float p : phi) {
+						functions.aerosol_f(aot, aot.length, iaer, 0.8, s, v, p, rv);
+						for (int i = 0; i < aot.length; i++) {
+							values[index++] = rv.tds[i];
+							values[index++] = rv.tus[i];
+							values[index++] = rv.sa[i];
+							values[index++] = rv.rhoa[i];
+						}
+						values[index++] = functions.hasAerosolPhase(iaer) ?
+										  functions.aerosolPhase(180.0 - s - v, iaer) : 0.0;
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	public void testBinaryLutFile() throws Exception {
+		File auxdataDir = new File(System.getProperty("java.io.tmpdir"), "icol-aerosol-lut-test");
+		File lutFile = new File(auxdataDir, AerosolLutFile.FILENAME);
+		try {
+			AerosolLutFile.write(lutFile);
+			AerosolScatteringFunctions textFunctions = new AerosolScatteringFunctions();
+			AerosolScatteringFunctions binaryFunctions = new AerosolScatteringFunctions(auxdataDir);
+			assertEquals(0.992361, binaryFunctions.aerosolTransmittance(1, 1, 1), 1.E-6);
+			for (int iaer = 1; iaer <= 26; iaer += 5) {
+				AerosolScatteringFunctions.RV expected = textFunctions.aerosol_f(0.23, iaer, 0.8, 35.0f, 20.0f, 70.0f);
+				AerosolScatteringFunctions.RV actual = binaryFunctions.aerosol_f(0.23, iaer, 0.8, 35.0f, 20.0f, 70.0f);
+				assertEquals(expected.tds, actual.tds, 1.E-6);
+				assertEquals(expected.tus, actual.tus, 1.E-6);
+				assertEquals(expected.sa, actual.sa, 1.E-6);
+				assertEquals(expected.rhoa, actual.rhoa, 1.E-6);
+				assertEquals(textFunctions.aerosolPhase(45, iaer), binaryFunctions.aerosolPhase(45, iaer), 1.E-5);
+			}
+		} finally {
+			lutFile.delete();
+			auxdataDir.delete();
+		}
+	}
 }
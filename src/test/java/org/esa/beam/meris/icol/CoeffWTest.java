@@ -84,6 +84,21 @@ public class CoeffWTest extends TestCase {
 
     }
 
+    public void testKernelsAreBuiltOnce() {
+        final KernelJAI kernelFR = coeffW.getReshapedConvolutionKernelForFR(5);
+        assertSame(kernelFR, coeffW.getReshapedConvolutionKernelForFR(5));
+        assertNotSame(kernelFR, coeffW.getReshapedConvolutionKernelForFR(6));
+        assertSame(coeffW.getCoeffForRR(), coeffW.getCoeffForRR());
+
+        final KernelJAI expected = CoeffW.createKernelByRotation(coeffW.getReshapedRayleighCoeffForFR(5));
+        assertEquals(expected.getWidth(), kernelFR.getWidth());
+        final float[] expectedData = expected.getKernelData();
+        final float[] actualData = kernelFR.getKernelData();
+        for (int i = 0; i < expectedData.length; i++) {
+            assertEquals(expectedData[i], actualData[i], 0.0f);
+        }
+    }
+
     public void testReadKernelOffNadir() {
         // Rayleigh:
         float[] kernel = CoeffW.createFilterOffNadir("W_ray0_new.txt");
@@ -3,7 +3,13 @@ package org.esa.beam.meris.icol;
 import junit.framework.TestCase;
 
 import org.geotools.math.Complex;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.meris.icol.utils.FFTUtils;
+import org.esa.beam.meris.icol.utils.MixedRadixFFT;
+
+import java.awt.Rectangle;
+import java.io.InputStreamReader;
 
 /**
  * @author Olaf Danne
@@ -151,6 +157,239 @@ public class ConvolutionTest extends TestCase {
 
     }
 
+    public void testMixedRadixFFT() {
+        // compare with direct DFT for radix 2, 3, 5 and prime lengths
+        int[] sizes = new int[]{1, 2, 3, 5, 7, 8, 12, 30, 49, 270};
+        for (int N : sizes) {
+            double[] re = new double[N];
+            double[] im = new double[N];
+            for (int i = 0; i < N; i++) {
+                re[i] = Math.sin(0.3 * i) + 0.1 * i;
+                im[i] = Math.cos(0.7 * i);
+            }
+            double[] expectedRe = new double[N];
+            double[] expectedIm = new double[N];
+            for (int k = 0; k < N; k++) {
+                for (int i = 0; i < N; i++) {
+                    final double phi = -2.0 * Math.PI * i * k / N;
+                    expectedRe[k] += re[i] * Math.cos(phi) - im[i] * Math.sin(phi);
+                    expectedIm[k] += re[i] * Math.sin(phi) + im[i] * Math.cos(phi);
+                }
+            }
+            MixedRadixFFT fft = MixedRadixFFT.getInstance(N);
+            fft.transform(re, im, true);
+            for (int k = 0; k < N; k++) {
+                assertEquals(expectedRe[k], re[k], 1.E-8);
+                assertEquals(expectedIm[k], im[k], 1.E-8);
+            }
+        }
+        assertEquals(270, MixedRadixFFT.nextFastSize(264));
+        assertEquals(1024, MixedRadixFFT.nextFastSize(1024));
+    }
+
+    public void testFftConvolutionEngine() {
+        // compare overlap-save result (two blocks in x) with direct convolution
+        final int width = 1100;
+        final int height = 23;
+        final int radius = 4;
+        final int kernelSize = 2 * radius + 1;
+        float[] kernel = new float[kernelSize * kernelSize];
+        for (int j = 0; j < kernelSize; j++) {
+            for (int i = 0; i < kernelSize; i++) {
+                final int r2 = (i - radius) * (i - radius) + (j - radius) * (j - radius);
+                kernel[j * kernelSize + i] = (float) Math.exp(-0.1 * r2);
+            }
+        }
+        IcolConvolutionFft.Engine engine = new IcolConvolutionFft.Engine(width, height, radius);
+        final int regionWidth = engine.getRegionWidth();
+        final int regionHeight = engine.getRegionHeight();
+        double[] values = new double[regionWidth * regionHeight];
+        double[] weights = new double[regionWidth * regionHeight];
+        for (int j = 0; j < regionHeight; j++) {
+            for (int i = 0; i < regionWidth; i++) {
+                final int index = j * regionWidth + i;
+                // a no-data stripe which must not contribute
+                if (i != 10) {
+                    values[index] = 0.5 + 0.25 * Math.sin(0.2 * i) * Math.cos(0.3 * j);
+                    weights[index] = 1.0;
+                }
+            }
+        }
+        float[] result = new float[width * height];
+        engine.inverse(engine.forward(values, weights), engine.createKernelSpectrum(kernel, radius), result);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double sum = 0.0;
+                double weightSum = 0.0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        final int index = (y + radius + dy) * regionWidth + x + radius + dx;
+                        final double k = kernel[(dy + radius) * kernelSize + dx + radius];
+                        sum += k * values[index];
+                        weightSum += k * weights[index];
+                    }
+                }
+                assertEquals(sum / weightSum, result[y * width + x], 1.E-5);
+            }
+        }
+    }
+
+    public void testFftConvolverMatchesKernelLoop() throws Exception {
+        final CoeffW coeffW = new CoeffW(new InputStreamReader(
+                CoeffW.class.getResourceAsStream("/auxdata/icol/" + CoeffW.FILENAME)));
+        final Product product = new Product("rr", "MER_RR__1P", 120, 100);
+        final IcolConvolutionAlgo kernelLoop = new IcolConvolutionKernellLoop(product, coeffW,
+                                                                              IcolConstants.AE_CORRECTION_MODE_AEROSOL);
+        final IcolConvolutionAlgo fft = new IcolConvolutionFft(product, coeffW);
+        // the kernel loop needs the full window inside the source tile
+        final Rectangle targetRect = new Rectangle(30, 28, 50, 40);
+        final Rectangle sourceRect = kernelLoop.mapTargetRect(targetRect);
+        assertEquals(sourceRect, fft.mapTargetRect(targetRect));
+
+        final float[] values = new float[sourceRect.width * sourceRect.height];
+        final float[] valuesWithNoData = new float[values.length];
+        final float[] flags = new float[values.length];
+        for (int j = 0; j < sourceRect.height; j++) {
+            for (int i = 0; i < sourceRect.width; i++) {
+                final int index = j * sourceRect.width + i;
+                values[index] = (float) (0.1 + 0.05 * Math.sin(0.11 * i) * Math.cos(0.07 * j) + 0.01 * ((i * 7 + j * 3) % 5));
+                // scattered no-data pixels and a no-data block
+                final boolean noData = (i * 13 + j * 7) % 17 == 0 || (i > 60 && i < 70 && j > 20 && j < 45);
+                valuesWithNoData[index] = noData ? -1.0f : values[index];
+                flags[index] = 1.0f;
+            }
+        }
+        final Tile[] tiles = new Tile[]{
+                TileTestUtils.createTile(sourceRect, values),
+                TileTestUtils.createTile(sourceRect, valuesWithNoData),
+                TileTestUtils.createTile(sourceRect, flags)
+        };
+        final IcolConvolutionAlgo.Convolver expected = kernelLoop.createConvolver(null, tiles, targetRect, null);
+        final IcolConvolutionAlgo.Convolver actual = fft.createConvolver(null, tiles, targetRect, null);
+
+        final int[] models = new int[]{1, 7, 26};
+        double maxNoDataError = 0.0;
+        for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
+            for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++) {
+                for (int iaer : models) {
+                    // all pixels valid: same result up to rounding
+                    assertEquals(expected.convolveSample(x, y, iaer, 0), actual.convolveSample(x, y, iaer, 0), 1.0E-5);
+                    // all flags set: both give the sum of the weights
+                    assertEquals(expected.convolveSampleBoolean(x, y, iaer, 2),
+                                 actual.convolveSampleBoolean(x, y, iaer, 2), 1.0E-5);
+                    // no-data pixels: the rings are normalised as a whole instead of one by one, which only
+                    // makes a difference if the rings are partly invalid
+                    if (tiles[1].getSampleFloat(x, y) != -1.0f) {
+                        final double error = Math.abs(expected.convolveSample(x, y, iaer, 1) -
+                                                      actual.convolveSample(x, y, iaer, 1));
+                        maxNoDataError = Math.max(maxNoDataError, error);
+                    }
+                }
+                // the pixel convolution uses w[iaer], as in the kernel loop
+                final double[] expectedMeans = expected.convolvePixel(x, y, 1);
+                final double[] actualMeans = actual.convolvePixel(x, y, 1);
+                assertEquals(expectedMeans[0], actualMeans[0], 1.0E-5);
+                assertEquals(expected.convolveSample(x, y, 2, 0), actualMeans[0], 1.0E-5);
+            }
+        }
+        assertTrue("max. error with no-data pixels: " + maxNoDataError, maxNoDataError < 5.0E-3);
+    }
+
+    public void testBoxSumPixelConvolutionUsesNextModel() throws Exception {
+        final CoeffW coeffW = new CoeffW(new InputStreamReader(
+                CoeffW.class.getResourceAsStream("/auxdata/icol/" + CoeffW.FILENAME)));
+        final Product product = new Product("rr", "MER_RR__1P", 120, 100);
+        final IcolConvolutionAlgo boxSum = new IcolConvolutionBoxSum(product, coeffW);
+        final Rectangle targetRect = new Rectangle(30, 28, 20, 10);
+        final Rectangle sourceRect = boxSum.mapTargetRect(targetRect);
+        final float[] values = new float[sourceRect.width * sourceRect.height];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = (float) (0.1 + 0.05 * Math.sin(0.11 * index));
+        }
+        final IcolConvolutionAlgo.Convolver convolver = boxSum.createConvolver(
+                null, new Tile[]{TileTestUtils.createTile(sourceRect, values)}, targetRect, null);
+        for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
+            for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++) {
+                // as in the kernel loop, the pixel convolution uses w[iaer]
+                assertEquals(convolver.convolveSample(x, y, 8, 0), convolver.convolvePixel(x, y, 7)[0], 0.0);
+            }
+        }
+    }
+
+    public void testBoxSumMatchesFftAtNoDataEdges() throws Exception {
+        final CoeffW coeffW = new CoeffW(new InputStreamReader(
+                CoeffW.class.getResourceAsStream("/auxdata/icol/" + CoeffW.FILENAME)));
+        final Product product = new Product("rr", "MER_RR__1P", 120, 100);
+        final IcolConvolutionAlgo fft = new IcolConvolutionFft(product, coeffW);
+        final IcolConvolutionAlgo boxSum = new IcolConvolutionBoxSum(product, coeffW);
+        // at the scene corner, the border pixels are replicated
+        final Rectangle targetRect = new Rectangle(0, 0, 50, 40);
+        final Rectangle sourceRect = boxSum.mapTargetRect(targetRect);
+        assertEquals(sourceRect, fft.mapTargetRect(targetRect));
+
+        final float[] values = new float[sourceRect.width * sourceRect.height];
+        final float[] noData = new float[values.length];
+        for (int j = 0; j < sourceRect.height; j++) {
+            for (int i = 0; i < sourceRect.width; i++) {
+                final int index = j * sourceRect.width + i;
+                // a no-data block crossing the tile edge and the scene border, and a no-data stripe
+                final boolean invalid = (i < 20 && j > 10 && j < 30) || i == 40;
+                values[index] = invalid ? -1.0f : (float) (0.1 + 0.02 * Math.sin(0.05 * i) * Math.cos(0.04 * j));
+                noData[index] = -1.0f;
+            }
+        }
+        final Tile[] tiles = new Tile[]{
+                TileTestUtils.createTile(sourceRect, values),
+                TileTestUtils.createTile(sourceRect, noData)
+        };
+        final IcolConvolutionAlgo.Convolver expected = fft.createConvolver(null, tiles, targetRect, null);
+        final IcolConvolutionAlgo.Convolver actual = boxSum.createConvolver(null, tiles, targetRect, null);
+
+        final int[] models = new int[]{1, 7, 26};
+        for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
+            for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++) {
+                for (int iaer : models) {
+                    // the centre term is the same, the boxes only approximate the ring means
+                    assertEquals("(" + x + "," + y + ")", expected.convolveSample(x, y, iaer, 0),
+                                 actual.convolveSample(x, y, iaer, 0), 1.0E-3);
+                    // no valid ring pixel: only the centre term remains
+                    assertEquals(expected.convolveSample(x, y, iaer, 1), actual.convolveSample(x, y, iaer, 1),
+                                 1.0E-6);
+                }
+                assertEquals(expected.convolvePixel(x, y, 1)[0], actual.convolvePixel(x, y, 1)[0], 1.0E-3);
+            }
+        }
+    }
+
+    public void testBoxSumKernelApproximation() {
+        final int radius = 25;
+        final int[] boxRadii = IcolConvolutionBoxSum.createBoxRadii(radius);
+        assertEquals(0, boxRadii[0]);
+        assertEquals(radius, boxRadii[boxRadii.length - 1]);
+
+        double[] w = new double[radius + 1];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = Math.exp(-0.2 * i);
+        }
+        float[] kernel = CoeffW.createFilterByRotation(w);
+        double[] boxWeights = IcolConvolutionBoxSum.computeBoxWeights(kernel, radius, boxRadii);
+        // the boxes keep the kernel mass of each annulus, hence the total mass
+        double mass = 0.0;
+        for (int k = 0; k < boxRadii.length; k++) {
+            final int boxSize = 2 * boxRadii[k] + 1;
+            mass += boxWeights[k] * boxSize * boxSize;
+        }
+        assertEquals(1.0, mass, 1.E-5);
+        // the centre pixel is a box of its own
+        final int kernelSize = 2 * radius + 1;
+        double centre = 0.0;
+        for (double boxWeight : boxWeights) {
+            centre += boxWeight;
+        }
+        assertEquals(kernel[radius * kernelSize + radius], centre, 1.E-6);
+    }
+
     private void compareFloatArrays(float[] a1, float[] a2, double eps) {
         assertEquals(a1.length, a2.length);
         for (int i=0; i<a1.length; i++) {
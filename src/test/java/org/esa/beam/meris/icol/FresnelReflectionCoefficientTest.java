@@ -26,6 +26,13 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.Reader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -59,4 +66,42 @@ public class FresnelReflectionCoefficientTest {
         assertEquals( 0.684608855, coefficients.getCoeffFor( 86.2885 ), 0.00001 );
     }
 
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final int numThreads = 8;
+        final double[] expected = lookUpAll(0);
+
+        // the instance is shared by the tile threads (see IcolAuxdata)
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+            for (int t = 0; t < numThreads; t++) {
+                final int offset = t;
+                results.add(executor.submit(new Callable<double[]>() {
+                    public double[] call() throws Exception {
+                        startSignal.await();
+                        return lookUpAll(offset);
+                    }
+                }));
+            }
+            startSignal.countDown();
+            for (Future<double[]> result : results) {
+                assertArrayEquals(expected, result.get(), 0.0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // looks up the angles 0..89.9 deg, starting with a given one, and returns the results in a fixed order
+    private double[] lookUpAll(int offset) {
+        final double[] values = new double[900];
+        for (int i = 0; i < values.length; i++) {
+            final int index = (offset * 97 + i) % values.length;
+            values[index] = coefficients.getCoeffFor(0.1 * index);
+        }
+        return values;
+    }
+
 }
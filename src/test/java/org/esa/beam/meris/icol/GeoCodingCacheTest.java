@@ -0,0 +1,75 @@
+package org.esa.beam.meris.icol;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.GeoCoding;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+import org.esa.beam.framework.datamodel.TiePointGeoCoding;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.meris.icol.utils.GeoCodingCache;
+
+public class GeoCodingCacheTest extends TestCase {
+
+    private static final int SCENE_WIDTH = 100;
+    private static final int SCENE_HEIGHT = 70;
+
+    private GeoCoding geoCoding;
+    private GeoCodingCache geoCodingCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        // MERIS RR like tie-point grids with a subsampling of 16 pixels
+        final int gridWidth = 8;
+        final int gridHeight = 6;
+        final float[] lats = new float[gridWidth * gridHeight];
+        final float[] lons = new float[gridWidth * gridHeight];
+        for (int j = 0; j < gridHeight; j++) {
+            for (int i = 0; i < gridWidth; i++) {
+                lats[j * gridWidth + i] = 54.0f - 0.1f * j - 0.01f * i + 0.002f * i * j * (i % 3);
+                lons[j * gridWidth + i] = 8.0f + 0.15f * i + 0.03f * j - 0.001f * j * j * i;
+            }
+        }
+        final TiePointGrid latGrid = new TiePointGrid("latitude", gridWidth, gridHeight, 0.5f, 0.5f, 16.0f, 16.0f,
+                                                      lats);
+        final TiePointGrid lonGrid = new TiePointGrid("longitude", gridWidth, gridHeight, 0.5f, 0.5f, 16.0f, 16.0f,
+                                                      lons);
+        geoCoding = new TiePointGeoCoding(latGrid, lonGrid);
+        geoCodingCache = new GeoCodingCache(geoCoding, SCENE_WIDTH, SCENE_HEIGHT);
+    }
+
+    public void testGeoPosEqualsTiePointInterpolation() {
+        final PixelPos pixelPos = new PixelPos();
+        for (int y = 0; y < SCENE_HEIGHT; y += 3) {
+            for (int x = 0; x < SCENE_WIDTH; x += 7) {
+                pixelPos.x = x + 0.25f;
+                pixelPos.y = y;
+                final GeoPos expected = geoCoding.getGeoPos(pixelPos, null);
+                final GeoPos actual = geoCodingCache.getGeoPos(pixelPos, null);
+                assertEquals(expected.lat, actual.lat, 1.0e-4);
+                assertEquals(expected.lon, actual.lon, 1.0e-4);
+            }
+        }
+    }
+
+    public void testPixelPosInvertsGeoPos() {
+        final PixelPos pixelPos = new PixelPos();
+        for (int y = 1; y < SCENE_HEIGHT; y += 5) {
+            for (int x = 1; x < SCENE_WIDTH; x += 9) {
+                pixelPos.x = x + 0.5f;
+                pixelPos.y = y + 0.5f;
+                final GeoPos geoPos = geoCodingCache.getGeoPos(pixelPos, null);
+                final PixelPos actual = geoCodingCache.getPixelPos(geoPos, null);
+                assertEquals(pixelPos.x, actual.x, 0.05);
+                assertEquals(pixelPos.y, actual.y, 0.05);
+            }
+        }
+    }
+
+    public void testPixelPosOutsideSceneIsLeftToGeoCoding() {
+        final GeoPos geoPos = new GeoPos(10.0f, 100.0f);
+        final PixelPos expected = geoCoding.getPixelPos(geoPos, null);
+        final PixelPos actual = geoCodingCache.getPixelPos(geoPos, null);
+        assertEquals(expected.x, actual.x, 1.0e-6);
+        assertEquals(expected.y, actual.y, 1.0e-6);
+    }
+}
@@ -0,0 +1,57 @@
+package org.esa.beam.meris.icol;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+public class IcolAuxdataTest extends TestCase {
+
+    private File auxdataDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        auxdataDir = File.createTempFile("icol-auxdata", "");
+        assertTrue(auxdataDir.delete());
+        assertTrue(new File(auxdataDir, "aerosol").mkdirs());
+        write(new File(auxdataDir, "fresnel.txt"), "0.1 0.2");
+        write(new File(auxdataDir, "aerosol/W.txt"), "0.5");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new File(auxdataDir, "aerosol/W.txt").delete();
+        new File(auxdataDir, "aerosol").delete();
+        new File(auxdataDir, "fresnel.txt").delete();
+        new File(auxdataDir, IcolAuxdata.CHECKSUM_FILENAME).delete();
+        auxdataDir.delete();
+    }
+
+    public void testInstallationIsCompleteUntilAFileIsDeleted() throws IOException {
+        assertFalse(IcolAuxdata.isInstalled(auxdataDir, "abc"));
+
+        IcolAuxdata.writeChecksum(auxdataDir, "abc");
+        assertTrue(IcolAuxdata.isInstalled(auxdataDir, "abc"));
+        assertFalse(IcolAuxdata.isInstalled(auxdataDir, "abd"));
+
+        assertTrue(new File(auxdataDir, "aerosol/W.txt").delete());
+        assertFalse(IcolAuxdata.isInstalled(auxdataDir, "abc"));
+    }
+
+    public void testInstallationIsIncompleteIfAFileIsTruncated() throws IOException {
+        IcolAuxdata.writeChecksum(auxdataDir, "abc");
+        write(new File(auxdataDir, "fresnel.txt"), "0.1");
+        assertFalse(IcolAuxdata.isInstalled(auxdataDir, "abc"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        final Writer writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.esa.beam.meris.icol;
+
+import junit.framework.TestCase;
+import org.esa.beam.meris.icol.utils.MaterializedOpImage;
+
+import javax.media.jai.TileCache;
+import javax.media.jai.TiledImage;
+import java.awt.Rectangle;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.io.File;
+
+public class MaterializedOpImageTest extends TestCase {
+
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 12;
+    private static final int TILE_SIZE = 8;
+
+    public void testEvictedTileIsReadFromScratchFile() throws Exception {
+        final TiledImage source = new TiledImage(0, 0, WIDTH, HEIGHT, 0, 0,
+                                                 new BandedSampleModel(DataBuffer.TYPE_FLOAT, TILE_SIZE, TILE_SIZE,
+                                                                       1), null);
+        fill(source, 0.0f);
+        final MaterializedOpImage image = new MaterializedOpImage(source, "materializedOpImageTest");
+        final File scratchFile = image.getScratchFile();
+        assertTrue(scratchFile.isFile());
+        try {
+            // the first computed tile is always stored, here the partial tile at the lower right corner
+            assertSamples(image.getTile(2, 1), 0.0f);
+
+            // a tile computed again from the changed source would differ from the stored one
+            fill(source, 100.0f);
+            final TileCache tileCache = image.getTileCache();
+            // without a tile cache every request computes the tile again
+            if (tileCache != null) {
+                tileCache.removeTiles(image);
+            }
+            assertSamples(image.getTile(2, 1), 0.0f);
+        } finally {
+            image.dispose();
+        }
+        assertFalse(scratchFile.exists());
+
+        // after dispose the tiles are computed by the source
+        assertSamples(image.computeTile(2, 1), 100.0f);
+    }
+
+    private static void fill(TiledImage image, float offset) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setSample(x, y, 0, offset + y * WIDTH + x);
+            }
+        }
+    }
+
+    private static void assertSamples(Raster tile, float offset) {
+        final Rectangle rect = tile.getBounds().intersection(new Rectangle(WIDTH, HEIGHT));
+        assertEquals(new Rectangle(16, 8, 4, 4), rect);
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            for (int x = rect.x; x < rect.x + rect.width; x++) {
+                assertEquals(offset + y * WIDTH + x, tile.getSampleFloat(x, y, 0), 0.0f);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.esa.beam.meris.icol;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.meris.icol.utils.OperatorUtils;
+
+public class OperatorUtilsTest extends TestCase {
+
+    public void testComputeTileSize() {
+        final Product rrProduct = new Product("rr", "MER_RR__1P", 1121, 1000);
+        // per-pixel operators keep the minimum tile size
+        assertEquals(OperatorUtils.MIN_TILE_SIZE, OperatorUtils.computeTileSize(rrProduct, 0, 15));
+        // RR kernel: (128 + 2 * 25)^2 is less than twice 128^2
+        assertEquals(128, OperatorUtils.computeTileSize(rrProduct, 25, 2));
+        // the doubling stops once a tile covers the smaller scene dimension: 128 is the first size covering 100
+        final Product subset = new Product("subset", "MER_FR__1P", 300, 100);
+        assertEquals(128, OperatorUtils.computeTileSize(subset, 320, 1));
+    }
+
+    public void testComputeTileSizeIncludesConvolutionBuffers() {
+        final Product frProduct = new Product("fr", "MER_FR__1P", 4481, 4000);
+        final long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+        final int numThreads = Runtime.getRuntime().availableProcessors();
+        // the source tiles of a 128 pixel tile extended by 320 pixels
+        final long sourceArea = (128L + 2 * 320) * (128L + 2 * 320);
+        // enough bands that the FFT spectra (16 bytes per pixel in addition to the 4 byte sample) of the
+        // 128 pixel tiles exceed the memory budget, while the source samples alone do not
+        final int numBands = (int) (memoryBudget / (sourceArea * 20 * numThreads)) + 1;
+        assertTrue(sourceArea * 4 * numBands * numThreads <= memoryBudget);
+        assertTrue(OperatorUtils.computeTileSize(frProduct, 320, numBands) >= 128);
+        assertEquals(OperatorUtils.MIN_TILE_SIZE, OperatorUtils.computeTileSize(frProduct, 320, numBands, 20));
+    }
+}
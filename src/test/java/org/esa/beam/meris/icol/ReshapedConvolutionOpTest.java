@@ -0,0 +1,99 @@
+package org.esa.beam.meris.icol;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+
+import javax.media.jai.KernelJAI;
+import java.awt.image.Raster;
+
+public class ReshapedConvolutionOpTest extends TestCase {
+
+    private static final int WIDTH = 60;
+    private static final int HEIGHT = 45;
+
+    public void testFusedBandsMatchSeparateBandsForAerosol() {
+        assertFusedBandsMatchSeparateBands(IcolConstants.AE_CORRECTION_MODE_AEROSOL, 1.0);
+    }
+
+    public void testFusedBandsMatchSeparateBandsForRayleigh() {
+        assertFusedBandsMatchSeparateBands(IcolConstants.AE_CORRECTION_MODE_RAYLEIGH, 4.0);
+    }
+
+    private static void assertFusedBandsMatchSeparateBands(int correctionMode, double scalingFactor) {
+        final Product sourceProduct = createSourceProduct();
+        final Product separate = convolve(sourceProduct, correctionMode, scalingFactor, false);
+        final Product fused = convolve(sourceProduct, correctionMode, scalingFactor, true);
+
+        assertEquals(4, separate.getNumBands());
+        assertEquals(4, fused.getNumBands());
+        for (Band separateBand : separate.getBands()) {
+            final Band fusedBand = fused.getBand(separateBand.getName());
+            assertNotNull(separateBand.getName(), fusedBand);
+            assertEquals(separateBand.getDataType(), fusedBand.getDataType());
+            final Raster expected = separateBand.getSourceImage().getData();
+            final Raster actual = fusedBand.getSourceImage().getData();
+            assertEquals(1, actual.getNumBands());
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals(separateBand.getName() + " at " + x + "," + y,
+                                 expected.getSampleFloat(x, y, 0), actual.getSampleFloat(x, y, 0), 1.0e-6f);
+                }
+            }
+        }
+    }
+
+    private static Product convolve(Product sourceProduct, int correctionMode, double scalingFactor,
+                                    boolean fuseBands) {
+        final ReshapedConvolutionOp op = new ReshapedConvolutionOp();
+        op.setSourceProduct(sourceProduct);
+        op.setParameter("namePrefix", "rho_");
+        op.setParameter("kernel", createKernel());
+        op.setParameter("correctionMode", correctionMode);
+        op.setParameter("reshapedScalingFactor", scalingFactor);
+        op.setParameter("fuseBands", fuseBands);
+        return op.getTargetProduct();
+    }
+
+    private static Product createSourceProduct() {
+        final Product product = new Product("test", "MER_RR__1P", WIDTH, HEIGHT);
+        for (int b = 1; b <= 3; b++) {
+            final float[] values = new float[WIDTH * HEIGHT];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    values[y * WIDTH + x] = (float) (0.1 * b + 0.05 * Math.sin(0.3 * b * x) * Math.cos(0.2 * y));
+                }
+            }
+            final Band band = product.addBand("rho_" + b, ProductData.TYPE_FLOAT32);
+            band.setRasterData(ProductData.createInstance(values));
+        }
+        // a band of another data type forms a group of its own
+        final byte[] flags = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = (byte) (i % 7 == 0 ? 1 : 0);
+        }
+        final Band flagBand = product.addBand("rho_flags", ProductData.TYPE_INT8);
+        flagBand.setRasterData(ProductData.createInstance(flags));
+        // not convolved
+        product.addBand("other", ProductData.TYPE_FLOAT32).setRasterData(
+                ProductData.createInstance(new float[WIDTH * HEIGHT]));
+        return product;
+    }
+
+    private static KernelJAI createKernel() {
+        final int size = 5;
+        final float[] data = new float[size * size];
+        float sum = 0.0f;
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                data[j * size + i] = (float) Math.exp(-0.3 * ((i - 2) * (i - 2) + (j - 2) * (j - 2)));
+                sum += data[j * size + i];
+            }
+        }
+        for (int i = 0; i < data.length; i++) {
+            data[i] /= sum;
+        }
+        return new KernelJAI(size, size, data);
+    }
+}
@@ -0,0 +1,88 @@
+package org.esa.beam.meris.icol;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.meris.icol.utils.OperatorUtils;
+import org.esa.beam.meris.icol.utils.SuperTileCache;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SuperTileCacheTest extends TestCase {
+
+    public void testTargetTilesShareSuperTile() {
+        final List<Rectangle> loaded = new ArrayList<Rectangle>();
+        SuperTileCache<Rectangle> cache = new SuperTileCache<Rectangle>(1100, 700, 512,
+                                                                        new SuperTileCache.Loader<Rectangle>() {
+                                                                            public Rectangle load(Rectangle rectangle) {
+                                                                                loaded.add(rectangle);
+                                                                                return rectangle;
+                                                                            }
+                                                                        });
+        for (int y = 0; y < 512; y += 64) {
+            for (int x = 0; x < 512; x += 64) {
+                assertEquals(new Rectangle(0, 0, 512, 512), cache.get(new Rectangle(x, y, 64, 64)));
+            }
+        }
+        assertEquals(1, loaded.size());
+
+        // the super-tiles at the scene border are clipped
+        assertEquals(new Rectangle(1024, 512, 76, 188), cache.get(new Rectangle(1088, 640, 12, 60)));
+        assertEquals(2, loaded.size());
+
+        // a target tile across a super-tile border is loaded on its own
+        final Rectangle targetRect = new Rectangle(500, 0, 100, 100);
+        assertEquals(targetRect, cache.get(targetRect));
+        assertEquals(3, loaded.size());
+    }
+
+    public void testComputeSuperTileSize() {
+        // four tiles in each direction
+        assertEquals(512, SuperTileCache.computeSuperTileSize(new Dimension(128, 128), 80));
+        // doubled until the extension is at most half the super-tile size
+        assertEquals(1024, SuperTileCache.computeSuperTileSize(new Dimension(64, 64), 320));
+        // aligned with both the tile width and height
+        assertEquals(768, SuperTileCache.computeSuperTileSize(new Dimension(96, 64), 10));
+    }
+
+    public void testSuperTileServesSeveralTargetTiles() {
+        // the extensions and source bands of CoastDistanceOp
+        assertSuperTileServesSeveralTargetTiles(new Product("rr", "MER_RR__1P", 1121, 1000), 80, 2);
+        assertSuperTileServesSeveralTargetTiles(new Product("fr", "MER_FR__1P", 4481, 4000), 320, 2);
+    }
+
+    private static void assertSuperTileServesSeveralTargetTiles(Product product, int sourceExtension,
+                                                                int numSourceBands) {
+        final int tileSize = OperatorUtils.computeSuperTiledTileSize(product, sourceExtension, numSourceBands);
+        assertTrue(tileSize <= SuperTileCache.MAX_TARGET_TILE_SIZE);
+        final int superTileSize = SuperTileCache.computeSuperTileSize(new Dimension(tileSize, tileSize),
+                                                                      sourceExtension);
+        final int width = product.getSceneRasterWidth();
+        final int height = product.getSceneRasterHeight();
+        final List<Rectangle> loaded = new ArrayList<Rectangle>();
+        SuperTileCache<Rectangle> cache = new SuperTileCache<Rectangle>(width, height, superTileSize,
+                                                                        new SuperTileCache.Loader<Rectangle>() {
+                                                                            public Rectangle load(Rectangle rectangle) {
+                                                                                loaded.add(rectangle);
+                                                                                return rectangle;
+                                                                            }
+                                                                        });
+        // the row-wise tile requests of a writer
+        int numTiles = 0;
+        for (int y = 0; y < height; y += tileSize) {
+            for (int x = 0; x < width; x += tileSize) {
+                final Rectangle targetRect = new Rectangle(x, y, tileSize, tileSize).intersection(
+                        new Rectangle(width, height));
+                assertTrue(cache.get(targetRect).contains(targetRect));
+                numTiles++;
+            }
+        }
+        // each super-tile is loaded once and no target tile on its own
+        final int numSuperTiles = ((width + superTileSize - 1) / superTileSize) *
+                                  ((height + superTileSize - 1) / superTileSize);
+        assertEquals(numSuperTiles, loaded.size());
+        assertTrue(numTiles >= SuperTileCache.MIN_TILES_PER_SUPER_TILE * numSuperTiles);
+    }
+}
@@ -0,0 +1,30 @@
+package org.esa.beam.meris.icol;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.gpf.Tile;
+import org.esa.beam.framework.gpf.internal.TileImpl;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * Creates source tiles for the tests of the convolution and mean calculation classes.
+ */
+class TileTestUtils {
+
+    private TileTestUtils() {
+    }
+
+    static Tile createTile(Rectangle rect, float[] samples) {
+        final WritableRaster raster = Raster.createWritableRaster(
+                new BandedSampleModel(DataBuffer.TYPE_FLOAT, rect.width, rect.height, 1), new Point(rect.x, rect.y));
+        raster.setSamples(rect.x, rect.y, rect.width, rect.height, 0, samples);
+        final Band band = new Band("b", ProductData.TYPE_FLOAT32, rect.x + rect.width, rect.y + rect.height);
+        return new TileImpl(band, raster);
+    }
+}
@@ -0,0 +1,104 @@
+package org.esa.beam.meris.icol;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+import org.esa.beam.framework.datamodel.TiePointGeoCoding;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.meris.icol.utils.GeoCodingCache;
+import org.esa.beam.meris.icol.utils.WaterFractionRaster;
+import org.esa.beam.watermask.operator.WatermaskClassifier;
+
+import java.awt.Rectangle;
+
+public class WaterFractionRasterTest extends TestCase {
+
+    private static final int SCENE_WIDTH = 100;
+    private static final int SCENE_HEIGHT = 70;
+    private static final Rectangle RECTANGLE = new Rectangle(20, 10, 64, 48);
+
+    private TiePointGeoCoding geoCoding;
+    private GeoCodingCache geoCodingCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        // MERIS RR like tie-point grids along the coast of the German Bight
+        final int gridWidth = 8;
+        final int gridHeight = 6;
+        final float[] lats = new float[gridWidth * gridHeight];
+        final float[] lons = new float[gridWidth * gridHeight];
+        for (int j = 0; j < gridHeight; j++) {
+            for (int i = 0; i < gridWidth; i++) {
+                lats[j * gridWidth + i] = 54.0f - 0.1f * j - 0.01f * i;
+                lons[j * gridWidth + i] = 8.0f + 0.15f * i + 0.03f * j;
+            }
+        }
+        final TiePointGrid latGrid = new TiePointGrid("latitude", gridWidth, gridHeight, 0.5f, 0.5f, 16.0f, 16.0f,
+                                                      lats);
+        final TiePointGrid lonGrid = new TiePointGrid("longitude", gridWidth, gridHeight, 0.5f, 0.5f, 16.0f, 16.0f,
+                                                      lons);
+        geoCoding = new TiePointGeoCoding(latGrid, lonGrid);
+        geoCodingCache = new GeoCodingCache(geoCoding, SCENE_WIDTH, SCENE_HEIGHT);
+    }
+
+    public void testSingleSampleMatchesPerPixelLookup() throws Exception {
+        final WatermaskClassifier classifier = new WatermaskClassifier(50);
+        final WaterFractionRaster raster = new WaterFractionRaster(classifier, geoCodingCache, RECTANGLE, 1);
+        GeoPos geoPos = null;
+        for (int y = RECTANGLE.y; y < RECTANGLE.y + RECTANGLE.height; y++) {
+            for (int x = RECTANGLE.x; x < RECTANGLE.x + RECTANGLE.width; x++) {
+                // the lookup formerly done per pixel in MerisLandClassificationOp
+                geoPos = geoCoding.getGeoPos(new PixelPos(x, y), geoPos);
+                final int sample = classifier.getWaterMaskSample(geoPos.lat, geoPos.lon);
+                final byte fraction = raster.getWaterFraction(x, y);
+                if (sample == WatermaskClassifier.INVALID_VALUE) {
+                    assertEquals(WaterFractionRaster.INVALID_FRACTION, fraction);
+                } else {
+                    assertEquals(sample == WatermaskClassifier.WATER_VALUE ? 100 : 0, fraction);
+                    // the land decision of the operator
+                    assertEquals(sample == WatermaskClassifier.LAND_VALUE, fraction < 50);
+                }
+            }
+        }
+    }
+
+    public void testSuperSamplingAveragesPerPixelLookups() throws Exception {
+        final WatermaskClassifier classifier = new WatermaskClassifier(150);
+        final WaterFractionRaster raster = new WaterFractionRaster(classifier, geoCodingCache, RECTANGLE, 2);
+        final PixelPos pixelPos = new PixelPos();
+        GeoPos geoPos = null;
+        int numMixed = 0;
+        for (int y = RECTANGLE.y; y < RECTANGLE.y + RECTANGLE.height; y++) {
+            for (int x = RECTANGLE.x; x < RECTANGLE.x + RECTANGLE.width; x++) {
+                int numWater = 0;
+                int numValid = 0;
+                for (int j = 0; j < 2; j++) {
+                    for (int i = 0; i < 2; i++) {
+                        // the sub-pixel centres around (x, y)
+                        pixelPos.x = x - 0.25f + 0.5f * i;
+                        pixelPos.y = y - 0.25f + 0.5f * j;
+                        geoPos = geoCoding.getGeoPos(pixelPos, geoPos);
+                        final int sample = classifier.getWaterMaskSample(geoPos.lat, geoPos.lon);
+                        if (sample != WatermaskClassifier.INVALID_VALUE) {
+                            numValid++;
+                            if (sample == WatermaskClassifier.WATER_VALUE) {
+                                numWater++;
+                            }
+                        }
+                    }
+                }
+                final byte fraction = raster.getWaterFraction(x, y);
+                if (numValid == 0) {
+                    assertEquals(WaterFractionRaster.INVALID_FRACTION, fraction);
+                } else {
+                    assertEquals(Math.round(100.0f * numWater / numValid), fraction);
+                    if (numWater > 0 && numWater < numValid) {
+                        numMixed++;
+                    }
+                }
+            }
+        }
+        // the scene crosses the coast, some pixels must be mixed
+        assertTrue(numMixed > 0);
+    }
+}
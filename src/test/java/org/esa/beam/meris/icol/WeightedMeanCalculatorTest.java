@@ -0,0 +1,147 @@
+package org.esa.beam.meris.icol;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.gpf.Tile;
+
+import java.awt.Rectangle;
+
+public class WeightedMeanCalculatorTest extends TestCase {
+
+    private static final int EXTEND = 6;
+
+    private Rectangle rect;
+    private Tile valueTile;
+    private Tile secondValueTile;
+    private Tile flagTile;
+    private double[] weights;
+
+    @Override
+    protected void setUp() throws Exception {
+        rect = new Rectangle(7, 4, 40, 30);
+        final float[] values = new float[rect.width * rect.height];
+        final float[] secondValues = new float[values.length];
+        final float[] flags = new float[values.length];
+        for (int j = 0; j < rect.height; j++) {
+            for (int i = 0; i < rect.width; i++) {
+                final int index = j * rect.width + i;
+                // scattered no-data pixels, also at the tile edges
+                values[index] = (i * 7 + j * 11) % 13 == 0 ? -1.0f : (float) (0.2 + 0.1 * Math.sin(0.3 * i + 0.2 * j));
+                secondValues[index] = (float) (0.05 * ((i * 3 + j) % 7));
+                flags[index] = (i * 5 + j * 3) % 11 < 3 ? 1.0f : 0.0f;
+            }
+        }
+        valueTile = TileTestUtils.createTile(rect, values);
+        secondValueTile = TileTestUtils.createTile(rect, secondValues);
+        flagTile = TileTestUtils.createTile(rect, flags);
+        weights = new double[EXTEND + 1];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.exp(-0.3 * i);
+        }
+    }
+
+    public void testMatchesFullWindowWalk() {
+        final WeightedMeanCalculator calculator = new WeightedMeanCalculator(EXTEND);
+        final Tile[] tiles = new Tile[]{valueTile, null, secondValueTile};
+        for (int[] pixel : createPixelSequence()) {
+            final int x = pixel[0];
+            final int y = pixel[1];
+            final String message = "(" + x + "," + y + ")";
+            assertEquals(message, computeByWalk(x, y, valueTile, false)[0],
+                         calculator.compute(x, y, valueTile, weights), 1.0E-6);
+            assertEquals(message, computeByWalk(x, y, flagTile, true)[0],
+                         calculator.computeBoolean(x, y, flagTile, weights), 1.0E-6);
+            final double[] expected = computeByWalk(x, y, tiles, false);
+            final double[] actual = calculator.computeAll(x, y, tiles, weights);
+            assertEquals(expected.length, actual.length);
+            for (int b = 0; b < expected.length; b++) {
+                assertEquals(message, expected[b], actual[b], 1.0E-6);
+            }
+        }
+    }
+
+    public void testTablesAreShared() {
+        // the tables of an extend are built once; instances must not influence each other
+        final WeightedMeanCalculator calculator1 = new WeightedMeanCalculator(EXTEND);
+        final WeightedMeanCalculator calculator2 = new WeightedMeanCalculator(EXTEND);
+        final int x = rect.x + EXTEND + 3;
+        final int y = rect.y + EXTEND + 2;
+        final double expected = calculator1.compute(x, y, valueTile, weights);
+        calculator2.compute(x + 5, y + 1, valueTile, weights);
+        assertEquals(expected, calculator1.compute(x, y, valueTile, weights), 0.0);
+        assertEquals(expected, calculator2.compute(x, y, valueTile, weights), 0.0);
+    }
+
+    /**
+     * Full rows touching the left and right tile edges, row jumps, steps of several pixels, steps back and
+     * repeated pixels.
+     */
+    private int[][] createPixelSequence() {
+        final int minX = rect.x + EXTEND;
+        final int maxX = rect.x + rect.width - 1 - EXTEND;
+        final int minY = rect.y + EXTEND;
+        final int maxY = rect.y + rect.height - 1 - EXTEND;
+        final int numPixels = 3 * (maxX - minX + 1) + 6;
+        final int[][] pixels = new int[numPixels][];
+        int n = 0;
+        for (int y = minY; y <= minY + 2; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                pixels[n++] = new int[]{x, y};
+            }
+        }
+        pixels[n++] = new int[]{minX + 2, maxY};
+        pixels[n++] = new int[]{minX + 5, maxY};
+        pixels[n++] = new int[]{minX + 5, maxY};
+        pixels[n++] = new int[]{minX + 1, maxY};
+        pixels[n++] = new int[]{maxX, maxY - 1};
+        pixels[n++] = new int[]{maxX, maxY};
+        assertEquals(numPixels, n);
+        return pixels;
+    }
+
+    private double[] computeByWalk(int x, int y, Tile tile, boolean booleanSamples) {
+        return computeByWalk(x, y, new Tile[]{tile}, booleanSamples);
+    }
+
+    /**
+     * The means computed by walking the whole window, as done before the window was slid.
+     */
+    private double[] computeByWalk(int x, int y, Tile[] tiles, boolean booleanSamples) {
+        final int[][] distances = WeightedMeanCalculator.computeDistanceMatrix(EXTEND);
+        final int[] counts = new int[EXTEND + 1];
+        final double[][] sums = new double[tiles.length][EXTEND + 1];
+        for (int dy = -EXTEND; dy <= EXTEND; dy++) {
+            for (int dx = -EXTEND; dx <= EXTEND; dx++) {
+                final int distance = distances[dy + EXTEND][dx + EXTEND];
+                if (distance == 0) {
+                    continue;
+                }
+                final double validityValue = tiles[0].getSampleFloat(x + dx, y + dy);
+                final boolean valid = booleanSamples ? validityValue != 0.0 : validityValue != -1.0;
+                if (valid) {
+                    counts[distance]++;
+                    for (int b = 0; b < tiles.length; b++) {
+                        if (tiles[b] != null) {
+                            sums[b][distance] += booleanSamples ? 1.0 : tiles[b].getSampleFloat(x + dx, y + dy);
+                        }
+                    }
+                }
+            }
+        }
+        final double[] means = new double[tiles.length];
+        for (int b = 0; b < tiles.length; b++) {
+            if (tiles[b] != null) {
+                if (booleanSamples) {
+                    means[b] = tiles[b].getSampleBoolean(x, y) ? weights[0] : 0.0;
+                } else {
+                    means[b] = tiles[b].getSampleFloat(x, y) * weights[0];
+                }
+                for (int distance = 1; distance <= EXTEND; distance++) {
+                    if (counts[distance] > 0) {
+                        means[b] += sums[b][distance] * weights[distance] / counts[distance];
+                    }
+                }
+            }
+        }
+        return means;
+    }
+}
@@ -0,0 +1,68 @@
+package org.esa.beam.meris.icol.common;
+
+import com.bc.ceres.core.ProgressMonitor;
+import junit.framework.TestCase;
+
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+
+public class AdjacencyEffectMaskOpTest extends TestCase {
+
+    private static final int SCENE_WIDTH = 30;
+    private static final int SCENE_HEIGHT = 24;
+    private static final int AE_WIDTH = 4;
+
+    public void testCoastalZoneMatchesAreaUnion() {
+        // land in the upper left quarter and a land stripe along the right border, so that the coastline
+        // crosses the tile edges, lies on them and on the scene border
+        final boolean[] land = new boolean[SCENE_WIDTH * SCENE_HEIGHT];
+        for (int y = 0; y < SCENE_HEIGHT; y++) {
+            for (int x = 0; x < SCENE_WIDTH; x++) {
+                land[y * SCENE_WIDTH + x] = (x < 10 && y < 8) || x >= 26 || (x == 17 && y == 14);
+            }
+        }
+        final boolean[] coastline = new boolean[land.length];
+        for (int y = 0; y < SCENE_HEIGHT; y++) {
+            for (int x = 0; x < SCENE_WIDTH; x++) {
+                coastline[y * SCENE_WIDTH + x] = isLand(land, x + 1, y) != isLand(land, x - 1, y) ||
+                                                 isLand(land, x, y + 1) != isLand(land, x, y - 1);
+            }
+        }
+        final AdjacencyEffectMaskOp.CoastlineMask coastlineMask =
+                new AdjacencyEffectMaskOp.CoastlineMask(new Rectangle(SCENE_WIDTH, SCENE_HEIGHT), coastline);
+
+        final Rectangle scene = new Rectangle(SCENE_WIDTH, SCENE_HEIGHT);
+        for (int tileY = 0; tileY < SCENE_HEIGHT; tileY += 8) {
+            for (int tileX = 0; tileX < SCENE_WIDTH; tileX += 10) {
+                final Rectangle targetRect = new Rectangle(tileX, tileY, 10, 8);
+                final Rectangle sourceRect = new Rectangle(tileX - AE_WIDTH, tileY - AE_WIDTH, 10 + 2 * AE_WIDTH,
+                                                           8 + 2 * AE_WIDTH).intersection(scene);
+                // the former computation: the union of one box per coastline pixel of the source rectangle
+                final Area coastalArea = new Area();
+                for (int y = sourceRect.y; y < sourceRect.y + sourceRect.height; y++) {
+                    for (int x = sourceRect.x; x < sourceRect.x + sourceRect.width; x++) {
+                        if (coastline[y * SCENE_WIDTH + x]) {
+                            coastalArea.add(new Area(new Rectangle(x - AE_WIDTH, y - AE_WIDTH, 2 * AE_WIDTH,
+                                                                   2 * AE_WIDTH)));
+                        }
+                    }
+                }
+                final boolean[] coastalZone = AdjacencyEffectMaskOp.computeCoastalZone(coastlineMask, sourceRect,
+                                                                                       targetRect, AE_WIDTH,
+                                                                                       ProgressMonitor.NULL);
+                for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
+                    for (int x = targetRect.x; x < targetRect.x + targetRect.width; x++) {
+                        assertEquals("(" + x + "," + y + ")", coastalArea.contains(x, y),
+                                     coastalZone[(y - tileY) * targetRect.width + x - tileX]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isLand(boolean[] land, int x, int y) {
+        final int cx = Math.max(0, Math.min(SCENE_WIDTH - 1, x));
+        final int cy = Math.max(0, Math.min(SCENE_HEIGHT - 1, y));
+        return land[cy * SCENE_WIDTH + cx];
+    }
+}
@@ -0,0 +1,134 @@
+package org.esa.beam.meris.icol.common;
+
+import junit.framework.TestCase;
+
+import java.awt.Rectangle;
+
+public class CoastDistanceOpTest extends TestCase {
+
+    private static final Rectangle RECTANGLE = new Rectangle(100, 200, 23, 17);
+
+    // axis parallel, diagonal, flat, steep and negative directions
+    private static final double[][] DIRECTIONS = new double[][]{
+            {1.0, 0.0}, {-1.0, 0.0}, {0.0, 1.0}, {0.0, -1.0},
+            {0.7071, 0.7071}, {-0.7071, 0.7071}, {-0.7071, -0.7071},
+            {0.95, 0.3122}, {-0.8, -0.6}, {0.3, -0.9539}, {-0.1, 0.995}, {0.2, 0.9798}
+    };
+
+    public void testGetNextFollowsStraightLine() {
+        for (double[] direction : DIRECTIONS) {
+            final CoastDistanceOp.LineSweep sweep = new CoastDistanceOp.LineSweep(RECTANGLE, direction[0],
+                                                                                  direction[1]);
+            final boolean majorX = Math.abs(direction[0]) >= Math.abs(direction[1]);
+            final double major = majorX ? direction[0] : direction[1];
+            final double minor = majorX ? direction[1] : direction[0];
+            final int majorStep = major >= 0 ? 1 : -1;
+            for (int start = 0; start < RECTANGLE.width * RECTANGLE.height; start++) {
+                final int x0 = start % RECTANGLE.width;
+                final int y0 = start / RECTANGLE.width;
+                int index = start;
+                int steps = 0;
+                while (true) {
+                    final int next = sweep.getNext(index);
+                    if (next < 0) {
+                        break;
+                    }
+                    steps++;
+                    final int dx = next % RECTANGLE.width - x0;
+                    final int dy = next / RECTANGLE.width - y0;
+                    final int majorOffset = majorX ? dx : dy;
+                    final int minorOffset = majorX ? dy : dx;
+                    final String message = "direction (" + direction[0] + "," + direction[1] + ") from " + start;
+                    // one pixel along the major axis per step, in the sign of the direction
+                    assertEquals(message, steps * majorStep, majorOffset);
+                    // the minor coordinate stays within one pixel of the straight line
+                    assertEquals(message, steps * minor / Math.abs(major), minorOffset, 1.0);
+                    index = next;
+                }
+                // a line only ends at the border of the rectangle
+                final int x = index % RECTANGLE.width;
+                final int y = index / RECTANGLE.width;
+                assertTrue(x == 0 || y == 0 || x == RECTANGLE.width - 1 || y == RECTANGLE.height - 1);
+            }
+        }
+    }
+
+    public void testFindFirstMatchesWalk() {
+        final boolean[] mask = new boolean[RECTANGLE.width * RECTANGLE.height];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = (i * 7 + (i / RECTANGLE.width) * 3) % 29 == 0;
+        }
+        for (double[] direction : DIRECTIONS) {
+            final CoastDistanceOp.LineSweep sweep = new CoastDistanceOp.LineSweep(RECTANGLE, direction[0],
+                                                                                  direction[1]);
+            final int[] first = sweep.findFirst(mask);
+            for (int start = 0; start < mask.length; start++) {
+                int expected = start;
+                while (expected >= 0 && !mask[expected]) {
+                    expected = sweep.getNext(expected);
+                }
+                assertEquals("direction (" + direction[0] + "," + direction[1] + ") from " + start,
+                             expected, first[start]);
+                assertEquals(expected, sweep.findFirst(mask, start));
+            }
+        }
+    }
+
+    public void testFindFirstAlongSteepNegativeDirection() {
+        final Rectangle rectangle = new Rectangle(0, 0, 5, 8);
+        final boolean[] mask = new boolean[rectangle.width * rectangle.height];
+        // a single mask pixel in the top row
+        mask[2] = true;
+        final CoastDistanceOp.LineSweep sweep = new CoastDistanceOp.LineSweep(rectangle, 0.0, -1.0);
+        final int[] first = sweep.findFirst(mask);
+        for (int y = 0; y < rectangle.height; y++) {
+            for (int x = 0; x < rectangle.width; x++) {
+                assertEquals(x == 2 ? 2 : -1, first[y * rectangle.width + x]);
+            }
+        }
+        // a quarter pixel to the left per row: from (3,4) the line hits (2,0), from (0,7) it leaves on the left
+        final CoastDistanceOp.LineSweep steepSweep = new CoastDistanceOp.LineSweep(rectangle, -0.2425, -0.9701);
+        assertEquals(2, steepSweep.findFirst(mask, 4 * rectangle.width + 3));
+        assertEquals(-1, steepSweep.findFirst(mask, 7 * rectangle.width));
+    }
+
+    public void testSweepWithinLargerMaskMatchesSweepOfCopy() {
+        final Rectangle maskRectangle = new Rectangle(90, 195, 40, 30);
+        final boolean[] mask = new boolean[maskRectangle.width * maskRectangle.height];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = (i * 7 + (i / maskRectangle.width) * 3) % 29 == 0;
+        }
+        final boolean[] subMask = new boolean[RECTANGLE.width * RECTANGLE.height];
+        for (int j = 0; j < RECTANGLE.height; j++) {
+            System.arraycopy(mask, (RECTANGLE.y - maskRectangle.y + j) * maskRectangle.width +
+                                   RECTANGLE.x - maskRectangle.x, subMask, j * RECTANGLE.width, RECTANGLE.width);
+        }
+        for (double[] direction : DIRECTIONS) {
+            final CoastDistanceOp.LineSweep expected = new CoastDistanceOp.LineSweep(RECTANGLE, direction[0],
+                                                                                     direction[1]);
+            final CoastDistanceOp.LineSweep actual = new CoastDistanceOp.LineSweep(RECTANGLE, maskRectangle,
+                                                                                   direction[0], direction[1]);
+            final int[] expectedFirst = expected.findFirst(subMask);
+            final int[] actualFirst = actual.findFirst(mask);
+            for (int start = 0; start < subMask.length; start++) {
+                final int x = RECTANGLE.x + start % RECTANGLE.width;
+                final int y = RECTANGLE.y + start / RECTANGLE.width;
+                final int maskIndex = (y - maskRectangle.y) * maskRectangle.width + x - maskRectangle.x;
+                final String message = "direction (" + direction[0] + "," + direction[1] + ") from " + start;
+                assertEquals(message, toMaskIndex(expected.getNext(start), maskRectangle), actual.getNext(maskIndex));
+                final int first = toMaskIndex(expectedFirst[start], maskRectangle);
+                assertEquals(message, first, actual.getFirst(actualFirst, maskIndex));
+                assertEquals(message, first, actual.findFirst(mask, maskIndex));
+            }
+        }
+    }
+
+    private static int toMaskIndex(int index, Rectangle maskRectangle) {
+        if (index < 0) {
+            return -1;
+        }
+        final int x = RECTANGLE.x + index % RECTANGLE.width;
+        final int y = RECTANGLE.y + index / RECTANGLE.width;
+        return (y - maskRectangle.y) * maskRectangle.width + x - maskRectangle.x;
+    }
+}
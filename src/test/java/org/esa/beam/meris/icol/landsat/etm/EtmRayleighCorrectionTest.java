@@ -0,0 +1,57 @@
+package org.esa.beam.meris.icol.landsat.etm;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class EtmRayleighCorrectionTest extends TestCase {
+
+    public void testHelperVariablesAreConfinedToThreads() throws Exception {
+        final int numThreads = 8;
+        // the helper variables do not need the auxdata
+        final EtmRayleighCorrection sharedCorrection = new EtmRayleighCorrection(null);
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<EtmRayleighCorrection.LocalHelperVariables>> results =
+                    new ArrayList<Future<EtmRayleighCorrection.LocalHelperVariables>>();
+            for (int t = 0; t < numThreads; t++) {
+                results.add(executor.submit(new Callable<EtmRayleighCorrection.LocalHelperVariables>() {
+                    public EtmRayleighCorrection.LocalHelperVariables call() throws Exception {
+                        startSignal.await();
+                        final EtmRayleighCorrection.LocalHelperVariables lh = sharedCorrection.getLh();
+                        for (int i = 0; i < 1000; i++) {
+                            // a thread always works on the same scratch arrays
+                            assertSame(lh, sharedCorrection.getLh());
+                            lh.getRhoRayl()[0] = i;
+                            lh.getAbcd()[0][0] = i;
+                            Thread.yield();
+                            assertEquals((double) i, lh.getRhoRayl()[0], 0.0);
+                            assertEquals((double) i, lh.getAbcd()[0][0], 0.0);
+                        }
+                        return lh;
+                    }
+                }));
+            }
+            startSignal.countDown();
+            final IdentityHashMap<Object, Object> distinct = new IdentityHashMap<Object, Object>();
+            for (Future<EtmRayleighCorrection.LocalHelperVariables> result : results) {
+                final EtmRayleighCorrection.LocalHelperVariables lh = result.get();
+                distinct.put(lh, lh);
+                distinct.put(lh.getRef_rayleigh_i(), lh);
+                distinct.put(lh.getRay_index(), lh);
+            }
+            // no two threads share any of the helper variables
+            assertEquals(3 * numThreads, distinct.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.esa.beam.meris.icol.meris;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+public class AotStepSearchTest extends TestCase {
+
+    public void testSearchMatchesScanOnMonotoneCurve() throws IOException {
+        final double[] curve = new double[17];
+        for (int i = 1; i < curve.length; i++) {
+            curve[i] = 0.01 * i + 0.001 * i * i;
+        }
+        assertSearchMatchesScan(curve);
+
+        final Curve search = new Curve(curve);
+        assertEquals(1, search.search(0.02, new double[17]));
+        assertEquals(2, search.evaluations);
+    }
+
+    public void testSearchMatchesScanOnNonMonotoneCurve() throws IOException {
+        // rises to a local maximum at step 4, falls back and rises again
+        final double[] curve = new double[]{
+                0, 0.05, 0.09, 0.12, 0.13, 0.11, 0.08, 0.06, 0.07, 0.09, 0.11, 0.13, 0.15, 0.17, 0.19, 0.21, 0.23
+        };
+        assertSearchMatchesScan(curve);
+        // bisection would bracket steps 8 and 9
+        assertEquals(1, new Curve(curve).search(0.07, new double[17]));
+        assertEquals(3, new Curve(curve).search(0.125, new double[17]));
+    }
+
+    public void testSearchMatchesScanIfLargestStepIsBelow() throws IOException {
+        // falls below the local maximum at the largest step
+        final double[] curve = new double[]{
+                0, 0.05, 0.09, 0.12, 0.13, 0.11, 0.09, 0.08, 0.07, 0.06, 0.05, 0.05, 0.05, 0.05, 0.05, 0.05, 0.05
+        };
+        assertSearchMatchesScan(curve);
+        assertEquals(3, new Curve(curve).search(0.125, new double[17]));
+        assertEquals(-1, new Curve(curve).search(0.2, new double[17]));
+    }
+
+    private static void assertSearchMatchesScan(double[] curve) throws IOException {
+        for (double rho = -0.01; rho < 0.3; rho += 0.0025) {
+            final double[] searched = new double[17];
+            final double[] scanned = new double[17];
+            final int step = new Curve(curve).search(rho, searched);
+            assertEquals("rho = " + rho, scan(curve, rho, scanned), step);
+            if (step != -1) {
+                // the bracket used for the interpolation
+                assertEquals(scanned[step], searched[step], 0.0);
+                assertEquals(scanned[step + 1], searched[step + 1], 0.0);
+            }
+        }
+    }
+
+    // the former retrieval loop, it visits the steps in ascending order up to the first one exceeding the reflectance
+    private static int scan(double[] curve, double rho_13, double[] rhoBrr865) {
+        for (int iiaot = 1; iiaot <= 16; iiaot++) {
+            rhoBrr865[iiaot] = curve[iiaot];
+        }
+        int searchIAOT = -1;
+        for (int iiaot = 1; iiaot <= 16 && searchIAOT == -1; iiaot++) {
+            if (rhoBrr865[iiaot] > rho_13) {
+                searchIAOT = iiaot - 1;
+            }
+        }
+        return searchIAOT;
+    }
+
+    private static class Curve extends MerisAdjacencyEffectAerosolOp.AotStepSearch {
+
+        private final double[] values;
+        private int evaluations;
+
+        Curve(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        double computeRhoBrr865(int iiaot) {
+            evaluations++;
+            return values[iiaot];
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.esa.beam.meris.icol.meris;
+
+import junit.framework.TestCase;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions.RV;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions.RVBatch;
+
+import java.io.IOException;
+
+public class Case2StepTableTest extends TestCase {
+
+    private static final float SZA = 42.5f;
+    private static final float VZA = 17.3f;
+    private static final float PHI = 112.0f;
+    private static final double CORR_FAC = 1.04;
+    private static final double RHO_BRR_BRACKET_865 = 0.013;
+    private static final double RHO_BRR_BRACKET_775 = 0.016;
+    private static final double MUV = Math.cos(Math.toRadians(VZA));
+
+    public void testTableMatchesScalarAerosolFunctions() throws IOException {
+        final AerosolScatteringFunctions functions = new AerosolScatteringFunctions();
+        for (int iaer = 1; iaer <= 26; iaer += 5) {
+            final double pab = functions.aerosolPhase(140.0, iaer);
+            final MerisAdjacencyEffectAerosolCase2Op.Case2StepTable table = createTable(functions, iaer, pab);
+            final double taua865 = 0.1 * Math.pow((550.0 / 865.0), (iaer - 1) / 10.0);
+            assertEquals(taua865, table.getTaua865(), 0.0);
+            for (int iiaot = 1; iiaot <= 16; iiaot++) {
+                final double taua = taua865 * iiaot;
+                final RV rv = functions.aerosol_f(taua, iaer, pab, SZA, VZA, PHI);
+                for (double rhoW865 = 0.0; rhoW865 < 0.05; rhoW865 += 0.01) {
+                    final double expected = rv.rhoa * CORR_FAC +
+                                            RHO_BRR_BRACKET_865 * rv.tds * (rv.tus - Math.exp(-taua / MUV)) +
+                                            rhoW865 * rv.tds * rv.tus;
+                    assertEquals("iaer = " + iaer + ", iiaot = " + iiaot, expected,
+                                 table.getRhoBrr865(iiaot, rhoW865), 1.0e-12);
+                }
+            }
+        }
+    }
+
+    public void testRhoBrr775MatchesScalarAerosolFunctions() throws IOException {
+        final AerosolScatteringFunctions functions = new AerosolScatteringFunctions();
+        for (int iaer = 1; iaer <= 26; iaer += 5) {
+            final double pab = functions.aerosolPhase(140.0, iaer);
+            final MerisAdjacencyEffectAerosolCase2Op.Case2StepTable table = createTable(functions, iaer, pab);
+            for (int iiaot = 0; iiaot < 16; iiaot++) {
+                for (double weight = 0.0; weight <= 1.0; weight += 0.125) {
+                    // the former evaluation at the AOT derived at 865nm
+                    final double taua = (iiaot + weight) * table.getTaua865() *
+                                        Math.pow((865.0 / 775.0), (iaer - 1) / 10.0);
+                    final RV rv = functions.aerosol_f(taua, iaer, pab, SZA, VZA, PHI);
+                    final double rhoW775 = 0.02;
+                    final double expected = rv.rhoa * CORR_FAC +
+                                            RHO_BRR_BRACKET_775 * rv.tds * (rv.tus - Math.exp(-taua / MUV)) +
+                                            rhoW775 * rv.tds * rv.tus;
+                    final double actual = table.getRhoBrr775(iiaot, weight, rhoW775);
+                    if (weight == 0.0) {
+                        assertEquals(expected, actual, 1.0e-12);
+                    } else {
+                        assertEquals("iaer = " + iaer + ", aot step = " + (iiaot + weight), expected, actual,
+                                     1.5e-2 * expected);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testStepsAreEvaluatedWhenReached() throws IOException {
+        final AerosolScatteringFunctions functions = new AerosolScatteringFunctions();
+        final MerisAdjacencyEffectAerosolCase2Op.Case2StepTable table =
+                createTable(functions, 3, functions.aerosolPhase(140.0, 3));
+        assertEquals(0, table.getNumEvaluatedSteps());
+
+        final double step3 = table.getRhoBrr865(3, 0.01);
+        assertEquals(3, table.getNumEvaluatedSteps());
+        table.getRhoBrr865(1, 0.02);
+        assertEquals(3, table.getNumEvaluatedSteps());
+        assertEquals(step3, table.getRhoBrr865(3, 0.01), 0.0);
+
+        // a new pixel discards the steps
+        table.setPixel(functions.aerosolPhase(150.0, 3), SZA + 5, VZA, PHI, CORR_FAC, RHO_BRR_BRACKET_865,
+                       RHO_BRR_BRACKET_775, MUV);
+        assertEquals(0, table.getNumEvaluatedSteps());
+        assertTrue(step3 != table.getRhoBrr865(3, 0.01));
+    }
+
+    private static MerisAdjacencyEffectAerosolCase2Op.Case2StepTable createTable(
+            AerosolScatteringFunctions functions, int iaer, double pab) {
+        final MerisAdjacencyEffectAerosolCase2Op.Case2StepTable table =
+                new MerisAdjacencyEffectAerosolCase2Op.Case2StepTable(functions, iaer, new RVBatch(1));
+        table.setPixel(pab, SZA, VZA, PHI, CORR_FAC, RHO_BRR_BRACKET_865, RHO_BRR_BRACKET_775, MUV);
+        return table;
+    }
+}
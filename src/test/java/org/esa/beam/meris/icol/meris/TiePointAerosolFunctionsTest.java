@@ -0,0 +1,101 @@
+package org.esa.beam.meris.icol.meris;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions.RV;
+import org.esa.beam.meris.icol.AerosolScatteringFunctions.RVBatch;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+
+public class TiePointAerosolFunctionsTest extends TestCase {
+
+    private static final int GRID_WIDTH = 4;
+    private static final int GRID_HEIGHT = 3;
+    private static final float SUB_SAMPLING = 16.0f;
+    private static final double RHO_BRR_BRACKET_865 = 0.013;
+
+    private AerosolScatteringFunctions functions;
+    private TiePointGrid sza;
+    private TiePointGrid vza;
+    private TiePointGrid saa;
+    private TiePointGrid vaa;
+
+    @Override
+    protected void setUp() throws Exception {
+        functions = new AerosolScatteringFunctions();
+        // typical tie-point cells, not crossing a zenith node of the tables
+        final float[] szas = new float[GRID_WIDTH * GRID_HEIGHT];
+        final float[] vzas = new float[szas.length];
+        final float[] saas = new float[szas.length];
+        final float[] vaas = new float[szas.length];
+        for (int j = 0; j < GRID_HEIGHT; j++) {
+            for (int i = 0; i < GRID_WIDTH; i++) {
+                szas[j * GRID_WIDTH + i] = 40.0f + 0.2f * j;
+                vzas[j * GRID_WIDTH + i] = 10.0f + 1.0f * i;
+                saas[j * GRID_WIDTH + i] = 140.0f + 2.0f * i;
+                vaas[j * GRID_WIDTH + i] = 40.0f;
+            }
+        }
+        sza = createGrid("sun_zenith", szas);
+        vza = createGrid("view_zenith", vzas);
+        saa = createGrid("sun_azimuth", saas);
+        vaa = createGrid("view_azimuth", vaas);
+    }
+
+    public void testStepTablesMatchAerosolFunctionsAtNodes() throws IOException {
+        final TiePointAerosolFunctions tiePointFunctions = createTiePointFunctions();
+        final RVBatch rv = new RVBatch(0);
+        for (int iaer = 1; iaer <= 26; iaer += 5) {
+            // the pixel at the centre of node (1, 1)
+            tiePointFunctions.interpolate(16, 16, iaer, rv);
+            final double muv = Math.cos(Math.toRadians(11.0));
+            for (int iiaot = 1; iiaot <= MerisAdjacencyEffectAerosolOp.AotStepSearch.NUM_STEPS; iiaot++) {
+                final double taua = MerisAdjacencyEffectAerosolOp.computeTaua865(iaer) * iiaot;
+                final RV expected = functions.aerosol_f(taua, iaer, tiePointFunctions.getPab(), 40.2f, 11.0f,
+                                                        102.0f);
+                assertEquals(expected.rhoa, tiePointFunctions.getRhoa865(iiaot), 1.0e-10);
+                assertEquals(expected.tds * (expected.tus - Math.exp(-taua / muv)),
+                             tiePointFunctions.getTransmission865(iiaot), 1.0e-10);
+            }
+        }
+    }
+
+    public void testStepTablesMatchInterpolatedGeometryTerms() throws IOException {
+        final TiePointAerosolFunctions tiePointFunctions = createTiePointFunctions();
+        final int numSteps = MerisAdjacencyEffectAerosolOp.AotStepSearch.NUM_STEPS;
+        final double[] taua = new double[numSteps];
+        final RVBatch rv = new RVBatch(numSteps);
+        for (int iaer = 1; iaer <= 26; iaer += 5) {
+            for (int i = 0; i < numSteps; i++) {
+                taua[i] = MerisAdjacencyEffectAerosolOp.computeTaua865(iaer) * (i + 1);
+            }
+            // the pixels within the tie-point cells, the border pixels are extrapolated
+            for (int y = 0; y < 32; y += 3) {
+                for (int x = 0; x < 48; x += 5) {
+                    // the former per pixel evaluation of the step reflectances
+                    tiePointFunctions.interpolate(x, y, iaer, rv);
+                    functions.aerosol_f(taua, numSteps, tiePointFunctions.getPab(), rv);
+                    final double muv = Math.cos(Math.toRadians(vza.getPixelDouble(x + 0.5, y + 0.5)));
+                    for (int i = 0; i < numSteps; i++) {
+                        final double expected = rv.rhoa[i] + RHO_BRR_BRACKET_865 * rv.tds[i] *
+                                                             (rv.tus[i] - Math.exp(-taua[i] / muv));
+                        final double actual = tiePointFunctions.getRhoa865(i + 1) +
+                                              RHO_BRR_BRACKET_865 * tiePointFunctions.getTransmission865(i + 1);
+                        assertEquals("iaer = " + iaer + ", (" + x + "," + y + ")", expected, actual,
+                                     1.0e-4 * expected);
+                    }
+                }
+            }
+        }
+    }
+
+    private TiePointAerosolFunctions createTiePointFunctions() {
+        return new TiePointAerosolFunctions(functions, sza, vza, saa, vaa, new Rectangle(0, 0, 60, 40));
+    }
+
+    private static TiePointGrid createGrid(String name, float[] tiePoints) {
+        return new TiePointGrid(name, GRID_WIDTH, GRID_HEIGHT, 0.5f, 0.5f, SUB_SAMPLING, SUB_SAMPLING, tiePoints);
+    }
+}
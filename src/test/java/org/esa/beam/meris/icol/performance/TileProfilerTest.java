@@ -0,0 +1,32 @@
+package org.esa.beam.meris.icol.performance;
+
+import junit.framework.TestCase;
+
+public class TileProfilerTest extends TestCase {
+
+    public void testSelfTimeAndDirectSourceTiles() {
+        final TileProfiler.PendingTiles pending = new TileProfiler.PendingTiles();
+        // tile A (0..100) computes B (10..60), which computes C (20..50), then A computes D (70..90)
+        pending.complete(20L, 50L);
+        assertEquals(30L, pending.getSelfNanos());
+        assertEquals(0, pending.getSourceTileCount());
+
+        pending.complete(10L, 60L);
+        assertEquals(20L, pending.getSelfNanos());
+        assertEquals(1, pending.getSourceTileCount());
+
+        pending.complete(70L, 90L);
+        assertEquals(20L, pending.getSelfNanos());
+        assertEquals(0, pending.getSourceTileCount());
+
+        // B and D are direct source tiles of A, C is not
+        pending.complete(0L, 100L);
+        assertEquals(30L, pending.getSelfNanos());
+        assertEquals(2, pending.getSourceTileCount());
+
+        // a tile computed after A is not nested in it and does not take A as source tile
+        pending.complete(110L, 120L);
+        assertEquals(10L, pending.getSelfNanos());
+        assertEquals(0, pending.getSourceTileCount());
+    }
+}
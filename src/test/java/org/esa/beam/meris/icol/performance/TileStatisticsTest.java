@@ -0,0 +1,53 @@
+package org.esa.beam.meris.icol.performance;
+
+import junit.framework.TestCase;
+
+public class TileStatisticsTest extends TestCase {
+
+    public void testGetBin() {
+        assertEquals(0, TileStatistics.getBin(0L));
+        assertEquals(0, TileStatistics.getBin(999L));
+        // [1, 2[ microseconds
+        assertEquals(1, TileStatistics.getBin(1000L));
+        assertEquals(1, TileStatistics.getBin(1999L));
+        // [2, 4[ microseconds
+        assertEquals(2, TileStatistics.getBin(2000L));
+        assertEquals(2, TileStatistics.getBin(3999L));
+        assertEquals(3, TileStatistics.getBin(4000L));
+        // 1 s = 10^6 microseconds lies in [2^19, 2^20[
+        assertEquals(20, TileStatistics.getBin(1000000000L));
+        // durations beyond the last bin are counted there
+        assertEquals(TileStatistics.NUM_BINS - 1, TileStatistics.getBin(Long.MAX_VALUE));
+    }
+
+    public void testGetQuantileNanos() {
+        final TileStatistics statistics = new TileStatistics("Op", "band", 10);
+        assertEquals(0L, statistics.getQuantileNanos(0.5));
+
+        // 8 tiles of 3 microseconds (bin 2) and 2 tiles of 100 ms (bin 17)
+        for (int i = 0; i < 8; i++) {
+            statistics.add(3000L, 3000L, 0);
+        }
+        statistics.add(100000000L, 100000000L, 2);
+        statistics.add(100000000L, 100000000L, 1);
+
+        // the upper bound of the bin containing the quantile
+        assertEquals(4000L, statistics.getQuantileNanos(0.5));
+        assertEquals(4000L, statistics.getQuantileNanos(0.8));
+        assertEquals((1L << 17) * 1000L, statistics.getQuantileNanos(0.9));
+        assertEquals((1L << 17) * 1000L, statistics.getQuantileNanos(1.0));
+        assertEquals(10L, statistics.getTileCount());
+        assertEquals(3L, statistics.getSourceTileCount());
+        assertEquals(100000000L, statistics.getMaxNanos());
+    }
+
+    public void testSelfTime() {
+        final TileStatistics statistics = new TileStatistics("Op", "band", 1);
+        statistics.add(50000L, 2000L, 3);
+        assertEquals(50000L, statistics.getTotalNanos());
+        assertEquals(2000L, statistics.getSelfNanos());
+        // the histogram and the maximum refer to the self time
+        assertEquals(2000L, statistics.getMaxNanos());
+        assertEquals(1L, statistics.getHistogram()[2]);
+    }
+}